@@ -57,11 +57,16 @@ def get_user_profiles(db):
         print(f"❌ Error getting user profiles: {e}")
         return []
 
-def delete_profile(db, profile_id, email):
-    """Delete a specific profile document"""
+def profile_id_of(reference):
+    """The userAuth document id a deleted document belongs to (userAuth/{id}/...)"""
+    return reference.path.split('/')[1]
+
+def delete_profile(db, bulk_writer, profile_id, email):
+    """Queue the delete of a profile document and any subcollections under it.
+    The deletes only land when the bulk writer is flushed, so this reports queueing, not deletion."""
     try:
-        db.collection('userAuth').document(profile_id).delete()
-        print(f"🗑️  Deleted profile: {profile_id} ({email})")
+        db.recursive_delete(db.collection('userAuth').document(profile_id), bulk_writer=bulk_writer)
+        print(f"🗑️  Queued delete of profile: {profile_id} ({email})")
         return True
     except Exception as e:
         print(f"❌ Error deleting profile {profile_id}: {e}")
@@ -126,14 +131,41 @@ def main():
     
     # Delete profiles
     print(f"\n🗑️  Deleting {len(profiles_to_delete)} profiles...")
-    deleted_count = 0
-    failed_count = 0
     
-    for profile in profiles_to_delete:
-        if delete_profile(db, profile['id'], profile['email']):
-            deleted_count += 1
-        else:
-            failed_count += 1
+    # One rate-limited bulk writer for every delete; transient errors are retried a few times.
+    # A profile that still fails is left in place, so rerunning the script resumes with it.
+    # Writes only resolve once the writer is flushed, so outcomes are collected from its callbacks.
+    deleted_ids = set()
+    failed_ids = set()
+    
+    def on_write_error(error, writer):
+        if error.attempts < 5:
+            return True
+        profile_id = profile_id_of(error.operation.reference)
+        failed_ids.add(profile_id)
+        print(f"❌ Error deleting {error.operation.reference.path} of profile {profile_id}: {error.message}")
+        return False
+    
+    def on_write_result(reference, result, writer):
+        if len(reference.path.split('/')) == 2:
+            deleted_ids.add(reference.id)
+    
+    bulk_writer = db.bulk_writer()
+    bulk_writer.on_write_error(on_write_error)
+    bulk_writer.on_write_result(on_write_result)
+    
+    for index, profile in enumerate(profiles_to_delete, start=1):
+        if not delete_profile(db, bulk_writer, profile['id'], profile['email']):
+            failed_ids.add(profile['id'])
+        if index % 100 == 0:
+            print(f"📈 Progress: {index}/{len(profiles_to_delete)} queued")
+    print("⏳ Waiting for queued deletes to finish...")
+    bulk_writer.close()
+    
+    # A profile only counts as deleted once its own document is gone and nothing under it failed
+    deleted_count = len(deleted_ids - failed_ids)
+    failed_count = len(failed_ids)
+    unconfirmed_count = len(profiles_to_delete) - deleted_count - failed_count
     
     # Summary
     print("\n" + "=" * 50)
@@ -141,11 +173,15 @@ def main():
     print("=" * 50)
     print(f"✅ Successfully deleted: {deleted_count} profiles")
     print(f"❌ Failed to delete: {failed_count} profiles")
+    if unconfirmed_count > 0:
+        print(f"❔ Not confirmed either way: {unconfirmed_count} profiles")
     print(f"🔒 Preserved admin profiles: {len(admin_profiles)}")
     print(f"📈 Total profiles processed: {len(profiles)}")
     
-    if failed_count > 0:
-        print(f"\n⚠️  {failed_count} profiles failed to delete. Check the error messages above.")
+    if failed_count > 0 or unconfirmed_count > 0:
+        print(f"\n⚠️  {failed_count + unconfirmed_count} profiles may not have been deleted. Check the error messages above and rerun to retry them.")
+        for profile_id in sorted(failed_ids):
+            print(f"   - {profile_id}")
     else:
         print(f"\n🎉 Cleanup completed successfully!")
         print(f"🔒 Only admin@connect.com profile(s) remain in the userProfiles collection.")
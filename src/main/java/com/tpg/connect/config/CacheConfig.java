@@ -80,6 +80,8 @@ public class CacheConfig {
         RedisCacheManager cacheManager = RedisCacheManager.builder(redisConnectionFactory)
                 .cacheDefaults(defaultConfig)
                 .withInitialCacheConfigurations(cacheConfigurations)
+                // Publishes cache_gets{result=hit|miss} per cache for hit-rate dashboards
+                .enableStatistics()
                 .build();
         
         logger.info("✅ Redis cache manager configured with {} cache types", cacheConfigurations.size());
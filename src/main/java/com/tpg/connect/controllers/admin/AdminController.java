@@ -4,6 +4,10 @@ import com.tpg.connect.model.application.ApplicationSubmission;
 import com.tpg.connect.model.user.ApplicationStatus;
 import com.tpg.connect.services.ApplicationService;
 import com.tpg.connect.services.AuthenticationService;
+import com.tpg.connect.services.ConversationService;
+import com.tpg.connect.services.LikeGraphService;
+import com.tpg.connect.services.UnreadCounterReconciliationService;
+import com.tpg.connect.services.UserActionsService;
 import com.tpg.connect.utilities.JwtUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,6 +34,18 @@ public class AdminController {
     @Autowired
     private AuthenticationService authenticationService;
     
+    @Autowired
+    private LikeGraphService likeGraphService;
+    
+    @Autowired
+    private UserActionsService userActionsService;
+    
+    @Autowired
+    private ConversationService conversationService;
+    
+    @Autowired
+    private UnreadCounterReconciliationService unreadCounterReconciliationService;
+    
     /**
      * Get all pending applications for review
      */
@@ -342,6 +358,128 @@ public class AdminController {
         }
     }
     
+    /**
+     * Rebuild the Redis like graph from the userActions collection (maintenance endpoint)
+     */
+    @PostMapping("/like-graph/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildLikeGraph(HttpServletRequest request) {
+        log.info("🕸️ Rebuilding like graph from Firestore");
+        
+        try {
+            // Validate admin authentication
+            if (!isAdminAuthenticated(request)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(createErrorResponse("Admin access required"));
+            }
+            
+            Map<String, Object> response = likeGraphService.rebuild();
+            return Boolean.TRUE.equals(response.get("success"))
+                    ? ResponseEntity.ok(response)
+                    : ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            
+        } catch (Exception e) {
+            log.error("❌ Error rebuilding like graph: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Failed to rebuild like graph: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Move legacy userActions arrays into bucketed sub-documents (maintenance endpoint)
+     */
+    @PostMapping("/user-actions/migrate-buckets")
+    public ResponseEntity<Map<String, Object>> migrateUserActionBuckets(HttpServletRequest request) {
+        log.info("🪣 Migrating userActions arrays into buckets");
+        
+        try {
+            // Validate admin authentication
+            if (!isAdminAuthenticated(request)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(createErrorResponse("Admin access required"));
+            }
+            
+            return ResponseEntity.ok(userActionsService.migrateToBuckets());
+            
+        } catch (Exception e) {
+            log.error("❌ Error migrating userActions buckets: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Failed to migrate userActions: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Delete message subcollections whose conversation document no longer exists (maintenance endpoint)
+     */
+    @PostMapping("/conversations/purge-orphaned-messages")
+    public ResponseEntity<Map<String, Object>> purgeOrphanedMessages(HttpServletRequest request) {
+        log.info("🗑️ Purging orphaned conversation messages");
+        
+        try {
+            // Validate admin authentication
+            if (!isAdminAuthenticated(request)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(createErrorResponse("Admin access required"));
+            }
+            
+            Map<String, Object> response = conversationService.purgeOrphanedMessages();
+            return response.containsKey("result")
+                    ? ResponseEntity.ok(response)
+                    : ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            
+        } catch (Exception e) {
+            log.error("❌ Error purging orphaned messages: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Failed to purge orphaned messages: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Start the one-off backfill of every user's badge counters in the background (maintenance endpoint)
+     */
+    @PostMapping("/counters/backfill")
+    public ResponseEntity<Map<String, Object>> backfillCounters(HttpServletRequest request) {
+        log.info("🔢 Starting unread counter backfill");
+        
+        try {
+            // Validate admin authentication
+            if (!isAdminAuthenticated(request)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(createErrorResponse("Admin access required"));
+            }
+            
+            Map<String, Object> response = unreadCounterReconciliationService.startBackfill();
+            return Boolean.TRUE.equals(response.get("success"))
+                    ? ResponseEntity.status(HttpStatus.ACCEPTED).body(response)
+                    : ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            
+        } catch (Exception e) {
+            log.error("❌ Error starting counter backfill: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Failed to start counter backfill: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * Progress of the current or last counter backfill
+     */
+    @GetMapping("/counters/backfill")
+    public ResponseEntity<Map<String, Object>> getCounterBackfillProgress(HttpServletRequest request) {
+        try {
+            // Validate admin authentication
+            if (!isAdminAuthenticated(request)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(createErrorResponse("Admin access required"));
+            }
+            
+            return ResponseEntity.ok(unreadCounterReconciliationService.getBackfillProgress());
+            
+        } catch (Exception e) {
+            log.error("❌ Error reading counter backfill progress: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Failed to read counter backfill progress: " + e.getMessage()));
+        }
+    }
+    
     /**
      * Get application statistics for admin dashboard
      */
@@ -1,9 +1,11 @@
 package com.tpg.connect.controllers.admin;
 
+import com.tpg.connect.model.batch.BulkDeleteResult;
 import com.tpg.connect.model.dto.AdminUserSummaryDTO;
 import com.tpg.connect.model.dto.AdminUserDetailDTO;
 import com.tpg.connect.model.user.UserStatus;
 import com.tpg.connect.services.AdminUserManagementService;
+import com.tpg.connect.services.ConversationService;
 import com.tpg.connect.utilities.JwtUtil;
 import com.tpg.connect.services.AuthenticationService;
 import lombok.extern.slf4j.Slf4j;
@@ -31,6 +33,9 @@ public class AdminUserManagementController {
     @Autowired
     private AuthenticationService authenticationService;
     
+    @Autowired
+    private ConversationService conversationService;
+    
     /**
      * Get ALL users for admin dashboard initialization (preload)
      * This loads everything upfront so user management is instant
@@ -272,6 +277,43 @@ public class AdminUserManagementController {
         }
     }
     
+    /**
+     * Delete all of a user's conversations with their messages and inbox entries (cleanup tool).
+     * Rerunning after a partial failure resumes with the conversations that are left.
+     */
+    @DeleteMapping("/users/{connectId}/conversations")
+    public ResponseEntity<Map<String, Object>> deleteUserConversations(
+            @PathVariable String connectId,
+            HttpServletRequest request) {
+        
+        log.info("🗑️ Admin deleting conversations for user: {}", connectId);
+        
+        try {
+            // Validate admin authentication
+            if (!isAdminAuthenticated(request)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(createErrorResponse("Admin access required"));
+            }
+            
+            BulkDeleteResult result = conversationService.deleteUserConversations(connectId);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", result.isComplete());
+            response.put("connectId", connectId);
+            response.put("result", result);
+            response.put("message", result.isComplete()
+                    ? "Conversations deleted successfully"
+                    : "Some conversations could not be deleted; run again to resume");
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("❌ Error deleting conversations for user {}: ", connectId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Failed to delete conversations: " + e.getMessage()));
+        }
+    }
+    
     /**
      * Refresh user management data (manual refresh)
      */
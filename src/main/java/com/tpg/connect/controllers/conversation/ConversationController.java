@@ -4,6 +4,7 @@ import com.tpg.connect.constants.EndpointConstants;
 import com.tpg.connect.controllers.BaseController;
 import com.tpg.connect.model.conversation.Conversation;
 import com.tpg.connect.model.conversation.Message;
+import com.tpg.connect.model.conversation.MessagePage;
 import com.tpg.connect.services.AuthenticationService;
 import com.tpg.connect.services.ConversationService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -78,7 +79,8 @@ public class ConversationController extends BaseController {
             @RequestHeader("Authorization") String authHeader,
             @PathVariable String conversationId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "50") int limit) {
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String cursor) {
         
         String userId = validateAndExtractUserId(authHeader);
         if (userId == null) {
@@ -86,9 +88,21 @@ public class ConversationController extends BaseController {
         }
 
         try {
+            if (cursor != null || (page == 0 && limit > 0)) {
+                // Older messages are requested with ?cursor=<X-Next-Cursor>; absent once the history is exhausted
+                MessagePage messagePage = conversationService.getConversationMessagesPage(conversationId, userId, cursor, limit);
+                ResponseEntity<Map<String, Object>> response = successResponse(messagePage.getMessages(), "Messages retrieved successfully");
+                if (messagePage.getNextCursor() == null) {
+                    return response;
+                }
+                return ResponseEntity.ok().header("X-Next-Cursor", messagePage.getNextCursor()).body(response.getBody());
+            }
             List<Message> messages = conversationService.getConversationMessages(conversationId, userId, page, limit);
             return successResponse(messages, "Messages retrieved successfully");
         } catch (IllegalArgumentException e) {
+            if ("Invalid message cursor".equals(e.getMessage())) {
+                return errorResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
+            }
             return errorResponse(e.getMessage(), HttpStatus.FORBIDDEN);
         } catch (Exception e) {
             return errorResponse("Failed to retrieve messages: " + e.getMessage(), HttpStatus.BAD_REQUEST);
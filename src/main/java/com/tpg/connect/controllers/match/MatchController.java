@@ -2,34 +2,42 @@ package com.tpg.connect.controllers.match;
 
 import com.tpg.connect.constants.EndpointConstants;
 import com.tpg.connect.controllers.BaseController;
-import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.conversation.Conversation;
+import com.tpg.connect.model.conversation.InboxEntry;
+import com.tpg.connect.model.conversation.InboxPage;
+import com.tpg.connect.model.conversation.Message;
+import com.tpg.connect.model.conversation.MessagePage;
+import com.tpg.connect.model.user.ProfileCard;
 import com.tpg.connect.services.AuthenticationService;
-import com.tpg.connect.services.UserService;
 import com.tpg.connect.services.UserActionsService;
 import com.tpg.connect.services.ConversationService;
+import com.tpg.connect.services.InboxService;
 import com.tpg.connect.services.MatchService;
 import com.tpg.connect.services.ProfileManagementService;
+import com.tpg.connect.services.ProfileHydrationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.Map;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/matches")
 public class MatchController extends BaseController {
 
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
     @Autowired
     private AuthenticationService authService;
     
-    @Autowired
-    private UserService userService;
-    
     @Autowired
     private UserActionsService userActionsService;
     
@@ -42,6 +50,12 @@ public class MatchController extends BaseController {
     @Autowired
     private ProfileManagementService profileService;
 
+    @Autowired
+    private ProfileHydrationService profileHydrationService;
+
+    @Autowired
+    private InboxService inboxService;
+
 
     // Get user matches (frontend expects /api/matches)
     @GetMapping
@@ -49,190 +63,58 @@ public class MatchController extends BaseController {
             @RequestHeader("Authorization") String authHeader,
             @RequestParam(required = false) String status,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) Integer size,
             @RequestParam(required = false) String since,
-            @RequestParam(defaultValue = "false") boolean includeArchived) {
-        
-        System.out.println("🚀 MatchController: getMatches() called!");
-        System.out.println("🔑 MatchController: authHeader present: " + (authHeader != null));
-        System.out.println("🔑 MatchController: About to validate and extract user ID...");
+            @RequestParam(defaultValue = "false") boolean includeArchived,
+            @RequestParam(required = false) String cursor) {
         
         String userId = validateAndExtractUserId(authHeader);
-        System.out.println("🔑 MatchController: validateAndExtractUserId returned: " + userId);
         if (userId == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
         try {
-            System.out.println("🔍 MatchController: Getting matches for user: " + userId);
-            // Get user's matches from UserActions
-            List<String> matchedUserIds = userActionsService.getMatches(userId);
-            System.out.println("🔍 MatchController: Found " + matchedUserIds.size() + " matched user IDs: " + matchedUserIds);
-            
-            // DEFENSIVE FIX: Filter out current user's own ID from matches (should never happen but defensive)
-            List<String> filteredMatchedUserIds = matchedUserIds.stream()
-                .filter(matchedUserId -> !matchedUserId.equals(userId))
-                .collect(Collectors.toList());
-            
-            if (filteredMatchedUserIds.size() != matchedUserIds.size()) {
-                System.out.println("⚠️ MatchController: DETECTED SELF-MATCH! Filtered out user's own ID from matches");
-                System.out.println("⚠️ MatchController: Original list: " + matchedUserIds);
-                System.out.println("⚠️ MatchController: Filtered list: " + filteredMatchedUserIds);
-            }
-            
-            matchedUserIds = filteredMatchedUserIds;
-            
-            // Convert user IDs to match objects with user profiles
-            List<Map<String, Object>> matches = matchedUserIds.stream()
-                .map(matchedUserId -> {
-                    try {
-                        // Auto-refresh match user photos before fetching profile
-                        try {
-                            profileService.refreshPhotoUrls(matchedUserId);
-                            System.out.println("✅ Auto-refreshed match user photos for: " + matchedUserId);
-                        } catch (Exception e) {
-                            System.out.println("⚠️ Failed to auto-refresh match user photos, continuing: " + e.getMessage());
-                        }
-                        
-                        CompleteUserProfile matchedUser = userService.getUserProfile(matchedUserId);
-                        if (matchedUser != null) {
-                            // Generate deterministic conversation ID
-                            String conversationId = generateConversationId(userId, matchedUserId);
-                            
-                            // Get actual match data from database to get real timestamp
-                            com.tpg.connect.model.match.Match matchEntity = matchService.getMatch(conversationId);
-                            
-                            long matchTimestamp = System.currentTimeMillis(); // fallback
-                            if (matchEntity != null && matchEntity.getMatchedAt() != null) {
-                                matchTimestamp = matchEntity.getMatchedAt()
-                                    .atZone(java.time.ZoneId.systemDefault())
-                                    .toInstant()
-                                    .toEpochMilli();
-                            }
-                            
-                            // Get conversation data for latest message and unread count
-                            Map<String, Object> lastMessage = Map.of(
-                                "content", "Start a conversation!",
-                                "timestamp", matchTimestamp,
-                                "senderId", ""
-                            );
-                            int unreadCount = 0;
-                            
-                            try {
-                                System.out.println("🔍 MatchController: Attempting to get conversation: " + conversationId);
-                                java.util.Optional<com.tpg.connect.model.conversation.Conversation> conversationOpt = 
-                                    conversationService.getConversationById(conversationId);
-                                
-                                if (conversationOpt.isPresent()) {
-                                    com.tpg.connect.model.conversation.Conversation conversation = conversationOpt.get();
-                                    System.out.println("✅ MatchController: Found conversation: " + conversationId);
-                                    System.out.println("🔍 MatchController: Conversation archived status: " + conversation.isArchived());
-                                    
-                                    // No filtering - return all matches with their archived status
-                                    // The frontend will split them based on the archived field
-                                    
-                                    System.out.println("🔍 MatchController: Conversation lastMessage is null: " + (conversation.getLastMessage() == null));
-                                    
-                                    if (conversation.getLastMessage() != null) {
-                                        System.out.println("✅ MatchController: Using actual lastMessage: " + conversation.getLastMessage().getContent());
-                                        lastMessage = Map.of(
-                                            "content", conversation.getLastMessage().getContent(),
-                                            "timestamp", conversation.getLastMessage().getSentAt()
-                                                .atZone(java.time.ZoneId.systemDefault())
-                                                .toInstant()
-                                                .toEpochMilli(),
-                                            "senderId", conversation.getLastMessage().getSenderId()
-                                        );
-                                        unreadCount = conversation.getUnreadCount();
-                                    } else {
-                                        System.out.println("❌ MatchController: Conversation lastMessage is null, trying to get latest message directly...");
-                                        // Fallback: get the latest message directly from messages
-                                        try {
-                                            java.util.List<com.tpg.connect.model.conversation.Message> messages = 
-                                                conversationService.getConversationMessages(conversationId, userId, 0, 1);
-                                            if (!messages.isEmpty()) {
-                                                com.tpg.connect.model.conversation.Message latestMessage = messages.get(messages.size() - 1);
-                                                System.out.println("✅ MatchController: Found latest message directly: " + latestMessage.getContent());
-                                                lastMessage = Map.of(
-                                                    "content", latestMessage.getContent(),
-                                                    "timestamp", latestMessage.getSentAt()
-                                                        .atZone(java.time.ZoneId.systemDefault())
-                                                        .toInstant()
-                                                        .toEpochMilli(),
-                                                    "senderId", latestMessage.getSenderId()
-                                                );
-                                            } else {
-                                                System.out.println("❌ MatchController: No messages found in conversation");
-                                            }
-                                        } catch (Exception e2) {
-                                            System.err.println("❌ MatchController: Failed to get latest message directly: " + e2.getMessage());
-                                        }
-                                    }
-                                } else {
-                                    System.out.println("❌ MatchController: Conversation not found: " + conversationId);
-                                }
-                            } catch (Exception e) {
-                                System.err.println("Failed to get conversation data for " + conversationId + ": " + e.getMessage());
-                            }
-                            
-                            // Get archived status from conversation
-                            boolean isArchived = false;
-                            try {
-                                java.util.Optional<com.tpg.connect.model.conversation.Conversation> convOpt = 
-                                    conversationService.getConversationById(conversationId);
-                                if (convOpt.isPresent()) {
-                                    isArchived = convOpt.get().isArchived();
-                                }
-                            } catch (Exception e) {
-                                System.err.println("Failed to get archived status: " + e.getMessage());
-                            }
-                            
-                            return Map.of(
-                                "id", conversationId, // Use conversation ID as match ID
-                                "user", Map.of(
-                                    "connectId", matchedUser.getConnectId(),
-                                    "firstName", matchedUser.getFirstName(),
-                                    "photos", matchedUser.getPhotos() != null ? matchedUser.getPhotos() : List.of(),
-                                    "age", matchedUser.getAge()
-                                ),
-                                "conversationId", conversationId,
-                                "matchedAt", matchTimestamp,
-                                "lastActivity", matchTimestamp,
-                                "lastMessage", lastMessage,
-                                "unreadCount", unreadCount,
-                                "archived", isArchived
-                            );
-                        }
-                        return null;
-                    } catch (Exception e) {
-                        System.err.println("Error getting profile for matched user " + matchedUserId + ": " + e.getMessage());
-                        return null;
-                    }
+            // Archived matches are always returned with their flag so the frontend can split them;
+            // includeArchived is accepted for compatibility and, as before, doesn't filter
+            InboxPage inboxPage = loadInbox(userId, cursor, page, size, false);
+            
+            List<Map<String, Object>> matches = inboxPage.getEntries().stream()
+                .filter(entry -> entry.getCounterpart() != null && entry.getCounterpart().getFirstName() != null)
+                .map(entry -> {
+                    long matchTimestamp = toEpochMillis(entry.getMatchedAt() != null ? entry.getMatchedAt() : entry.getLastActivity());
+                    return Map.<String, Object>of(
+                        "id", entry.getConversationId(), // Use conversation ID as match ID
+                        "user", counterpartView(entry.getCounterpart()),
+                        "conversationId", entry.getConversationId(),
+                        "matchedAt", matchTimestamp,
+                        "lastActivity", toEpochMillis(entry.getLastActivity()),
+                        "lastMessage", lastMessageView(entry, matchTimestamp),
+                        "unreadCount", entry.getUnreadCount(),
+                        "archived", entry.isArchived()
+                    );
                 })
-                .filter(match -> match != null)
                 .collect(Collectors.toList());
             
-            System.out.println("🎉 MatchController: Returning " + matches.size() + " matches");
-            if (!matches.isEmpty()) {
-                System.out.println("🔍 MatchController: First match sample: " + matches.get(0));
-            }
-            return ResponseEntity.ok(matches);
+            System.out.println("🎉 MatchController: Returning " + matches.size() + " matches for user " + userId);
+            // Later pages are requested with ?cursor=<X-Next-Cursor>; absent on the last page
+            return withNextCursor(matches, inboxPage.getNextCursor());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid matches request for user " + userId + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         } catch (Exception e) {
             System.err.println("Error getting matches for user " + userId + ": " + e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
     }
 
-
-
-
     // Get conversations (frontend expects /api/conversations)
     @GetMapping("/conversations")
     public ResponseEntity<List<Map<String, Object>>> getConversations(
             @RequestHeader("Authorization") String authHeader,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int limit,
-            @RequestParam(defaultValue = "false") boolean unreadOnly) {
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean unreadOnly,
+            @RequestParam(required = false) String cursor) {
         
         String userId = validateAndExtractUserId(authHeader);
         if (userId == null) {
@@ -240,58 +122,90 @@ public class MatchController extends BaseController {
         }
 
         try {
-            // Get user's matches from UserActions and return as conversations
-            List<String> matchedUserIds = userActionsService.getMatches(userId);
-            
-            // Convert to conversation format (same as matches but conversation-focused)
-            List<Map<String, Object>> conversations = matchedUserIds.stream()
-                .map(matchedUserId -> {
-                    try {
-                        // Auto-refresh match user photos before fetching profile
-                        try {
-                            profileService.refreshPhotoUrls(matchedUserId);
-                            System.out.println("✅ Auto-refreshed conversation user photos for: " + matchedUserId);
-                        } catch (Exception e) {
-                            System.out.println("⚠️ Failed to auto-refresh conversation user photos, continuing: " + e.getMessage());
-                        }
-                        
-                        CompleteUserProfile matchedUser = userService.getUserProfile(matchedUserId);
-                        if (matchedUser != null) {
-                            String conversationId = generateConversationId(userId, matchedUserId);
-                            
-                            return Map.of(
-                                "id", conversationId,
-                                "participant", Map.of(
-                                    "connectId", matchedUser.getConnectId(),
-                                    "firstName", matchedUser.getFirstName(),
-                                    "photos", matchedUser.getPhotos() != null ? matchedUser.getPhotos() : List.of(),
-                                    "age", matchedUser.getAge()
-                                ),
-                                "lastMessage", Map.of(
-                                    "content", "Start a conversation!",
-                                    "timestamp", System.currentTimeMillis(),
-                                    "senderId", ""
-                                ),
-                                "unreadCount", 0,
-                                "lastActivity", System.currentTimeMillis()
-                            );
-                        }
-                        return null;
-                    } catch (Exception e) {
-                        System.err.println("Error getting profile for conversation " + matchedUserId + ": " + e.getMessage());
-                        return null;
-                    }
+            InboxPage inboxPage = loadInbox(userId, cursor, page, limit, unreadOnly);
+            
+            // Same inbox as the matches list, in conversation format
+            List<Map<String, Object>> conversations = inboxPage.getEntries().stream()
+                .filter(entry -> entry.getCounterpart() != null && entry.getCounterpart().getFirstName() != null)
+                .map(entry -> {
+                    long lastActivity = toEpochMillis(entry.getLastActivity());
+                    return Map.<String, Object>of(
+                        "id", entry.getConversationId(),
+                        "participant", counterpartView(entry.getCounterpart()),
+                        "lastMessage", lastMessageView(entry, lastActivity),
+                        "unreadCount", entry.getUnreadCount(),
+                        "lastActivity", lastActivity
+                    );
                 })
-                .filter(conversation -> conversation != null)
                 .collect(Collectors.toList());
             
-            return ResponseEntity.ok(conversations);
+            return withNextCursor(conversations, inboxPage.getNextCursor());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid conversations request for user " + userId + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         } catch (Exception e) {
             System.err.println("Error getting conversations for user " + userId + ": " + e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
     }
 
+    /**
+     * The whole inbox when neither a page size nor a cursor is given, as these lists always returned;
+     * otherwise one page, addressed by cursor or by page number
+     */
+    private InboxPage loadInbox(String userId, String cursor, int page, Integer size, boolean unreadOnly) {
+        if (page < 0 || (size != null && size < 1)) {
+            throw new IllegalArgumentException("page must be >= 0 and size >= 1");
+        }
+        if (cursor != null && page > 0) {
+            throw new IllegalArgumentException("Use either cursor or page, not both");
+        }
+        if (size == null && cursor == null && page == 0) {
+            return new InboxPage(inboxService.getFullInbox(userId, false, unreadOnly), null, false);
+        }
+        int pageSize = size != null ? size : DEFAULT_PAGE_SIZE;
+        return inboxService.getInbox(userId, cursor, page * pageSize, pageSize, false, unreadOnly);
+    }
+
+    private Map<String, Object> counterpartView(ProfileCard card) {
+        return Map.of(
+            "connectId", card.getConnectId(),
+            "firstName", card.getFirstName(),
+            "photos", card.getPhotos() != null ? card.getPhotos() : List.of(),
+            "age", card.getAge()
+        );
+    }
+
+    private Map<String, Object> lastMessageView(InboxEntry entry, long fallbackTimestamp) {
+        Message lastMessage = entry.getLastMessage();
+        if (lastMessage == null || lastMessage.getContent() == null) {
+            return Map.of(
+                "content", "Start a conversation!",
+                "timestamp", fallbackTimestamp,
+                "senderId", ""
+            );
+        }
+        return Map.of(
+            "content", lastMessage.getContent(),
+            "timestamp", lastMessage.getSentAt() != null ? toEpochMillis(lastMessage.getSentAt()) : fallbackTimestamp,
+            "senderId", lastMessage.getSenderId() != null ? lastMessage.getSenderId() : ""
+        );
+    }
+
+    private long toEpochMillis(LocalDateTime dateTime) {
+        if (dateTime == null) {
+            return System.currentTimeMillis();
+        }
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private ResponseEntity<List<Map<String, Object>>> withNextCursor(List<Map<String, Object>> body, String nextCursor) {
+        if (nextCursor == null) {
+            return ResponseEntity.ok(body);
+        }
+        return ResponseEntity.ok().header("X-Next-Cursor", nextCursor).body(body);
+    }
+
     // Send message (frontend expects /api/matches/{matchId}/messages POST)
     @PostMapping("/{matchId}/messages")
     public ResponseEntity<Map<String, Object>> sendMessage(
@@ -331,7 +245,8 @@ public class MatchController extends BaseController {
             @PathVariable String matchId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "50") int size,
-            @RequestParam(required = false) String since) {
+            @RequestParam(required = false) String since,
+            @RequestParam(required = false) String cursor) {
         
         String userId = validateAndExtractUserId(authHeader);
         if (userId == null) {
@@ -339,9 +254,47 @@ public class MatchController extends BaseController {
         }
 
         try {
-            // For now, return empty messages - in a real implementation you'd query the database
-            List<Map<String, Object>> messages = List.of();
-            return ResponseEntity.ok(messages);
+            Optional<Conversation> conversationOpt = conversationService.getConversationByMatchId(matchId);
+            if (!conversationOpt.isPresent()) {
+                return ResponseEntity.ok(List.of());
+            }
+            if (!conversationOpt.get().getParticipantIds().contains(userId)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            String conversationId = conversationOpt.get().getId();
+
+            String nextCursor = null;
+            List<Message> messages;
+            if (cursor != null || page == 0) {
+                MessagePage messagePage = conversationService.getConversationMessagesPage(conversationId, userId, cursor, size);
+                messages = messagePage.getMessages();
+                nextCursor = messagePage.getNextCursor();
+            } else {
+                messages = conversationService.getConversationMessages(conversationId, userId, page, size);
+            }
+
+            LocalDateTime sinceTime = since != null ? LocalDateTime.parse(since) : null;
+            List<Map<String, Object>> body = messages.stream()
+                .filter(message -> sinceTime == null || (message.getSentAt() != null && message.getSentAt().isAfter(sinceTime)))
+                .map(message -> {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("id", message.getId());
+                    item.put("matchId", matchId);
+                    item.put("senderId", message.getSenderId());
+                    item.put("content", message.getContent());
+                    item.put("type", "text");
+                    item.put("timestamp", message.getSentAt() != null ? message.getSentAt().toString() : null);
+                    return item;
+                })
+                .collect(Collectors.toList());
+
+            // Older messages are requested with ?cursor=<X-Next-Cursor>; absent once the history is exhausted
+            return withNextCursor(body, nextCursor);
+        } catch (IllegalArgumentException e) {
+            if ("Invalid message cursor".equals(e.getMessage())) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+            }
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
@@ -496,19 +449,6 @@ public class MatchController extends BaseController {
         return userId;
     }
     
-    /**
-     * Generate deterministic conversation ID based on user IDs
-     * Format: {lowerUserId}_{higherUserId}
-     */
-    private String generateConversationId(String userId1, String userId2) {
-        // Ensure deterministic ordering (alphabetical by user ID)
-        if (userId1.compareTo(userId2) < 0) {
-            return userId1 + "_" + userId2;
-        } else {
-            return userId2 + "_" + userId1;
-        }
-    }
-
     // Get users who liked the current user (for "Likes You" page)
     @GetMapping("/liked-by")
     public ResponseEntity<List<Map<String, Object>>> getLikedByUsers(
@@ -540,35 +480,33 @@ public class MatchController extends BaseController {
                 
             System.out.println("🔍 MatchController: After filtering, " + availableLikes.size() + " available likes remain");
             
-            // Convert user IDs to user profile objects
-            List<Map<String, Object>> likesYou = availableLikes.stream()
-                .map(likedUserId -> {
+            // Convert user IDs to user cards with one batched, field-masked read
+            List<ProfileCard> likedUsers = profileHydrationService.hydrateCards("liked_by", availableLikes);
+            List<Map<String, Object>> likesYou = likedUsers.stream()
+                .map(loadedUser -> {
                     try {
-                        // Auto-refresh liked user photos before fetching profile
+                        // Auto-refresh liked user photos on the already loaded card
+                        ProfileCard likedUser = loadedUser;
                         try {
-                            profileService.refreshPhotoUrls(likedUserId);
-                            System.out.println("✅ Auto-refreshed liked user photos for: " + likedUserId);
+                            likedUser = profileService.refreshPhotoUrls(loadedUser);
+                            System.out.println("✅ Auto-refreshed liked user photos for: " + loadedUser.getConnectId());
                         } catch (Exception e) {
                             System.out.println("⚠️ Failed to auto-refresh liked user photos, continuing: " + e.getMessage());
                         }
                         
-                        CompleteUserProfile likedUser = userService.getUserProfile(likedUserId);
-                        if (likedUser != null) {
-                            return Map.of(
-                                "connectId", likedUser.getConnectId(),
-                                "firstName", likedUser.getFirstName(),
-                                "age", likedUser.getAge(),
-                                "photos", likedUser.getPhotos() != null ? likedUser.getPhotos() : List.of(),
-                                "location", likedUser.getLocation() != null ? likedUser.getLocation() : "",
-                                "jobTitle", likedUser.getProfile() != null && likedUser.getProfile().getJobTitle() != null ? likedUser.getProfile().getJobTitle() : "",
-                                "university", likedUser.getProfile() != null && likedUser.getProfile().getUniversity() != null ? likedUser.getProfile().getUniversity() : "",
-                                "interests", likedUser.getInterests() != null ? likedUser.getInterests() : List.of(),
-                                "writtenPrompts", likedUser.getWrittenPrompts() != null ? likedUser.getWrittenPrompts() : List.of()
-                            );
-                        }
-                        return null;
+                        return Map.<String, Object>of(
+                            "connectId", likedUser.getConnectId(),
+                            "firstName", likedUser.getFirstName(),
+                            "age", likedUser.getAge(),
+                            "photos", likedUser.getPhotos() != null ? likedUser.getPhotos() : List.of(),
+                            "location", likedUser.getLocation() != null ? likedUser.getLocation() : "",
+                            "jobTitle", likedUser.getJobTitle() != null ? likedUser.getJobTitle() : "",
+                            "university", likedUser.getUniversity() != null ? likedUser.getUniversity() : "",
+                            "interests", likedUser.getInterests() != null ? likedUser.getInterests() : List.of(),
+                            "writtenPrompts", likedUser.getWrittenPrompts() != null ? likedUser.getWrittenPrompts() : List.of()
+                        );
                     } catch (Exception e) {
-                        System.err.println("Error getting profile for liked by user " + likedUserId + ": " + e.getMessage());
+                        System.err.println("Error getting profile for liked by user " + loadedUser.getConnectId() + ": " + e.getMessage());
                         return null;
                     }
                 })
@@ -2,8 +2,10 @@ package com.tpg.connect.controllers.user;
 
 import com.tpg.connect.constants.EndpointConstants;
 import com.tpg.connect.controllers.BaseController;
+import com.tpg.connect.model.dto.UpdateProfileRequest;
 import com.tpg.connect.model.dto.UserProfileDTO;
 import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.repository.index.ProfileSearchIndex;
 import com.tpg.connect.services.AuthenticationService;
 import com.tpg.connect.services.CloudStorageService;
 import com.tpg.connect.services.ProfileManagementService;
@@ -70,7 +72,7 @@ public class UserController extends BaseController {
     public ResponseEntity<Map<String, Object>> updateUser(
             @RequestHeader("Authorization") String authHeader,
             @PathVariable String userId,
-            @Valid @RequestBody Map<String, Object> updateData) {
+            @Valid @RequestBody UpdateProfileRequest request) {
         
         String currentUserId = validateAndExtractUserId(authHeader);
         if (currentUserId == null) {
@@ -84,53 +86,6 @@ public class UserController extends BaseController {
         }
 
         try {
-            // Create update request from the data
-            com.tpg.connect.model.dto.UpdateProfileRequest request = new com.tpg.connect.model.dto.UpdateProfileRequest();
-            
-            // Map the fields from frontend format to backend format
-            if (updateData.containsKey("name")) request.setName((String) updateData.get("name"));
-            if (updateData.containsKey("location")) request.setLocation((String) updateData.get("location"));
-            if (updateData.containsKey("interests")) request.setInterests((List<String>) updateData.get("interests"));
-            if (updateData.containsKey("languages")) request.setLanguages((List<String>) updateData.get("languages"));
-            if (updateData.containsKey("jobTitle")) request.setJobTitle((String) updateData.get("jobTitle"));
-            if (updateData.containsKey("company")) request.setCompany((String) updateData.get("company"));
-            
-            // Identity fields
-            if (updateData.containsKey("pronouns")) request.setPronouns((String) updateData.get("pronouns"));
-            if (updateData.containsKey("gender")) request.setGender((String) updateData.get("gender"));
-            if (updateData.containsKey("sexuality")) request.setSexuality((String) updateData.get("sexuality"));
-            if (updateData.containsKey("interestedIn")) request.setInterestedIn((String) updateData.get("interestedIn"));
-            
-            // Professional fields
-            if (updateData.containsKey("university")) request.setUniversity((String) updateData.get("university"));
-            if (updateData.containsKey("educationLevel")) request.setEducationLevel((String) updateData.get("educationLevel"));
-            
-            // Personal fields
-            if (updateData.containsKey("religiousBeliefs")) request.setReligiousBeliefs((String) updateData.get("religiousBeliefs"));
-            if (updateData.containsKey("hometown")) request.setHometown((String) updateData.get("hometown"));
-            if (updateData.containsKey("politics")) request.setPolitics((String) updateData.get("politics"));
-            if (updateData.containsKey("datingIntentions")) request.setDatingIntentions((String) updateData.get("datingIntentions"));
-            if (updateData.containsKey("relationshipType")) request.setRelationshipType((String) updateData.get("relationshipType"));
-            
-            // Physical/lifestyle fields
-            if (updateData.containsKey("height")) request.setHeight((String) updateData.get("height"));
-            if (updateData.containsKey("ethnicity")) request.setEthnicity((String) updateData.get("ethnicity"));
-            if (updateData.containsKey("children")) request.setChildren((String) updateData.get("children"));
-            if (updateData.containsKey("familyPlans")) request.setFamilyPlans((String) updateData.get("familyPlans"));
-            if (updateData.containsKey("pets")) request.setPets((String) updateData.get("pets"));
-            if (updateData.containsKey("zodiacSign")) request.setZodiacSign((String) updateData.get("zodiacSign"));
-            
-            // Prompt fields
-            if (updateData.containsKey("photoPrompts")) {
-                request.setPhotoPrompts((Map<String, Map<String, String>>) updateData.get("photoPrompts"));
-            }
-            if (updateData.containsKey("writtenPrompts")) {
-                request.setWrittenPrompts((List<Map<String, String>>) updateData.get("writtenPrompts"));
-            }
-            if (updateData.containsKey("pollPrompts")) {
-                request.setPollPrompts((List<Map<String, Object>>) updateData.get("pollPrompts"));
-            }
-            
             CompleteUserProfile updatedProfile = profileService.updateBasicInfo(userId, request);
             UserProfileDTO dto = UserProfileDTO.fromCompleteUserProfile(updatedProfile);
             return successResponse(dto);
@@ -170,6 +125,9 @@ public class UserController extends BaseController {
             @RequestParam(required = false) Integer maxAge,
             @RequestParam(required = false) String location,
             @RequestParam(required = false) List<String> interests,
+            @RequestParam(required = false) List<String> gender,
+            @RequestParam(required = false) List<String> datingIntention,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(required = false) String sortBy) {
@@ -180,16 +138,25 @@ public class UserController extends BaseController {
         }
 
         try {
-            // For now, return basic search results using discovery service
-            // In a real implementation, you'd implement proper search logic
-            List<CompleteUserProfile> profiles = profileService.searchUsers(
-                userId, minAge, maxAge, location, interests, page, size, sortBy);
+            ProfileSearchIndex.Criteria criteria = new ProfileSearchIndex.Criteria()
+                .ageBetween(minAge, maxAge)
+                .location(location)
+                .interests(interests)
+                .genders(gender)
+                .datingIntentions(datingIntention)
+                .sortBy(sortBy);
+            ProfileManagementService.SearchResults results = profileService.searchUsers(userId, criteria, cursor, page, size);
             
-            List<UserProfileDTO> dtos = profiles.stream()
+            List<UserProfileDTO> dtos = results.getProfiles().stream()
                 .map(UserProfileDTO::fromCompleteUserProfile)
                 .collect(Collectors.toList());
-                
-            return ResponseEntity.ok(dtos);
+            
+            // The next page is requested with ?cursor=<X-Next-Cursor>; absent on the last page
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().header("X-Total-Count", String.valueOf(results.getTotal()));
+            if (results.getNextCursor() != null) {
+                response.header("X-Next-Cursor", results.getNextCursor());
+            }
+            return response.body(dtos);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
@@ -1,6 +1,8 @@
 package com.tpg.connect.controllers.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tpg.connect.services.BlockIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
@@ -16,6 +18,9 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class SimpleWebSocketHandler implements WebSocketHandler {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private BlockIndexService blockIndexService;
     
     // Store WebSocket sessions by conversation ID
     private final Map<String, CopyOnWriteArrayList<WebSocketSession>> conversationSessions = new ConcurrentHashMap<>();
@@ -50,8 +55,11 @@ public class SimpleWebSocketHandler implements WebSocketHandler {
                     String destination = (String) messageData.get("destination");
                     if (destination != null && destination.startsWith("/topic/conversation/")) {
                         String conversationId = destination.replace("/topic/conversation/", "");
-                        subscribeToConversation(session, conversationId);
-                        System.out.println("✅ SimpleWebSocketHandler: Subscribed session " + session.getId() + " to conversation: " + conversationId);
+                        if (subscribeToConversation(session, conversationId)) {
+                            System.out.println("✅ SimpleWebSocketHandler: Subscribed session " + session.getId() + " to conversation: " + conversationId);
+                        } else {
+                            System.out.println("🚫 SimpleWebSocketHandler: Refused subscription of session " + session.getId() + " to blocked conversation: " + conversationId);
+                        }
                     }
                     else if (destination != null && destination.startsWith("/topic/notifications/")) {
                         String userId = destination.replace("/topic/notifications/", "");
@@ -110,10 +118,16 @@ public class SimpleWebSocketHandler implements WebSocketHandler {
     }
 
     /**
-     * Subscribe a WebSocket session to a conversation
+     * Subscribe a WebSocket session to a conversation, unless one participant has blocked the other.
+     * Conversation IDs are the two sorted connect IDs joined by "_", so no lookup is needed to find them.
      */
-    private void subscribeToConversation(WebSocketSession session, String conversationId) {
+    private boolean subscribeToConversation(WebSocketSession session, String conversationId) {
+        String[] participants = conversationId.split("_", 2);
+        if (participants.length == 2 && blockIndexService.isEitherBlocked(participants[0], participants[1])) {
+            return false;
+        }
         conversationSessions.computeIfAbsent(conversationId, k -> new CopyOnWriteArrayList<>()).add(session);
+        return true;
     }
 
     /**
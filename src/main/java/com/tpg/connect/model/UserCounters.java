@@ -0,0 +1,41 @@
+package com.tpg.connect.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Badge counters for one user, kept in a single small document and updated in the same batch as
+ * the writes that change them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCounters {
+    private String userId;
+    // Unread messages per conversation; a conversation with nothing unread has no entry
+    private Map<String, Long> unreadByConversation = new HashMap<>();
+    private long unreadNotifications;
+    private long messagesSent;
+    // Whether the totals include everything from before the counters existed
+    private boolean backfilled;
+
+    public long totalUnreadMessages() {
+        return unreadByConversation.values().stream().mapToLong(count -> Math.max(0, count)).sum();
+    }
+
+    public long unreadConversationCount() {
+        return unreadByConversation.values().stream().filter(count -> count > 0).count();
+    }
+
+    /**
+     * Whether the counters can answer for the user: backfilled and not driven below zero
+     */
+    public boolean isTrusted() {
+        return backfilled && unreadNotifications >= 0 && messagesSent >= 0
+                && unreadByConversation.values().stream().allMatch(count -> count >= 0);
+    }
+}
@@ -1,6 +1,6 @@
 package com.tpg.connect.model.api;
 
-import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.ProfileCard;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -14,11 +14,11 @@ import java.util.List;
 public class DiscoveryResponse {
     private boolean success;
     private String message;
-    private List<CompleteUserProfile> users;
+    private List<ProfileCard> users; // Cards only: never other users' full profiles or coordinates
     private String batchId;
     private LocalDateTime timestamp;
     
-    public DiscoveryResponse(boolean success, String message, List<CompleteUserProfile> users, String batchId) {
+    public DiscoveryResponse(boolean success, String message, List<ProfileCard> users, String batchId) {
         this.success = success;
         this.message = message;
         this.users = users;
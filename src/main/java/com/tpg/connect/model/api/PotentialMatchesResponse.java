@@ -1,6 +1,7 @@
 package com.tpg.connect.model.api;
 
-import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.match.DiscoveryUser;
+import com.tpg.connect.model.user.ProfileCard;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -14,13 +15,14 @@ import java.util.List;
 public class PotentialMatchesResponse {
     private boolean success;
     private String message;
-    private List<CompleteUserProfile> users;
+    private List<ProfileCard> users;
     private String matchSetId;
     private int totalUsers;
     private boolean completed;
     private LocalDateTime generatedAt;
+    private List<DiscoveryUser> discoveryUsers; // Card view of users, with distance when known
     
-    public PotentialMatchesResponse(boolean success, String message, List<CompleteUserProfile> users, 
+    public PotentialMatchesResponse(boolean success, String message, List<ProfileCard> users, 
                                  String matchSetId, int totalUsers, boolean completed) {
         this.success = success;
         this.message = message;
@@ -0,0 +1,36 @@
+package com.tpg.connect.model.batch;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a recursive delete. A root is only deleted once everything under it is, so an
+ * incomplete run leaves its unfinished roots in place for the next run to pick up.
+ */
+@Data
+@NoArgsConstructor
+public class BulkDeleteResult {
+    private String job;
+    private int rootsTotal;
+    private int rootsDeleted;
+    private long documentsDeleted;
+    private long failures;
+    private long durationMs;
+
+    public BulkDeleteResult(String job, int rootsTotal) {
+        this.job = job;
+        this.rootsTotal = rootsTotal;
+    }
+
+    public boolean isComplete() {
+        return failures == 0 && rootsDeleted == rootsTotal;
+    }
+
+    public void add(BulkDeleteResult other) {
+        rootsTotal += other.rootsTotal;
+        rootsDeleted += other.rootsDeleted;
+        documentsDeleted += other.documentsDeleted;
+        failures += other.failures;
+        durationMs += other.durationMs;
+    }
+}
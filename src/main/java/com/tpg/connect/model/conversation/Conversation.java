@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -17,6 +18,10 @@ public class Conversation {
     private List<Message> messages;
     private Message lastMessage;
     private int unreadCount;
+    // Unread messages per participant
+    private Map<String, Integer> unreadCounts;
+    // How far each participant has read
+    private Map<String, ReadMarker> readState;
     private boolean archived;
     private LocalDateTime matchedAt;
     private LocalDateTime updatedAt;
@@ -27,4 +32,35 @@ public class Conversation {
         UNMATCHED,
         BLOCKED
     }
+
+    public int getUnreadCountFor(String userId) {
+        return unreadCounts != null ? unreadCounts.getOrDefault(userId, 0) : 0;
+    }
+
+    /**
+     * Whether every participant other than the sender has read up to this message.
+     */
+    public boolean isReadByRecipients(Message message) {
+        if (message.getSentAt() == null || participantIds == null) {
+            return false;
+        }
+        for (String participantId : participantIds) {
+            if (participantId.equals(message.getSenderId())) {
+                continue;
+            }
+            ReadMarker marker = readState != null ? readState.get(participantId) : null;
+            if (marker == null || marker.getLastReadAt() == null || marker.getLastReadAt().isBefore(message.getSentAt())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReadMarker {
+        private LocalDateTime lastReadAt;
+        private String lastReadMessageId;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.tpg.connect.model.conversation;
+
+import com.tpg.connect.model.user.ProfileCard;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of a user's inbox: a match and its conversation as that user sees it, denormalized so
+ * the whole inbox is served by a single query. Written alongside the match, message, read,
+ * archive and unmatch writes it summarises.
+ */
+@Data
+@NoArgsConstructor
+public class InboxEntry {
+    private String ownerId;
+    private String conversationId;
+    private String matchId;
+    private ProfileCard counterpart;
+    private LocalDateTime counterpartRefreshedAt;
+    private LocalDateTime matchedAt;
+    private LocalDateTime lastActivity;
+    private Message lastMessage;
+    private int unreadCount;
+    private boolean archived;
+
+    /**
+     * The other participant: from the card, or else from the conversation id, which joins both connectIds
+     */
+    public String counterpartId() {
+        if (counterpart != null && counterpart.getConnectId() != null) {
+            return counterpart.getConnectId();
+        }
+        String[] participants = conversationId != null ? conversationId.split("_", 2) : new String[0];
+        if (participants.length != 2) {
+            return null;
+        }
+        return participants[0].equals(ownerId) ? participants[1] : participants[0];
+    }
+}
@@ -0,0 +1,20 @@
+package com.tpg.connect.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a user's inbox, most recent activity first. {@code nextCursor} fetches the next
+ * page and is null on the last one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InboxPage {
+    private List<InboxEntry> entries;
+    private String nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,20 @@
+package com.tpg.connect.model.conversation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a conversation's history, oldest message first. {@code nextCursor} fetches the
+ * page of older messages before this one and is null once the start of the conversation is reached.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePage {
+    private List<Message> messages;
+    private String nextCursor;
+    private boolean hasMore;
+}
@@ -22,6 +22,14 @@ public class UpdateProfileRequest {
     @Size(max = 100)
     private String location;
     
+    @DecimalMin("-90.0")
+    @DecimalMax("90.0")
+    private Double latitude;
+    
+    @DecimalMin("-180.0")
+    @DecimalMax("180.0")
+    private Double longitude;
+    
     @Size(max = 10)
     private List<String> interests;
     
@@ -19,6 +19,8 @@ public class CompleteUserProfile {
     private String email;
     private List<EnhancedPhoto> photos;
     private String location;
+    private Double latitude;   // Device-reported coordinates used for distance filtering
+    private Double longitude;
     
     private DetailedProfile profile;
     private List<WrittenPrompt> writtenPrompts;
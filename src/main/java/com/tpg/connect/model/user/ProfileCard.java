@@ -0,0 +1,31 @@
+package com.tpg.connect.model.user;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * What other users see of a profile on a discovery, match or liked-by card.
+ *
+ * Read with a field mask rather than decoded from the whole document, and with the owner's
+ * FieldVisibility already applied: hidden fields are null.
+ */
+@Data
+@NoArgsConstructor
+public class ProfileCard {
+    private String connectId;
+    private String firstName;
+    private int age;
+    private String gender;
+    private String location;
+    private List<Photo> photos;
+    private List<String> interests;
+    private List<WrittenPrompt> writtenPrompts;
+
+    // From the detailed profile
+    private String pronouns;
+    private String jobTitle;
+    private String university;
+    private String height;
+}
@@ -1,7 +1,10 @@
 package com.tpg.connect.repository;
 
+import com.tpg.connect.model.batch.BulkDeleteResult;
 import com.tpg.connect.model.conversation.Conversation;
+import com.tpg.connect.model.conversation.InboxEntry;
 import com.tpg.connect.model.conversation.Message;
+import com.tpg.connect.model.conversation.MessagePage;
 import java.util.List;
 import java.util.Optional;
 import java.time.LocalDateTime;
@@ -10,13 +13,15 @@ public interface ConversationRepository {
     
     // Conversation CRUD Operations
     Conversation save(Conversation conversation);
+    Conversation createConversation(Conversation conversation, List<InboxEntry> inboxEntries);
     Optional<Conversation> findById(String conversationId);
     List<Conversation> findByParticipantId(String userId);
     List<Conversation> findByParticipantIdAndStatus(String userId, Object status);
     List<Conversation> findActiveByParticipantId(String userId);
     List<Conversation> findArchivedByParticipantId(String userId);
     void deleteById(String conversationId);
-    void deleteByParticipantId(String userId);
+    BulkDeleteResult deleteByParticipantId(String userId);
+    BulkDeleteResult deleteOrphanedMessages();
     
     // Conversation Updates
     Conversation updateLastMessage(String conversationId, Message lastMessage);
@@ -25,9 +30,10 @@ public interface ConversationRepository {
     Conversation markAsArchived(String conversationId, boolean archived);
     
     // Message Operations
-    Message saveMessage(String conversationId, Message message);
+    Message saveMessage(String conversationId, Message message, List<String> recipientIds);
     List<Message> findMessagesByConversationId(String conversationId);
     List<Message> findMessagesByConversationId(String conversationId, int page, int limit);
+    MessagePage findMessagesBefore(String conversationId, String cursor, int limit);
     List<Message> findUnreadMessages(String conversationId, String userId);
     void markMessagesAsRead(String conversationId, String userId);
     void deleteMessage(String conversationId, String messageId);
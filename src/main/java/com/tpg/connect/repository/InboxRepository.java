@@ -0,0 +1,21 @@
+package com.tpg.connect.repository;
+
+import com.tpg.connect.model.batch.BulkDeleteResult;
+import com.tpg.connect.model.conversation.InboxEntry;
+import com.tpg.connect.model.conversation.InboxPage;
+import com.tpg.connect.model.user.ProfileCard;
+
+import java.util.List;
+import java.util.Map;
+
+public interface InboxRepository {
+
+    InboxPage findPage(String userId, String cursor, int offset, int limit, boolean excludeArchived, boolean unreadOnly);
+    boolean isBuilt(String userId);
+    void updateCounterparts(String userId, List<InboxEntry> entries);
+    List<InboxEntry> repair(String userId, List<InboxEntry> partial, Map<String, ProfileCard> counterparts);
+    BulkDeleteResult deleteByUserId(String userId);
+
+    // Backfill for users whose inbox predates the write paths that maintain it
+    List<InboxEntry> rebuild(String userId, Map<String, ProfileCard> counterparts);
+}
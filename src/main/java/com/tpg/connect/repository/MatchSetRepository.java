@@ -4,6 +4,7 @@ import com.tpg.connect.model.MatchSet;
 import com.google.cloud.Timestamp;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface MatchSetRepository {
@@ -36,4 +37,7 @@ public interface MatchSetRepository {
     List<MatchSet> findMatchSetsByDateRange(String userId, String startDate, String endDate);
     List<MatchSet> findPendingMatchSets();
     List<MatchSet> findCompletedMatchSets(String userId);
+    
+    // Total matches of every match set for a date, keyed by userId (no match data is transferred)
+    Map<String, Integer> findTotalMatchesByDate(String date);
 }
\ No newline at end of file
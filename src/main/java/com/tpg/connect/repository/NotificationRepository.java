@@ -8,6 +8,7 @@ import java.util.Optional;
 public interface NotificationRepository {
     
     // Create Operations
+    Notification create(Notification notification);
     Notification save(Notification notification);
     List<Notification> saveAll(List<Notification> notifications);
     
@@ -23,7 +24,7 @@ public interface NotificationRepository {
     long countUnreadByUserId(String userId);
     
     // Update Operations
-    Notification markAsRead(String id);
+    Notification markAsRead(Notification notification);
     void markAllAsReadForUser(String userId);
     
     // Delete Operations
@@ -9,6 +9,7 @@ public interface UserActionRepository {
     
     // Create Operations
     UserAction save(UserAction userAction);
+    List<UserAction> saveAllIfAbsent(String userId, List<UserAction> userActions);
     
     // Read Operations
     Optional<UserAction> findById(String id);
@@ -0,0 +1,17 @@
+package com.tpg.connect.repository;
+
+import com.tpg.connect.model.UserCounters;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface UserCountersRepository {
+
+    Optional<UserCounters> findByUserId(String userId);
+
+    // Reconciliation and backfill
+    List<String> findUserIdsAfter(String afterUserId, int limit);
+    long countUsers();
+    boolean reconcile(String userId);
+    boolean backfill(String userId);
+}
@@ -8,6 +8,7 @@ import com.tpg.connect.model.user.PollPrompt;
 import com.tpg.connect.model.user.FieldVisibility;
 import com.tpg.connect.model.user.UserPreferences;
 import com.tpg.connect.model.user.NotificationSettings;
+import com.tpg.connect.model.user.ProfileCard;
 import com.google.cloud.Timestamp;
 
 import java.util.List;
@@ -24,6 +25,11 @@ public interface UserProfileRepository {
     CompleteUserProfile findByUserId(String userId);
     List<CompleteUserProfile> findActiveProfiles();
     List<CompleteUserProfile> findAll();
+    List<CompleteUserProfile> findProfilesPage(String startAfterConnectId, int limit);
+    List<CompleteUserProfile> findProfilesUpdatedSince(Timestamp since);
+    // connectIds of profiles deleted after the given time, with when each was deleted
+    Map<String, Timestamp> findProfilesDeletedSince(Timestamp since);
+    void purgeProfileDeletionsBefore(Timestamp cutoff);
     boolean existsByConnectId(String connectId);
     
     // Update Operations
@@ -47,6 +53,9 @@ public interface UserProfileRepository {
     void deleteProfile(String connectId);
     
     // Batch Operations
+    // Returns existing profiles in the order of the requested connectIds; missing ids are skipped
     List<CompleteUserProfile> findProfilesByConnectIds(List<String> connectIds);
     Map<String, CompleteUserProfile> findProfileMapByConnectIds(List<String> connectIds);
+    // Card projections only, read with a field mask; same ordering as findProfilesByConnectIds
+    List<ProfileCard> findCardsByConnectIds(List<String> connectIds);
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import com.google.cloud.Timestamp;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public interface UserRepository {
     
@@ -48,6 +49,7 @@ public interface UserRepository {
     
     // Status-based queries
     List<User> findByApplicationStatus(ApplicationStatus applicationStatus);
+    Set<String> findConnectIdsByApplicationStatus(ApplicationStatus applicationStatus);
     List<User> findByUserStatus(UserStatus userStatus);
     long countByApplicationStatus(ApplicationStatus applicationStatus);
     long countByUserStatus(UserStatus userStatus);
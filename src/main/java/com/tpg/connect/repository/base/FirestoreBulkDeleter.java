@@ -0,0 +1,210 @@
+package com.tpg.connect.repository.base;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.*;
+import com.tpg.connect.model.batch.BulkDeleteResult;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Deletes documents together with their subcollections through a Firestore BulkWriter.
+ *
+ * Subcollections are read one page of document ids at a time and each page is flushed before the
+ * next is read, so at most a page of deletes is in flight; the writer batches them and ramps up to
+ * {@code app.bulk-delete.max-ops-per-second}. A root is deleted only after everything under it
+ * was, so a run that fails part way can simply be repeated and resumes with whatever is left.
+ *
+ * Callers name the subcollections to clear rather than having them discovered, which would cost a
+ * listing call per document; every tree in this schema is one level deep.
+ */
+@Component
+public class FirestoreBulkDeleter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FirestoreBulkDeleter.class);
+
+    private static final Set<Status.Code> RETRYABLE_CODES = EnumSet.of(
+            Status.Code.ABORTED, Status.Code.UNAVAILABLE, Status.Code.DEADLINE_EXCEEDED,
+            Status.Code.RESOURCE_EXHAUSTED, Status.Code.INTERNAL);
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.bulk-delete.page-size:500}")
+    private int pageSize;
+
+    @Value("${app.bulk-delete.max-ops-per-second:500}")
+    private int maxOpsPerSecond;
+
+    @Value("${app.bulk-delete.max-attempts:5}")
+    private int maxAttempts;
+
+    private final Map<String, Counter> deletedCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> failureCounters = new ConcurrentHashMap<>();
+
+    public BulkDeleteResult delete(String job, List<DocumentReference> roots, List<String> subcollections) {
+        return delete(job, roots, subcollections, progress -> { });
+    }
+
+    /**
+     * Delete each root and the named subcollections under it. {@code onProgress} is called after
+     * every flushed page with the running totals.
+     */
+    public BulkDeleteResult delete(String job, List<DocumentReference> roots, List<String> subcollections,
+                                   Consumer<BulkDeleteResult> onProgress) {
+        BulkDeleteResult result = new BulkDeleteResult(job, roots.size());
+        long started = System.currentTimeMillis();
+        BulkWriter writer = firestore.bulkWriter(BulkWriterOptions.builder()
+                .setMaxOpsPerSecond(maxOpsPerSecond)
+                .build());
+        writer.addWriteErrorListener(error ->
+                error.getFailedAttempts() < maxAttempts && RETRYABLE_CODES.contains(error.getStatus().getCode()));
+
+        try {
+            // Roots whose children are gone, flushed together a page at a time
+            List<ApiFuture<WriteResult>> pendingRoots = new ArrayList<>();
+            for (DocumentReference root : roots) {
+                boolean childrenDeleted = true;
+                for (String subcollection : subcollections) {
+                    childrenDeleted &= deleteCollection(writer, root.collection(subcollection), result, onProgress);
+                }
+                if (childrenDeleted) {
+                    pendingRoots.add(writer.delete(root));
+                }
+                if (pendingRoots.size() >= pageSize) {
+                    flushRoots(writer, job, pendingRoots, result, onProgress);
+                }
+            }
+            flushRoots(writer, job, pendingRoots, result, onProgress);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during bulk delete: " + job, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to bulk delete: " + job, e);
+        } finally {
+            try {
+                writer.close();
+            } catch (Exception e) {
+                logger.warn("⚠️ Failed to close bulk writer for {}: {}", job, e.getMessage());
+            }
+        }
+
+        result.setDurationMs(System.currentTimeMillis() - started);
+        if (result.isComplete()) {
+            logger.info("🗑️ Bulk delete {} finished in {} ms: {} roots, {} documents",
+                    job, result.getDurationMs(), result.getRootsDeleted(), result.getDocumentsDeleted());
+        } else {
+            logger.warn("⚠️ Bulk delete {} incomplete after {} ms: {}/{} roots, {} documents deleted, {} failed",
+                    job, result.getDurationMs(), result.getRootsDeleted(), result.getRootsTotal(),
+                    result.getDocumentsDeleted(), result.getFailures());
+        }
+        return result;
+    }
+
+    /**
+     * Page through a collection by document id, deleting each page before reading the next.
+     * Returns whether every document was deleted.
+     */
+    private boolean deleteCollection(BulkWriter writer, CollectionReference collection, BulkDeleteResult result,
+                                     Consumer<BulkDeleteResult> onProgress) throws InterruptedException, ExecutionException {
+        boolean allDeleted = true;
+        String last = null;
+        while (true) {
+            Query query = collection.orderBy(FieldPath.documentId())
+                    .select(FieldPath.documentId())
+                    .limit(pageSize);
+            if (last != null) {
+                // Documents that failed are skipped rather than read again; the next run retries them
+                query = query.startAfter(last);
+            }
+            List<QueryDocumentSnapshot> page = query.get().get().getDocuments();
+            if (page.isEmpty()) {
+                break;
+            }
+
+            List<ApiFuture<WriteResult>> deletes = new ArrayList<>();
+            for (QueryDocumentSnapshot doc : page) {
+                deletes.add(writer.delete(doc.getReference()));
+            }
+            allDeleted &= flush(writer, result.getJob(), deletes, result) == 0;
+            onProgress.accept(result);
+
+            if (page.size() < pageSize) {
+                break;
+            }
+            last = page.get(page.size() - 1).getId();
+        }
+        return allDeleted;
+    }
+
+    private void flushRoots(BulkWriter writer, String job, List<ApiFuture<WriteResult>> pendingRoots,
+                            BulkDeleteResult result, Consumer<BulkDeleteResult> onProgress)
+            throws InterruptedException, ExecutionException {
+        if (pendingRoots.isEmpty()) {
+            return;
+        }
+        int failed = flush(writer, job, pendingRoots, result);
+        result.setRootsDeleted(result.getRootsDeleted() + pendingRoots.size() - failed);
+        pendingRoots.clear();
+        onProgress.accept(result);
+    }
+
+    /**
+     * Wait for the queued deletes and add them to the totals. Returns how many failed.
+     */
+    private int flush(BulkWriter writer, String job, List<ApiFuture<WriteResult>> deletes, BulkDeleteResult result)
+            throws InterruptedException, ExecutionException {
+        writer.flush().get();
+
+        int failed = 0;
+        String firstError = null;
+        for (ApiFuture<WriteResult> delete : deletes) {
+            try {
+                delete.get();
+            } catch (ExecutionException e) {
+                failed++;
+                if (firstError == null) {
+                    firstError = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                }
+            }
+        }
+        if (failed > 0) {
+            logger.warn("⚠️ Bulk delete {}: {} of {} deletes failed, first error: {}", job, failed, deletes.size(), firstError);
+        }
+
+        result.setDocumentsDeleted(result.getDocumentsDeleted() + deletes.size() - failed);
+        result.setFailures(result.getFailures() + failed);
+        deletedCounter(job).increment(deletes.size() - failed);
+        if (failed > 0) {
+            failureCounter(job).increment(failed);
+        }
+        return failed;
+    }
+
+    private Counter deletedCounter(String job) {
+        return deletedCounters.computeIfAbsent(job, tag -> Counter.builder("connect_bulk_deleted_documents")
+                .description("Documents removed by recursive bulk deletes")
+                .tag("job", tag)
+                .register(meterRegistry));
+    }
+
+    private Counter failureCounter(String job) {
+        return failureCounters.computeIfAbsent(job, tag -> Counter.builder("connect_bulk_delete_failures")
+                .description("Bulk deletes that failed after retries and are left for the next run")
+                .tag("job", tag)
+                .register(meterRegistry));
+    }
+}
@@ -3,11 +3,18 @@ package com.tpg.connect.repository.impl;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import com.tpg.connect.model.conversation.Conversation;
+import com.tpg.connect.model.conversation.InboxEntry;
 import com.tpg.connect.model.conversation.Message;
+import com.tpg.connect.model.conversation.MessagePage;
+import com.tpg.connect.model.UserCounters;
+import com.tpg.connect.model.batch.BulkDeleteResult;
 import com.tpg.connect.repository.ConversationRepository;
+import com.tpg.connect.repository.UserCountersRepository;
+import com.tpg.connect.repository.base.FirestoreBulkDeleter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.*;
@@ -19,10 +26,21 @@ public class ConversationRepositoryImpl implements ConversationRepository {
 
     private static final String COLLECTION_NAME = "conversations";
     private static final String MESSAGES_SUBCOLLECTION = "messages";
+    // Upper bound on any history load that isn't cursor-paged
+    static final int MAX_HISTORY_MESSAGES = 500;
+    // Stays under Firestore's 500 writes per batch
+    private static final int ARCHIVE_BATCH_WRITES = 450;
+    private static final int ORPHAN_SCAN_PAGE_SIZE = 500;
     
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private UserCountersRepository userCountersRepository;
+
+    @Autowired
+    private FirestoreBulkDeleter bulkDeleter;
+
     @Override
     public Conversation save(Conversation conversation) {
         try {
@@ -39,6 +57,23 @@ public class ConversationRepositoryImpl implements ConversationRepository {
         }
     }
 
+    @Override
+    public Conversation createConversation(Conversation conversation, List<InboxEntry> inboxEntries) {
+        try {
+            // The conversation and both participants' inbox entries commit together
+            WriteBatch batch = firestore.batch();
+            batch.set(firestore.collection(COLLECTION_NAME).document(conversation.getId()), convertToMap(conversation));
+            for (InboxEntry entry : inboxEntries) {
+                InboxRepositoryImpl.put(firestore, batch, entry);
+            }
+            batch.commit().get();
+            
+            return conversation;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to create conversation", e);
+        }
+    }
+
     @Override
     public Optional<Conversation> findById(String conversationId) {
         try {
@@ -148,44 +183,79 @@ public class ConversationRepositoryImpl implements ConversationRepository {
     @Override
     public void deleteById(String conversationId) {
         try {
-            // Delete all messages in the conversation first
-            firestore.collection(COLLECTION_NAME)
-                    .document(conversationId)
-                    .collection(MESSAGES_SUBCOLLECTION)
-                    .get()
-                    .get()
-                    .getDocuments()
-                    .forEach(doc -> {
-                        try {
-                            doc.getReference().delete().get();
-                        } catch (InterruptedException | ExecutionException e) {
-                            throw new RuntimeException("Failed to delete message", e);
-                        }
-                    });
-            
-            // Delete the conversation document
-            firestore.collection(COLLECTION_NAME).document(conversationId).delete().get();
+            List<String> participantIds = findParticipantIds(conversationId);
+            DocumentReference conversationRef = firestore.collection(COLLECTION_NAME).document(conversationId);
+            
+            // Inbox entries first, then the messages and finally the conversation itself; if any of it
+            // fails the conversation document stays, so deleting again picks up where this stopped
+            BulkDeleteResult result = bulkDeleter.delete("inbox_entries", inboxEntries(conversationId, participantIds), List.of());
+            result.add(bulkDeleter.delete("conversations", List.of(conversationRef), List.of(MESSAGES_SUBCOLLECTION)));
+            if (!result.isComplete()) {
+                throw new RuntimeException("Failed to delete conversation: " + result.getFailures() + " documents could not be deleted");
+            }
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to delete conversation", e);
         }
     }
 
     @Override
-    public void deleteByParticipantId(String userId) {
+    public BulkDeleteResult deleteByParticipantId(String userId) {
+        List<Conversation> userConversations = findByParticipantId(userId);
+        
+        List<DocumentReference> entries = new ArrayList<>();
+        List<DocumentReference> conversations = new ArrayList<>();
+        for (Conversation conversation : userConversations) {
+            entries.addAll(inboxEntries(conversation.getId(),
+                    conversation.getParticipantIds() != null ? conversation.getParticipantIds() : List.of()));
+            conversations.add(firestore.collection(COLLECTION_NAME).document(conversation.getId()));
+        }
+        
+        BulkDeleteResult result = bulkDeleter.delete("inbox_entries", entries, List.of());
+        result.add(bulkDeleter.delete("conversations", conversations, List.of(MESSAGES_SUBCOLLECTION)));
+        return result;
+    }
+
+    /**
+     * Delete message subcollections whose conversation document is already gone, as left behind by
+     * conversation deletes that didn't remove messages. Such conversations only show up when
+     * listing document references, which includes ids that exist solely as a parent path.
+     */
+    @Override
+    public BulkDeleteResult deleteOrphanedMessages() {
         try {
-            List<Conversation> userConversations = findByParticipantId(userId);
-            
-            WriteBatch batch = firestore.batch();
-            
-            for (Conversation conversation : userConversations) {
-                DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(conversation.getId());
-                batch.delete(docRef);
+            BulkDeleteResult result = new BulkDeleteResult("orphaned_messages", 0);
+            List<DocumentReference> page = new ArrayList<>();
+            for (DocumentReference conversationRef : firestore.collection(COLLECTION_NAME).listDocuments()) {
+                page.add(conversationRef);
+                if (page.size() == ORPHAN_SCAN_PAGE_SIZE) {
+                    result.add(deleteOrphans(page));
+                    page.clear();
+                }
             }
-            
-            batch.commit().get();
+            result.add(deleteOrphans(page));
+            return result;
         } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to delete conversations by participant", e);
+            throw new RuntimeException("Failed to delete orphaned messages", e);
+        }
+    }
+
+    private BulkDeleteResult deleteOrphans(List<DocumentReference> conversationRefs) throws InterruptedException, ExecutionException {
+        if (conversationRefs.isEmpty()) {
+            return new BulkDeleteResult("orphaned_messages", 0);
+        }
+        List<DocumentReference> orphans = new ArrayList<>();
+        for (DocumentSnapshot doc : firestore.getAll(conversationRefs.toArray(new DocumentReference[0]), FieldMask.of("status")).get()) {
+            if (!doc.exists()) {
+                orphans.add(doc.getReference());
+            }
         }
+        return bulkDeleter.delete("orphaned_messages", orphans, List.of(MESSAGES_SUBCOLLECTION));
+    }
+
+    private List<DocumentReference> inboxEntries(String conversationId, List<String> participantIds) {
+        return participantIds.stream()
+                .map(participantId -> InboxRepositoryImpl.entryReference(firestore, participantId, conversationId))
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -214,7 +284,15 @@ public class ConversationRepositoryImpl implements ConversationRepository {
             updates.put("status", status);
             updates.put("updatedAt", Timestamp.now());
             
-            docRef.update(updates).get();
+            WriteBatch batch = firestore.batch();
+            batch.update(docRef, updates);
+            if (Conversation.ConversationStatus.UNMATCHED.name().equals(status)) {
+                // An unmatched conversation leaves both inboxes
+                for (String participantId : findParticipantIds(conversationId)) {
+                    InboxRepositoryImpl.remove(firestore, batch, participantId, conversationId);
+                }
+            }
+            batch.commit().get();
             
             return findById(conversationId).orElse(null);
         } catch (InterruptedException | ExecutionException e) {
@@ -229,9 +307,14 @@ public class ConversationRepositoryImpl implements ConversationRepository {
             
             Map<String, Object> updates = new HashMap<>();
             updates.put("unreadCount", count);
+            updates.put("unreadCounts." + userId, count);
             updates.put("updatedAt", Timestamp.now());
             
-            docRef.update(updates).get();
+            WriteBatch batch = firestore.batch();
+            batch.update(docRef, updates);
+            UserCountersRepositoryImpl.setUnreadMessages(firestore, batch, userId, conversationId, count);
+            InboxRepositoryImpl.setUnread(firestore, batch, userId, conversationId, count);
+            batch.commit().get();
             
             return findById(conversationId).orElse(null);
         } catch (InterruptedException | ExecutionException e) {
@@ -255,7 +338,13 @@ public class ConversationRepositoryImpl implements ConversationRepository {
             System.out.println("📁 ConversationRepositoryImpl: Update map = " + updates);
             System.out.println("📁 ConversationRepositoryImpl: Executing Firestore update...");
             
-            docRef.update(updates).get();
+            // Archiving applies to the whole conversation, so both participants' inbox entries follow it
+            WriteBatch batch = firestore.batch();
+            batch.update(docRef, updates);
+            for (String participantId : findParticipantIds(conversationId)) {
+                InboxRepositoryImpl.setArchived(firestore, batch, participantId, conversationId, archived);
+            }
+            batch.commit().get();
             
             System.out.println("📁 ConversationRepositoryImpl: Firestore update completed");
             System.out.println("📁 ConversationRepositoryImpl: Retrieving updated conversation...");
@@ -278,21 +367,39 @@ public class ConversationRepositoryImpl implements ConversationRepository {
     }
 
     @Override
-    public Message saveMessage(String conversationId, Message message) {
+    public Message saveMessage(String conversationId, Message message, List<String> recipientIds) {
         try {
             if (message.getId() == null) {
                 message.setId(UUID.randomUUID().toString());
             }
             
-            DocumentReference docRef = firestore.collection(COLLECTION_NAME)
-                    .document(conversationId)
-                    .collection(MESSAGES_SUBCOLLECTION)
-                    .document(message.getId());
-            
-            docRef.set(convertMessageToMap(message)).get();
+            DocumentReference conversationRef = firestore.collection(COLLECTION_NAME).document(conversationId);
+            DocumentReference messageRef = conversationRef.collection(MESSAGES_SUBCOLLECTION).document(message.getId());
+            
+            // The message, the conversation's last message, activity time and unread counts, the
+            // recipients' badge counters and every participant's inbox entry all commit together
+            Map<String, Object> conversationUpdates = new HashMap<>();
+            conversationUpdates.put("lastMessage", convertMessageToMap(message));
+            conversationUpdates.put("updatedAt", Timestamp.now());
+            conversationUpdates.put("unreadCount", FieldValue.increment(1));
+            for (String recipientId : recipientIds) {
+                conversationUpdates.put("unreadCounts." + recipientId, FieldValue.increment(1));
+            }
             
-            // Update conversation's last message and timestamp
-            updateLastMessage(conversationId, message);
+            WriteBatch batch = firestore.batch();
+            batch.set(messageRef, convertMessageToMap(message));
+            batch.update(conversationRef, conversationUpdates);
+            for (String recipientId : recipientIds) {
+                UserCountersRepositoryImpl.addUnreadMessage(firestore, batch, recipientId, conversationId);
+            }
+            UserCountersRepositoryImpl.addMessageSent(firestore, batch, message.getSenderId());
+            for (String recipientId : recipientIds) {
+                InboxRepositoryImpl.recordMessage(firestore, batch, recipientId, conversationId, message.getSenderId(), message, true);
+            }
+            if (!recipientIds.isEmpty()) {
+                InboxRepositoryImpl.recordMessage(firestore, batch, message.getSenderId(), conversationId, recipientIds.get(0), message, false);
+            }
+            batch.commit().get();
             
             return message;
         } catch (InterruptedException | ExecutionException e) {
@@ -306,13 +413,18 @@ public class ConversationRepositoryImpl implements ConversationRepository {
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
                     .document(conversationId)
                     .collection(MESSAGES_SUBCOLLECTION)
-                    .orderBy("sentAt", Query.Direction.ASCENDING)
+                    .orderBy("sentAt", Query.Direction.DESCENDING)
+                    .limit(MAX_HISTORY_MESSAGES)
                     .get()
                     .get();
             
-            return querySnapshot.getDocuments().stream()
+            List<Message> messages = querySnapshot.getDocuments().stream()
                     .map(this::convertToMessage)
                     .collect(Collectors.toList());
+            
+            // Latest MAX_HISTORY_MESSAGES only, in chronological order; older history is cursor-paged
+            Collections.reverse(messages);
+            return messages;
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to find messages by conversation", e);
         }
@@ -320,13 +432,17 @@ public class ConversationRepositoryImpl implements ConversationRepository {
 
     @Override
     public List<Message> findMessagesByConversationId(String conversationId, int page, int limit) {
+        // Firestore reads every skipped document, so offset paging only reaches back MAX_HISTORY_MESSAGES
+        if (page < 0 || limit <= 0 || page * limit >= MAX_HISTORY_MESSAGES) {
+            return new ArrayList<>();
+        }
         try {
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
                     .document(conversationId)
                     .collection(MESSAGES_SUBCOLLECTION)
                     .orderBy("sentAt", Query.Direction.DESCENDING)
                     .offset(page * limit)
-                    .limit(limit)
+                    .limit(Math.min(limit, MAX_HISTORY_MESSAGES - page * limit))
                     .get()
                     .get();
             
@@ -343,43 +459,128 @@ public class ConversationRepositoryImpl implements ConversationRepository {
     }
 
     @Override
-    public List<Message> findUnreadMessages(String conversationId, String userId) {
+    public MessagePage findMessagesBefore(String conversationId, String cursor, int limit) {
         try {
-            QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
+            // Newest first, with the message id breaking ties between messages sent in the same instant
+            Query query = firestore.collection(COLLECTION_NAME)
                     .document(conversationId)
                     .collection(MESSAGES_SUBCOLLECTION)
-                    .whereNotEqualTo("senderId", userId)
-                    .whereEqualTo("status", Message.MessageStatus.DELIVERED.name())
-                    .orderBy("sentAt", Query.Direction.ASCENDING)
-                    .get()
-                    .get();
-            
-            return querySnapshot.getDocuments().stream()
+                    .orderBy("sentAt", Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+            if (cursor != null && !cursor.isBlank()) {
+                query = query.startAfter(decodeMessageCursor(cursor));
+            }
+
+            // One extra document tells us whether there is an older page without a second query
+            List<QueryDocumentSnapshot> documents = query.limit(limit + 1).get().get().getDocuments();
+            boolean hasMore = documents.size() > limit;
+            if (hasMore) {
+                documents = documents.subList(0, limit);
+            }
+
+            List<Message> messages = documents.stream()
                     .map(this::convertToMessage)
                     .collect(Collectors.toList());
+            String nextCursor = hasMore ? encodeMessageCursor(documents.get(documents.size() - 1)) : null;
+
+            // Reverse to maintain chronological order
+            Collections.reverse(messages);
+            return new MessagePage(messages, nextCursor, hasMore);
         } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to find unread messages", e);
+            throw new RuntimeException("Failed to find messages before cursor", e);
+        }
+    }
+
+    private String encodeMessageCursor(DocumentSnapshot doc) {
+        Timestamp sentAt = doc.getTimestamp("sentAt");
+        String position = sentAt.getSeconds() + ":" + sentAt.getNanos() + ":" + doc.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Object[] decodeMessageCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(":", 3);
+            if (parts.length != 3 || parts[2].isEmpty()) {
+                throw new IllegalArgumentException("Invalid message cursor");
+            }
+            Timestamp sentAt = Timestamp.ofTimeSecondsAndNanos(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+            return new Object[]{sentAt, parts[2]};
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid message cursor", e);
         }
     }
 
     @Override
-    public void markMessagesAsRead(String conversationId, String userId) {
+    public List<Message> findUnreadMessages(String conversationId, String userId) {
         try {
-            QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
-                    .document(conversationId)
-                    .collection(MESSAGES_SUBCOLLECTION)
-                    .whereNotEqualTo("senderId", userId)
-                    .whereEqualTo("status", Message.MessageStatus.DELIVERED.name())
-                    .get()
-                    .get();
+            DocumentReference conversationRef = firestore.collection(COLLECTION_NAME).document(conversationId);
+            DocumentSnapshot conversationDoc = conversationRef.get().get();
+            Object lastReadAt = conversationDoc.get(FieldPath.of("readState", userId, "lastReadAt"));
             
-            WriteBatch batch = firestore.batch();
-            
-            for (QueryDocumentSnapshot doc : querySnapshot.getDocuments()) {
-                batch.update(doc.getReference(), "status", Message.MessageStatus.READ.name());
+            // Everything after the user's read watermark, newest MAX_HISTORY_MESSAGES at most
+            Query query = conversationRef.collection(MESSAGES_SUBCOLLECTION)
+                    .orderBy("sentAt", Query.Direction.DESCENDING)
+                    .limit(MAX_HISTORY_MESSAGES);
+            if (lastReadAt instanceof Timestamp) {
+                query = query.whereGreaterThan("sentAt", lastReadAt);
             }
             
-            batch.commit().get();
+            List<Message> messages = query.get().get().getDocuments().stream()
+                    .map(this::convertToMessage)
+                    .filter(message -> !userId.equals(message.getSenderId()))
+                    .collect(Collectors.toList());
+            Collections.reverse(messages);
+            return messages;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find unread messages", e);
+        }
+    }
+
+    @Override
+    public void markMessagesAsRead(String conversationId, String userId) {
+        try {
+            DocumentReference conversationRef = firestore.collection(COLLECTION_NAME).document(conversationId);
+            firestore.runTransaction(transaction -> {
+                DocumentSnapshot doc = transaction.get(conversationRef).get();
+                if (!doc.exists()) {
+                    return null;
+                }
+                
+                // The watermark is the latest message read in this transaction, so a message
+                // arriving meanwhile stays both above the watermark and counted as unread
+                Timestamp lastReadAt = Timestamp.now();
+                String lastReadMessageId = null;
+                Object lastMessage = doc.get("lastMessage");
+                if (lastMessage instanceof Map) {
+                    Map<String, Object> lastMessageData = (Map<String, Object>) lastMessage;
+                    if (lastMessageData.get("sentAt") instanceof Timestamp) {
+                        lastReadAt = (Timestamp) lastMessageData.get("sentAt");
+                    }
+                    lastReadMessageId = (String) lastMessageData.get("id");
+                }
+                
+                Object unread = doc.get(FieldPath.of("unreadCounts", userId));
+                boolean hasUnread = unread instanceof Number && ((Number) unread).longValue() > 0;
+                Object currentMessageId = doc.get(FieldPath.of("readState", userId, "lastReadMessageId"));
+                if (!hasUnread && (lastReadMessageId == null || lastReadMessageId.equals(currentMessageId))) {
+                    // Already read up to the latest message
+                    return null;
+                }
+                
+                Map<String, Object> marker = new HashMap<>();
+                marker.put("lastReadAt", lastReadAt);
+                marker.put("lastReadMessageId", lastReadMessageId);
+                
+                Map<String, Object> updates = new HashMap<>();
+                updates.put("readState." + userId, marker);
+                updates.put("unreadCounts." + userId, 0);
+                updates.put("unreadCount", 0);
+                transaction.update(conversationRef, updates);
+                UserCountersRepositoryImpl.setUnreadMessages(firestore, transaction, userId, conversationId, 0);
+                InboxRepositoryImpl.setUnread(firestore, transaction, userId, conversationId, 0);
+                return null;
+            }).get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to mark messages as read", e);
         }
@@ -401,14 +602,27 @@ public class ConversationRepositoryImpl implements ConversationRepository {
 
     @Override
     public long countUnreadConversations(String userId) {
+        Optional<UserCounters> counters = userCountersRepository.findByUserId(userId).filter(UserCounters::isTrusted);
+        if (counters.isPresent()) {
+            return counters.get().unreadConversationCount();
+        }
         try {
+            // Not backfilled yet: the user's own count where the conversation has one, else the legacy shared count
             QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
                     .whereArrayContains("participantIds", userId)
-                    .whereGreaterThan("unreadCount", 0)
+                    .select("unreadCounts", "unreadCount")
                     .get()
                     .get();
             
-            return querySnapshot.size();
+            return querySnapshot.getDocuments().stream()
+                    .filter(doc -> {
+                        Object unread = doc.get(FieldPath.of("unreadCounts", userId));
+                        if (!(unread instanceof Number)) {
+                            unread = doc.get("unreadCount");
+                        }
+                        return unread instanceof Number && ((Number) unread).longValue() > 0;
+                    })
+                    .count();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to count unread conversations", e);
         }
@@ -488,19 +702,40 @@ public class ConversationRepositoryImpl implements ConversationRepository {
         try {
             List<Conversation> conversationsToArchive = findConversationsToArchive(cutoffDate);
             
+            // A conversation and its inbox entries share a batch; batches are committed before 500 writes
             WriteBatch batch = firestore.batch();
-            
+            int writes = 0;
             for (Conversation conversation : conversationsToArchive) {
+                List<String> participantIds = conversation.getParticipantIds() != null ? conversation.getParticipantIds() : List.of();
+                if (writes > 0 && writes + 1 + participantIds.size() > ARCHIVE_BATCH_WRITES) {
+                    batch.commit().get();
+                    batch = firestore.batch();
+                    writes = 0;
+                }
                 DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(conversation.getId());
                 batch.update(docRef, "archived", true, "updatedAt", Timestamp.now());
+                for (String participantId : participantIds) {
+                    InboxRepositoryImpl.setArchived(firestore, batch, participantId, conversation.getId(), true);
+                }
+                writes += 1 + participantIds.size();
+            }
+            if (writes > 0) {
+                batch.commit().get();
             }
-            
-            batch.commit().get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to auto-archive conversations", e);
         }
     }
 
+    private List<String> findParticipantIds(String conversationId) throws InterruptedException, ExecutionException {
+        DocumentSnapshot doc = firestore.collection(COLLECTION_NAME)
+                .document(conversationId)
+                .get(FieldMask.of("participantIds"))
+                .get();
+        Object participantIds = doc.get("participantIds");
+        return participantIds instanceof List ? (List<String>) participantIds : List.of();
+    }
+
     // Helper methods for conversion
     private Map<String, Object> convertToMap(Conversation conversation) {
         Map<String, Object> map = new HashMap<>();
@@ -509,6 +744,21 @@ public class ConversationRepositoryImpl implements ConversationRepository {
         map.put("participantIds", conversation.getParticipantIds());
         map.put("status", conversation.getStatus() != null ? conversation.getStatus().name() : null);
         map.put("unreadCount", conversation.getUnreadCount());
+        if (conversation.getUnreadCounts() != null) {
+            map.put("unreadCounts", conversation.getUnreadCounts());
+        }
+        if (conversation.getReadState() != null) {
+            Map<String, Object> readState = new HashMap<>();
+            conversation.getReadState().forEach((participantId, marker) -> {
+                Map<String, Object> markerMap = new HashMap<>();
+                if (marker.getLastReadAt() != null) {
+                    markerMap.put("lastReadAt", Timestamp.of(Date.from(marker.getLastReadAt().atZone(ZoneId.systemDefault()).toInstant())));
+                }
+                markerMap.put("lastReadMessageId", marker.getLastReadMessageId());
+                readState.put(participantId, markerMap);
+            });
+            map.put("readState", readState);
+        }
         map.put("archived", conversation.isArchived()); // Use actual archived status
         
         if (conversation.getLastMessage() != null) {
@@ -566,6 +816,32 @@ public class ConversationRepositoryImpl implements ConversationRepository {
             conversation.setStatus(Conversation.ConversationStatus.valueOf((String) data.get("status")));
         }
         
+        Object unreadCounts = data.get("unreadCounts");
+        if (unreadCounts instanceof Map) {
+            Map<String, Integer> counts = new HashMap<>();
+            ((Map<String, Object>) unreadCounts).forEach((participantId, count) -> {
+                if (count instanceof Number) {
+                    counts.put(participantId, ((Number) count).intValue());
+                }
+            });
+            conversation.setUnreadCounts(counts);
+        }
+        
+        Object readState = data.get("readState");
+        if (readState instanceof Map) {
+            Map<String, Conversation.ReadMarker> markers = new HashMap<>();
+            ((Map<String, Object>) readState).forEach((participantId, markerData) -> {
+                if (markerData instanceof Map) {
+                    Map<String, Object> marker = (Map<String, Object>) markerData;
+                    LocalDateTime lastReadAt = marker.get("lastReadAt") instanceof Timestamp
+                            ? ((Timestamp) marker.get("lastReadAt")).toDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime()
+                            : null;
+                    markers.put(participantId, new Conversation.ReadMarker(lastReadAt, (String) marker.get("lastReadMessageId")));
+                }
+            });
+            conversation.setReadState(markers);
+        }
+        
         // Convert last message
         Object lastMessageData = data.get("lastMessage");
         if (lastMessageData instanceof Map) {
@@ -634,23 +910,18 @@ public class ConversationRepositoryImpl implements ConversationRepository {
 
     @Override
     public long countMessagesByUserId(String userId) {
+        Optional<UserCounters> counters = userCountersRepository.findByUserId(userId).filter(UserCounters::isTrusted);
+        if (counters.isPresent()) {
+            return counters.get().getMessagesSent();
+        }
         try {
-            // This is a simplified implementation - in a real scenario,
-            // you might need to query all conversations and count messages
-            CollectionReference collection = firestore.collection(COLLECTION_NAME);
-            Query query = collection.whereArrayContains("participantIds", userId);
-            
-            QuerySnapshot querySnapshot = query.get().get();
-            long totalMessages = 0;
-            
-            for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                List<Map<String, Object>> messages = (List<Map<String, Object>>) doc.get("messages");
-                if (messages != null) {
-                    totalMessages += messages.size();
-                }
-            }
-            
-            return totalMessages;
+            // Not backfilled yet: messages from before the counters existed are only in the subcollections
+            return firestore.collectionGroup(MESSAGES_SUBCOLLECTION)
+                    .whereEqualTo("senderId", userId)
+                    .count()
+                    .get()
+                    .get()
+                    .getCount();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to count messages by userId", e);
         }
@@ -0,0 +1,459 @@
+package com.tpg.connect.repository.impl;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.tpg.connect.model.batch.BulkDeleteResult;
+import com.tpg.connect.model.conversation.Conversation;
+import com.tpg.connect.model.conversation.InboxEntry;
+import com.tpg.connect.model.conversation.InboxPage;
+import com.tpg.connect.model.conversation.Message;
+import com.tpg.connect.model.user.Photo;
+import com.tpg.connect.model.user.ProfileCard;
+import com.tpg.connect.repository.InboxRepository;
+import com.tpg.connect.repository.base.FirestoreBulkDeleter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Each user's inbox lives under "user_inbox/{userId}/entries", one document per conversation,
+ * keyed by conversation id. The conversation repository adds inbox changes to the batch or
+ * transaction of the write that causes them through the static helpers below, the same way it
+ * maintains the unread counters. Every helper merges, so a write to an entry that isn't there yet
+ * leaves a partial document rather than failing the batch. Such entries are completed by
+ * {@link #repair} when a page containing them is loaded.
+ */
+@Repository
+public class InboxRepositoryImpl implements InboxRepository {
+
+    static final String COLLECTION_NAME = "user_inbox";
+    private static final String ENTRIES_SUBCOLLECTION = "entries";
+    private static final String CONVERSATIONS_COLLECTION = "conversations";
+    private static final String MATCHES_COLLECTION = "matches";
+    private static final String LAST_ACTIVITY = "lastActivity";
+    private static final String UNREAD_COUNT = "unreadCount";
+    private static final String HAS_UNREAD = "hasUnread";
+    private static final String ARCHIVED = "archived";
+    // Stays under Firestore's 500 writes per batch
+    private static final int REBUILD_BATCH_SIZE = 400;
+    // Firestore reads every skipped document, so page-number paging only reaches this far; beyond it use the cursor
+    static final int MAX_OFFSET_ENTRIES = 500;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private FirestoreBulkDeleter bulkDeleter;
+
+    @Override
+    public InboxPage findPage(String userId, String cursor, int offset, int limit, boolean excludeArchived, boolean unreadOnly) {
+        if (offset >= MAX_OFFSET_ENTRIES) {
+            return new InboxPage(new ArrayList<>(), null, false);
+        }
+        try {
+            // Most recent activity first, with the conversation id breaking ties
+            Query query = entries(firestore, userId);
+            if (excludeArchived) {
+                query = query.whereEqualTo(ARCHIVED, false);
+            }
+            if (unreadOnly) {
+                query = query.whereEqualTo(HAS_UNREAD, true);
+            }
+            query = query.orderBy(LAST_ACTIVITY, Query.Direction.DESCENDING)
+                    .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+            if (cursor != null && !cursor.isBlank()) {
+                query = query.startAfter(decodeCursor(cursor));
+            }
+            if (offset > 0) {
+                query = query.offset(offset);
+                limit = Math.min(limit, MAX_OFFSET_ENTRIES - offset);
+            }
+
+            // One extra document tells us whether there is another page without a second query
+            List<QueryDocumentSnapshot> documents = query.limit(limit + 1).get().get().getDocuments();
+            boolean hasMore = documents.size() > limit;
+            if (hasMore) {
+                documents = documents.subList(0, limit);
+            }
+
+            List<InboxEntry> inbox = documents.stream()
+                    .map(doc -> convertToInboxEntry(userId, doc))
+                    .collect(Collectors.toList());
+            String nextCursor = hasMore ? encodeCursor(documents.get(documents.size() - 1)) : null;
+            return new InboxPage(inbox, nextCursor, hasMore);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find inbox page", e);
+        }
+    }
+
+    @Override
+    public boolean isBuilt(String userId) {
+        try {
+            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
+            return doc.exists() && doc.get("builtAt") != null;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to check inbox", e);
+        }
+    }
+
+    @Override
+    public void updateCounterparts(String userId, List<InboxEntry> updated) {
+        if (updated.isEmpty()) {
+            return;
+        }
+        try {
+            WriteBatch batch = firestore.batch();
+            for (InboxEntry entry : updated) {
+                Map<String, Object> fields = new HashMap<>();
+                fields.put("counterpart", convertCardToMap(entry.getCounterpart()));
+                fields.put("counterpartRefreshedAt", toTimestamp(entry.getCounterpartRefreshedAt()));
+                batch.set(entries(firestore, userId).document(entry.getConversationId()), fields, SetOptions.merge());
+            }
+            batch.commit().get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to update inbox counterparts", e);
+        }
+    }
+
+    /**
+     * Complete entries that were created by a message or unread write before their match entry, or
+     * whose counterpart card could not be loaded when they were written: the card, match id, match
+     * time and archived flag are filled in from the counterpart's card and the conversation and match
+     * documents. Only those fields are written, so a message landing meanwhile is not overwritten.
+     */
+    @Override
+    public List<InboxEntry> repair(String userId, List<InboxEntry> partial, Map<String, ProfileCard> counterparts) {
+        if (partial.isEmpty()) {
+            return partial;
+        }
+        try {
+            List<DocumentReference> refs = new ArrayList<>();
+            for (InboxEntry entry : partial) {
+                refs.add(firestore.collection(CONVERSATIONS_COLLECTION).document(entry.getConversationId()));
+                refs.add(firestore.collection(MATCHES_COLLECTION).document(entry.getConversationId()));
+            }
+            Map<String, DocumentSnapshot> conversations = new HashMap<>();
+            Map<String, DocumentSnapshot> matches = new HashMap<>();
+            for (DocumentSnapshot doc : firestore.getAll(refs.toArray(new DocumentReference[0])).get()) {
+                if (doc.exists()) {
+                    boolean isConversation = CONVERSATIONS_COLLECTION.equals(doc.getReference().getParent().getId());
+                    (isConversation ? conversations : matches).put(doc.getId(), doc);
+                }
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            List<InboxEntry> repaired = new ArrayList<>();
+            WriteBatch batch = firestore.batch();
+            for (InboxEntry entry : partial) {
+                String counterpartId = entry.counterpartId();
+                ProfileCard card = counterpartId != null ? counterparts.get(counterpartId) : null;
+                if (card == null) {
+                    // The counterpart's profile is gone; nothing to show until it returns
+                    continue;
+                }
+                InboxEntry complete = buildEntry(userId, entry.getConversationId(), card,
+                        conversations.get(entry.getConversationId()), matches.get(entry.getConversationId()), now);
+                entry.setCounterpart(card);
+                entry.setCounterpartRefreshedAt(now);
+                entry.setMatchId(complete.getMatchId());
+                entry.setMatchedAt(complete.getMatchedAt());
+                entry.setArchived(complete.isArchived());
+                if (entry.getLastActivity() == null) {
+                    entry.setLastActivity(complete.getLastActivity());
+                }
+
+                Map<String, Object> fields = new HashMap<>();
+                fields.put("conversationId", entry.getConversationId());
+                fields.put("matchId", entry.getMatchId());
+                fields.put("counterpartId", card.getConnectId());
+                fields.put("counterpart", convertCardToMap(card));
+                fields.put("counterpartRefreshedAt", toTimestamp(now));
+                fields.put("matchedAt", toTimestamp(entry.getMatchedAt()));
+                fields.put(ARCHIVED, entry.isArchived());
+                fields.put(LAST_ACTIVITY, toTimestamp(entry.getLastActivity()));
+                batch.set(entries(firestore, userId).document(entry.getConversationId()), fields, SetOptions.merge());
+                repaired.add(entry);
+            }
+            if (!repaired.isEmpty()) {
+                batch.commit().get();
+            }
+            return repaired;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to repair inbox entries", e);
+        }
+    }
+
+    @Override
+    public BulkDeleteResult deleteByUserId(String userId) {
+        return bulkDeleter.delete("inbox", List.of(firestore.collection(COLLECTION_NAME).document(userId)),
+                List.of(ENTRIES_SUBCOLLECTION));
+    }
+
+    /**
+     * Build a user's inbox from their matched users' cards and the matching conversations and
+     * match documents, read together in one multi-document get, then mark the inbox built.
+     */
+    @Override
+    public List<InboxEntry> rebuild(String userId, Map<String, ProfileCard> counterparts) {
+        try {
+            List<String> conversationIds = counterparts.keySet().stream()
+                    .map(counterpartId -> conversationId(userId, counterpartId))
+                    .collect(Collectors.toList());
+
+            Map<String, DocumentSnapshot> conversations = new HashMap<>();
+            Map<String, DocumentSnapshot> matches = new HashMap<>();
+            if (!conversationIds.isEmpty()) {
+                List<DocumentReference> refs = new ArrayList<>();
+                for (String conversationId : conversationIds) {
+                    refs.add(firestore.collection(CONVERSATIONS_COLLECTION).document(conversationId));
+                    refs.add(firestore.collection(MATCHES_COLLECTION).document(conversationId));
+                }
+                for (DocumentSnapshot doc : firestore.getAll(refs.toArray(new DocumentReference[0])).get()) {
+                    if (doc.exists()) {
+                        boolean isConversation = CONVERSATIONS_COLLECTION.equals(doc.getReference().getParent().getId());
+                        (isConversation ? conversations : matches).put(doc.getId(), doc);
+                    }
+                }
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            List<InboxEntry> rebuilt = new ArrayList<>();
+            for (Map.Entry<String, ProfileCard> counterpart : counterparts.entrySet()) {
+                String conversationId = conversationId(userId, counterpart.getKey());
+                DocumentSnapshot conversation = conversations.get(conversationId);
+                if (conversation != null && Conversation.ConversationStatus.UNMATCHED.name().equals(conversation.getString("status"))) {
+                    continue;
+                }
+                rebuilt.add(buildEntry(userId, conversationId, counterpart.getValue(), conversation,
+                        matches.get(conversationId), now));
+            }
+
+            for (int start = 0; start < rebuilt.size(); start += REBUILD_BATCH_SIZE) {
+                WriteBatch batch = firestore.batch();
+                for (InboxEntry entry : rebuilt.subList(start, Math.min(start + REBUILD_BATCH_SIZE, rebuilt.size()))) {
+                    put(firestore, batch, entry);
+                }
+                batch.commit().get();
+            }
+            firestore.collection(COLLECTION_NAME).document(userId)
+                    .set(Map.of("builtAt", Timestamp.now()), SetOptions.merge())
+                    .get();
+            return rebuilt;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to rebuild inbox", e);
+        }
+    }
+
+    private InboxEntry buildEntry(String userId, String conversationId, ProfileCard counterpart,
+                                  DocumentSnapshot conversation, DocumentSnapshot match, LocalDateTime now) {
+        InboxEntry entry = new InboxEntry();
+        entry.setOwnerId(userId);
+        entry.setConversationId(conversationId);
+        entry.setMatchId(conversationId);
+        entry.setCounterpart(counterpart);
+        entry.setCounterpartRefreshedAt(now);
+
+        Timestamp matchedAt = match != null ? match.getTimestamp("matchedAt") : null;
+        if (matchedAt == null && conversation != null) {
+            matchedAt = conversation.getTimestamp("matchedAt");
+        }
+        entry.setMatchedAt(matchedAt != null ? toLocalDateTime(matchedAt) : now);
+        entry.setLastActivity(entry.getMatchedAt());
+
+        if (conversation != null) {
+            if (conversation.getString("matchId") != null) {
+                entry.setMatchId(conversation.getString("matchId"));
+            }
+            Object lastMessage = conversation.get("lastMessage");
+            if (lastMessage instanceof Map) {
+                entry.setLastMessage(convertMapToMessage((Map<String, Object>) lastMessage));
+                if (entry.getLastMessage().getSentAt() != null) {
+                    entry.setLastActivity(entry.getLastMessage().getSentAt());
+                }
+            }
+            Object unread = conversation.get(FieldPath.of("unreadCounts", userId));
+            entry.setUnreadCount(unread instanceof Number ? ((Number) unread).intValue() : 0);
+            entry.setArchived(Boolean.TRUE.equals(conversation.getBoolean(ARCHIVED)));
+        }
+        return entry;
+    }
+
+    static void put(Firestore firestore, UpdateBuilder<?> writes, InboxEntry entry) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("conversationId", entry.getConversationId());
+        fields.put("matchId", entry.getMatchId());
+        fields.put("counterpartId", entry.getCounterpart() != null ? entry.getCounterpart().getConnectId() : null);
+        fields.put("counterpart", convertCardToMap(entry.getCounterpart()));
+        fields.put("counterpartRefreshedAt", toTimestamp(entry.getCounterpartRefreshedAt()));
+        fields.put("matchedAt", toTimestamp(entry.getMatchedAt()));
+        fields.put(LAST_ACTIVITY, toTimestamp(entry.getLastActivity()));
+        fields.put("lastMessage", entry.getLastMessage() != null ? convertMessageToMap(entry.getLastMessage()) : null);
+        fields.put(UNREAD_COUNT, entry.getUnreadCount());
+        fields.put(HAS_UNREAD, entry.getUnreadCount() > 0);
+        fields.put(ARCHIVED, entry.isArchived());
+        writes.set(entries(firestore, entry.getOwnerId()).document(entry.getConversationId()), fields, SetOptions.merge());
+    }
+
+    static void recordMessage(Firestore firestore, UpdateBuilder<?> writes, String userId, String conversationId,
+                              String counterpartId, Message message, boolean unread) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("conversationId", conversationId);
+        fields.put("counterpartId", counterpartId);
+        fields.put("lastMessage", convertMessageToMap(message));
+        fields.put(LAST_ACTIVITY, message.getSentAt() != null ? toTimestamp(message.getSentAt()) : Timestamp.now());
+        if (unread) {
+            fields.put(UNREAD_COUNT, FieldValue.increment(1));
+            fields.put(HAS_UNREAD, true);
+        }
+        writes.set(entries(firestore, userId).document(conversationId), fields, SetOptions.merge());
+    }
+
+    static void setUnread(Firestore firestore, UpdateBuilder<?> writes, String userId, String conversationId, long count) {
+        writes.set(entries(firestore, userId).document(conversationId),
+                Map.of(UNREAD_COUNT, count, HAS_UNREAD, count > 0),
+                SetOptions.merge());
+    }
+
+    static void setArchived(Firestore firestore, UpdateBuilder<?> writes, String userId, String conversationId, boolean archived) {
+        writes.set(entries(firestore, userId).document(conversationId), Map.of(ARCHIVED, archived), SetOptions.merge());
+    }
+
+    static void remove(Firestore firestore, UpdateBuilder<?> writes, String userId, String conversationId) {
+        writes.delete(entryReference(firestore, userId, conversationId));
+    }
+
+    static DocumentReference entryReference(Firestore firestore, String userId, String conversationId) {
+        return entries(firestore, userId).document(conversationId);
+    }
+
+    private static CollectionReference entries(Firestore firestore, String userId) {
+        return firestore.collection(COLLECTION_NAME).document(userId).collection(ENTRIES_SUBCOLLECTION);
+    }
+
+    private static String conversationId(String connectId1, String connectId2) {
+        return connectId1.compareTo(connectId2) <= 0 ? connectId1 + "_" + connectId2 : connectId2 + "_" + connectId1;
+    }
+
+    private String encodeCursor(DocumentSnapshot doc) {
+        Timestamp lastActivity = doc.getTimestamp(LAST_ACTIVITY);
+        String position = lastActivity.getSeconds() + ":" + lastActivity.getNanos() + ":" + doc.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Object[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(":", 3);
+            if (parts.length != 3 || parts[2].isEmpty()) {
+                throw new IllegalArgumentException("Invalid inbox cursor");
+            }
+            Timestamp lastActivity = Timestamp.ofTimeSecondsAndNanos(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+            return new Object[]{lastActivity, parts[2]};
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid inbox cursor", e);
+        }
+    }
+
+    // Helper methods for conversion
+    private static Map<String, Object> convertCardToMap(ProfileCard card) {
+        if (card == null) {
+            return null;
+        }
+        Map<String, Object> map = new HashMap<>();
+        map.put("connectId", card.getConnectId());
+        map.put("firstName", card.getFirstName());
+        map.put("age", card.getAge());
+        if (card.getPhotos() != null) {
+            map.put("photos", card.getPhotos().stream()
+                    .map(photo -> {
+                        Map<String, Object> photoMap = new HashMap<>();
+                        photoMap.put("id", photo.getId());
+                        photoMap.put("url", photo.getUrl());
+                        photoMap.put("isPrimary", photo.isPrimary());
+                        photoMap.put("order", photo.getOrder());
+                        return photoMap;
+                    })
+                    .collect(Collectors.toList()));
+        }
+        return map;
+    }
+
+    private static Map<String, Object> convertMessageToMap(Message message) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", message.getId());
+        map.put("senderId", message.getSenderId());
+        map.put("content", message.getContent());
+        map.put("sentAt", message.getSentAt() != null ? toTimestamp(message.getSentAt()) : null);
+        return map;
+    }
+
+    private InboxEntry convertToInboxEntry(String userId, DocumentSnapshot doc) {
+        InboxEntry entry = new InboxEntry();
+        entry.setOwnerId(userId);
+        entry.setConversationId(doc.getId());
+        entry.setMatchId(doc.getString("matchId") != null ? doc.getString("matchId") : doc.getId());
+
+        Object counterpart = doc.get("counterpart");
+        if (counterpart instanceof Map) {
+            entry.setCounterpart(convertMapToCard((Map<String, Object>) counterpart));
+        } else if (doc.getString("counterpartId") != null) {
+            // Entry written by a message before the inbox was built; the card is loaded on read
+            ProfileCard card = new ProfileCard();
+            card.setConnectId(doc.getString("counterpartId"));
+            entry.setCounterpart(card);
+        }
+        entry.setCounterpartRefreshedAt(toLocalDateTime(doc.getTimestamp("counterpartRefreshedAt")));
+        entry.setMatchedAt(toLocalDateTime(doc.getTimestamp("matchedAt")));
+        entry.setLastActivity(toLocalDateTime(doc.getTimestamp(LAST_ACTIVITY)));
+
+        Object lastMessage = doc.get("lastMessage");
+        if (lastMessage instanceof Map) {
+            entry.setLastMessage(convertMapToMessage((Map<String, Object>) lastMessage));
+        }
+        Long unreadCount = doc.getLong(UNREAD_COUNT);
+        entry.setUnreadCount(unreadCount != null ? (int) Math.max(0, unreadCount) : 0);
+        entry.setArchived(Boolean.TRUE.equals(doc.getBoolean(ARCHIVED)));
+        return entry;
+    }
+
+    private ProfileCard convertMapToCard(Map<String, Object> data) {
+        ProfileCard card = new ProfileCard();
+        card.setConnectId((String) data.get("connectId"));
+        card.setFirstName((String) data.get("firstName"));
+        card.setAge(data.get("age") instanceof Number ? ((Number) data.get("age")).intValue() : 0);
+        Object photos = data.get("photos");
+        if (photos instanceof List) {
+            card.setPhotos(((List<Map<String, Object>>) photos).stream()
+                    .map(photo -> new Photo((String) photo.get("id"), (String) photo.get("url"),
+                            Boolean.TRUE.equals(photo.get("isPrimary")),
+                            photo.get("order") instanceof Number ? ((Number) photo.get("order")).intValue() : 0))
+                    .collect(Collectors.toList()));
+        }
+        return card;
+    }
+
+    private Message convertMapToMessage(Map<String, Object> data) {
+        Message message = new Message();
+        message.setId((String) data.get("id"));
+        message.setSenderId((String) data.get("senderId"));
+        message.setContent((String) data.get("content"));
+        if (data.get("sentAt") instanceof Timestamp) {
+            message.setSentAt(toLocalDateTime((Timestamp) data.get("sentAt")));
+        }
+        return message;
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime dateTime) {
+        return dateTime != null ? Timestamp.of(Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant())) : null;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime() : null;
+    }
+}
@@ -284,6 +284,29 @@ public class MatchSetRepositoryImpl implements MatchSetRepository {
         }
     }
 
+    @Override
+    public Map<String, Integer> findTotalMatchesByDate(String date) {
+        try {
+            QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
+                    .whereEqualTo("date", date)
+                    .select("userId", "totalMatches")
+                    .get()
+                    .get();
+
+            Map<String, Integer> totals = new HashMap<>();
+            for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                String userId = doc.getString("userId");
+                if (userId != null) {
+                    Integer totalMatches = safeToInteger(doc.get("totalMatches"));
+                    totals.put(userId, totalMatches != null ? totalMatches : 0);
+                }
+            }
+            return totals;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find match sets by date", e);
+        }
+    }
+
     @Override
     public List<MatchSet> findByUserIdOrderByDateDesc(String userId, int offset, int limit) {
         try {
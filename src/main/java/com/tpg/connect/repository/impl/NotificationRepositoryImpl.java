@@ -2,8 +2,10 @@ package com.tpg.connect.repository.impl;
 
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
+import com.tpg.connect.model.UserCounters;
 import com.tpg.connect.model.notifications.Notification;
 import com.tpg.connect.repository.NotificationRepository;
+import com.tpg.connect.repository.UserCountersRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
@@ -21,6 +23,30 @@ public class NotificationRepositoryImpl implements NotificationRepository {
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private UserCountersRepository userCountersRepository;
+
+    @Override
+    public Notification create(Notification notification) {
+        try {
+            if (notification.getId() == null) {
+                notification.setId(UUID.randomUUID().toString());
+            }
+            
+            // The notification and the recipient's unread counter commit together
+            WriteBatch batch = firestore.batch();
+            batch.set(firestore.collection(COLLECTION_NAME).document(notification.getId()), convertToMap(notification));
+            if (!notification.isRead()) {
+                UserCountersRepositoryImpl.addUnreadNotifications(firestore, batch, notification.getUserId(), 1);
+            }
+            batch.commit().get();
+            
+            return notification;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to create notification", e);
+        }
+    }
+
     @Override
     public Notification save(Notification notification) {
         try {
@@ -184,31 +210,48 @@ public class NotificationRepositoryImpl implements NotificationRepository {
 
     @Override
     public long countUnreadByUserId(String userId) {
+        Optional<UserCounters> counters = userCountersRepository.findByUserId(userId).filter(UserCounters::isTrusted);
+        if (counters.isPresent()) {
+            return counters.get().getUnreadNotifications();
+        }
         try {
-            QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
+            // Counters not backfilled yet, or drifted: count server-side instead of fetching every unread notification
+            return firestore.collection(COLLECTION_NAME)
                     .whereEqualTo("userId", userId)
                     .whereEqualTo("isRead", false)
+                    .count()
                     .get()
-                    .get();
-                    
-            return querySnapshot.size();
+                    .get()
+                    .getCount();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to count unread notifications", e);
         }
     }
 
     @Override
-    public Notification markAsRead(String id) {
+    public Notification markAsRead(Notification notification) {
         try {
-            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
-            
-            Map<String, Object> updates = new HashMap<>();
-            updates.put("isRead", true);
-            updates.put("readAt", Timestamp.now());
+            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(notification.getId());
             
-            docRef.update(updates).get();
+            // Read the stored flag in the transaction, so two concurrent reads of one notification
+            // (or a caller holding a stale copy) decrement the counter once
+            firestore.runTransaction(transaction -> {
+                DocumentSnapshot doc = transaction.get(docRef).get();
+                if (!doc.exists() || Boolean.TRUE.equals(doc.getBoolean("isRead"))) {
+                    return null;
+                }
+                
+                Map<String, Object> updates = new HashMap<>();
+                updates.put("isRead", true);
+                updates.put("readAt", Timestamp.now());
+                
+                transaction.update(docRef, updates);
+                UserCountersRepositoryImpl.addUnreadNotifications(firestore, transaction, doc.getString("userId"), -1);
+                return null;
+            }).get();
             
-            return findById(id).orElse(null);
+            notification.markAsRead();
+            return notification;
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to mark notification as read", e);
         }
@@ -232,6 +275,7 @@ public class NotificationRepositoryImpl implements NotificationRepository {
                 
                 batch.update(doc.getReference(), updates);
             }
+            UserCountersRepositoryImpl.clearUnreadNotifications(firestore, batch, userId);
             
             batch.commit().get();
         } catch (InterruptedException | ExecutionException e) {
@@ -250,18 +294,23 @@ public class NotificationRepositoryImpl implements NotificationRepository {
 
     @Override
     public void delete(Notification notification) {
-        deleteById(notification.getId());
+        deleteAll(List.of(notification));
     }
 
     @Override
     public void deleteAll(List<Notification> notifications) {
         try {
             WriteBatch batch = firestore.batch();
+            Map<String, Long> unreadDeleted = new HashMap<>();
             
             for (Notification notification : notifications) {
                 DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(notification.getId());
                 batch.delete(docRef);
+                if (!notification.isRead()) {
+                    unreadDeleted.merge(notification.getUserId(), 1L, Long::sum);
+                }
             }
+            addUnreadDeletions(batch, unreadDeleted);
             
             batch.commit().get();
         } catch (InterruptedException | ExecutionException e) {
@@ -278,10 +327,15 @@ public class NotificationRepositoryImpl implements NotificationRepository {
                     .get();
             
             WriteBatch batch = firestore.batch();
+            Map<String, Long> unreadDeleted = new HashMap<>();
             
             for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
                 batch.delete(doc.getReference());
+                if (Boolean.FALSE.equals(doc.getBoolean("isRead")) && doc.getString("userId") != null) {
+                    unreadDeleted.merge(doc.getString("userId"), 1L, Long::sum);
+                }
             }
+            addUnreadDeletions(batch, unreadDeleted);
             
             batch.commit().get();
         } catch (InterruptedException | ExecutionException e) {
@@ -301,10 +355,15 @@ public class NotificationRepositoryImpl implements NotificationRepository {
                     .get();
             
             WriteBatch batch = firestore.batch();
+            Map<String, Long> unreadDeleted = new HashMap<>();
             
             for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
                 batch.delete(doc.getReference());
+                if (Boolean.FALSE.equals(doc.getBoolean("isRead")) && doc.getString("userId") != null) {
+                    unreadDeleted.merge(doc.getString("userId"), 1L, Long::sum);
+                }
             }
+            addUnreadDeletions(batch, unreadDeleted);
             
             batch.commit().get();
         } catch (InterruptedException | ExecutionException e) {
@@ -324,10 +383,15 @@ public class NotificationRepositoryImpl implements NotificationRepository {
                     .get();
             
             WriteBatch batch = firestore.batch();
+            Map<String, Long> unreadDeleted = new HashMap<>();
             
             for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
                 batch.delete(doc.getReference());
+                if (Boolean.FALSE.equals(doc.getBoolean("isRead")) && doc.getString("userId") != null) {
+                    unreadDeleted.merge(doc.getString("userId"), 1L, Long::sum);
+                }
             }
+            addUnreadDeletions(batch, unreadDeleted);
             
             batch.commit().get();
         } catch (InterruptedException | ExecutionException e) {
@@ -335,6 +399,11 @@ public class NotificationRepositoryImpl implements NotificationRepository {
         }
     }
 
+    private void addUnreadDeletions(WriteBatch batch, Map<String, Long> unreadDeleted) {
+        unreadDeleted.forEach((userId, count) ->
+                UserCountersRepositoryImpl.addUnreadNotifications(firestore, batch, userId, -count));
+    }
+
     // Helper methods for conversion
     private Map<String, Object> convertToMap(Notification notification) {
         Map<String, Object> map = new HashMap<>();
@@ -1,5 +1,6 @@
 package com.tpg.connect.repository.impl;
 
+import com.google.api.core.ApiFuture;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import com.tpg.connect.model.match.UserAction;
@@ -17,6 +18,8 @@ import java.util.stream.Collectors;
 public class UserActionRepositoryImpl implements UserActionRepository {
 
     private static final String COLLECTION_NAME = "user_actions";
+    private static final int IN_QUERY_LIMIT = 30;
+    private static final int MAX_BATCH_WRITES = 500;
     
     @Autowired
     private Firestore firestore;
@@ -37,6 +40,62 @@ public class UserActionRepositoryImpl implements UserActionRepository {
         }
     }
 
+    @Override
+    public List<UserAction> saveAllIfAbsent(String userId, List<UserAction> userActions) {
+        try {
+            List<String> targetUserIds = userActions.stream()
+                    .map(UserAction::getTargetUserId)
+                    .distinct()
+                    .collect(Collectors.toList());
+
+            // One "in" query per 30 targets, all in flight together
+            List<ApiFuture<QuerySnapshot>> lookups = new ArrayList<>();
+            for (int i = 0; i < targetUserIds.size(); i += IN_QUERY_LIMIT) {
+                lookups.add(firestore.collection(COLLECTION_NAME)
+                        .whereEqualTo("userId", userId)
+                        .whereIn("targetUserId", new ArrayList<>(targetUserIds.subList(i, Math.min(i + IN_QUERY_LIMIT, targetUserIds.size()))))
+                        .select("targetUserId")
+                        .get());
+            }
+            Set<String> existing = new HashSet<>();
+            for (ApiFuture<QuerySnapshot> lookup : lookups) {
+                for (DocumentSnapshot doc : lookup.get().getDocuments()) {
+                    existing.add(doc.getString("targetUserId"));
+                }
+            }
+
+            List<UserAction> saved = new ArrayList<>();
+            List<ApiFuture<List<WriteResult>>> commits = new ArrayList<>();
+            WriteBatch batch = firestore.batch();
+            int batchSize = 0;
+            for (UserAction userAction : userActions) {
+                if (!existing.add(userAction.getTargetUserId())) {
+                    continue; // Don't record duplicate actions
+                }
+                if (userAction.getId() == null) {
+                    userAction.setId(UUID.randomUUID().toString());
+                }
+                batch.set(firestore.collection(COLLECTION_NAME).document(userAction.getId()), convertToMap(userAction));
+                saved.add(userAction);
+                if (++batchSize == MAX_BATCH_WRITES) {
+                    commits.add(batch.commit());
+                    batch = firestore.batch();
+                    batchSize = 0;
+                }
+            }
+            if (batchSize > 0) {
+                commits.add(batch.commit());
+            }
+            for (ApiFuture<List<WriteResult>> commit : commits) {
+                commit.get();
+            }
+
+            return saved;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to save user actions", e);
+        }
+    }
+
     @Override
     public Optional<UserAction> findById(String id) {
         try {
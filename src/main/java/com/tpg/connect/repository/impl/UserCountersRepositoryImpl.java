@@ -0,0 +1,336 @@
+package com.tpg.connect.repository.impl;
+
+import com.google.cloud.firestore.*;
+import com.tpg.connect.model.UserCounters;
+import com.tpg.connect.repository.UserCountersRepository;
+import com.google.cloud.Timestamp;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * One "user_counters" document per user. The other repositories add their counter changes to the
+ * batch or transaction of the write that causes them, through the static helpers below, so a counter never
+ * commits without its message, read or notification. Every helper merges, so the first change
+ * creates the document.
+ *
+ * A document only holds complete totals once it has been backfilled ({@code backfilledAt}):
+ * before that it counts only what happened since counters were introduced, and readers count
+ * from the source documents instead.
+ */
+@Repository
+public class UserCountersRepositoryImpl implements UserCountersRepository {
+
+    static final String COLLECTION_NAME = "user_counters";
+    private static final String CONVERSATIONS_COLLECTION = "conversations";
+    private static final String NOTIFICATIONS_COLLECTION = "notifications";
+    private static final String UNREAD_BY_CONVERSATION = "unreadByConversation";
+    private static final String UNREAD_NOTIFICATIONS = "unreadNotifications";
+    private static final String MESSAGES_SENT = "messagesSent";
+    private static final String BACKFILLED_AT = "backfilledAt";
+    private static final String USERS_COLLECTION = "userAuth";
+    private static final String MESSAGES_SUBCOLLECTION = "messages";
+    private static final List<String> UNREAD_STATUSES = List.of("SENT", "DELIVERED");
+
+    @Autowired
+    private Firestore firestore;
+
+    @Override
+    public Optional<UserCounters> findByUserId(String userId) {
+        try {
+            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
+            return doc.exists() ? Optional.of(convertToUserCounters(doc)) : Optional.empty();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find user counters", e);
+        }
+    }
+
+    @Override
+    public List<String> findUserIdsAfter(String afterUserId, int limit) {
+        try {
+            // Every user, not just those with counters, so users without a document get backfilled too
+            Query query = firestore.collection(USERS_COLLECTION)
+                    .orderBy(FieldPath.documentId())
+                    .select(FieldPath.documentId())
+                    .limit(limit);
+            if (afterUserId != null) {
+                query = query.startAfter(afterUserId);
+            }
+            return query.get().get().getDocuments().stream()
+                    .map(DocumentSnapshot::getId)
+                    .collect(Collectors.toList());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to list users for counter reconciliation", e);
+        }
+    }
+
+    @Override
+    public long countUsers() {
+        try {
+            return firestore.collection(USERS_COLLECTION).count().get().get().getCount();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to count users", e);
+        }
+    }
+
+    /**
+     * Recount a user's unread messages and notifications from the documents they summarise and
+     * correct the counters if they drifted. Conversations that have no unread count for the user
+     * yet (created before per-participant counts existed) are recounted from their messages first,
+     * and a user who has not been backfilled is backfilled. Returns whether anything was corrected.
+     */
+    @Override
+    public boolean reconcile(String userId) {
+        return recount(userId, false);
+    }
+
+    /**
+     * Recount every one of the user's conversations from its messages, then set all of the user's
+     * counters, including messagesSent, and mark them backfilled. Safe to repeat.
+     */
+    @Override
+    public boolean backfill(String userId) {
+        return recount(userId, true);
+    }
+
+    private boolean recount(String userId, boolean recountAllConversations) {
+        try {
+            QuerySnapshot conversations = firestore.collection(CONVERSATIONS_COLLECTION)
+                    .whereArrayContains("participantIds", userId)
+                    .select("unreadCounts")
+                    .get()
+                    .get();
+            boolean corrected = false;
+            for (DocumentSnapshot conversation : conversations.getDocuments()) {
+                if (recountAllConversations || !(conversation.get(FieldPath.of("unreadCounts", userId)) instanceof Number)) {
+                    corrected |= recountConversation(conversation.getReference());
+                }
+            }
+            return correctCounters(userId, recountAllConversations) || corrected;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to reconcile user counters", e);
+        }
+    }
+
+    /**
+     * Set every participant's unread count on the conversation, their counter entry and their inbox
+     * entry for it, from the messages. A participant with a read watermark has unread whatever the
+     * others sent after it; one without (every conversation from before watermarks) has unread
+     * whatever the others sent that was never marked READ. Returns whether any count changed.
+     */
+    private boolean recountConversation(DocumentReference conversationRef) throws InterruptedException, ExecutionException {
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot conversation = transaction.get(conversationRef).get();
+            if (!conversation.exists() || !(conversation.get("participantIds") instanceof List<?>)) {
+                return false;
+            }
+            List<String> participantIds = ((List<?>) conversation.get("participantIds")).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.toList());
+
+            Map<String, Long> counts = new HashMap<>();
+            for (String participantId : participantIds) {
+                Object lastReadAt = conversation.get(FieldPath.of("readState", participantId, "lastReadAt"));
+                long unread = 0;
+                for (String senderId : participantIds) {
+                    if (senderId.equals(participantId)) {
+                        continue;
+                    }
+                    Query sent = conversationRef.collection(MESSAGES_SUBCOLLECTION).whereEqualTo("senderId", senderId);
+                    Query unreadQuery = lastReadAt instanceof Timestamp
+                            ? sent.whereGreaterThan("sentAt", lastReadAt)
+                            : sent.whereIn("status", UNREAD_STATUSES);
+                    unread += transaction.get(unreadQuery.count()).get().getCount();
+                }
+                counts.put(participantId, unread);
+            }
+
+            Map<String, DocumentSnapshot> inboxEntries = readParticipantEntries(transaction, conversationRef.getId(), participantIds);
+
+            boolean changed = false;
+            Map<String, Object> updates = new HashMap<>();
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                Object stored = conversation.get(FieldPath.of("unreadCounts", count.getKey()));
+                if (!(stored instanceof Number) || ((Number) stored).longValue() != count.getValue()) {
+                    changed = true;
+                }
+                updates.put("unreadCounts." + count.getKey(), count.getValue());
+            }
+            if (changed) {
+                transaction.update(conversationRef, updates);
+                counts.forEach((participantId, count) ->
+                        setUnreadMessages(firestore, transaction, participantId, conversationRef.getId(), count));
+            }
+            boolean inboxChanged = false;
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                DocumentSnapshot entry = inboxEntries.get(count.getKey());
+                if (entry != null && inboxUnreadDrifted(entry, count.getValue())) {
+                    InboxRepositoryImpl.setUnread(firestore, transaction, count.getKey(), conversationRef.getId(), count.getValue());
+                    inboxChanged = true;
+                }
+            }
+            return changed || inboxChanged;
+        }).get();
+    }
+
+    /**
+     * Set the user's counters, and the unread counts on their inbox entries, from their conversations'
+     * unread counts and a count() of their unread notifications, in one transaction so a message or
+     * read landing meanwhile is never overwritten. messagesSent is only recounted when backfilling or
+     * for a user who has not been backfilled.
+     */
+    private boolean correctCounters(String userId, boolean recountMessagesSent) throws InterruptedException, ExecutionException {
+        DocumentReference countersRef = document(firestore, userId);
+        Query conversationsQuery = firestore.collection(CONVERSATIONS_COLLECTION)
+                .whereArrayContains("participantIds", userId)
+                .select("unreadCounts");
+        AggregateQuery unreadNotificationsQuery = firestore.collection(NOTIFICATIONS_COLLECTION)
+                .whereEqualTo("userId", userId)
+                .whereEqualTo("isRead", false)
+                .count();
+
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot doc = transaction.get(countersRef).get();
+            boolean backfilled = doc.exists() && doc.contains(BACKFILLED_AT);
+
+            Map<String, Long> unreadByConversation = new HashMap<>();
+            List<String> conversationIds = new ArrayList<>();
+            for (DocumentSnapshot conversation : transaction.get(conversationsQuery).get().getDocuments()) {
+                conversationIds.add(conversation.getId());
+                Object unread = conversation.get(FieldPath.of("unreadCounts", userId));
+                if (unread instanceof Number && ((Number) unread).longValue() > 0) {
+                    unreadByConversation.put(conversation.getId(), ((Number) unread).longValue());
+                }
+            }
+            // Inbox badges are corrected from the same counts; entries that don't exist are left to the inbox build
+            List<String> driftedEntries = new ArrayList<>();
+            for (DocumentSnapshot entry : readUserEntries(transaction, userId, conversationIds)) {
+                if (inboxUnreadDrifted(entry, unreadByConversation.getOrDefault(entry.getId(), 0L))) {
+                    driftedEntries.add(entry.getId());
+                }
+            }
+            long unreadNotifications = transaction.get(unreadNotificationsQuery).get().getCount();
+            Long messagesSent = doc.getLong(MESSAGES_SENT);
+            if (recountMessagesSent || !backfilled || messagesSent == null) {
+                // Messages from before the counters existed live only in the conversations' subcollections
+                messagesSent = transaction.get(firestore.collectionGroup(MESSAGES_SUBCOLLECTION)
+                        .whereEqualTo("senderId", userId)
+                        .count()).get().getCount();
+            }
+
+            // Every read is done; writes follow
+            for (String conversationId : driftedEntries) {
+                InboxRepositoryImpl.setUnread(firestore, transaction, userId, conversationId,
+                        unreadByConversation.getOrDefault(conversationId, 0L));
+            }
+            if (backfilled
+                    && unreadByConversation.equals(convertToUserCounters(doc).getUnreadByConversation())
+                    && Objects.equals(doc.getLong(UNREAD_NOTIFICATIONS), unreadNotifications)
+                    && Objects.equals(doc.getLong(MESSAGES_SENT), messagesSent)) {
+                return !driftedEntries.isEmpty();
+            }
+
+            Map<String, Object> counters = new HashMap<>();
+            counters.put(UNREAD_BY_CONVERSATION, unreadByConversation);
+            counters.put(UNREAD_NOTIFICATIONS, unreadNotifications);
+            counters.put(MESSAGES_SENT, messagesSent);
+            counters.put(BACKFILLED_AT, backfilled ? doc.get(BACKFILLED_AT) : FieldValue.serverTimestamp());
+            transaction.set(countersRef, counters);
+            return true;
+        }).get();
+    }
+
+    // Each participant's inbox entry for the conversation, keyed by participant, for those that have one
+    private Map<String, DocumentSnapshot> readParticipantEntries(Transaction transaction, String conversationId,
+                                                                 List<String> participantIds)
+            throws InterruptedException, ExecutionException {
+        Map<String, DocumentSnapshot> entries = new HashMap<>();
+        if (participantIds.isEmpty()) {
+            return entries;
+        }
+        DocumentReference[] refs = participantIds.stream()
+                .map(participantId -> InboxRepositoryImpl.entryReference(firestore, participantId, conversationId))
+                .toArray(DocumentReference[]::new);
+        List<DocumentSnapshot> docs = transaction.getAll(refs).get();
+        for (int i = 0; i < docs.size(); i++) {
+            if (docs.get(i).exists()) {
+                entries.put(participantIds.get(i), docs.get(i));
+            }
+        }
+        return entries;
+    }
+
+    // A user's inbox entries for the given conversations, for those that exist
+    private List<DocumentSnapshot> readUserEntries(Transaction transaction, String userId, Collection<String> conversationIds)
+            throws InterruptedException, ExecutionException {
+        if (conversationIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        DocumentReference[] refs = conversationIds.stream()
+                .map(conversationId -> InboxRepositoryImpl.entryReference(firestore, userId, conversationId))
+                .toArray(DocumentReference[]::new);
+        return transaction.getAll(refs).get().stream()
+                .filter(DocumentSnapshot::exists)
+                .collect(Collectors.toList());
+    }
+
+    static boolean inboxUnreadDrifted(DocumentSnapshot entry, long unread) {
+        Long stored = entry.getLong("unreadCount");
+        return stored == null || stored != unread || !Boolean.valueOf(unread > 0).equals(entry.getBoolean("hasUnread"));
+    }
+
+    static void addUnreadMessage(Firestore firestore, UpdateBuilder<?> writes, String userId, String conversationId) {
+        writes.set(document(firestore, userId),
+                Map.of(UNREAD_BY_CONVERSATION, Map.of(conversationId, FieldValue.increment(1))),
+                SetOptions.merge());
+    }
+
+    static void setUnreadMessages(Firestore firestore, UpdateBuilder<?> writes, String userId, String conversationId, long count) {
+        Object value = count > 0 ? count : FieldValue.delete();
+        writes.set(document(firestore, userId),
+                Map.of(UNREAD_BY_CONVERSATION, Map.of(conversationId, value)),
+                SetOptions.merge());
+    }
+
+    static void addMessageSent(Firestore firestore, UpdateBuilder<?> writes, String userId) {
+        writes.set(document(firestore, userId), Map.of(MESSAGES_SENT, FieldValue.increment(1)), SetOptions.merge());
+    }
+
+    static void addUnreadNotifications(Firestore firestore, UpdateBuilder<?> writes, String userId, long delta) {
+        writes.set(document(firestore, userId), Map.of(UNREAD_NOTIFICATIONS, FieldValue.increment(delta)), SetOptions.merge());
+    }
+
+    static void clearUnreadNotifications(Firestore firestore, UpdateBuilder<?> writes, String userId) {
+        writes.set(document(firestore, userId), Map.of(UNREAD_NOTIFICATIONS, 0L), SetOptions.merge());
+    }
+
+    private static DocumentReference document(Firestore firestore, String userId) {
+        return firestore.collection(COLLECTION_NAME).document(userId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private UserCounters convertToUserCounters(DocumentSnapshot doc) {
+        UserCounters counters = new UserCounters();
+        counters.setUserId(doc.getId());
+        Object unread = doc.get(UNREAD_BY_CONVERSATION);
+        if (unread instanceof Map) {
+            Map<String, Long> unreadByConversation = new HashMap<>();
+            ((Map<String, Object>) unread).forEach((conversationId, count) -> {
+                if (count instanceof Number) {
+                    unreadByConversation.put(conversationId, ((Number) count).longValue());
+                }
+            });
+            counters.setUnreadByConversation(unreadByConversation);
+        }
+        // Kept as stored, so a counter that drifted below zero is seen as untrustworthy rather than as zero
+        Long unreadNotifications = doc.getLong(UNREAD_NOTIFICATIONS);
+        counters.setUnreadNotifications(unreadNotifications != null ? unreadNotifications : 0);
+        Long messagesSent = doc.getLong(MESSAGES_SENT);
+        counters.setMessagesSent(messagesSent != null ? messagesSent : 0);
+        counters.setBackfilled(doc.contains(BACKFILLED_AT));
+        return counters;
+    }
+}
@@ -9,7 +9,14 @@ import com.tpg.connect.model.user.FieldVisibility;
 import com.tpg.connect.model.user.UserPreferences;
 import com.tpg.connect.model.user.NotificationSettings;
 import com.tpg.connect.model.user.PhotoPrompt;
+import com.tpg.connect.model.user.Photo;
+import com.tpg.connect.model.user.ProfileCard;
 import com.tpg.connect.repository.UserProfileRepository;
+import com.tpg.connect.repository.index.CandidateIndex;
+import com.tpg.connect.repository.index.ProfileSearchIndex;
+import com.tpg.connect.repository.index.ProximityIndex;
+import com.tpg.connect.util.GeoHash;
+import com.google.api.core.ApiFuture;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +24,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Period;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
@@ -26,10 +34,28 @@ import java.util.stream.Collectors;
 public class UserProfileRepositoryImpl implements UserProfileRepository {
 
     private static final String COLLECTION_NAME = "userProfiles";
+    // One document per deleted profile, so other replicas can take it out of their in-memory indexes
+    private static final String DELETIONS_COLLECTION = "userProfileDeletions";
+    private static final int BATCH_LIMIT = 500;
+    private static final int GET_ALL_CHUNK_SIZE = 100;
+    // Everything a ProfileCard is built from; preferences, settings and the other prompts are never read
+    private static final FieldMask CARD_FIELDS = FieldMask.of(
+            "firstName", "dateOfBirth", "gender", "location", "photos", "interests", "writtenPrompts",
+            "fieldVisibility", "profile.gender", "profile.pronouns", "profile.jobTitle", "profile.university",
+            "profile.height", "profile.languages");
     
     @Autowired
     private Firestore firestore;
 
+    @Autowired
+    private CandidateIndex candidateIndex;
+
+    @Autowired
+    private ProximityIndex proximityIndex;
+
+    @Autowired
+    private ProfileSearchIndex profileSearchIndex;
+
     @Override
     public CompleteUserProfile save(CompleteUserProfile profile) {
         try {
@@ -45,7 +71,13 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
             }
             
             DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(profile.getConnectId());
-            docRef.set(convertToMap(profile)).get();
+            Map<String, Object> data = convertToMap(profile);
+            // The server's clock, like every other profile write, so replicas can sync from it
+            data.put("updatedAt", FieldValue.serverTimestamp());
+            docRef.set(data).get();
+            candidateIndex.index(profile);
+            proximityIndex.index(profile);
+            profileSearchIndex.index(profile);
             
             return profile;
         } catch (InterruptedException | ExecutionException e) {
@@ -113,6 +145,79 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
         }
     }
 
+    @Override
+    public List<CompleteUserProfile> findProfilesPage(String startAfterConnectId, int limit) {
+        try {
+            Query query = firestore.collection(COLLECTION_NAME)
+                    .orderBy(FieldPath.documentId())
+                    .limit(limit);
+            if (startAfterConnectId != null) {
+                query = query.startAfter(startAfterConnectId);
+            }
+
+            return query.get().get().getDocuments().stream()
+                    .map(this::convertToCompleteUserProfile)
+                    .collect(Collectors.toList());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find user profiles page", e);
+        }
+    }
+
+    @Override
+    public List<CompleteUserProfile> findProfilesUpdatedSince(Timestamp since) {
+        try {
+            QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
+                    .whereGreaterThan("updatedAt", since)
+                    .get()
+                    .get();
+
+            return querySnapshot.getDocuments().stream()
+                    .map(this::convertToCompleteUserProfile)
+                    .collect(Collectors.toList());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find recently updated profiles", e);
+        }
+    }
+
+    @Override
+    public Map<String, Timestamp> findProfilesDeletedSince(Timestamp since) {
+        try {
+            Map<String, Timestamp> deleted = new HashMap<>();
+            for (DocumentSnapshot doc : firestore.collection(DELETIONS_COLLECTION)
+                    .whereGreaterThan("deletedAt", since)
+                    .get()
+                    .get()
+                    .getDocuments()) {
+                deleted.put(doc.getId(), doc.getTimestamp("deletedAt"));
+            }
+            return deleted;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find recently deleted profiles", e);
+        }
+    }
+
+    @Override
+    public void purgeProfileDeletionsBefore(Timestamp cutoff) {
+        try {
+            List<QueryDocumentSnapshot> expired;
+            do {
+                expired = firestore.collection(DELETIONS_COLLECTION)
+                        .whereLessThan("deletedAt", cutoff)
+                        .limit(BATCH_LIMIT)
+                        .get()
+                        .get()
+                        .getDocuments();
+                if (!expired.isEmpty()) {
+                    WriteBatch batch = firestore.batch();
+                    expired.forEach(doc -> batch.delete(doc.getReference()));
+                    batch.commit().get();
+                }
+            } while (expired.size() == BATCH_LIMIT);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to purge profile deletions", e);
+        }
+    }
+
     @Override
     public boolean existsByConnectId(String connectId) {
         try {
@@ -146,7 +251,11 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
             
             docRef.update(updates).get();
             
-            return findByConnectId(connectId).orElseThrow(() -> new RuntimeException("Profile not found"));
+            CompleteUserProfile updated = findByConnectId(connectId).orElseThrow(() -> new RuntimeException("Profile not found"));
+            candidateIndex.index(updated);
+            proximityIndex.index(updated);
+            profileSearchIndex.index(updated);
+            return updated;
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to update basic info", e);
         }
@@ -255,7 +364,11 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
             
             docRef.update(updates).get();
             
-            return findByConnectId(connectId).orElseThrow(() -> new RuntimeException("Profile not found"));
+            CompleteUserProfile updated = findByConnectId(connectId).orElseThrow(() -> new RuntimeException("Profile not found"));
+            candidateIndex.index(updated);
+            proximityIndex.index(updated);
+            profileSearchIndex.index(updated);
+            return updated;
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to update detailed profile", e);
         }
@@ -384,6 +497,9 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
             updates.put("version", FieldValue.increment(1));
             
             docRef.update(updates).get();
+            candidateIndex.markInactive(connectId);
+            proximityIndex.remove(connectId);
+            profileSearchIndex.markInactive(connectId);
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to deactivate profile", e);
         }
@@ -392,7 +508,14 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
     @Override
     public void deleteProfile(String connectId) {
         try {
-            firestore.collection(COLLECTION_NAME).document(connectId).delete().get();
+            WriteBatch batch = firestore.batch();
+            batch.delete(firestore.collection(COLLECTION_NAME).document(connectId));
+            batch.set(firestore.collection(DELETIONS_COLLECTION).document(connectId),
+                    Map.of("deletedAt", FieldValue.serverTimestamp()));
+            batch.commit().get();
+            candidateIndex.remove(connectId);
+            proximityIndex.remove(connectId);
+            profileSearchIndex.remove(connectId);
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException("Failed to delete profile", e);
         }
@@ -400,21 +523,30 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
 
     @Override
     public List<CompleteUserProfile> findProfilesByConnectIds(List<String> connectIds) {
+        if (connectIds == null || connectIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
         try {
-            List<CompleteUserProfile> profiles = new ArrayList<>();
-            
-            // Firestore has a limit of 10 documents per 'in' query
-            List<List<String>> chunks = partitionList(connectIds, 10);
-            
-            for (List<String> chunk : chunks) {
-                QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
-                        .whereIn(FieldPath.documentId(), chunk)
-                        .get()
-                        .get();
-                        
-                profiles.addAll(querySnapshot.getDocuments().stream()
-                        .map(this::convertToCompleteUserProfile)
-                        .collect(Collectors.toList()));
+            // Multi-document gets are issued concurrently, so latency is one round trip per request
+            CollectionReference collection = firestore.collection(COLLECTION_NAME);
+            List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(connectIds));
+            List<ApiFuture<List<DocumentSnapshot>>> futures = new ArrayList<>();
+            for (List<String> chunk : partitionList(uniqueIds, GET_ALL_CHUNK_SIZE)) {
+                DocumentReference[] refs = chunk.stream()
+                        .map(collection::document)
+                        .toArray(DocumentReference[]::new);
+                futures.add(firestore.getAll(refs));
+            }
+
+            // getAll returns snapshots in request order, so the caller's ordering is preserved
+            List<CompleteUserProfile> profiles = new ArrayList<>(uniqueIds.size());
+            for (ApiFuture<List<DocumentSnapshot>> future : futures) {
+                for (DocumentSnapshot doc : future.get()) {
+                    if (doc.exists()) {
+                        profiles.add(convertToCompleteUserProfile(doc));
+                    }
+                }
             }
             
             return profiles;
@@ -430,6 +562,38 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
                 .collect(Collectors.toMap(CompleteUserProfile::getConnectId, profile -> profile));
     }
 
+    @Override
+    public List<ProfileCard> findCardsByConnectIds(List<String> connectIds) {
+        if (connectIds == null || connectIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        try {
+            CollectionReference collection = firestore.collection(COLLECTION_NAME);
+            List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(connectIds));
+            List<ApiFuture<List<DocumentSnapshot>>> futures = new ArrayList<>();
+            for (List<String> chunk : partitionList(uniqueIds, GET_ALL_CHUNK_SIZE)) {
+                DocumentReference[] refs = chunk.stream()
+                        .map(collection::document)
+                        .toArray(DocumentReference[]::new);
+                futures.add(firestore.getAll(refs, CARD_FIELDS));
+            }
+
+            List<ProfileCard> cards = new ArrayList<>(uniqueIds.size());
+            for (ApiFuture<List<DocumentSnapshot>> future : futures) {
+                for (DocumentSnapshot doc : future.get()) {
+                    if (doc.exists()) {
+                        cards.add(convertToProfileCard(doc));
+                    }
+                }
+            }
+
+            return cards;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find profile cards by connectIds", e);
+        }
+    }
+
     // Helper conversion methods
     private Map<String, Object> convertToMap(CompleteUserProfile profile) {
         Map<String, Object> map = new HashMap<>();
@@ -439,6 +603,10 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
         map.put("gender", profile.getGender());
         map.put("email", profile.getEmail());
         map.put("location", profile.getLocation());
+        map.put("latitude", profile.getLatitude());
+        map.put("longitude", profile.getLongitude());
+        map.put("geohash", GeoHash.isValid(profile.getLatitude(), profile.getLongitude())
+                ? GeoHash.encode(profile.getLatitude(), profile.getLongitude(), GeoHash.MAX_PRECISION) : null);
         map.put("dateOfBirth", profile.getDateOfBirth() != null ? profile.getDateOfBirth().toString() : null);
         map.put("active", profile.getActive());
         map.put("isOnline", profile.getOnline());
@@ -504,6 +672,8 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
         profile.setGender((String) data.get("gender"));
         profile.setEmail((String) data.get("email"));
         profile.setLocation((String) data.get("location"));
+        profile.setLatitude(safeToDouble(data.get("latitude")));
+        profile.setLongitude(safeToDouble(data.get("longitude")));
         profile.setActive(data.get("active") != null ? (Boolean) data.get("active") : true);
         profile.setOnline(data.get("isOnline") != null ? (Boolean) data.get("isOnline") : false);
         profile.setPremium(data.get("isPremium") != null ? (Boolean) data.get("isPremium") : false);
@@ -562,6 +732,59 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
         return profile;
     }
 
+    /**
+     * Decode a card-masked profile document, resolving gender and interests the way
+     * CompleteUserProfile does and leaving out the fields the owner has hidden
+     */
+    private ProfileCard convertToProfileCard(DocumentSnapshot doc) {
+        Map<String, Object> profile = (Map<String, Object>) doc.get("profile");
+        Map<String, Object> visibility = (Map<String, Object>) doc.get("fieldVisibility");
+
+        ProfileCard card = new ProfileCard();
+        card.setConnectId(doc.getId());
+        card.setFirstName(doc.getString("firstName"));
+        card.setLocation(doc.getString("location"));
+        if (doc.get("dateOfBirth") instanceof String) {
+            card.setAge(Period.between(LocalDate.parse(doc.getString("dateOfBirth")), LocalDate.now()).getYears());
+        }
+        card.setGender(profile != null && profile.get("gender") != null
+                ? (String) profile.get("gender") : doc.getString("gender"));
+        // Interests are held in profile.languages once a detailed profile exists
+        List<String> interests = profile != null
+                ? (List<String>) profile.get("languages") : (List<String>) doc.get("interests");
+        card.setInterests(interests != null ? interests : new ArrayList<>());
+
+        List<Map<String, Object>> photoMaps = (List<Map<String, Object>>) doc.get("photos");
+        if (photoMaps != null) {
+            card.setPhotos(photoMaps.stream()
+                    .filter(Objects::nonNull)
+                    .map(photo -> new Photo((String) photo.get("id"), (String) photo.get("url"),
+                            Boolean.TRUE.equals(photo.get("isPrimary")),
+                            Objects.requireNonNullElse(safeToInteger(photo.get("order")), 0)))
+                    .collect(Collectors.toList()));
+        }
+        card.setWrittenPrompts(convertToWrittenPromptList((List<Map<String, Object>>) doc.get("writtenPrompts")));
+
+        if (profile != null) {
+            card.setPronouns((String) profile.get("pronouns"));
+            if (isVisible(visibility, "jobTitle")) {
+                card.setJobTitle((String) profile.get("jobTitle"));
+            }
+            if (isVisible(visibility, "university")) {
+                card.setUniversity((String) profile.get("university"));
+            }
+            if (isVisible(visibility, "height")) {
+                card.setHeight((String) profile.get("height"));
+            }
+        }
+        return card;
+    }
+
+    // Fields are visible unless explicitly hidden, matching the FieldVisibility defaults
+    private boolean isVisible(Map<String, Object> visibility, String field) {
+        return visibility == null || !Boolean.FALSE.equals(visibility.get(field));
+    }
+
     // Enhanced Photo conversion methods
     private Map<String, Object> convertEnhancedPhotoToMap(EnhancedPhoto photo) {
         if (photo == null) return null;
@@ -934,6 +1157,10 @@ public class UserProfileRepositoryImpl implements UserProfileRepository {
         return partitions;
     }
     
+    private Double safeToDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+    
     private Integer safeToInteger(Object value) {
         if (value == null) return null;
         if (value instanceof Integer) return (Integer) value;
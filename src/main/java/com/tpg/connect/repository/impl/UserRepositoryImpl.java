@@ -564,6 +564,24 @@ public class UserRepositoryImpl extends FirestoreRepositoryBase implements UserR
         }
     }
     
+    @Override
+    public Set<String> findConnectIdsByApplicationStatus(ApplicationStatus applicationStatus) {
+        try {
+            // Document ids only; avoids transferring and converting every user document
+            QuerySnapshot querySnapshot = firestore.collection(COLLECTION_NAME)
+                    .whereEqualTo("applicationStatus", applicationStatus.toString())
+                    .select(new String[0])
+                    .get()
+                    .get();
+                    
+            return querySnapshot.getDocuments().stream()
+                    .map(DocumentSnapshot::getId)
+                    .collect(Collectors.toCollection(HashSet::new));
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to find connectIds by application status", e);
+        }
+    }
+    
     @Override
     public List<User> findByUserStatus(UserStatus userStatus) {
         try {
@@ -0,0 +1,370 @@
+package com.tpg.connect.repository.index;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.UserPreferences;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * In-memory discovery candidate index over user profiles.
+ *
+ * Active profiles are bucketed by gender, interestedIn and a five-year birth-year band so that
+ * candidate generation only walks the buckets a seeker's preferences can match, instead of
+ * scanning the whole userProfiles collection. Bands are keyed on date of birth rather than age
+ * so entries never go stale on birthdays. Inactive profiles are tracked but kept out of buckets, and
+ * a band is dropped once its last profile leaves.
+ *
+ * A limited search takes one candidate from each matching band in turn, starting from a band that
+ * rotates between searches, so a small limit spreads over every age band the seeker accepts rather
+ * than filling up from the oldest.
+ *
+ * The index is maintained incrementally from UserProfileRepositoryImpl writes and warmed/synced
+ * by CandidateIndexSyncService.
+ */
+@Component
+public class CandidateIndex {
+
+    static final int BIRTH_YEAR_BAND = 5;
+    private static final int UNKNOWN_BAND = Integer.MIN_VALUE;
+    private static final long UNKNOWN_DOB = Long.MIN_VALUE;
+    private static final int MAX_SUPPORTED_AGE = 120;
+
+    public enum Gender { MALE, FEMALE, NON_BINARY, OTHER, UNKNOWN }
+
+    public enum InterestedIn { MEN, WOMEN, EVERYONE, UNKNOWN }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // gender -> interestedIn -> birth-year band -> connectIds (active profiles only)
+    private final Map<Gender, Map<InterestedIn, NavigableMap<Integer, Set<String>>>> buckets =
+            new EnumMap<>(Gender.class);
+
+    private final AtomicInteger nextStartBand = new AtomicInteger();
+
+    public CandidateIndex() {
+        for (Gender gender : Gender.values()) {
+            Map<InterestedIn, NavigableMap<Integer, Set<String>>> byInterest = new EnumMap<>(InterestedIn.class);
+            for (InterestedIn interestedIn : InterestedIn.values()) {
+                byInterest.put(interestedIn, new ConcurrentSkipListMap<>());
+            }
+            buckets.put(gender, byInterest);
+        }
+    }
+
+    /**
+     * Insert or move a profile to the bucket matching its current attributes
+     */
+    public void index(CompleteUserProfile profile) {
+        if (profile == null || profile.getConnectId() == null) {
+            return;
+        }
+
+        Entry updated = new Entry(
+                profile.getConnectId(),
+                normalizeGender(profile.getGender()),
+                normalizeInterestedIn(profile.getInterestedIn()),
+                profile.getDateOfBirth() != null ? profile.getDateOfBirth().toEpochDay() : UNKNOWN_DOB,
+                profile.getActive());
+
+        entries.compute(updated.connectId, (id, previous) -> {
+            if (previous != null) {
+                removeFromBucket(previous);
+            }
+            if (updated.active) {
+                addToBucket(updated);
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Keep the profile known to the index but take it out of discovery
+     */
+    public void markInactive(String connectId) {
+        entries.computeIfPresent(connectId, (id, previous) -> {
+            removeFromBucket(previous);
+            return new Entry(previous.connectId, previous.gender, previous.interestedIn, previous.dobEpochDay, false);
+        });
+    }
+
+    public void remove(String connectId) {
+        entries.computeIfPresent(connectId, (id, previous) -> {
+            removeFromBucket(previous);
+            return null;
+        });
+    }
+
+    public boolean contains(String connectId) {
+        return entries.containsKey(connectId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Bands holding at least one active profile, across every bucket
+    int bandCount() {
+        return buckets.values().stream()
+                .flatMap(byInterest -> byInterest.values().stream())
+                .mapToInt(Map::size)
+                .sum();
+    }
+
+    /**
+     * Find up to {@code limit} active candidates compatible with the seeker's gender preference,
+     * reciprocal interestedIn and age range. Only buckets that can match are visited, taking one
+     * candidate from each band in turn.
+     */
+    public List<String> findCandidates(CompleteUserProfile seeker, Predicate<String> excluded, int limit) {
+        List<String> result = new ArrayList<>(limit);
+        if (seeker == null || limit <= 0) {
+            return result;
+        }
+
+        Query query = new Query(seeker);
+        List<Iterator<String>> bands = new ArrayList<>();
+        for (Gender gender : query.wantedGenders) {
+            Map<InterestedIn, NavigableMap<Integer, Set<String>>> byInterest = buckets.get(gender);
+            for (InterestedIn interestedIn : InterestedIn.values()) {
+                if (!accepts(interestedIn, query.seekerGender)) {
+                    continue;
+                }
+
+                NavigableMap<Integer, Set<String>> byBand = byInterest.get(interestedIn);
+                Collection<Set<String>> candidateBands = query.hasAgeRange
+                        ? byBand.subMap(query.minBand, true, query.maxBand, true).values()
+                        : byBand.values();
+                for (Set<String> band : candidateBands) {
+                    bands.add(band.iterator());
+                }
+            }
+        }
+        if (bands.isEmpty()) {
+            return result;
+        }
+
+        Collections.rotate(bands, -Math.floorMod(nextStartBand.getAndIncrement(), bands.size()));
+        Deque<Iterator<String>> turns = new ArrayDeque<>(bands);
+        while (result.size() < limit && !turns.isEmpty()) {
+            Iterator<String> band = turns.poll();
+            String candidate = nextCandidate(band, query, excluded);
+            if (candidate != null) {
+                result.add(candidate);
+                turns.offer(band);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keep, in order, up to {@code limit} of the given ids that findCandidates could return for this
+     * seeker. Used when another index (such as ProximityIndex) has already narrowed the candidates.
+     */
+    public List<String> filterCandidates(CompleteUserProfile seeker, Collection<String> connectIds,
+                                         Predicate<String> excluded, int limit) {
+        List<String> result = new ArrayList<>(Math.min(limit, connectIds.size()));
+        if (seeker == null || limit <= 0) {
+            return result;
+        }
+
+        Query query = new Query(seeker);
+        for (String connectId : connectIds) {
+            if (connectId.equals(query.seekerId) || (excluded != null && excluded.test(connectId))) {
+                continue;
+            }
+            Entry entry = entries.get(connectId);
+            if (entry == null || !entry.active
+                    || !query.wantedGenders.contains(entry.gender)
+                    || !accepts(entry.interestedIn, query.seekerGender)
+                    || (query.hasAgeRange && (entry.dobEpochDay < query.minDob || entry.dobEpochDay > query.maxDob))) {
+                continue;
+            }
+            result.add(connectId);
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Genders the seeker wants to see, from preferences.interestedIn or the profile's interestedIn
+     */
+    public static Set<Gender> wantedGenders(CompleteUserProfile seeker) {
+        List<String> preferred = seeker.getPreferences() != null ? seeker.getPreferences().getInterestedIn() : null;
+        Set<InterestedIn> wanted = EnumSet.noneOf(InterestedIn.class);
+        if (preferred != null) {
+            for (String value : preferred) {
+                wanted.add(normalizeInterestedIn(value));
+            }
+        }
+        if (wanted.isEmpty()) {
+            wanted.add(normalizeInterestedIn(seeker.getInterestedIn()));
+        }
+
+        if (wanted.contains(InterestedIn.EVERYONE) || wanted.contains(InterestedIn.UNKNOWN)) {
+            return EnumSet.allOf(Gender.class);
+        }
+
+        Set<Gender> genders = EnumSet.noneOf(Gender.class);
+        if (wanted.contains(InterestedIn.MEN)) genders.add(Gender.MALE);
+        if (wanted.contains(InterestedIn.WOMEN)) genders.add(Gender.FEMALE);
+        return genders;
+    }
+
+    /**
+     * Whether a candidate with the given interestedIn would want to see a seeker of this gender
+     */
+    public static boolean accepts(InterestedIn candidateInterest, Gender seekerGender) {
+        switch (candidateInterest) {
+            case MEN:
+                return seekerGender == Gender.MALE || seekerGender == Gender.UNKNOWN;
+            case WOMEN:
+                return seekerGender == Gender.FEMALE || seekerGender == Gender.UNKNOWN;
+            default:
+                return true;
+        }
+    }
+
+    // The next candidate in the band the seeker can see, or null once the band is used up
+    private String nextCandidate(Iterator<String> band, Query query, Predicate<String> excluded) {
+        while (band.hasNext()) {
+            String connectId = band.next();
+            if (connectId.equals(query.seekerId) || (excluded != null && excluded.test(connectId))) {
+                continue;
+            }
+            if (query.hasAgeRange) {
+                Entry entry = entries.get(connectId);
+                if (entry == null || entry.dobEpochDay < query.minDob || entry.dobEpochDay > query.maxDob) {
+                    continue;
+                }
+            }
+            return connectId;
+        }
+        return null;
+    }
+
+    private void addToBucket(Entry entry) {
+        buckets.get(entry.gender).get(entry.interestedIn).compute(entry.band, (band, ids) -> {
+            Set<String> updated = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            updated.add(entry.connectId);
+            return updated;
+        });
+    }
+
+    private void removeFromBucket(Entry entry) {
+        // Drops the band with its last profile, so searches don't keep visiting empty bands
+        buckets.get(entry.gender).get(entry.interestedIn).computeIfPresent(entry.band, (band, ids) -> {
+            ids.remove(entry.connectId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static int bandOf(int birthYear) {
+        return Math.floorDiv(birthYear, BIRTH_YEAR_BAND);
+    }
+
+    public static Gender normalizeGender(String gender) {
+        if (gender == null) return Gender.UNKNOWN;
+
+        switch (gender.toLowerCase().trim()) {
+            case "male":
+            case "man":
+                return Gender.MALE;
+            case "female":
+            case "woman":
+                return Gender.FEMALE;
+            case "non-binary":
+            case "nonbinary":
+            case "non_binary":
+                return Gender.NON_BINARY;
+            case "":
+                return Gender.UNKNOWN;
+            default:
+                return Gender.OTHER;
+        }
+    }
+
+    public static InterestedIn normalizeInterestedIn(String interestedIn) {
+        if (interestedIn == null) return InterestedIn.UNKNOWN;
+
+        switch (interestedIn.toLowerCase().trim()) {
+            case "male":
+            case "man":
+            case "men":
+                return InterestedIn.MEN;
+            case "female":
+            case "woman":
+            case "women":
+                return InterestedIn.WOMEN;
+            case "everyone":
+            case "all":
+            case "both":
+                return InterestedIn.EVERYONE;
+            default:
+                return InterestedIn.UNKNOWN;
+        }
+    }
+
+    /**
+     * A seeker's preferences resolved to index terms
+     */
+    private static final class Query {
+        private final String seekerId;
+        private final Gender seekerGender;
+        private final Set<Gender> wantedGenders;
+        private final boolean hasAgeRange;
+        private long minDob = Long.MIN_VALUE;
+        private long maxDob = Long.MAX_VALUE;
+        private int minBand = Integer.MIN_VALUE;
+        private int maxBand = Integer.MAX_VALUE;
+
+        private Query(CompleteUserProfile seeker) {
+            this.seekerId = seeker.getConnectId();
+            this.seekerGender = normalizeGender(seeker.getGender());
+            this.wantedGenders = wantedGenders(seeker);
+
+            UserPreferences preferences = seeker.getPreferences();
+            this.hasAgeRange = preferences != null && preferences.getAgeRange() != null;
+            if (hasAgeRange) {
+                int minAge = Math.max(0, preferences.getAgeRange().getMin());
+                int maxAge = preferences.getAgeRange().getMax() > 0 ? preferences.getAgeRange().getMax() : MAX_SUPPORTED_AGE;
+                LocalDate today = LocalDate.now();
+                // age in [minAge, maxAge] <=> dateOfBirth in (today - (maxAge + 1) years, today - minAge years]
+                LocalDate earliest = today.minusYears(maxAge + 1L).plusDays(1);
+                LocalDate latest = today.minusYears(minAge);
+                minDob = earliest.toEpochDay();
+                maxDob = latest.toEpochDay();
+                minBand = bandOf(earliest.getYear());
+                maxBand = bandOf(latest.getYear());
+            }
+        }
+    }
+
+    /**
+     * Indexed attributes for a single profile
+     */
+    private static final class Entry {
+        private final String connectId;
+        private final Gender gender;
+        private final InterestedIn interestedIn;
+        private final long dobEpochDay;
+        private final boolean active;
+        private final int band;
+
+        private Entry(String connectId, Gender gender, InterestedIn interestedIn, long dobEpochDay, boolean active) {
+            this.connectId = connectId;
+            this.gender = gender;
+            this.interestedIn = interestedIn;
+            this.dobEpochDay = dobEpochDay;
+            this.active = active;
+            this.band = dobEpochDay == UNKNOWN_DOB ? UNKNOWN_BAND : bandOf(LocalDate.ofEpochDay(dobEpochDay).getYear());
+        }
+    }
+}
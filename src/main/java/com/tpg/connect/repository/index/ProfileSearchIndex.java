@@ -0,0 +1,524 @@
+package com.tpg.connect.repository.index;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index behind profile search.
+ *
+ * Every active profile gets a dense ordinal, and each searchable term (gender, dating intention,
+ * location token, interest) maps to a posting list of ordinals: a sorted int array while the term
+ * is rare, a bitmap once that is smaller. A search ORs the postings of each facet's values, ANDs
+ * the facets together and with the active set, then walks the surviving ordinals once to apply the
+ * age range (a date-of-birth column, so ages never go stale), rank and cut the page. Nothing is
+ * read from Firestore; callers hydrate only the page of ids returned.
+ *
+ * Ranking is by the number of requested interests a profile shares, or by age (youngest first),
+ * with connectId breaking ties. Pages continue from an opaque cursor holding the last (rank,
+ * connectId) returned, so they stay consistent while profiles are added or change.
+ *
+ * Maintained alongside CandidateIndex from UserProfileRepositoryImpl writes and CandidateIndexSyncService.
+ */
+@Component
+public class ProfileSearchIndex {
+
+    private static final long UNKNOWN_DOB = Long.MIN_VALUE;
+    private static final int MAX_SUPPORTED_AGE = 120;
+    private static final int MIN_DENSE_POSTING_SIZE = 64;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    public enum Sort { RELEVANCE, AGE }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // All guarded by lock
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final Map<String, Posting> postings = new HashMap<>();
+    private final BitSet active = new BitSet();
+    private Entry[] entries = new Entry[1024];
+    private int nextOrdinal = 0;
+
+    /**
+     * Insert or re-index a profile; inactive profiles are taken out of search
+     */
+    public void index(CompleteUserProfile profile) {
+        if (profile == null || profile.getConnectId() == null) {
+            return;
+        }
+        if (!profile.getActive()) {
+            remove(profile.getConnectId());
+            return;
+        }
+
+        Entry updated = new Entry(profile);
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinals.computeIfAbsent(updated.connectId, id -> allocateOrdinal());
+            Entry previous = entries[ordinal];
+            if (previous != null) {
+                for (String term : previous.terms) {
+                    if (!updated.hasTerm(term)) {
+                        removePosting(term, ordinal);
+                    }
+                }
+            }
+            for (int i = 0; i < updated.terms.length; i++) {
+                Posting posting = postings.computeIfAbsent(updated.terms[i], Posting::new);
+                if (previous == null || !previous.hasTerm(updated.terms[i])) {
+                    posting.add(ordinal);
+                }
+                updated.terms[i] = posting.term; // Entries share one copy of each term string
+            }
+            entries[ordinal] = updated;
+            active.set(ordinal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void markInactive(String connectId) {
+        remove(connectId);
+    }
+
+    public void remove(String connectId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(connectId);
+            if (ordinal == null || entries[ordinal] == null) {
+                return;
+            }
+            for (String term : entries[ordinal].terms) {
+                removePosting(term, ordinal);
+            }
+            entries[ordinal] = null;
+            active.clear(ordinal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return active.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * One page of matching connectIds, best ranked first, after the cursor (or after {@code offset}
+     * results when there is no cursor). Excluded ids never match.
+     */
+    public Page search(Criteria criteria, Collection<String> excluded, String cursor, int offset, int limit) {
+        Cursor after = cursor != null && !cursor.isBlank() ? Cursor.decode(cursor) : null;
+        int skip = after != null ? 0 : Math.max(0, offset);
+        if (limit <= 0) {
+            return new Page(new ArrayList<>(), null, 0);
+        }
+
+        lock.readLock().lock();
+        try {
+            BitSet matches = (BitSet) active.clone();
+            if (!intersect(matches, criteria.genders, "g:")
+                    || !intersect(matches, criteria.datingIntentions, "d:")
+                    || !intersectEach(matches, criteria.locationTokens, "l:")
+                    || !intersect(matches, criteria.interests, "i:")) {
+                return new Page(new ArrayList<>(), null, 0);
+            }
+            if (excluded != null) {
+                for (String connectId : excluded) {
+                    Integer ordinal = ordinals.get(connectId);
+                    if (ordinal != null) {
+                        matches.clear(ordinal);
+                    }
+                }
+            }
+
+            long[] dobRange = criteria.dobRange();
+            List<String> interestTerms = new ArrayList<>();
+            for (String interest : criteria.interests) {
+                interestTerms.add("i:" + interest);
+            }
+            int wanted = skip + limit;
+            PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(wanted + 1, 1024), Collections.reverseOrder());
+            // total counts every match so it stays the same across cursor pages; remaining is what follows the cursor
+            int total = 0;
+            int remaining = 0;
+            for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+                Entry entry = entries[ordinal];
+                if (dobRange != null && (entry.dobEpochDay < dobRange[0] || entry.dobEpochDay > dobRange[1])) {
+                    continue;
+                }
+                long rank = criteria.sort == Sort.AGE ? entry.dobEpochDay : sharedCount(entry, interestTerms);
+                total++;
+                if (after != null && Hit.compare(rank, entry.connectId, after.hit) <= 0) {
+                    continue;
+                }
+                remaining++;
+                if (best.size() < wanted) {
+                    best.add(new Hit(entry.connectId, rank));
+                } else if (Hit.compare(rank, entry.connectId, best.peek()) < 0) {
+                    best.poll();
+                    best.add(new Hit(entry.connectId, rank));
+                }
+            }
+
+            List<Hit> ordered = new ArrayList<>(best);
+            Collections.sort(ordered);
+            List<String> connectIds = new ArrayList<>(limit);
+            for (int i = skip; i < ordered.size(); i++) {
+                connectIds.add(ordered.get(i).connectId);
+            }
+            String nextCursor = remaining > wanted && !connectIds.isEmpty()
+                    ? new Cursor(ordered.get(ordered.size() - 1)).encode()
+                    : null;
+            return new Page(connectIds, nextCursor, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int allocateOrdinal() {
+        if (nextOrdinal == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        return nextOrdinal++;
+    }
+
+    private void removePosting(String term, int ordinal) {
+        Posting posting = postings.get(term);
+        if (posting != null && posting.remove(ordinal) && posting.isEmpty()) {
+            postings.remove(term);
+        }
+    }
+
+    /**
+     * AND the union of the values' postings into matches; false once nothing can match
+     */
+    private boolean intersect(BitSet matches, Set<String> values, String field) {
+        if (values.isEmpty()) {
+            return true;
+        }
+        BitSet union = new BitSet(nextOrdinal);
+        for (String value : values) {
+            Posting posting = postings.get(field + value);
+            if (posting != null) {
+                posting.orInto(union);
+            }
+        }
+        matches.and(union);
+        return !matches.isEmpty();
+    }
+
+    /**
+     * AND each value's postings into matches, so every value must be present
+     */
+    private boolean intersectEach(BitSet matches, Set<String> values, String field) {
+        for (String value : values) {
+            if (!intersect(matches, Set.of(value), field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long sharedCount(Entry entry, List<String> interestTerms) {
+        long shared = 0;
+        for (String term : interestTerms) {
+            if (entry.hasTerm(term)) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    static String normalizeTerm(String value) {
+        return value == null ? "" : NON_WORD.matcher(value.toLowerCase(Locale.ROOT)).replaceAll("");
+    }
+
+    static Set<String> locationTokens(String location) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (location != null) {
+            for (String token : NON_WORD.split(location.toLowerCase(Locale.ROOT))) {
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static Set<String> normalizedTerms(Collection<String> values) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (values != null) {
+            for (String value : values) {
+                String term = normalizeTerm(value);
+                if (!term.isEmpty()) {
+                    terms.add(term);
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Filters and ordering for a search; facets left unset match everyone
+     */
+    public static final class Criteria {
+        private Integer minAge;
+        private Integer maxAge;
+        private Set<String> locationTokens = Set.of();
+        private Set<String> interests = Set.of();
+        private Set<String> genders = Set.of();
+        private Set<String> datingIntentions = Set.of();
+        private Sort sort = Sort.RELEVANCE;
+
+        public Criteria ageBetween(Integer minAge, Integer maxAge) {
+            this.minAge = minAge;
+            this.maxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Every word of the location must appear in the profile's location
+         */
+        public Criteria location(String location) {
+            this.locationTokens = locationTokens(location);
+            return this;
+        }
+
+        /**
+         * Profiles sharing any of the interests; more shared interests rank higher
+         */
+        public Criteria interests(List<String> interests) {
+            this.interests = normalizedTerms(interests);
+            return this;
+        }
+
+        public Criteria genders(List<String> genders) {
+            Set<String> terms = new LinkedHashSet<>();
+            if (genders != null) {
+                for (String gender : genders) {
+                    terms.add(CandidateIndex.normalizeGender(gender).name());
+                }
+            }
+            this.genders = terms;
+            return this;
+        }
+
+        public Criteria datingIntentions(List<String> datingIntentions) {
+            this.datingIntentions = normalizedTerms(datingIntentions);
+            return this;
+        }
+
+        public Criteria sortBy(String sortBy) {
+            this.sort = sortBy != null && sortBy.trim().equalsIgnoreCase("age") ? Sort.AGE : Sort.RELEVANCE;
+            return this;
+        }
+
+        // age in [minAge, maxAge] <=> dateOfBirth in (today - (maxAge + 1) years, today - minAge years]
+        private long[] dobRange() {
+            if (minAge == null && maxAge == null) {
+                return null;
+            }
+            int min = minAge != null ? Math.max(0, minAge) : 0;
+            int max = maxAge != null && maxAge > 0 ? maxAge : MAX_SUPPORTED_AGE;
+            LocalDate today = LocalDate.now();
+            return new long[] {
+                    today.minusYears(max + 1L).plusDays(1).toEpochDay(),
+                    today.minusYears(min).toEpochDay()
+            };
+        }
+    }
+
+    /**
+     * A page of connectIds, the cursor for the next page (null on the last), and how many
+     * profiles matched in total, wherever the page starts
+     */
+    public static final class Page {
+        private final List<String> connectIds;
+        private final String nextCursor;
+        private final int total;
+
+        Page(List<String> connectIds, String nextCursor, int total) {
+            this.connectIds = connectIds;
+            this.nextCursor = nextCursor;
+            this.total = total;
+        }
+
+        public List<String> getConnectIds() {
+            return connectIds;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * Ordered best first: higher rank, then lower connectId
+     */
+    private static final class Hit implements Comparable<Hit> {
+        private final String connectId;
+        private final long rank;
+
+        private Hit(String connectId, long rank) {
+            this.connectId = connectId;
+            this.rank = rank;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            return compare(rank, connectId, other);
+        }
+
+        // Age ranks are birth dates, so a higher rank (later birth) is younger
+        private static int compare(long rank, String connectId, Hit other) {
+            int byRank = Long.compare(other.rank, rank);
+            return byRank != 0 ? byRank : connectId.compareTo(other.connectId);
+        }
+    }
+
+    private static final class Cursor {
+        private final Hit hit;
+
+        private Cursor(Hit hit) {
+            this.hit = hit;
+        }
+
+        private String encode() {
+            String raw = hit.rank + ":" + hit.connectId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf(':');
+                return new Cursor(new Hit(raw.substring(separator + 1), Long.parseLong(raw.substring(0, separator))));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid search cursor", e);
+            }
+        }
+    }
+
+    /**
+     * Ordinals holding a term: a sorted array while rare, a bitmap once common
+     */
+    private static final class Posting {
+        private final String term;
+        private int[] sorted = new int[4];
+        private int size;
+        private BitSet bits;
+
+        private Posting(String term) {
+            this.term = term;
+        }
+
+        private void add(int ordinal) {
+            if (bits != null) {
+                bits.set(ordinal);
+                return;
+            }
+            int index = Arrays.binarySearch(sorted, 0, size, ordinal);
+            if (index >= 0) {
+                return;
+            }
+            // A bitmap costs a bit per ordinal up to the highest one; switch once that is smaller
+            if (size >= MIN_DENSE_POSTING_SIZE && size * 32L > Math.max(ordinal, sorted[size - 1])) {
+                bits = new BitSet();
+                for (int i = 0; i < size; i++) {
+                    bits.set(sorted[i]);
+                }
+                bits.set(ordinal);
+                sorted = null;
+                return;
+            }
+            index = -index - 1;
+            if (size == sorted.length) {
+                sorted = Arrays.copyOf(sorted, sorted.length * 2);
+            }
+            System.arraycopy(sorted, index, sorted, index + 1, size - index);
+            sorted[index] = ordinal;
+            size++;
+        }
+
+        private boolean remove(int ordinal) {
+            if (bits != null) {
+                bits.clear(ordinal);
+                return true;
+            }
+            int index = Arrays.binarySearch(sorted, 0, size, ordinal);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(sorted, index + 1, sorted, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        private boolean isEmpty() {
+            return bits != null ? bits.isEmpty() : size == 0;
+        }
+
+        private void orInto(BitSet target) {
+            if (bits != null) {
+                target.or(bits);
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                target.set(sorted[i]);
+            }
+        }
+    }
+
+    /**
+     * Indexed terms and date of birth for a single profile
+     */
+    private static final class Entry {
+        private final String connectId;
+        private final long dobEpochDay;
+        private final String[] terms;
+
+        private Entry(CompleteUserProfile profile) {
+            this.connectId = profile.getConnectId();
+            this.dobEpochDay = profile.getDateOfBirth() != null ? profile.getDateOfBirth().toEpochDay() : UNKNOWN_DOB;
+
+            // A handful of terms per profile, so a plain array scan beats a set and is far smaller
+            Set<String> terms = new LinkedHashSet<>();
+
+            terms.add("g:" + CandidateIndex.normalizeGender(profile.getGender()).name());
+            String intention = profile.getProfile() != null ? normalizeTerm(profile.getProfile().getDatingIntentions()) : "";
+            if (!intention.isEmpty()) {
+                terms.add("d:" + intention);
+            }
+            for (String token : locationTokens(profile.getLocation())) {
+                terms.add("l:" + token);
+            }
+            for (String interest : normalizedTerms(profile.getInterests())) {
+                terms.add("i:" + interest);
+            }
+            this.terms = terms.toArray(new String[0]);
+        }
+
+        private boolean hasTerm(String term) {
+            for (String own : terms) {
+                if (own.equals(term)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
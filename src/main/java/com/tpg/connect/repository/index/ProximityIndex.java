@@ -0,0 +1,122 @@
+package com.tpg.connect.repository.index;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.util.GeoHash;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * In-memory geohash index over the coordinates of active user profiles.
+ *
+ * Profiles are keyed by their full-precision geohash in a sorted map. A radius query covers the
+ * circle's bounding box with a handful of geohash cells and reads each one as a key range (every
+ * hash inside a cell shares the cell's prefix), then keeps the points whose great-circle distance
+ * is within the radius. Profiles without coordinates are not indexed.
+ *
+ * Maintained alongside CandidateIndex from UserProfileRepositoryImpl writes and CandidateIndexSyncService.
+ */
+@Component
+public class ProximityIndex {
+
+    private static final int MAX_COVERING_CELLS = 64;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // geohash -> connectIds (active profiles with coordinates only)
+    private final NavigableMap<String, Set<String>> cells = new ConcurrentSkipListMap<>();
+
+    /**
+     * Insert or move a profile to the cell matching its current coordinates
+     */
+    public void index(CompleteUserProfile profile) {
+        if (profile == null || profile.getConnectId() == null) {
+            return;
+        }
+
+        if (!profile.getActive() || !GeoHash.isValid(profile.getLatitude(), profile.getLongitude())) {
+            remove(profile.getConnectId());
+            return;
+        }
+
+        Entry updated = new Entry(profile.getConnectId(), profile.getLatitude(), profile.getLongitude());
+        entries.compute(updated.connectId, (id, previous) -> {
+            if (previous != null) {
+                removeFromCell(previous);
+            }
+            cells.computeIfAbsent(updated.geohash, cell -> ConcurrentHashMap.newKeySet()).add(updated.connectId);
+            return updated;
+        });
+    }
+
+    public void remove(String connectId) {
+        entries.computeIfPresent(connectId, (id, previous) -> {
+            removeFromCell(previous);
+            return null;
+        });
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Active profiles within {@code radiusKm} of the point, nearest first, mapped to their distance in km
+     */
+    public LinkedHashMap<String, Double> findWithin(double latitude, double longitude, double radiusKm,
+                                                   Predicate<String> excluded) {
+        List<Map.Entry<String, Double>> nearby = new ArrayList<>();
+        for (String cell : GeoHash.coveringCells(latitude, longitude, radiusKm, MAX_COVERING_CELLS)) {
+            // '{' sorts directly after 'z', the last geohash character, so this is the cell's key range
+            for (Set<String> connectIds : cells.subMap(cell, true, cell + '{', false).values()) {
+                for (String connectId : connectIds) {
+                    if (excluded != null && excluded.test(connectId)) {
+                        continue;
+                    }
+                    Entry entry = entries.get(connectId);
+                    if (entry == null) {
+                        continue;
+                    }
+                    double distance = GeoHash.distanceKm(latitude, longitude, entry.latitude, entry.longitude);
+                    if (distance <= radiusKm) {
+                        nearby.add(Map.entry(connectId, distance));
+                    }
+                }
+            }
+        }
+
+        nearby.sort(Map.Entry.comparingByValue());
+        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : nearby) {
+            result.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private void removeFromCell(Entry entry) {
+        Set<String> cell = cells.get(entry.geohash);
+        if (cell != null) {
+            cell.remove(entry.connectId);
+        }
+    }
+
+    /**
+     * Indexed coordinates for a single profile
+     */
+    private static final class Entry {
+        private final String connectId;
+        private final double latitude;
+        private final double longitude;
+        private final String geohash;
+
+        private Entry(String connectId, double latitude, double longitude) {
+            this.connectId = connectId;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.geohash = GeoHash.encode(latitude, longitude, GeoHash.MAX_PRECISION);
+        }
+    }
+}
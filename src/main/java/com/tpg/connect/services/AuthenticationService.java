@@ -13,6 +13,7 @@ import com.tpg.connect.model.dto.ResetPasswordRequest;
 import com.tpg.connect.model.dto.TokenBasedResetRequest;
 import com.tpg.connect.model.dto.TokenVerificationResponse;
 import com.tpg.connect.model.User;
+import com.tpg.connect.model.batch.BulkDeleteResult;
 import com.tpg.connect.model.dto.UserProfileDTO;
 import com.tpg.connect.model.user.CompleteUserProfile;
 import com.tpg.connect.model.user.ApplicationStatus;
@@ -78,6 +79,12 @@ public class AuthenticationService {
 
     @Autowired
     private EmailService emailService;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private InboxService inboxService;
     
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
@@ -652,6 +659,19 @@ public class AuthenticationService {
             userProfileRepository.save(profile);
         }
 
+        // Conversations go with the account, messages and both sides' inbox entries included.
+        // Anything left by a failed delete stays listed under the user and is removed by an admin rerun.
+        try {
+            BulkDeleteResult conversations = conversationService.deleteUserConversations(userId);
+            BulkDeleteResult inbox = inboxService.deleteInbox(userId);
+            if (!conversations.isComplete() || !inbox.isComplete()) {
+                logger.warn("⚠️ Account {} deleted with {} conversation and {} inbox documents left behind",
+                        userId, conversations.getFailures(), inbox.getFailures());
+            }
+        } catch (Exception e) {
+            logger.error("❌ Failed to delete conversations for deleted account {}: {}", userId, e.getMessage(), e);
+        }
+
         emailService.sendAccountDeletionConfirmation(user.getEmail());
     }
 
@@ -0,0 +1,612 @@
+package com.tpg.connect.services;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.tpg.connect.model.BlockedUser;
+import com.tpg.connect.model.UserBlocked;
+import com.tpg.connect.repository.BlockedUserRepository;
+import com.tpg.connect.repository.UserBlockedRepository;
+import com.tpg.connect.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Who-blocks-whom in both directions, from BlockedUser records and UserBlocked direct blocks.
+ *
+ * Each user has a Redis set of everyone they have a block relationship with, whichever side
+ * blocked, so "either party blocked" is one membership check and discovery can exclude a user's
+ * blocked parties with one read. In front of that every instance holds a Bloom filter over the
+ * blocked pairs and the users involved in any block: most pairs and most users have no block, and
+ * for them the filter answers instead of the Redis sets.
+ *
+ * Blocks recorded on this instance reach its filter at once; those recorded elsewhere are picked
+ * up from a short-lived Redis log every few seconds, and a filter miss first pulls whatever that
+ * log gained since the last pull so a block made a moment ago on another instance is never missed.
+ * Unblocks only touch Redis (a stale filter bit just costs one Redis check) and the filter is
+ * rebuilt from Firestore periodically or once it outgrows its sizing. Until the Redis sets are
+ * built, whenever their ready marker goes missing, and while a block could not be indexed, checks
+ * fall back to Firestore. Blocks are saved to Firestore before they are indexed, so an index
+ * outage never stops a user from blocking someone.
+ *
+ * Pattern-based SafetyBlocks have no target user and are applied by SafetyFilter instead.
+ */
+@Service
+public class BlockIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockIndexService.class);
+
+    private static final String BLOCKED_USERS_COLLECTION = "blocked_users";
+    private static final String USER_BLOCKED_COLLECTION = "UserBlocked";
+
+    private static final String PARTIES_PREFIX = "blocks:with:";
+    private static final String RECENT_BLOCKS_KEY = "blocks:recent:added";
+    private static final String RECENT_UNBLOCKS_KEY = "blocks:recent:removed";
+    private static final String READY_KEY = "blocks:index:ready";
+    private static final String REBUILD_LOCK_KEY = "blocks:index:rebuilding";
+    private static final long RECENT_RETENTION_MS = 60 * 60 * 1000;
+    private static final long SYNC_OVERLAP_MS = 2_000;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private BlockedUserRepository blockedUserRepository;
+
+    @Autowired
+    private UserBlockedRepository userBlockedRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${app.blocks.ready-check-interval-ms:5000}")
+    private long readyCheckIntervalMs;
+
+    @Value("${app.blocks.record-attempts:3}")
+    private int recordAttempts;
+
+    @Value("${app.blocks.rebuild-page-size:500}")
+    private int rebuildPageSize;
+
+    @Value("${app.blocks.filter.expected-pairs:1000000}")
+    private long expectedPairs;
+
+    @Value("${app.blocks.filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${app.blocks.filter.max-age-ms:21600000}")
+    private long filterMaxAgeMs;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    // Blocks saved to Firestore that could not be written to the Redis sets yet
+    private final Set<String> unindexedPairs = ConcurrentHashMap.newKeySet();
+    private volatile BloomFilter filter;
+    private volatile BloomFilter building;
+    private volatile long filterBuiltAt;
+    private volatile long lastSync;
+    private volatile boolean redisReady = false;
+    private volatile long nextReadyCheck = 0;
+
+    private Counter filterChecksCounter;
+    private Counter redisChecksCounter;
+    private Counter firestoreChecksCounter;
+
+    @PostConstruct
+    private void initializeMetrics() {
+        filterChecksCounter = Counter.builder("connect_block_checks")
+            .description("Block relationship checks by the layer that answered them")
+            .tag("path", "filter")
+            .register(meterRegistry);
+
+        redisChecksCounter = Counter.builder("connect_block_checks")
+            .description("Block relationship checks by the layer that answered them")
+            .tag("path", "redis")
+            .register(meterRegistry);
+
+        firestoreChecksCounter = Counter.builder("connect_block_checks")
+            .description("Block relationship checks by the layer that answered them")
+            .tag("path", "firestore")
+            .register(meterRegistry);
+    }
+
+    @Async("taskExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        rebuild();
+    }
+
+    /**
+     * Whether either user has blocked the other
+     */
+    public boolean isEitherBlocked(String userId, String otherUserId) {
+        if (userId == null || otherUserId == null || userId.equals(otherUserId)) {
+            return false;
+        }
+        BloomFilter current = filter;
+        String pair = pairKey(userId, otherUserId);
+        if (current != null && !current.mightContain(pair) && pullRecentBlocks() && !current.mightContain(pair)) {
+            filterChecksCounter.increment();
+            return false;
+        }
+        if (isRedisReady()) {
+            try {
+                redisChecksCounter.increment();
+                return Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(PARTIES_PREFIX + userId, otherUserId));
+            } catch (Exception e) {
+                logger.warn("⚠️ Block index lookup failed, checking Firestore: {}", e.getMessage());
+            }
+        }
+        firestoreChecksCounter.increment();
+        return isBlockedInFirestore(userId, otherUserId);
+    }
+
+    /**
+     * Everyone the user has a block relationship with, in either direction
+     */
+    public Set<String> getBlockedParties(String userId) {
+        BloomFilter current = filter;
+        String user = userKey(userId);
+        if (current != null && !current.mightContain(user) && pullRecentBlocks() && !current.mightContain(user)) {
+            filterChecksCounter.increment();
+            return new HashSet<>();
+        }
+        if (isRedisReady()) {
+            try {
+                redisChecksCounter.increment();
+                Set<String> parties = stringRedisTemplate.opsForSet().members(PARTIES_PREFIX + userId);
+                return parties != null ? new HashSet<>(parties) : new HashSet<>();
+            } catch (Exception e) {
+                logger.warn("⚠️ Block index read failed for {}, loading from Firestore: {}", userId, e.getMessage());
+            }
+        }
+        firestoreChecksCounter.increment();
+        return findBlockedPartiesInFirestore(userId);
+    }
+
+    /**
+     * Add a block that has just been saved to Firestore. Never throws: if Redis cannot take it after
+     * a few attempts the index is marked not ready, so checks go to Firestore, and the write is
+     * retried by {@link #syncRecentBlocks}.
+     */
+    public void recordBlock(String userId, String targetUserId) {
+        addToFilters(userId, targetUserId);
+        for (int attempt = 1; attempt <= recordAttempts; attempt++) {
+            try {
+                writeBlock(userId, targetUserId);
+                return;
+            } catch (Exception e) {
+                logger.warn("⚠️ Block index write for {} -> {} failed (attempt {}): {}",
+                        userId, targetUserId, attempt, e.getMessage());
+            }
+            if (attempt < recordAttempts) {
+                try {
+                    Thread.sleep(100L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        logger.error("❌ Could not add block {} -> {} to the block index, checking Firestore until it is written",
+                userId, targetUserId);
+        unindexedPairs.add(userId + "|" + targetUserId);
+        markNotReady();
+    }
+
+    /**
+     * Drop a block that has just been lifted in Firestore, unless the pair is still blocked another way
+     * (the other direction, or the other block store)
+     */
+    public void recordUnblock(String userId, String targetUserId) {
+        try {
+            stringRedisTemplate.opsForZSet().add(RECENT_UNBLOCKS_KEY, pairKey(userId, targetUserId), System.currentTimeMillis());
+            removeIfUnblocked(userId, targetUserId);
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not remove block {} -> {} from the block index: {}", userId, targetUserId, e.getMessage());
+        }
+    }
+
+    /**
+     * Apply blocks recorded on other instances to this instance's filter
+     */
+    @Scheduled(fixedDelayString = "${app.blocks.sync-interval-ms:5000}")
+    public void syncRecentBlocks() {
+        retryUnindexedBlocks();
+        if (filter == null || !pullRecentBlocks()) {
+            return;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().removeRangeByScore(RECENT_BLOCKS_KEY, 0, now - RECENT_RETENTION_MS);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(RECENT_UNBLOCKS_KEY, 0, now - RECENT_RETENTION_MS);
+        } catch (Exception e) {
+            logger.warn("⚠️ Block filter sync failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Load the filter again if no rebuild has succeeded yet, e.g. Firestore was unavailable at startup
+     */
+    @Scheduled(fixedDelayString = "${app.blocks.rebuild-retry-interval-ms:60000}",
+               initialDelayString = "${app.blocks.rebuild-retry-interval-ms:60000}")
+    public void retryFailedRebuild() {
+        if (filter == null && !rebuilding.get()) {
+            logger.info("🔄 Retrying block index rebuild");
+            taskExecutor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Rebuild the filter once it is old enough to carry many lifted blocks or has outgrown its sizing
+     */
+    @Scheduled(fixedDelayString = "${app.blocks.filter.refresh-check-interval-ms:600000}")
+    public void refreshFilter() {
+        BloomFilter current = filter;
+        if (current == null || rebuilding.get()) {
+            return;
+        }
+        boolean stale = System.currentTimeMillis() - filterBuiltAt > filterMaxAgeMs;
+        boolean full = current.insertions() > current.expectedInsertions();
+        if (stale || full) {
+            logger.info("🔄 Rebuilding block filter ({})", full ? "over capacity" : "scheduled");
+            taskExecutor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Reload every block from Firestore into a fresh filter, and into the Redis sets if they are not built yet
+     */
+    public Map<String, Object> rebuild() {
+        Map<String, Object> result = new HashMap<>();
+        if (!rebuilding.compareAndSet(false, true)) {
+            result.put("success", false);
+            result.put("message", "Block index rebuild already running on this instance");
+            return result;
+        }
+
+        boolean locked = false;
+        try {
+            long started = System.currentTimeMillis();
+            BloomFilter current = filter;
+            long sizing = current != null ? Math.max(expectedPairs, current.insertions() * 2) : expectedPairs;
+            BloomFilter next = BloomFilter.create(sizing, falsePositiveRate);
+            building = next;
+
+            // One instance fills the Redis sets; the rest only load their filter
+            if (!isRedisReady()) {
+                locked = Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                        .setIfAbsent(REBUILD_LOCK_KEY, "1", Duration.ofMinutes(30)));
+            }
+
+            logger.info("🚫 Rebuilding block index from Firestore{}", locked ? " (including Redis sets)" : "");
+            int pairs = loadBlockedUsers(next, locked);
+            pairs += loadDirectBlocks(next, locked);
+
+            if (locked) {
+                stringRedisTemplate.opsForValue().set(READY_KEY, String.valueOf(System.currentTimeMillis()));
+                redisReady = true;
+                reconcileUnblocksSince(started);
+            }
+
+            lastSync = started;
+            filter = next;
+            filterBuiltAt = System.currentTimeMillis();
+            logger.info("✅ Block index rebuilt with {} block relationships in {} ms", pairs, System.currentTimeMillis() - started);
+            result.put("success", true);
+            result.put("blocks", pairs);
+            return result;
+        } catch (Exception e) {
+            logger.error("❌ Block index rebuild failed: {}", e.getMessage(), e);
+            result.put("success", false);
+            result.put("message", "Block index rebuild failed: " + e.getMessage());
+            return result;
+        } finally {
+            building = null;
+            if (locked) {
+                try {
+                    stringRedisTemplate.delete(REBUILD_LOCK_KEY);
+                } catch (Exception e) {
+                    logger.warn("⚠️ Could not release block index rebuild lock: {}", e.getMessage());
+                }
+            }
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * The ready marker is rechecked every interval, not only until it is first seen, so sets lost to
+     * a Redis flush or failover send checks back to Firestore until they are rebuilt
+     */
+    private boolean isRedisReady() {
+        long now = System.currentTimeMillis();
+        if (now >= nextReadyCheck) {
+            nextReadyCheck = now + readyCheckIntervalMs;
+            boolean wasReady = redisReady;
+            try {
+                redisReady = Boolean.TRUE.equals(stringRedisTemplate.hasKey(READY_KEY));
+                if (wasReady && !redisReady && !rebuilding.get()) {
+                    logger.warn("⚠️ Block index ready marker is gone, checking Firestore until it is rebuilt");
+                    taskExecutor.execute(this::rebuild);
+                }
+            } catch (Exception e) {
+                redisReady = false;
+                logger.warn("⚠️ Could not check block index state: {}", e.getMessage());
+            }
+        }
+        return redisReady && unindexedPairs.isEmpty();
+    }
+
+    /**
+     * Add blocks recorded since the last pull, on any instance, to this instance's filter. Returns
+     * false if Redis could not be read, in which case the filter may be missing recent blocks.
+     */
+    private boolean pullRecentBlocks() {
+        try {
+            long now = System.currentTimeMillis();
+            Set<String> pairs = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(RECENT_BLOCKS_KEY, lastSync - SYNC_OVERLAP_MS, Double.POSITIVE_INFINITY);
+            if (pairs != null) {
+                for (String pair : pairs) {
+                    String[] users = pair.split("\\|", 2);
+                    if (users.length == 2) {
+                        addToFilters(users[0], users[1]);
+                    }
+                }
+            }
+            lastSync = Math.max(lastSync, now);
+            return true;
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not read recent blocks: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void writeBlock(String userId, String targetUserId) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.sAdd(PARTIES_PREFIX + userId, targetUserId);
+            redis.sAdd(PARTIES_PREFIX + targetUserId, userId);
+            redis.zAdd(RECENT_BLOCKS_KEY, System.currentTimeMillis(), pairKey(userId, targetUserId));
+            return null;
+        });
+    }
+
+    private void retryUnindexedBlocks() {
+        for (String pair : new ArrayList<>(unindexedPairs)) {
+            String[] users = pair.split("\\|", 2);
+            try {
+                writeBlock(users[0], users[1]);
+                unindexedPairs.remove(pair);
+                logger.info("✅ Added block {} -> {} to the block index", users[0], users[1]);
+            } catch (Exception e) {
+                logger.warn("⚠️ Block index still unavailable for {} -> {}: {}", users[0], users[1], e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Every instance stops trusting the sets once the ready marker is gone, until they are rebuilt
+     */
+    private void markNotReady() {
+        redisReady = false;
+        try {
+            stringRedisTemplate.delete(READY_KEY);
+            if (!rebuilding.get()) {
+                taskExecutor.execute(this::rebuild);
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not clear block index ready marker: {}", e.getMessage());
+        }
+    }
+
+    private void addToFilters(String userId, String targetUserId) {
+        BloomFilter current = filter;
+        BloomFilter next = building;
+        for (BloomFilter target : new BloomFilter[] {current, next}) {
+            if (target != null) {
+                target.put(pairKey(userId, targetUserId));
+                target.put(userKey(userId));
+                target.put(userKey(targetUserId));
+            }
+        }
+    }
+
+    // Active BlockedUser records, paged by document id
+    private int loadBlockedUsers(BloomFilter next, boolean writeRedis)
+            throws InterruptedException, ExecutionException {
+        Query query = firestore.collection(BLOCKED_USERS_COLLECTION)
+                .whereEqualTo("status", "ACTIVE")
+                .select("userId", "blockedUserId");
+        return loadPages(query, (doc, page) -> {
+            String userId = doc.getString("userId");
+            String blockedUserId = doc.getString("blockedUserId");
+            if (userId != null && blockedUserId != null && !userId.equals(blockedUserId)) {
+                page.add(new String[] {userId, blockedUserId});
+            }
+        }, next, writeRedis);
+    }
+
+    // Direct blocks held as a list on each user's UserBlocked document
+    private int loadDirectBlocks(BloomFilter next, boolean writeRedis)
+            throws InterruptedException, ExecutionException {
+        Query query = firestore.collection(USER_BLOCKED_COLLECTION).select("directBlocks");
+        return loadPages(query, (doc, page) -> {
+            Object directBlocks = doc.get("directBlocks");
+            if (directBlocks instanceof List<?>) {
+                for (Object target : (List<?>) directBlocks) {
+                    if (target != null && !doc.getId().equals(target.toString())) {
+                        page.add(new String[] {doc.getId(), target.toString()});
+                    }
+                }
+            }
+        }, next, writeRedis);
+    }
+
+    private int loadPages(Query query, BiConsumer<DocumentSnapshot, List<String[]>> extract,
+                          BloomFilter next, boolean writeRedis)
+            throws InterruptedException, ExecutionException {
+        int pairs = 0;
+        DocumentSnapshot last = null;
+        while (true) {
+            Query pageQuery = query.orderBy(FieldPath.documentId()).limit(rebuildPageSize);
+            if (last != null) {
+                pageQuery = pageQuery.startAfter(last);
+            }
+            QuerySnapshot page = pageQuery.get().get();
+            if (page.isEmpty()) {
+                return pairs;
+            }
+
+            List<String[]> pagePairs = new ArrayList<>();
+            for (DocumentSnapshot doc : page.getDocuments()) {
+                extract.accept(doc, pagePairs);
+            }
+            for (String[] pair : pagePairs) {
+                next.put(pairKey(pair[0], pair[1]));
+                next.put(userKey(pair[0]));
+                next.put(userKey(pair[1]));
+            }
+            if (writeRedis) {
+                writePage(pagePairs);
+            }
+            pairs += pagePairs.size();
+
+            last = page.getDocuments().get(page.size() - 1);
+            if (page.size() < rebuildPageSize) {
+                return pairs;
+            }
+        }
+    }
+
+    private void writePage(List<String[]> pagePairs) {
+        if (pagePairs.isEmpty()) {
+            return;
+        }
+        // One pipelined round trip per page
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            for (String[] pair : pagePairs) {
+                redis.sAdd(PARTIES_PREFIX + pair[0], pair[1]);
+                redis.sAdd(PARTIES_PREFIX + pair[1], pair[0]);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * A page read before an unblock can re-add the lifted block to Redis; recheck every pair unblocked
+     * since the rebuild started
+     */
+    private void reconcileUnblocksSince(long started) {
+        Set<String> pairs = stringRedisTemplate.opsForZSet()
+                .rangeByScore(RECENT_UNBLOCKS_KEY, started - SYNC_OVERLAP_MS, Double.POSITIVE_INFINITY);
+        if (pairs == null) {
+            return;
+        }
+        for (String pair : pairs) {
+            String[] users = pair.split("\\|", 2);
+            if (users.length == 2) {
+                removeIfUnblocked(users[0], users[1]);
+            }
+        }
+    }
+
+    private void removeIfUnblocked(String userId, String targetUserId) {
+        if (isBlockedInFirestore(userId, targetUserId)) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            redis.sRem(PARTIES_PREFIX + userId, targetUserId);
+            redis.sRem(PARTIES_PREFIX + targetUserId, userId);
+            return null;
+        });
+    }
+
+    private boolean isBlockedInFirestore(String userId, String otherUserId) {
+        return hasActiveBlock(userId, otherUserId) || hasActiveBlock(otherUserId, userId)
+                || hasDirectBlock(userId, otherUserId) || hasDirectBlock(otherUserId, userId);
+    }
+
+    private boolean hasActiveBlock(String userId, String targetUserId) {
+        BlockedUser block = blockedUserRepository.findByUserIdAndBlockedUserId(userId, targetUserId);
+        return block != null && "ACTIVE".equals(block.getStatus());
+    }
+
+    private boolean hasDirectBlock(String userId, String targetUserId) {
+        UserBlocked config = userBlockedRepository.findByConnectId(userId);
+        return config != null && config.isUserDirectlyBlocked(targetUserId);
+    }
+
+    private Set<String> findBlockedPartiesInFirestore(String userId) {
+        Set<String> parties = new HashSet<>();
+        for (BlockedUser block : blockedUserRepository.findByUserIdAndStatus(userId, "ACTIVE")) {
+            parties.add(block.getBlockedUserId());
+        }
+        for (BlockedUser block : blockedUserRepository.findByBlockedUserId(userId)) {
+            if ("ACTIVE".equals(block.getStatus())) {
+                parties.add(block.getUserId());
+            }
+        }
+        UserBlocked config = userBlockedRepository.findByConnectId(userId);
+        if (config != null) {
+            parties.addAll(config.getDirectBlocks());
+        }
+        try {
+            QuerySnapshot blockedBy = firestore.collection(USER_BLOCKED_COLLECTION)
+                    .whereArrayContains("directBlocks", userId)
+                    .select(FieldPath.documentId())
+                    .get().get();
+            for (DocumentSnapshot doc : blockedBy.getDocuments()) {
+                parties.add(doc.getId());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to load users who blocked " + userId, e);
+        }
+        parties.remove(userId);
+        return parties;
+    }
+
+    // Unordered, so both directions share one filter entry
+    private static String pairKey(String userId, String otherUserId) {
+        return userId.compareTo(otherUserId) <= 0 ? userId + "|" + otherUserId : otherUserId + "|" + userId;
+    }
+
+    private static String userKey(String userId) {
+        return "@" + userId;
+    }
+}
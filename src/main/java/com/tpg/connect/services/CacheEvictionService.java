@@ -0,0 +1,27 @@
+package com.tpg.connect.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+/**
+ * Evicts single cache entries through the CacheManager.
+ *
+ * {@code @CacheEvict} only runs when the annotated method is called through the Spring proxy, so it
+ * does nothing on a private method or on a call from inside the same class. Code that needs an
+ * eviction on one of those paths evicts here instead.
+ */
+@Service
+public class CacheEvictionService {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    public void evict(String cacheName, Object key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(key);
+        }
+    }
+}
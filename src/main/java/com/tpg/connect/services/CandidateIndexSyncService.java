@@ -0,0 +1,186 @@
+package com.tpg.connect.services;
+
+import com.google.cloud.Timestamp;
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.repository.UserProfileRepository;
+import com.tpg.connect.repository.index.CandidateIndex;
+import com.tpg.connect.repository.index.ProfileSearchIndex;
+import com.tpg.connect.repository.index.ProximityIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the in-memory CandidateIndex, ProximityIndex and ProfileSearchIndex in step with the
+ * userProfiles collection.
+ *
+ * Writes made through this instance are indexed directly by UserProfileRepositoryImpl. This service
+ * warms the indexes at startup (paged, so the whole collection is never held at once), retrying until
+ * it succeeds, and then applies profiles updated or deleted on other replicas since the last sync.
+ *
+ * The sync position is the latest server timestamp seen, and every sync reads back an overlap window
+ * before it, so writes committed out of order, or against a skewed local clock during warm-up, are
+ * not missed; applying a profile twice is harmless. Deletions are read from the tombstones
+ * deleteProfile writes, which are purged once no replica can still need them.
+ */
+@Service
+public class CandidateIndexSyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandidateIndexSyncService.class);
+
+    @Autowired
+    private UserProfileRepository userProfileRepository;
+
+    @Autowired
+    private CandidateIndex candidateIndex;
+
+    @Autowired
+    private ProximityIndex proximityIndex;
+
+    @Autowired
+    private ProfileSearchIndex profileSearchIndex;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${app.discovery.candidate-index.page-size:500}")
+    private int pageSize;
+
+    @Value("${app.discovery.candidate-index.sync-overlap-ms:30000}")
+    private long syncOverlapMs;
+
+    @Value("${app.discovery.candidate-index.deletion-retention-hours:24}")
+    private long deletionRetentionHours;
+
+    private final AtomicBoolean warmingUp = new AtomicBoolean(false);
+    private volatile boolean warmedUp = false;
+    private volatile Timestamp lastSync;
+
+    @Async("taskExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!warmingUp.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            logger.info("🗂️ Warming up discovery candidate index");
+            Timestamp startedAt = Timestamp.now();
+            long started = System.currentTimeMillis();
+
+            String cursor = null;
+            int loaded = 0;
+            List<CompleteUserProfile> page;
+            do {
+                page = userProfileRepository.findProfilesPage(cursor, pageSize);
+                for (CompleteUserProfile profile : page) {
+                    candidateIndex.index(profile);
+                    proximityIndex.index(profile);
+                    profileSearchIndex.index(profile);
+                }
+                loaded += page.size();
+                if (!page.isEmpty()) {
+                    cursor = page.get(page.size() - 1).getConnectId();
+                }
+            } while (page.size() == pageSize);
+
+            lastSync = startedAt;
+            warmedUp = true;
+            logger.info("✅ Candidate index warmed with {} profiles in {} ms", loaded, System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            logger.error("❌ Candidate index warm-up failed: {}", e.getMessage(), e);
+        } finally {
+            warmingUp.set(false);
+        }
+    }
+
+    /**
+     * Warm up again if no warm-up has succeeded yet, e.g. Firestore was unavailable at startup
+     */
+    @Scheduled(fixedDelayString = "${app.discovery.candidate-index.warm-up-retry-interval-ms:60000}",
+               initialDelayString = "${app.discovery.candidate-index.warm-up-retry-interval-ms:60000}")
+    public void retryFailedWarmUp() {
+        if (!warmedUp && !warmingUp.get()) {
+            logger.info("🔄 Retrying candidate index warm-up");
+            taskExecutor.execute(this::warmUp);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.discovery.candidate-index.sync-interval-ms:60000}")
+    public void syncRecentUpdates() {
+        if (!warmedUp) {
+            return;
+        }
+
+        try {
+            Timestamp since = minusMillis(lastSync, syncOverlapMs);
+            Timestamp latest = lastSync;
+
+            // Deletions first, so a profile deleted and then created again ends up indexed
+            Map<String, Timestamp> deleted = userProfileRepository.findProfilesDeletedSince(since);
+            for (Map.Entry<String, Timestamp> deletion : deleted.entrySet()) {
+                candidateIndex.remove(deletion.getKey());
+                proximityIndex.remove(deletion.getKey());
+                profileSearchIndex.remove(deletion.getKey());
+                latest = later(latest, deletion.getValue());
+            }
+
+            List<CompleteUserProfile> updated = userProfileRepository.findProfilesUpdatedSince(since);
+            for (CompleteUserProfile profile : updated) {
+                candidateIndex.index(profile);
+                proximityIndex.index(profile);
+                profileSearchIndex.index(profile);
+                if (profile.getUpdatedAt() != null) {
+                    latest = later(latest, Timestamp.of(java.sql.Timestamp.valueOf(profile.getUpdatedAt())));
+                }
+            }
+
+            lastSync = latest;
+            if (!updated.isEmpty() || !deleted.isEmpty()) {
+                logger.debug("🔄 Candidate index applied {} profile updates and {} deletions", updated.size(), deleted.size());
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ Candidate index delta sync failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drop deletion tombstones older than any replica's sync position can be
+     */
+    @Scheduled(fixedDelayString = "${app.discovery.candidate-index.deletion-purge-interval-ms:3600000}",
+               initialDelayString = "${app.discovery.candidate-index.deletion-purge-interval-ms:3600000}")
+    public void purgeDeletions() {
+        try {
+            userProfileRepository.purgeProfileDeletionsBefore(
+                    minusMillis(Timestamp.now(), TimeUnit.HOURS.toMillis(deletionRetentionHours)));
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to purge profile deletion tombstones: {}", e.getMessage());
+        }
+    }
+
+    private static Timestamp minusMillis(Timestamp timestamp, long millis) {
+        return Timestamp.ofTimeMicroseconds(TimeUnit.SECONDS.toMicros(timestamp.getSeconds())
+                + TimeUnit.NANOSECONDS.toMicros(timestamp.getNanos()) - TimeUnit.MILLISECONDS.toMicros(millis));
+    }
+
+    private static Timestamp later(Timestamp current, Timestamp candidate) {
+        return candidate != null && candidate.compareTo(current) > 0 ? candidate : current;
+    }
+
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+}
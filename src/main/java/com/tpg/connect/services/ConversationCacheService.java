@@ -0,0 +1,113 @@
+package com.tpg.connect.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Scoped invalidation for the "conversations" and "messages" caches.
+ *
+ * Conversation entries have one key per conversation and one per participant's list, so a write
+ * evicts exactly those. Message pages have a key per page/limit/cursor variant, which can't be
+ * enumerated; instead their keys carry a per-conversation version from Redis, and bumping the
+ * version orphans every page of that conversation at once. Orphaned pages expire on their TTL.
+ */
+@Service
+public class ConversationCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationCacheService.class);
+
+    private static final String CONVERSATIONS_CACHE = "conversations";
+    private static final String MESSAGES_VERSION_PREFIX = "cache:messages:version:";
+    // Outlives the 15 minute messages TTL, so pages cached under an expired version are gone too
+    private static final Duration MESSAGES_VERSION_TTL = Duration.ofHours(1);
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Counter conversationEvictions;
+    private Counter userListEvictions;
+    private Counter messageInvalidations;
+
+    @PostConstruct
+    void registerMetrics() {
+        conversationEvictions = Counter.builder("connect_conversation_cache_evictions")
+                .description("Scoped evictions from the conversations and messages caches")
+                .tag("scope", "conversation")
+                .register(meterRegistry);
+        userListEvictions = Counter.builder("connect_conversation_cache_evictions")
+                .description("Scoped evictions from the conversations and messages caches")
+                .tag("scope", "user")
+                .register(meterRegistry);
+        messageInvalidations = Counter.builder("connect_conversation_cache_evictions")
+                .description("Scoped evictions from the conversations and messages caches")
+                .tag("scope", "messages")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Current messages-cache version of a conversation, referenced from the messages cache keys.
+     */
+    public long messagesVersion(String conversationId) {
+        String version = stringRedisTemplate.opsForValue().get(MESSAGES_VERSION_PREFIX + conversationId);
+        return version != null ? Long.parseLong(version) : 0L;
+    }
+
+    /**
+     * Evict a conversation and its participants' conversation lists.
+     */
+    public void evictConversation(String conversationId, Collection<String> participantIds) {
+        Cache cache = cacheManager.getCache(CONVERSATIONS_CACHE);
+        if (cache == null) {
+            return;
+        }
+        cache.evict("conversation_" + conversationId);
+        conversationEvictions.increment();
+        if (participantIds != null) {
+            participantIds.forEach(this::evictUserConversations);
+        }
+    }
+
+    /**
+     * Evict one user's cached conversation list.
+     */
+    public void evictUserConversations(String userId) {
+        Cache cache = cacheManager.getCache(CONVERSATIONS_CACHE);
+        if (cache != null) {
+            cache.evict("user_conversations_" + userId);
+            userListEvictions.increment();
+        }
+    }
+
+    /**
+     * Evict a conversation, its participants' lists and every cached page of its messages.
+     */
+    public void evictConversationAndMessages(String conversationId, Collection<String> participantIds) {
+        evictConversation(conversationId, participantIds);
+        String versionKey = MESSAGES_VERSION_PREFIX + conversationId;
+        try {
+            stringRedisTemplate.opsForValue().increment(versionKey);
+            stringRedisTemplate.expire(versionKey, MESSAGES_VERSION_TTL);
+            messageInvalidations.increment();
+        } catch (Exception e) {
+            // Pages still expire on the messages TTL; the conversation entries above are already gone
+            logger.warn("⚠️ Failed to invalidate cached messages for conversation {}: {}", conversationId, e.getMessage());
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package com.tpg.connect.services;
 
+import com.tpg.connect.model.batch.BulkDeleteResult;
 import com.tpg.connect.model.conversation.Conversation;
 import com.tpg.connect.model.conversation.ConversationSummary;
+import com.tpg.connect.model.conversation.InboxEntry;
 import com.tpg.connect.model.conversation.Message;
+import com.tpg.connect.model.conversation.MessagePage;
 import com.tpg.connect.model.match.Match;
+import com.tpg.connect.model.user.ProfileCard;
 import com.tpg.connect.repository.ConversationRepository;
 import com.tpg.connect.repository.MatchRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -14,10 +22,15 @@ import com.tpg.connect.controllers.websocket.SimpleWebSocketHandler;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 public class ConversationService {
@@ -28,6 +41,8 @@ public class ConversationService {
     // TODO: Add typing indicators and read receipts
     // TODO: Implement message media support (images, voice notes)
 
+    private static final int MAX_MESSAGE_PAGE_SIZE = 100;
+
     @Autowired
     private ConversationRepository conversationRepository;
 
@@ -43,6 +58,34 @@ public class ConversationService {
     @Autowired(required = false)
     private SimpleWebSocketHandler simpleWebSocketHandler;
 
+    @Autowired
+    private BlockIndexService blockIndexService;
+
+    @Autowired
+    private ConversationCacheService conversationCacheService;
+
+    @Autowired
+    private ProfileHydrationService profileHydrationService;
+
+    @Autowired
+    @Qualifier("notificationExecutor")
+    private Executor notificationExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Timer sendTimer;
+
+    private final AtomicBoolean purgingOrphans = new AtomicBoolean(false);
+
+    @PostConstruct
+    void registerMetrics() {
+        sendTimer = Timer.builder("connect_message_send_duration")
+                .description("Time from a send request to the message being committed and broadcast")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
     @Cacheable(value = "conversations", key = "'user_conversations_' + #userId")
     public List<Conversation> getUserConversations(String userId, boolean includeArchived) {
         if (includeArchived) {
@@ -67,7 +110,6 @@ public class ConversationService {
         return Optional.empty();
     }
 
-    @CacheEvict(value = "conversations", allEntries = true)
     public Conversation createConversationFromMatch(String matchId) {
         System.out.println("📞 ConversationService: Creating conversation from match: " + matchId);
         
@@ -101,11 +143,13 @@ public class ConversationService {
         conversation.setParticipantIds(List.of(match.getUser1Id(), match.getUser2Id()));
         conversation.setStatus(Conversation.ConversationStatus.ACTIVE);
         conversation.setUnreadCount(0);
+        // Every participant starts with a count, which tells reconciliation this isn't a legacy conversation
+        conversation.setUnreadCounts(new HashMap<>(Map.of(match.getUser1Id(), 0, match.getUser2Id(), 0)));
         conversation.setMatchedAt(match.getMatchedAt());
         conversation.setUpdatedAt(LocalDateTime.now());
 
         System.out.println("📞 ConversationService: Saving conversation to Firestore...");
-        Conversation savedConversation = conversationRepository.save(conversation);
+        Conversation savedConversation = conversationRepository.createConversation(conversation, inboxEntriesFor(conversation));
         System.out.println("✅ ConversationService: Successfully saved conversation: " + savedConversation.getId());
 
         // Update match with conversation ID if not already set
@@ -116,11 +160,49 @@ public class ConversationService {
             System.out.println("✅ ConversationService: Updated match with conversation ID");
         }
 
+        conversationCacheService.evictConversation(savedConversation.getId(), savedConversation.getParticipantIds());
         return savedConversation;
     }
 
-    @CacheEvict(value = {"conversations", "messages"}, allEntries = true)
+    /**
+     * Each participant's inbox entry for a new conversation, carrying the other participant's card.
+     */
+    private List<InboxEntry> inboxEntriesFor(Conversation conversation) {
+        Map<String, ProfileCard> cards = new HashMap<>();
+        for (ProfileCard card : profileHydrationService.hydrateCards("inbox", conversation.getParticipantIds())) {
+            cards.put(card.getConnectId(), card);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<InboxEntry> entries = new ArrayList<>();
+        for (String ownerId : conversation.getParticipantIds()) {
+            String counterpartId = conversation.getParticipantIds().stream()
+                    .filter(id -> !id.equals(ownerId))
+                    .findFirst()
+                    .orElse(null);
+            ProfileCard counterpart = cards.get(counterpartId);
+            InboxEntry entry = new InboxEntry();
+            entry.setOwnerId(ownerId);
+            entry.setConversationId(conversation.getId());
+            entry.setMatchId(conversation.getMatchId());
+            if (counterpart != null) {
+                entry.setCounterpart(counterpart);
+                entry.setCounterpartRefreshedAt(now);
+            } else {
+                // Written without a card rather than skipped; the card is filled in when the inbox is loaded
+                ProfileCard placeholder = new ProfileCard();
+                placeholder.setConnectId(counterpartId);
+                entry.setCounterpart(placeholder);
+            }
+            entry.setMatchedAt(conversation.getMatchedAt() != null ? conversation.getMatchedAt() : now);
+            entry.setLastActivity(entry.getMatchedAt());
+            entries.add(entry);
+        }
+        return entries;
+    }
+
     public Message sendMessage(String conversationId, String senderId, String content) {
+        long started = System.nanoTime();
         System.out.println("🚀 ConversationService: sendMessage called - conversationId: " + conversationId + ", senderId: " + senderId);
         // Verify conversation exists and user is participant
         Optional<Conversation> conversationOpt = conversationRepository.findById(conversationId);
@@ -138,6 +220,13 @@ public class ConversationService {
             throw new IllegalStateException("Cannot send message to inactive conversation");
         }
 
+        // Either side may have blocked the other since the conversation started
+        for (String participantId : conversation.getParticipantIds()) {
+            if (blockIndexService.isEitherBlocked(senderId, participantId)) {
+                throw new IllegalStateException("Cannot send message to a blocked user");
+            }
+        }
+
         // Create message
         Message message = new Message();
         message.setId(UUID.randomUUID().toString());
@@ -147,58 +236,95 @@ public class ConversationService {
         message.setSentAt(LocalDateTime.now());
         message.setStatus(Message.MessageStatus.SENT);
 
-        Message savedMessage = conversationRepository.saveMessage(conversationId, message);
-
-        // Update conversation last activity
-        conversation.setUpdatedAt(LocalDateTime.now());
-        conversationRepository.save(conversation);
-
-        // Send push notification to other participant(s)
         List<String> otherParticipants = conversation.getParticipantIds().stream()
                 .filter(id -> !id.equals(senderId))
                 .toList();
 
-        System.out.println("🔔 ConversationService: Sending notifications to " + otherParticipants.size() + " participants");
-        for (String participantId : otherParticipants) {
-            System.out.println("🔔 ConversationService: Calling notification service for participant: " + participantId);
-            notificationService.sendMessageNotification(participantId, senderId, conversationId, content);
-        }
+        // One batch writes the message, the conversation's lastMessage, updatedAt and unread counts,
+        // and the recipients' badge counters
+        Message savedMessage = conversationRepository.saveMessage(conversationId, message, otherParticipants);
 
-        // Broadcast message via WebSocket if template is available
+        // Open apps get the message straight away; a page cached before the eviction below is keyed
+        // under the old version, so it can't be served after it
         broadcastMessageToWebSocket(conversationId, savedMessage);
+        conversationCacheService.evictConversationAndMessages(conversationId, conversation.getParticipantIds());
+
+        // Push delivery is off the sender's request
+        notificationExecutor.execute(() -> {
+            System.out.println("🔔 ConversationService: Sending notifications to " + otherParticipants.size() + " participants");
+            for (String participantId : otherParticipants) {
+                try {
+                    notificationService.sendMessageNotification(participantId, senderId, conversationId, content);
+                } catch (Exception e) {
+                    System.err.println("💥 ConversationService: Failed to notify " + participantId + " of message " + savedMessage.getId() + ": " + e.getMessage());
+                }
+            }
+        });
 
+        sendTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         return savedMessage;
     }
 
-    @Cacheable(value = "messages", key = "'conversation_messages_' + #conversationId + '_' + #page + '_' + #limit")
+    @Cacheable(value = "messages", key = "'conversation_messages_' + #conversationId + '_v' + @conversationCacheService.messagesVersion(#conversationId) + '_' + #page + '_' + #limit")
     public List<Message> getConversationMessages(String conversationId, String userId, int page, int limit) {
         System.out.println("🔍 ConversationService: getConversationMessages called");
         System.out.println("🔍 ConversationService: conversationId = '" + conversationId + "'");
         System.out.println("🔍 ConversationService: userId = '" + userId + "'");
         System.out.println("🔍 ConversationService: page = " + page + ", limit = " + limit);
         
-        // Verify user is participant
+        Conversation conversation = requireParticipant(conversationId, userId);
+
+        List<Message> messages;
+        if (page == 0 && limit == 0) {
+            // Get the latest messages, capped by the repository
+            messages = conversationRepository.findMessagesByConversationId(conversationId);
+        } else if (page == 0) {
+            // The first page is the same as a cursor page with no cursor
+            messages = conversationRepository.findMessagesBefore(conversationId, null, Math.min(limit, MAX_MESSAGE_PAGE_SIZE)).getMessages();
+        } else {
+            // Legacy offset paging; clients scrolling further back should follow nextCursor instead
+            messages = conversationRepository.findMessagesByConversationId(conversationId, page, Math.min(limit, MAX_MESSAGE_PAGE_SIZE));
+        }
+        applyReadReceipts(conversation, messages);
+        return messages;
+    }
+
+    /**
+     * Page backwards through a conversation's history. A null cursor returns the latest messages;
+     * each page's nextCursor returns the page before it, at the same cost however far back it is.
+     */
+    @Cacheable(value = "messages", key = "'conversation_messages_cursor_' + #conversationId + '_v' + @conversationCacheService.messagesVersion(#conversationId) + '_' + #userId + '_' + #cursor + '_' + #limit")
+    public MessagePage getConversationMessagesPage(String conversationId, String userId, String cursor, int limit) {
+        Conversation conversation = requireParticipant(conversationId, userId);
+        MessagePage messagePage = conversationRepository.findMessagesBefore(conversationId, cursor, Math.max(1, Math.min(limit, MAX_MESSAGE_PAGE_SIZE)));
+        applyReadReceipts(conversation, messagePage.getMessages());
+        return messagePage;
+    }
+
+    /**
+     * Read receipts come from the participants' read watermarks rather than per-message status writes
+     */
+    private void applyReadReceipts(Conversation conversation, List<Message> messages) {
+        for (Message message : messages) {
+            if (conversation.isReadByRecipients(message)) {
+                message.setStatus(Message.MessageStatus.READ);
+            }
+        }
+    }
+
+    private Conversation requireParticipant(String conversationId, String userId) {
         Optional<Conversation> conversationOpt = conversationRepository.findById(conversationId);
         if (!conversationOpt.isPresent()) {
             System.out.println("❌ ConversationService: Conversation not found: " + conversationId);
             throw new IllegalArgumentException("Conversation not found: " + conversationId);
         }
 
-        Conversation conversation = conversationOpt.get();
-        if (!conversation.getParticipantIds().contains(userId)) {
+        if (!conversationOpt.get().getParticipantIds().contains(userId)) {
             throw new IllegalArgumentException("User is not a participant in this conversation");
         }
-
-        if (page == 0 && limit == 0) {
-            // Get all messages
-            return conversationRepository.findMessagesByConversationId(conversationId);
-        } else {
-            // Get paginated messages
-            return conversationRepository.findMessagesByConversationId(conversationId, page, limit);
-        }
+        return conversationOpt.get();
     }
 
-    @CacheEvict(value = {"conversations", "messages"}, allEntries = true)
     public void markMessagesAsRead(String conversationId, String userId) {
         // Verify user is participant
         Optional<Conversation> conversationOpt = conversationRepository.findById(conversationId);
@@ -211,14 +337,11 @@ public class ConversationService {
             throw new IllegalArgumentException("User is not a participant in this conversation");
         }
 
-        // Mark messages as read
+        // Moves the user's read watermark to the latest message and clears their unread count in one write
         conversationRepository.markMessagesAsRead(conversationId, userId);
-
-        // Update unread count to 0 for this user
-        conversationRepository.updateUnreadCount(conversationId, userId, 0);
+        conversationCacheService.evictConversationAndMessages(conversationId, conversation.getParticipantIds());
     }
 
-    @CacheEvict(value = "conversations", allEntries = true)
     public void archiveConversation(String conversationId, String userId) {
         System.out.println("📁 ConversationService.archiveConversation CALLED");
         System.out.println("📁 ConversationService: conversationId = " + conversationId);
@@ -245,12 +368,12 @@ public class ConversationService {
         System.out.println("📁 ConversationService: Calling conversationRepository.markAsArchived...");
         
         conversationRepository.markAsArchived(conversationId, true);
+        conversationCacheService.evictConversation(conversationId, conversation.getParticipantIds());
         
         System.out.println("📁 ConversationService: markAsArchived call completed");
         System.out.println("✅ ConversationService: Archive operation finished");
     }
 
-    @CacheEvict(value = "conversations", allEntries = true)
     public void unarchiveConversation(String conversationId, String userId) {
         // Verify user is participant
         Optional<Conversation> conversationOpt = conversationRepository.findById(conversationId);
@@ -264,6 +387,7 @@ public class ConversationService {
         }
 
         conversationRepository.markAsArchived(conversationId, false);
+        conversationCacheService.evictConversation(conversationId, conversation.getParticipantIds());
     }
 
     /**
@@ -280,14 +404,13 @@ public class ConversationService {
         }
         
         Conversation conversation = conversationOpt.get();
-        conversation.setStatus(Conversation.ConversationStatus.UNMATCHED);
-        conversation.setUpdatedAt(java.time.LocalDateTime.now());
         
-        conversationRepository.save(conversation);
+        // Updates just the status, and removes the conversation from both participants' inboxes
+        conversationRepository.updateConversationStatus(conversation.getId(), Conversation.ConversationStatus.UNMATCHED.name());
+        conversationCacheService.evictConversation(conversation.getId(), conversation.getParticipantIds());
         System.out.println("✅ ConversationService: Conversation status updated to UNMATCHED for match: " + matchId);
     }
 
-    @CacheEvict(value = {"conversations", "messages"}, allEntries = true)
     public void endConversation(String conversationId, String userId) {
         // Verify user is participant
         Optional<Conversation> conversationOpt = conversationRepository.findById(conversationId);
@@ -302,6 +425,7 @@ public class ConversationService {
 
         // Update conversation status
         conversationRepository.updateConversationStatus(conversationId, Conversation.ConversationStatus.UNMATCHED.name());
+        conversationCacheService.evictConversationAndMessages(conversationId, conversation.getParticipantIds());
 
         // Notify other participants
         List<String> otherParticipants = conversation.getParticipantIds().stream()
@@ -329,6 +453,7 @@ public class ConversationService {
         return conversationRepository.findRecentConversations(userId, days);
     }
 
+    // A bulk job over conversations it doesn't return, so it still clears the whole cache; it runs rarely
     @CacheEvict(value = "conversations", allEntries = true)
     public void autoArchiveInactiveConversations() {
         // Archive conversations that haven't been active for 30 days
@@ -340,7 +465,6 @@ public class ConversationService {
         return conversationRepository.findConversationBetweenUsers(userId1, userId2);
     }
 
-    @CacheEvict(value = {"conversations", "messages"}, allEntries = true)
     public void deleteConversation(String conversationId, String userId) {
         // Verify user is participant
         Optional<Conversation> conversationOpt = conversationRepository.findById(conversationId);
@@ -355,16 +479,48 @@ public class ConversationService {
 
         // Delete conversation and all messages
         conversationRepository.deleteById(conversationId);
+        conversationCacheService.evictConversationAndMessages(conversationId, conversation.getParticipantIds());
+    }
+
+    /**
+     * Delete every conversation the user takes part in, with its messages and inbox entries.
+     * Conversations that could not be fully deleted remain and are picked up by calling this again.
+     */
+    public BulkDeleteResult deleteUserConversations(String userId) {
+        List<Conversation> conversations = conversationRepository.findByParticipantId(userId);
+        BulkDeleteResult result = conversationRepository.deleteByParticipantId(userId);
+        for (Conversation conversation : conversations) {
+            conversationCacheService.evictConversationAndMessages(conversation.getId(), conversation.getParticipantIds());
+        }
+        conversationCacheService.evictUserConversations(userId);
+        return result;
     }
 
-    @CacheEvict(value = {"conversations", "messages"}, allEntries = true)
-    public void deleteUserConversations(String userId) {
-        conversationRepository.deleteByParticipantId(userId);
+    /**
+     * Remove message subcollections left behind by conversations deleted without their messages.
+     * Safe to rerun; each run continues with whatever orphans remain.
+     */
+    public Map<String, Object> purgeOrphanedMessages() {
+        Map<String, Object> response = new HashMap<>();
+        if (!purgingOrphans.compareAndSet(false, true)) {
+            response.put("success", false);
+            response.put("message", "Orphaned message purge already running on this instance");
+            return response;
+        }
+        try {
+            BulkDeleteResult result = conversationRepository.deleteOrphanedMessages();
+            response.put("success", result.isComplete());
+            response.put("result", result);
+            return response;
+        } finally {
+            purgingOrphans.set(false);
+        }
     }
 
-    @CacheEvict(value = "conversations", allEntries = true)
     public Conversation saveConversation(Conversation conversation) {
-        return conversationRepository.save(conversation);
+        Conversation savedConversation = conversationRepository.save(conversation);
+        conversationCacheService.evictConversation(savedConversation.getId(), savedConversation.getParticipantIds());
+        return savedConversation;
     }
 
     /**
@@ -0,0 +1,257 @@
+package com.tpg.connect.services;
+
+import com.tpg.connect.model.batch.BulkDeleteResult;
+import com.tpg.connect.model.conversation.InboxEntry;
+import com.tpg.connect.model.conversation.InboxPage;
+import com.tpg.connect.model.user.ProfileCard;
+import com.tpg.connect.repository.InboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the matches and conversations lists from each user's materialized inbox.
+ *
+ * A page is one query. Counterpart cards are copied into the entries when the match is made and
+ * reloaded, in one batched read for the whole page, once they are older than
+ * {@code app.inbox.card-max-age-hours}. Users whose inbox predates the write paths that maintain
+ * it have it built from their matches on first load. Entries missing their card or match details
+ * are completed as they are loaded, and an entry whose counterpart no longer has a profile is left
+ * out with the page topped up from the entries after it, so pages come back full.
+ */
+@Service
+public class InboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboxService.class);
+
+    private static final String BUILT_KEY_PREFIX = "inbox:built:";
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @Autowired
+    private InboxRepository inboxRepository;
+
+    @Autowired
+    private UserActionsService userActionsService;
+
+    @Autowired
+    private ProfileHydrationService profileHydrationService;
+
+    @Autowired
+    private ProfileManagementService profileService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.inbox.card-max-age-hours:24}")
+    private long cardMaxAgeHours;
+
+    @Value("${app.inbox.built-flag-ttl-hours:24}")
+    private long builtFlagTtlHours;
+
+    private Counter rebuildCounter;
+    private Counter cardRefreshCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        rebuildCounter = Counter.builder("connect_inbox_rebuilds")
+                .description("Inboxes built from a user's matches on first load")
+                .register(meterRegistry);
+        cardRefreshCounter = Counter.builder("connect_inbox_card_refreshes")
+                .description("Inbox counterpart cards reloaded because they were stale or their photo URLs were expiring")
+                .register(meterRegistry);
+    }
+
+    public InboxPage getInbox(String userId, String cursor, int offset, int limit, boolean excludeArchived, boolean unreadOnly) {
+        ensureBuilt(userId);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<InboxEntry> entries = new ArrayList<>();
+        InboxPage page;
+        do {
+            page = inboxRepository.findPage(userId, cursor, offset, pageSize - entries.size(), excludeArchived, unreadOnly);
+            entries.addAll(completeEntries(userId, page.getEntries()));
+            cursor = page.getNextCursor();
+            offset = 0;
+        } while (entries.size() < pageSize && page.isHasMore());
+        refreshCounterparts(userId, entries);
+        return new InboxPage(entries, page.getNextCursor(), page.isHasMore());
+    }
+
+    /**
+     * The user's whole inbox, read a page at a time
+     */
+    public List<InboxEntry> getFullInbox(String userId, boolean excludeArchived, boolean unreadOnly) {
+        List<InboxEntry> entries = new ArrayList<>();
+        String cursor = null;
+        InboxPage page;
+        do {
+            page = getInbox(userId, cursor, 0, MAX_PAGE_SIZE, excludeArchived, unreadOnly);
+            entries.addAll(page.getEntries());
+            cursor = page.getNextCursor();
+        } while (page.isHasMore());
+        return entries;
+    }
+
+    /**
+     * Remove the user's inbox and the Redis flag that marks it built
+     */
+    public BulkDeleteResult deleteInbox(String userId) {
+        try {
+            stringRedisTemplate.delete(BUILT_KEY_PREFIX + userId);
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to clear built inbox flag for {}: {}", userId, e.getMessage());
+        }
+        return inboxRepository.deleteByUserId(userId);
+    }
+
+    /**
+     * Repair entries missing their card or match details, keeping the page order. Entries whose
+     * counterpart has no profile are dropped.
+     */
+    private List<InboxEntry> completeEntries(String userId, List<InboxEntry> entries) {
+        List<InboxEntry> partial = entries.stream()
+                .filter(entry -> entry.getCounterpart() == null || entry.getCounterpart().getFirstName() == null
+                        || entry.getMatchedAt() == null)
+                .collect(Collectors.toList());
+        if (partial.isEmpty()) {
+            return entries;
+        }
+
+        List<String> counterpartIds = partial.stream()
+                .map(InboxEntry::counterpartId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        Map<String, ProfileCard> cards = new HashMap<>();
+        for (ProfileCard card : profileHydrationService.hydrateCards("inbox", counterpartIds)) {
+            cards.put(card.getConnectId(), card);
+        }
+        Set<InboxEntry> repaired = Collections.newSetFromMap(new IdentityHashMap<>());
+        repaired.addAll(inboxRepository.repair(userId, partial, cards));
+        logger.info("🩹 Repaired {} of {} partial inbox entries for {}", repaired.size(), partial.size(), userId);
+
+        Set<InboxEntry> partialSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        partialSet.addAll(partial);
+        return entries.stream()
+                .filter(entry -> !partialSet.contains(entry) || repaired.contains(entry))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Build the user's inbox from their matches unless it has been built already. The built flag
+     * is remembered in Redis so steady-state loads skip the Firestore check.
+     */
+    private void ensureBuilt(String userId) {
+        String builtKey = BUILT_KEY_PREFIX + userId;
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(builtKey))) {
+                return;
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ Redis unavailable checking inbox for {}, falling back to Firestore: {}", userId, e.getMessage());
+        }
+
+        if (!inboxRepository.isBuilt(userId)) {
+            List<String> matchedUserIds = userActionsService.getMatches(userId).stream()
+                    .filter(matchedUserId -> !matchedUserId.equals(userId))
+                    .collect(Collectors.toList());
+            Map<String, ProfileCard> counterparts = new LinkedHashMap<>();
+            for (ProfileCard card : profileHydrationService.hydrateCards("inbox", matchedUserIds)) {
+                counterparts.put(card.getConnectId(), card);
+            }
+            List<InboxEntry> entries = inboxRepository.rebuild(userId, counterparts);
+            rebuildCounter.increment();
+            logger.info("📥 Built inbox for {} with {} entries", userId, entries.size());
+        }
+
+        try {
+            // Expires so a flag outliving its inbox (a failed delete, a restored backup) is rechecked
+            stringRedisTemplate.opsForValue().set(builtKey, "1", Duration.ofHours(builtFlagTtlHours));
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to remember built inbox for {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Reload stale or missing counterpart cards in one batched read, refresh photo URLs that are
+     * about to expire, and write any changed cards back to the inbox.
+     */
+    private void refreshCounterparts(String userId, List<InboxEntry> entries) {
+        LocalDateTime staleBefore = LocalDateTime.now().minusHours(cardMaxAgeHours);
+        List<String> staleIds = entries.stream()
+                .filter(entry -> entry.getCounterpart() != null)
+                .filter(entry -> entry.getCounterpartRefreshedAt() == null || entry.getCounterpartRefreshedAt().isBefore(staleBefore))
+                .map(entry -> entry.getCounterpart().getConnectId())
+                .collect(Collectors.toList());
+
+        Map<String, ProfileCard> reloaded = new HashMap<>();
+        if (!staleIds.isEmpty()) {
+            for (ProfileCard card : profileHydrationService.hydrateCards("inbox", staleIds)) {
+                reloaded.put(card.getConnectId(), card);
+            }
+        }
+
+        List<InboxEntry> withCards = new ArrayList<>();
+        List<ProfileCard> cards = new ArrayList<>();
+        List<List<String>> urlsBefore = new ArrayList<>();
+        for (InboxEntry entry : entries) {
+            ProfileCard counterpart = entry.getCounterpart();
+            if (counterpart == null) {
+                continue;
+            }
+            ProfileCard card = reloaded.getOrDefault(counterpart.getConnectId(), counterpart);
+            withCards.add(entry);
+            cards.add(card);
+            urlsBefore.add(photoUrls(card));
+        }
+
+        // One batched profile read for every card with an expiring URL
+        try {
+            profileService.refreshPhotoUrls(cards);
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to refresh inbox photo URLs for {}, continuing: {}", userId, e.getMessage());
+        }
+
+        List<InboxEntry> changed = new ArrayList<>();
+        for (int i = 0; i < withCards.size(); i++) {
+            InboxEntry entry = withCards.get(i);
+            ProfileCard card = cards.get(i);
+            boolean cardChanged = card != entry.getCounterpart() || !urlsBefore.get(i).equals(photoUrls(card));
+
+            if (cardChanged) {
+                entry.setCounterpart(card);
+                entry.setCounterpartRefreshedAt(LocalDateTime.now());
+                changed.add(entry);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            cardRefreshCounter.increment(changed.size());
+            try {
+                inboxRepository.updateCounterparts(userId, changed);
+            } catch (Exception e) {
+                // The page already carries the fresh cards; the next load retries the write
+                logger.warn("⚠️ Failed to store refreshed inbox cards for {}: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    private List<String> photoUrls(ProfileCard card) {
+        if (card.getPhotos() == null) {
+            return List.of();
+        }
+        return card.getPhotos().stream().map(photo -> String.valueOf(photo.getUrl())).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,465 @@
+package com.tpg.connect.services;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Who-likes-whom graph in Redis, one set of liked connectIds per user.
+ *
+ * Adding likes and checking whether each target already likes the user back is a single script
+ * call, so mutual-match detection no longer needs a Firestore transaction over both users'
+ * userActions documents. Firestore stays the durable record and is written by UserActionsService
+ * before a like is acknowledged; the graph is rebuilt from it on a cold start, when its ready
+ * marker goes missing, or on demand.
+ *
+ * Likes are only removed when their Firestore write failed (unmatches are tracked separately), so
+ * a rebuild only ever adds edges and can safely run while likes are being recorded. Until a
+ * rebuild has completed the graph is not trusted for reciprocity and callers use the Firestore
+ * transaction instead. The script checks the ready marker itself, so an instance whose cached
+ * {@link #isReady()} is stale can never resolve a like against a graph that has been lost; at
+ * worst an instance keeps using the transaction for one check interval after a rebuild.
+ *
+ * Likes resolved by the transaction are mirrored in with the same add-and-check-back step. A like
+ * taking the script path is in the graph before it reaches Firestore, so a concurrent transaction
+ * can miss it; the mirror's check is what catches that mutual.
+ *
+ * Redis runs allkeys-lru, so a user's like set can be evicted while the ready marker stays. Once the
+ * graph is ready a missing set therefore means "not loaded", never "likes nobody": the script does
+ * not add to a user's own missing set and reports targets whose set is missing, and those sets are
+ * loaded from Firestore (with a placeholder member, so a user who likes nobody still has one) before
+ * their reciprocity is answered.
+ *
+ * The script touches several users' keys, so it assumes a single (non-clustered) Redis.
+ */
+@Service
+public class LikeGraphService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LikeGraphService.class);
+
+    private static final String LIKES_PREFIX = "likes:out:";
+    private static final String READY_KEY = "likes:graph:ready";
+    private static final String REBUILD_LOCK_KEY = "likes:graph:rebuilding";
+    // Member of every set loaded on demand, so a loaded set is never empty (and never missing)
+    private static final String LOADED_MEMBER = "-";
+
+    // KEYS[1] = the ready marker, KEYS[2] = the user's like set, KEYS[3..] = each target's like set;
+    // ARGV[1] = userId, ARGV[2..] = targets. Returns nil if the graph is not built, an empty list if
+    // the user's own set is not loaded, otherwise {added, mutual, unknown}: the targets that were new
+    // likes, those of them that like the user back, and those whose own set is not loaded
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List> ADD_LIKES_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then\n" +
+            "  return false\n" +
+            "end\n" +
+            "if redis.call('EXISTS', KEYS[2]) == 0 then\n" +
+            "  return {}\n" +
+            "end\n" +
+            "local added, mutual, unknown = {}, {}, {}\n" +
+            "for i = 2, #ARGV do\n" +
+            "  if redis.call('SADD', KEYS[2], ARGV[i]) == 1 then\n" +
+            "    added[#added + 1] = ARGV[i]\n" +
+            "    if redis.call('EXISTS', KEYS[i + 1]) == 0 then\n" +
+            "      unknown[#unknown + 1] = ARGV[i]\n" +
+            "    elseif redis.call('SISMEMBER', KEYS[i + 1], ARGV[1]) == 1 then\n" +
+            "      mutual[#mutual + 1] = ARGV[i]\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n" +
+            "return {added, mutual, unknown}",
+            List.class);
+
+    // KEYS[1] = the ready marker, KEYS[2] = the user's like set, KEYS[3..] = each target's like set;
+    // ARGV[1] = userId, ARGV[2..] = targets. Adds every like, unless the graph is ready and the user's
+    // set is not loaded (a partial set would pass for a complete one; loading it from Firestore picks
+    // these likes up), and returns the targets that like the user back, whether or not the like was
+    // already in the graph (a rebuild may have loaded it from Firestore first)
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List> RECORD_LIKES_SCRIPT = new DefaultRedisScript<>(
+            "local record = redis.call('EXISTS', KEYS[1]) == 0 or redis.call('EXISTS', KEYS[2]) == 1\n" +
+            "local mutual = {}\n" +
+            "for i = 2, #ARGV do\n" +
+            "  if record then\n" +
+            "    redis.call('SADD', KEYS[2], ARGV[i])\n" +
+            "  end\n" +
+            "  if redis.call('SISMEMBER', KEYS[i + 1], ARGV[1]) == 1 then\n" +
+            "    mutual[#mutual + 1] = ARGV[i]\n" +
+            "  end\n" +
+            "end\n" +
+            "return mutual",
+            List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.like-graph.rebuild-on-startup:true}")
+    private boolean rebuildOnStartup;
+
+    @Value("${app.like-graph.rebuild-page-size:500}")
+    private int rebuildPageSize;
+
+    @Value("${app.like-graph.ready-check-interval-ms:30000}")
+    private long readyCheckIntervalMs;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private volatile boolean ready = false;
+    private volatile long nextReadyCheck = 0;
+
+    private Counter redisLikesCounter;
+    private Counter fallbackLikesCounter;
+
+    @PostConstruct
+    private void initializeMetrics() {
+        redisLikesCounter = Counter.builder("connect_like_graph_likes")
+            .description("Likes whose reciprocity was resolved")
+            .tag("path", "redis")
+            .register(meterRegistry);
+
+        fallbackLikesCounter = Counter.builder("connect_like_graph_likes")
+            .description("Likes whose reciprocity was resolved")
+            .tag("path", "firestore")
+            .register(meterRegistry);
+    }
+
+    @Async("taskExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (isReady()) {
+            logger.info("✅ Like graph already built in Redis");
+            return;
+        }
+        if (rebuildOnStartup) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Whether the graph holds every durable like and can answer reciprocity. The marker is rechecked
+     * every interval even once seen, and a graph found missing is rebuilt.
+     */
+    public boolean isReady() {
+        long now = System.currentTimeMillis();
+        if (now >= nextReadyCheck) {
+            nextReadyCheck = now + readyCheckIntervalMs;
+            try {
+                setReady(Boolean.TRUE.equals(stringRedisTemplate.hasKey(READY_KEY)));
+            } catch (Exception e) {
+                ready = false;
+                logger.warn("⚠️ Could not check like graph state: {}", e.getMessage());
+            }
+        }
+        return ready;
+    }
+
+    private void setReady(boolean nowReady) {
+        boolean wasReady = ready;
+        ready = nowReady;
+        if (wasReady && !nowReady && rebuildOnStartup && !rebuilding.get()) {
+            logger.warn("⚠️ Like graph ready marker is gone, using transactions until it is rebuilt");
+            taskExecutor.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Add the user's likes in one round trip, reporting which were new and which of those are mutual.
+     * Repeated likes are neither added nor reported as mutual again. Sets found missing are loaded
+     * from Firestore first, costing a read only after an eviction. Throws if the graph turns out not
+     * to be built, so the caller falls back to the transaction.
+     */
+    @SuppressWarnings("unchecked")
+    public LikeResult addLikes(String userId, List<String> targetUserIds) {
+        if (targetUserIds.isEmpty()) {
+            return new LikeResult(List.of(), List.of());
+        }
+        List<String> keys = new ArrayList<>(targetUserIds.size() + 2);
+        List<String> args = new ArrayList<>(targetUserIds.size() + 1);
+        keys.add(READY_KEY);
+        keys.add(LIKES_PREFIX + userId);
+        args.add(userId);
+        for (String targetUserId : targetUserIds) {
+            keys.add(LIKES_PREFIX + targetUserId);
+            args.add(targetUserId);
+        }
+
+        List<Object> reply = runAddLikes(keys, args);
+        if (reply.isEmpty()) {
+            loadLikeSets(List.of(userId));
+            reply = runAddLikes(keys, args);
+        }
+        if (reply.size() < 3) {
+            throw new IllegalStateException("Unexpected reply from like graph script");
+        }
+        redisLikesCounter.increment(targetUserIds.size());
+
+        List<String> mutual = new ArrayList<>((List<String>) reply.get(1));
+        List<String> unknown = (List<String>) reply.get(2);
+        if (!unknown.isEmpty()) {
+            loadLikeSets(unknown).forEach((targetUserId, likes) -> {
+                if (likes.contains(userId)) {
+                    mutual.add(targetUserId);
+                }
+            });
+        }
+        return new LikeResult((List<String>) reply.get(0), mutual);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> runAddLikes(List<String> keys, List<String> args) {
+        List<Object> reply = stringRedisTemplate.execute(ADD_LIKES_SCRIPT, keys, args.toArray());
+        if (reply == null) {
+            setReady(false);
+            throw new IllegalStateException("Like graph is not built");
+        }
+        return reply;
+    }
+
+    /**
+     * Load users' like sets from the userActions documents into the graph, returning them. Each user's
+     * parent (legacy arrays) and like buckets are read concurrently.
+     */
+    private Map<String, Set<String>> loadLikeSets(Collection<String> userIds) {
+        Map<String, ApiFuture<DocumentSnapshot>> parents = new LinkedHashMap<>();
+        Map<String, ApiFuture<QuerySnapshot>> buckets = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            DocumentReference parent = firestore.collection(UserActionBuckets.COLLECTION_NAME).document(userId);
+            parents.put(userId, parent.get());
+            buckets.put(userId, parent.collection(UserActionBuckets.BUCKETS_COLLECTION)
+                    .whereEqualTo("set", UserActionBuckets.LIKES)
+                    .get());
+        }
+
+        Map<String, Set<String>> likeSets = new LinkedHashMap<>();
+        Map<String, List<String>> members = new HashMap<>();
+        try {
+            for (String userId : userIds) {
+                Set<String> likes = new LinkedHashSet<>();
+                DocumentSnapshot parent = parents.get(userId).get();
+                if (parent.exists()) {
+                    likes.addAll(UserActionBuckets.memberIds(parent.get(UserActionBuckets.LIKES)));
+                }
+                for (DocumentSnapshot bucket : buckets.get(userId).get().getDocuments()) {
+                    likes.addAll(UserActionBuckets.memberIds(bucket.get("ids")));
+                }
+                likeSets.put(userId, likes);
+                List<String> loaded = new ArrayList<>(likes);
+                loaded.add(LOADED_MEMBER);
+                members.put(userId, loaded);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("Could not load like sets from Firestore", e);
+        }
+        writePage(members);
+        logger.info("🕸️ Loaded {} like sets missing from the like graph", likeSets.size());
+        return likeSets;
+    }
+
+    /**
+     * Mirror likes already written to Firestore into the graph, so a rebuild running concurrently
+     * cannot miss them, and return the targets the graph shows liking the user back. Call it after
+     * the Firestore write: a like on the script path that the transaction could not see yet is found
+     * here. Best effort; the next rebuild covers likes that fail to mirror.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> recordLikes(String userId, List<String> targetUserIds) {
+        if (targetUserIds.isEmpty()) {
+            return List.of();
+        }
+        fallbackLikesCounter.increment(targetUserIds.size());
+        List<String> keys = new ArrayList<>(targetUserIds.size() + 2);
+        List<String> args = new ArrayList<>(targetUserIds.size() + 1);
+        keys.add(READY_KEY);
+        keys.add(LIKES_PREFIX + userId);
+        args.add(userId);
+        for (String targetUserId : targetUserIds) {
+            keys.add(LIKES_PREFIX + targetUserId);
+            args.add(targetUserId);
+        }
+        try {
+            List<String> mutual = stringRedisTemplate.execute(RECORD_LIKES_SCRIPT, keys, args.toArray());
+            return mutual != null ? mutual : List.of();
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not mirror likes of {} into the like graph: {}", userId, e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Take back likes added by {@link #addLikes} whose Firestore write failed, so the graph never
+     * holds a like the caller did not acknowledge
+     */
+    public void removeLikes(String userId, List<String> targetUserIds) {
+        if (targetUserIds.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForSet().remove(LIKES_PREFIX + userId, targetUserIds.toArray());
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not take unpersisted likes of {} out of the like graph: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Likes newly added by {@link #addLikes} and the subset that completed a mutual match
+     */
+    public static final class LikeResult {
+        private final List<String> added;
+        private final List<String> mutual;
+
+        LikeResult(List<String> added, List<String> mutual) {
+            this.added = added;
+            this.mutual = mutual;
+        }
+
+        public List<String> getAdded() {
+            return added;
+        }
+
+        public List<String> getMutual() {
+            return mutual;
+        }
+    }
+
+    /**
+     * Reload every user's likes from the userActions collection and mark the graph ready
+     */
+    public Map<String, Object> rebuild() {
+        Map<String, Object> result = new HashMap<>();
+        if (!rebuilding.compareAndSet(false, true)) {
+            result.put("success", false);
+            result.put("message", "Like graph rebuild already running on this instance");
+            return result;
+        }
+
+        boolean locked = false;
+        try {
+            locked = Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                    .setIfAbsent(REBUILD_LOCK_KEY, "1", Duration.ofMinutes(30)));
+            if (!locked) {
+                logger.info("⏭️ Like graph rebuild already running on another instance");
+                result.put("success", false);
+                result.put("message", "Like graph rebuild already running on another instance");
+                return result;
+            }
+
+            logger.info("🕸️ Rebuilding like graph from Firestore");
+            long started = System.currentTimeMillis();
+            // Likes still held as arrays on unmigrated parents, then the bucketed ones
+            int likes = loadLikes(firestore.collection(UserActionBuckets.COLLECTION_NAME)
+                            .select(UserActionBuckets.LIKES),
+                    DocumentSnapshot::getId, UserActionBuckets.LIKES);
+            likes += loadLikes(firestore.collectionGroup(UserActionBuckets.BUCKETS_COLLECTION)
+                            .whereEqualTo("set", UserActionBuckets.LIKES)
+                            .select("ids"),
+                    bucket -> bucket.getReference().getParent().getParent().getId(), "ids");
+
+            stringRedisTemplate.opsForValue().set(READY_KEY, String.valueOf(System.currentTimeMillis()));
+            ready = true;
+            nextReadyCheck = System.currentTimeMillis() + readyCheckIntervalMs;
+            logger.info("✅ Like graph rebuilt with {} likes in {} ms", likes, System.currentTimeMillis() - started);
+            result.put("success", true);
+            result.put("likes", likes);
+            return result;
+        } catch (Exception e) {
+            logger.error("❌ Like graph rebuild failed: {}", e.getMessage(), e);
+            result.put("success", false);
+            result.put("message", "Like graph rebuild failed: " + e.getMessage());
+            return result;
+        } finally {
+            if (locked) {
+                try {
+                    stringRedisTemplate.delete(REBUILD_LOCK_KEY);
+                } catch (Exception e) {
+                    logger.warn("⚠️ Could not release like graph rebuild lock: {}", e.getMessage());
+                }
+            }
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * Page through the query by document id, adding each document's liked ids to its owner's set
+     */
+    private int loadLikes(Query query, Function<DocumentSnapshot, String> owner, String field)
+            throws InterruptedException, ExecutionException {
+        int likes = 0;
+        DocumentSnapshot last = null;
+        while (true) {
+            Query pageQuery = query.orderBy(FieldPath.documentId()).limit(rebuildPageSize);
+            if (last != null) {
+                pageQuery = pageQuery.startAfter(last);
+            }
+            QuerySnapshot page = pageQuery.get().get();
+            if (page.isEmpty()) {
+                return likes;
+            }
+
+            Map<String, List<String>> pageLikes = new HashMap<>();
+            for (DocumentSnapshot doc : page.getDocuments()) {
+                List<String> targets = UserActionBuckets.memberIds(doc.get(field));
+                if (!targets.isEmpty()) {
+                    pageLikes.computeIfAbsent(owner.apply(doc), id -> new ArrayList<>()).addAll(targets);
+                    likes += targets.size();
+                }
+            }
+            writePage(pageLikes);
+
+            last = page.getDocuments().get(page.size() - 1);
+            if (page.size() < rebuildPageSize) {
+                return likes;
+            }
+        }
+    }
+
+    private void writePage(Map<String, List<String>> pageLikes) {
+        if (pageLikes.isEmpty()) {
+            return;
+        }
+        // One pipelined round trip per page
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            pageLikes.forEach((userId, targets) -> redis.sAdd(LIKES_PREFIX + userId, targets.toArray(new String[0])));
+            return null;
+        });
+    }
+}
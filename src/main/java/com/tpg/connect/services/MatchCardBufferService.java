@@ -0,0 +1,132 @@
+package com.tpg.connect.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tpg.connect.model.user.ProfileCard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-user Redis list of prefetched, hydrated match cards, filled by UserMatchPoolService.
+ *
+ * Each buffer has a version that every removal bumps before it touches the list, and a refill only
+ * replaces the list if the version it started from is still current. A refill that overlapped a
+ * view or an action is discarded rather than writing back cards the user has already seen.
+ */
+@Service
+public class MatchCardBufferService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchCardBufferService.class);
+
+    // Holds ProfileCard JSON; the version keeps buffers written as full profiles from being read as cards
+    private static final String CARDS_PREFIX = "match_pool:cards:v2:";
+    private static final String VERSION_PREFIX = "match_pool:cards:version:";
+
+    // KEYS[1] = the card list, KEYS[2] = its version; ARGV[1] = the version the refill started from,
+    // ARGV[2] = TTL seconds, ARGV[3..] = cards. Returns 1 if the list was replaced, 0 if it was stale
+    private static final RedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "redis.call('DEL', KEYS[1])\n" +
+            "if #ARGV > 2 then\n" +
+            "  redis.call('RPUSH', KEYS[1], unpack(ARGV, 3))\n" +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[2])\n" +
+            "end\n" +
+            "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Below the photo URL refresh window so buffered URLs are always still valid
+    @Value("${app.match-pool.prefetch.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    /**
+     * The first {@code count} buffered cards
+     */
+    public List<ProfileCard> peek(String userId, int count) throws JsonProcessingException {
+        List<String> head = stringRedisTemplate.opsForList().range(CARDS_PREFIX + userId, 0, count - 1L);
+        List<ProfileCard> cards = new ArrayList<>();
+        if (head != null) {
+            for (String card : head) {
+                cards.add(objectMapper.readValue(card, ProfileCard.class));
+            }
+        }
+        return cards;
+    }
+
+    /**
+     * Current buffer version; read it before building a refill and pass it to {@link #replace}
+     */
+    public long version(String userId) {
+        String version = stringRedisTemplate.opsForValue().get(VERSION_PREFIX + userId);
+        return version != null ? Long.parseLong(version) : 0L;
+    }
+
+    /**
+     * Drop the given users' cards and invalidate refills already in progress. Returns the number of
+     * cards left; if Redis fails the buffer is deleted, since a stale one could re-serve seen cards.
+     */
+    public int remove(String userId, Collection<String> connectIds) {
+        if (connectIds.isEmpty()) {
+            return 0;
+        }
+        String key = CARDS_PREFIX + userId;
+        try {
+            String versionKey = VERSION_PREFIX + userId;
+            stringRedisTemplate.opsForValue().increment(versionKey);
+            stringRedisTemplate.expire(versionKey, ttlMinutes, TimeUnit.MINUTES);
+
+            List<String> buffered = stringRedisTemplate.opsForList().range(key, 0, -1);
+            if (buffered == null || buffered.isEmpty()) {
+                return 0;
+            }
+            int removed = 0;
+            for (String card : buffered) {
+                if (connectIds.contains(objectMapper.readTree(card).path("connectId").asText())) {
+                    stringRedisTemplate.opsForList().remove(key, 1, card);
+                    removed++;
+                }
+            }
+            return buffered.size() - removed;
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to update match card buffer for {}, discarding it: {}", userId, e.getMessage());
+            try {
+                stringRedisTemplate.delete(key);
+            } catch (Exception ignored) {
+                // Redis unavailable; the TTL will expire the buffer
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Replace the buffer with {@code cards} unless it changed since {@code expectedVersion} was read.
+     * Returns false when the refill was stale and should be run again.
+     */
+    public boolean replace(String userId, long expectedVersion, List<ProfileCard> cards) throws JsonProcessingException {
+        List<String> args = new ArrayList<>(cards.size() + 2);
+        args.add(Long.toString(expectedVersion));
+        args.add(Long.toString(TimeUnit.MINUTES.toSeconds(ttlMinutes)));
+        for (ProfileCard card : cards) {
+            args.add(objectMapper.writeValueAsString(card));
+        }
+        Long replaced = stringRedisTemplate.execute(REPLACE_SCRIPT,
+                List.of(CARDS_PREFIX + userId, VERSION_PREFIX + userId), args.toArray());
+        return replaced != null && replaced == 1L;
+    }
+}
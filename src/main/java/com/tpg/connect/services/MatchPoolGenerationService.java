@@ -0,0 +1,402 @@
+package com.tpg.connect.services;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.tpg.connect.model.user.ApplicationStatus;
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.repository.UserProfileRepository;
+import com.tpg.connect.repository.UserRepository;
+import com.tpg.connect.services.matchpool.MatchPoolEngine;
+import com.tpg.connect.services.matchpool.MatchPoolResult;
+import com.tpg.connect.services.matchpool.MatchPoolSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Produces each day's UserMatchPools documents for the whole active member base.
+ *
+ * A run loads a compact snapshot of eligible profiles, computes pools in memory with
+ * MatchPoolEngine, then appends the day to every user's pool queue (see UserMatchPoolService) through a BulkWriter.
+ * Users are hashed into a fixed number of write chunks; each completed chunk is checkpointed on
+ * the MatchPoolRuns/{date} document so a crashed or interrupted run resumes with only the
+ * outstanding chunks. A lease on the same document keeps replicas from running concurrently.
+ */
+@Service
+public class MatchPoolGenerationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchPoolGenerationService.class);
+
+    private static final String RUNS_COLLECTION = "MatchPoolRuns";
+
+    private static final String STATUS_RUNNING = "RUNNING";
+    private static final String STATUS_COMPLETED = "COMPLETED";
+    private static final String STATUS_FAILED = "FAILED";
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private UserProfileRepository userProfileRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.match-pool.generation.pool-size:10}")
+    private int poolSize;
+
+    @Value("${app.match-pool.generation.max-scanned:2000}")
+    private int maxScanned;
+
+    // Pools a user can lead through the stable-matching pass, and picks of their own it accepts
+    @Value("${app.match-pool.generation.stable-capacity:3}")
+    private int stableCapacity;
+
+    @Value("${app.match-pool.generation.parallelism:0}")
+    private int parallelism;
+
+    @Value("${app.match-pool.generation.page-size:1000}")
+    private int pageSize;
+
+    @Value("${app.match-pool.generation.chunk-count:128}")
+    private int chunkCount;
+
+    @Value("${app.match-pool.generation.max-chunks-in-flight:8}")
+    private int maxChunksInFlight;
+
+    @Value("${app.match-pool.generation.initial-ops-per-second:500}")
+    private int initialOpsPerSecond;
+
+    @Value("${app.match-pool.generation.max-ops-per-second:10000}")
+    private int maxOpsPerSecond;
+
+    @Value("${app.match-pool.generation.lease-minutes:15}")
+    private int leaseMinutes;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private Timer generationTimer;
+    private Counter poolsWrittenCounter;
+    private Counter chunkFailureCounter;
+
+    @PostConstruct
+    private void initializeMetrics() {
+        generationTimer = Timer.builder("connect_match_pool_generation_duration")
+            .description("Time taken for a full match pool generation run")
+            .register(meterRegistry);
+
+        poolsWrittenCounter = Counter.builder("connect_match_pool_pools_written")
+            .description("Number of user match pools written by generation runs")
+            .register(meterRegistry);
+
+        chunkFailureCounter = Counter.builder("connect_match_pool_chunk_failures")
+            .description("Number of match pool write chunks that failed and were left for resume")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Generate (or resume) the pools for the given day
+     */
+    public Map<String, Object> generatePools(LocalDate date) {
+        String runId = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        DocumentReference runRef = firestore.collection(RUNS_COLLECTION).document(runId);
+        Map<String, Object> result = new HashMap<>();
+        result.put("date", runId);
+
+        RunCheckpoint checkpoint = claimRun(runRef, runId);
+        if (checkpoint == null) {
+            logger.info("⏭️ Match pool run {} already completed or owned by another instance", runId);
+            result.put("success", true);
+            result.put("skipped", true);
+            return result;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            logger.info("🏭 Starting match pool run {} ({} of {} chunks already written)",
+                    runId, checkpoint.completedChunks.size(), checkpoint.chunkCount);
+
+            long started = System.currentTimeMillis();
+            MatchPoolSnapshot snapshot = loadSnapshot(date);
+            long loaded = System.currentTimeMillis();
+            renewLease(runRef);
+
+            ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+            MatchPoolResult pools;
+            try {
+                pools = new MatchPoolEngine(poolSize, maxScanned, stableCapacity).generate(snapshot, date.toEpochDay() * 0x9E3779B97F4A7C15L, forkJoinPool);
+            } finally {
+                forkJoinPool.shutdown();
+            }
+            long computed = System.currentTimeMillis();
+            logger.info("🧮 Computed {} pools ({} stable pairs) in {} ms after {} ms snapshot load",
+                    pools.userCount(), pools.stablePairs(), computed - loaded, loaded - started);
+            renewLease(runRef);
+
+            int failedChunks = writePools(pools, runId, runRef, checkpoint);
+
+            Map<String, Object> finalState = new HashMap<>();
+            finalState.put("status", failedChunks == 0 ? STATUS_COMPLETED : STATUS_FAILED);
+            finalState.put("usersTotal", pools.userCount());
+            finalState.put("updatedAt", Timestamp.now());
+            finalState.put("leaseExpiresAt", Timestamp.now());
+            runRef.set(finalState, SetOptions.merge()).get();
+
+            logger.info("✅ Match pool run {} finished in {} ms ({} failed chunks)",
+                    runId, System.currentTimeMillis() - started, failedChunks);
+            result.put("success", failedChunks == 0);
+            result.put("usersTotal", pools.userCount());
+            result.put("failedChunks", failedChunks);
+            return result;
+        } catch (Exception e) {
+            logger.error("❌ Match pool run {} failed: {}", runId, e.getMessage(), e);
+            markFailed(runRef, e);
+            result.put("success", false);
+            result.put("message", "Match pool generation failed: " + e.getMessage());
+            return result;
+        } finally {
+            sample.stop(generationTimer);
+        }
+    }
+
+    private MatchPoolSnapshot loadSnapshot(LocalDate date) {
+        Set<String> activeMembers = userRepository.findConnectIdsByApplicationStatus(ApplicationStatus.ACTIVE);
+        MatchPoolSnapshot.Builder builder = MatchPoolSnapshot.builder(date);
+
+        // Pages are reduced to snapshot features as they arrive, so profiles are never all held at once
+        String cursor = null;
+        List<CompleteUserProfile> page;
+        do {
+            page = userProfileRepository.findProfilesPage(cursor, pageSize);
+            for (CompleteUserProfile profile : page) {
+                if (profile.getActive() && activeMembers.contains(profile.getConnectId())) {
+                    builder.add(profile);
+                }
+            }
+            if (!page.isEmpty()) {
+                cursor = page.get(page.size() - 1).getConnectId();
+            }
+        } while (page.size() == pageSize);
+
+        logger.info("🗂️ Match pool snapshot holds {} of {} active members", builder.size(), activeMembers.size());
+        return builder.build();
+    }
+
+    private int writePools(MatchPoolResult pools, String runId, DocumentReference runRef, RunCheckpoint checkpoint)
+            throws InterruptedException, ExecutionException {
+        List<List<Integer>> chunks = new ArrayList<>(checkpoint.chunkCount);
+        for (int c = 0; c < checkpoint.chunkCount; c++) {
+            chunks.add(new ArrayList<>());
+        }
+        for (int user = 0; user < pools.userCount(); user++) {
+            if (pools.poolSize(user) > 0) {
+                chunks.get(chunkOf(pools.connectId(user), checkpoint.chunkCount)).add(user);
+            }
+        }
+
+        BulkWriter writer = firestore.bulkWriter(BulkWriterOptions.builder()
+                .setInitialOpsPerSecond(initialOpsPerSecond)
+                .setMaxOpsPerSecond(maxOpsPerSecond)
+                .build());
+        String lastUpdated = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z";
+        Semaphore inFlight = new Semaphore(Math.max(1, maxChunksInFlight));
+        Queue<int[]> completed = new ConcurrentLinkedQueue<>();
+        AtomicInteger failedChunks = new AtomicInteger();
+        List<Integer> pending = new ArrayList<>();
+
+        for (int c = 0; c < chunks.size(); c++) {
+            if (!checkpoint.completedChunks.contains(c)) {
+                pending.add(c);
+            }
+        }
+        CountDownLatch chunksDone = new CountDownLatch(pending.size());
+
+        for (int chunk : pending) {
+            inFlight.acquire();
+            checkpointCompleted(runRef, completed);
+
+            List<ApiFuture<WriteResult>> writes = new ArrayList<>();
+            for (int user : chunks.get(chunk)) {
+                DocumentReference poolRef = firestore.collection(UserMatchPoolService.POOLS_COLLECTION).document(pools.connectId(user));
+                writes.add(writer.set(poolRef, poolHeader(pools, user, lastUpdated), SetOptions.merge()));
+                // Merge keeps the viewed map if a resumed run rewrites the same day
+                writes.add(writer.set(poolRef.collection(UserMatchPoolService.DAYS_COLLECTION).document(runId),
+                        poolDay(pools, user, runId), SetOptions.merge()));
+            }
+            writer.flush();
+
+            int chunkSize = chunks.get(chunk).size();
+            ApiFutures.addCallback(ApiFutures.allAsList(writes), new ApiFutureCallback<List<WriteResult>>() {
+                @Override
+                public void onSuccess(List<WriteResult> results) {
+                    completed.add(new int[]{chunk, chunkSize});
+                    inFlight.release();
+                    chunksDone.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    logger.warn("⚠️ Match pool chunk {} failed and will be retried on resume: {}", chunk, t.getMessage());
+                    failedChunks.incrementAndGet();
+                    chunkFailureCounter.increment();
+                    inFlight.release();
+                    chunksDone.countDown();
+                }
+            }, Runnable::run);
+        }
+
+        writer.close();
+        chunksDone.await();
+        checkpointCompleted(runRef, completed);
+        return failedChunks.get();
+    }
+
+    /**
+     * Record chunks whose writes have all landed and extend the lease
+     */
+    private void checkpointCompleted(DocumentReference runRef, Queue<int[]> completed)
+            throws InterruptedException, ExecutionException {
+        List<Object> chunkIds = new ArrayList<>();
+        long pools = 0;
+        int[] done;
+        while ((done = completed.poll()) != null) {
+            chunkIds.add(done[0]);
+            pools += done[1];
+        }
+        if (chunkIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("completedChunks", FieldValue.arrayUnion(chunkIds.toArray()));
+        updates.put("poolsWritten", FieldValue.increment(pools));
+        updates.put("updatedAt", Timestamp.now());
+        updates.put("leaseExpiresAt", leaseExpiry());
+        runRef.update(updates).get();
+        poolsWrittenCounter.increment(pools);
+    }
+
+    private Map<String, Object> poolHeader(MatchPoolResult pools, int user, String lastUpdated) {
+        Map<String, Object> header = new HashMap<>();
+        header.put("connectId", pools.connectId(user));
+        header.put("lastUpdated", lastUpdated);
+        return header;
+    }
+
+    private Map<String, Object> poolDay(MatchPoolResult pools, int user, String date) {
+        List<Map<String, Object>> matches = new ArrayList<>(pools.poolSize(user));
+        for (int position = 0; position < pools.poolSize(user); position++) {
+            Map<String, Object> match = new HashMap<>();
+            match.put("matchConnectId", pools.matchConnectId(user, position));
+            match.put("compatibilityScore", Math.round(pools.compatibilityScore(user, position) * 10000.0) / 10000.0);
+            match.put("stabilityRank", pools.stabilityRank(user, position));
+            matches.add(match);
+        }
+        return UserMatchPoolService.dayDocument(date, matches, null);
+    }
+
+    private RunCheckpoint claimRun(DocumentReference runRef, String runId) {
+        try {
+            return firestore.runTransaction(transaction -> {
+                DocumentSnapshot doc = transaction.get(runRef).get();
+                Set<Integer> completedChunks = new HashSet<>();
+                int chunks = chunkCount;
+
+                if (doc.exists()) {
+                    String status = doc.getString("status");
+                    if (STATUS_COMPLETED.equals(status)) {
+                        return null;
+                    }
+                    Timestamp lease = doc.getTimestamp("leaseExpiresAt");
+                    if (STATUS_RUNNING.equals(status) && lease != null && lease.compareTo(Timestamp.now()) > 0
+                            && !instanceId.equals(doc.getString("leaseOwner"))) {
+                        return null;
+                    }
+                    // Chunk assignment must not change between attempts of the same run
+                    Long storedChunkCount = doc.getLong("chunkCount");
+                    if (storedChunkCount != null) {
+                        chunks = storedChunkCount.intValue();
+                    }
+                    @SuppressWarnings("unchecked")
+                    List<Object> stored = (List<Object>) doc.get("completedChunks");
+                    if (stored != null) {
+                        for (Object chunk : stored) {
+                            completedChunks.add(((Number) chunk).intValue());
+                        }
+                    }
+                }
+
+                Map<String, Object> claim = new HashMap<>();
+                claim.put("date", runId);
+                claim.put("status", STATUS_RUNNING);
+                claim.put("chunkCount", chunks);
+                claim.put("leaseOwner", instanceId);
+                claim.put("leaseExpiresAt", leaseExpiry());
+                claim.put("updatedAt", Timestamp.now());
+                if (!doc.exists()) {
+                    claim.put("startedAt", Timestamp.now());
+                    claim.put("completedChunks", new ArrayList<>());
+                    claim.put("poolsWritten", 0);
+                }
+                transaction.set(runRef, claim, SetOptions.merge());
+                return new RunCheckpoint(chunks, completedChunks);
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to claim match pool run", e);
+        }
+    }
+
+    private void renewLease(DocumentReference runRef) throws InterruptedException, ExecutionException {
+        runRef.update("leaseExpiresAt", leaseExpiry(), "updatedAt", Timestamp.now()).get();
+    }
+
+    private void markFailed(DocumentReference runRef, Exception cause) {
+        try {
+            Map<String, Object> failure = new HashMap<>();
+            failure.put("status", STATUS_FAILED);
+            failure.put("lastError", String.valueOf(cause.getMessage()));
+            failure.put("updatedAt", Timestamp.now());
+            failure.put("leaseExpiresAt", Timestamp.now());
+            runRef.set(failure, SetOptions.merge()).get();
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not record match pool run failure: {}", e.getMessage());
+        }
+    }
+
+    private Timestamp leaseExpiry() {
+        return Timestamp.ofTimeSecondsAndNanos(Timestamp.now().getSeconds() + leaseMinutes * 60L, 0);
+    }
+
+    private static int chunkOf(String connectId, int chunks) {
+        return Math.floorMod(connectId.hashCode(), chunks);
+    }
+
+    private static final class RunCheckpoint {
+        private final int chunkCount;
+        private final Set<Integer> completedChunks;
+
+        private RunCheckpoint(int chunkCount, Set<Integer> completedChunks) {
+            this.chunkCount = chunkCount;
+            this.completedChunks = completedChunks;
+        }
+    }
+}
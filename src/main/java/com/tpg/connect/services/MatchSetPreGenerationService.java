@@ -0,0 +1,308 @@
+package com.tpg.connect.services;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.tpg.connect.model.user.ApplicationStatus;
+import com.tpg.connect.repository.MatchSetRepository;
+import com.tpg.connect.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds every active user's MatchSet ahead of the 7 PM release so the request path only reads.
+ *
+ * Users that already have a set for the date are skipped, so each scheduled run only fills the gap
+ * (new members, earlier failures). Generation runs on a fixed-size worker pool and is paced to a
+ * configured number of users per second to keep Firestore load flat. The release step then sends the
+ * "matches ready" notifications at the same pace. A lease on MatchSetRuns/{date}-{step} keeps
+ * replicas from running the same step concurrently.
+ */
+@Service
+public class MatchSetPreGenerationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchSetPreGenerationService.class);
+
+    private static final String RUNS_COLLECTION = "MatchSetRuns";
+
+    private static final String STATUS_RUNNING = "RUNNING";
+    private static final String STATUS_COMPLETED = "COMPLETED";
+    private static final String STATUS_FAILED = "FAILED";
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MatchSetRepository matchSetRepository;
+
+    @Autowired
+    private PotentialMatchesService potentialMatchesService;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.match-set.pregeneration.parallelism:4}")
+    private int parallelism;
+
+    @Value("${app.match-set.pregeneration.users-per-second:20}")
+    private double usersPerSecond;
+
+    @Value("${app.match-set.release.notifications-per-second:50}")
+    private double notificationsPerSecond;
+
+    @Value("${app.match-set.pregeneration.lease-minutes:15}")
+    private int leaseMinutes;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private Timer preGenerationTimer;
+    private Counter generatedCounter;
+    private Counter failureCounter;
+
+    @PostConstruct
+    private void initializeMetrics() {
+        preGenerationTimer = Timer.builder("connect_match_set_pregeneration_duration")
+            .description("Time taken for a match set pre-generation run")
+            .register(meterRegistry);
+
+        generatedCounter = Counter.builder("connect_match_set_pregenerated")
+            .description("Number of match sets generated ahead of release")
+            .register(meterRegistry);
+
+        failureCounter = Counter.builder("connect_match_set_pregeneration_failures")
+            .description("Number of users whose match set could not be pre-generated")
+            .register(meterRegistry);
+    }
+
+    /**
+     * The date whose sets are released next: today until release time, tomorrow after it
+     */
+    public LocalDate nextReleaseDate() {
+        LocalDate today = LocalDate.now();
+        return LocalTime.now().isBefore(PotentialMatchesService.MATCHES_RELEASE_TIME) ? today : today.plusDays(1);
+    }
+
+    /**
+     * Generate the missing match sets for the given date
+     */
+    public Map<String, Object> preGenerate(LocalDate date) {
+        String runDate = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        DocumentReference runRef = firestore.collection(RUNS_COLLECTION).document(runDate + "-pregeneration");
+        Map<String, Object> result = new HashMap<>();
+        result.put("date", runDate);
+
+        // Every scheduled run re-checks for missing sets, so a completed run can be claimed again
+        if (!claimRun(runRef, runDate, true)) {
+            logger.info("⏭️ Match set pre-generation for {} is running on another instance", runDate);
+            result.put("success", true);
+            result.put("skipped", true);
+            return result;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            long started = System.currentTimeMillis();
+            Set<String> pending = userRepository.findConnectIdsByApplicationStatus(ApplicationStatus.ACTIVE);
+            int activeUsers = pending.size();
+            pending.removeAll(matchSetRepository.findTotalMatchesByDate(runDate).keySet());
+            logger.info("🏭 Pre-generating {} match sets for {} ({} already exist)",
+                    pending.size(), runDate, activeUsers - pending.size());
+
+            AtomicInteger generated = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            runPaced(pending, usersPerSecond, workers, runRef, userId -> {
+                try {
+                    potentialMatchesService.getOrGenerateMatchSet(userId, date);
+                    generated.incrementAndGet();
+                    generatedCounter.increment();
+                } catch (Exception e) {
+                    logger.warn("⚠️ Could not pre-generate match set for {}: {}", userId, e.getMessage());
+                    failed.incrementAndGet();
+                    failureCounter.increment();
+                }
+            });
+
+            finishRun(runRef, failed.get() == 0, generated.get(), failed.get());
+            logger.info("✅ Match set pre-generation for {} finished in {} ms: {} generated, {} failed",
+                    runDate, System.currentTimeMillis() - started, generated.get(), failed.get());
+            result.put("success", failed.get() == 0);
+            result.put("generated", generated.get());
+            result.put("failed", failed.get());
+            return result;
+        } catch (Exception e) {
+            logger.error("❌ Match set pre-generation for {} failed: {}", runDate, e.getMessage(), e);
+            finishRun(runRef, false, 0, 0);
+            result.put("success", false);
+            result.put("message", "Match set pre-generation failed: " + e.getMessage());
+            return result;
+        } finally {
+            workers.shutdown();
+            sample.stop(preGenerationTimer);
+        }
+    }
+
+    /**
+     * Notify every user with a non-empty pre-generated set for the date, once per date
+     */
+    public Map<String, Object> sendReleaseNotifications(LocalDate date) {
+        String runDate = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        DocumentReference runRef = firestore.collection(RUNS_COLLECTION).document(runDate + "-release");
+        Map<String, Object> result = new HashMap<>();
+        result.put("date", runDate);
+
+        if (!claimRun(runRef, runDate, false)) {
+            logger.info("⏭️ Match set release for {} already sent or running on another instance", runDate);
+            result.put("success", true);
+            result.put("skipped", true);
+            return result;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            Map<String, Integer> totals = matchSetRepository.findTotalMatchesByDate(runDate);
+            List<String> recipients = new ArrayList<>();
+            totals.forEach((userId, totalMatches) -> {
+                if (totalMatches > 0) {
+                    recipients.add(userId);
+                }
+            });
+
+            AtomicInteger sent = new AtomicInteger();
+            runPaced(recipients, notificationsPerSecond, workers, runRef, userId -> {
+                try {
+                    notificationService.sendPotentialMatchesReadyNotification(userId, totals.get(userId));
+                    sent.incrementAndGet();
+                } catch (Exception e) {
+                    logger.warn("⚠️ Could not send match release notification to {}: {}", userId, e.getMessage());
+                }
+            });
+
+            // Completed even with individual failures, so nobody is notified twice
+            finishRun(runRef, true, sent.get(), recipients.size() - sent.get());
+            logger.info("🔔 Sent {} of {} match release notifications for {}", sent.get(), recipients.size(), runDate);
+            result.put("success", true);
+            result.put("sent", sent.get());
+            return result;
+        } catch (Exception e) {
+            logger.error("❌ Match set release for {} failed: {}", runDate, e.getMessage(), e);
+            finishRun(runRef, false, 0, 0);
+            result.put("success", false);
+            result.put("message", "Match set release failed: " + e.getMessage());
+            return result;
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Run the task for every user on the worker pool, started no faster than {@code perSecond} and with
+     * at most one queued task per worker, renewing the run lease as it goes
+     */
+    private void runPaced(Collection<String> userIds, double perSecond, ExecutorService workers,
+                          DocumentReference runRef, java.util.function.Consumer<String> task)
+            throws InterruptedException, ExecutionException {
+        long intervalNanos = perSecond > 0 ? (long) (1_000_000_000L / perSecond) : 0L;
+        Semaphore inFlight = new Semaphore(Math.max(1, parallelism) * 2);
+        long leaseRenewInterval = TimeUnit.MINUTES.toNanos(Math.max(1, leaseMinutes / 3));
+        long nextStart = System.nanoTime();
+        long nextLeaseRenewal = nextStart + leaseRenewInterval;
+
+        for (String userId : userIds) {
+            long wait = nextStart - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            nextStart = Math.max(nextStart, System.nanoTime() - intervalNanos) + intervalNanos;
+
+            if (System.nanoTime() >= nextLeaseRenewal) {
+                renewLease(runRef);
+                nextLeaseRenewal = System.nanoTime() + leaseRenewInterval;
+            }
+
+            inFlight.acquire();
+            workers.execute(() -> {
+                try {
+                    task.accept(userId);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        workers.shutdown();
+        while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            renewLease(runRef);
+        }
+    }
+
+    private boolean claimRun(DocumentReference runRef, String runDate, boolean rerunCompleted) {
+        try {
+            return firestore.runTransaction(transaction -> {
+                DocumentSnapshot doc = transaction.get(runRef).get();
+                if (doc.exists()) {
+                    String status = doc.getString("status");
+                    if (STATUS_COMPLETED.equals(status) && !rerunCompleted) {
+                        return false;
+                    }
+                    Timestamp lease = doc.getTimestamp("leaseExpiresAt");
+                    if (STATUS_RUNNING.equals(status) && lease != null && lease.compareTo(Timestamp.now()) > 0
+                            && !instanceId.equals(doc.getString("leaseOwner"))) {
+                        return false;
+                    }
+                }
+
+                Map<String, Object> claim = new HashMap<>();
+                claim.put("date", runDate);
+                claim.put("status", STATUS_RUNNING);
+                claim.put("leaseOwner", instanceId);
+                claim.put("leaseExpiresAt", leaseExpiry());
+                claim.put("startedAt", Timestamp.now());
+                transaction.set(runRef, claim, SetOptions.merge());
+                return true;
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to claim match set run", e);
+        }
+    }
+
+    private void renewLease(DocumentReference runRef) throws InterruptedException, ExecutionException {
+        runRef.update("leaseExpiresAt", leaseExpiry(), "updatedAt", Timestamp.now()).get();
+    }
+
+    private void finishRun(DocumentReference runRef, boolean succeeded, int processed, int failed) {
+        try {
+            Map<String, Object> finalState = new HashMap<>();
+            finalState.put("status", succeeded ? STATUS_COMPLETED : STATUS_FAILED);
+            finalState.put("processed", processed);
+            finalState.put("failed", failed);
+            finalState.put("updatedAt", Timestamp.now());
+            finalState.put("leaseExpiresAt", Timestamp.now());
+            runRef.set(finalState, SetOptions.merge()).get();
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not record match set run state: {}", e.getMessage());
+        }
+    }
+
+    private Timestamp leaseExpiry() {
+        return Timestamp.ofTimeSecondsAndNanos(Timestamp.now().getSeconds() + leaseMinutes * 60L, 0);
+    }
+}
@@ -56,7 +56,7 @@ public class NotificationService {
         System.out.println("🔔 NotificationService: Creating notification...");
         Notification notification = createNotification(request);
         System.out.println("🔔 NotificationService: Saving notification to database...");
-        notification = notificationRepository.save(notification);
+        notification = notificationRepository.create(notification);
         System.out.println("✅ NotificationService: Notification saved with ID: " + notification.getId());
 
         if (request.isSendImmediately()) {
@@ -273,20 +273,15 @@ public class NotificationService {
     @CacheEvict(value = "userNotifications", key = "#userId + '*'")
     public void markAsRead(String userId, String notificationId) {
         Notification notification = notificationRepository.findById(notificationId).orElse(null);
-        if (notification != null && notification.getUserId().equals(userId)) {
-            notification.markAsRead();
-            notificationRepository.save(notification);
+        if (notification != null && notification.getUserId().equals(userId) && !notification.isRead()) {
+            notificationRepository.markAsRead(notification);
             clearUserNotificationCache(userId);
         }
     }
 
     @CacheEvict(value = "userNotifications", key = "#userId + '*'")
     public void markAllAsRead(String userId) {
-        List<Notification> unreadNotifications = notificationRepository.findUnreadByUserId(userId);
-        for (Notification notification : unreadNotifications) {
-            notification.markAsRead();
-        }
-        notificationRepository.saveAll(unreadNotifications);
+        notificationRepository.markAllAsReadForUser(userId);
         clearUserNotificationCache(userId);
     }
 
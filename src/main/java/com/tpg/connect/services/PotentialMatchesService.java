@@ -3,24 +3,55 @@ package com.tpg.connect.services;
 import com.tpg.connect.repository.MatchSetRepository;
 import com.tpg.connect.repository.UserActionRepository;
 import com.tpg.connect.repository.UserProfileRepository;
+import com.tpg.connect.repository.index.CandidateIndex;
+import com.tpg.connect.repository.index.ProximityIndex;
 import com.tpg.connect.model.api.PotentialMatchesResponse;
 import com.tpg.connect.model.MatchSet;
 import com.tpg.connect.model.dto.MatchActionsRequest;
+import com.tpg.connect.model.match.DiscoveryUser;
 import com.tpg.connect.model.match.UserAction;
 import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.ProfileCard;
+import com.tpg.connect.services.matchpool.CompatibilityScorer;
+import com.tpg.connect.services.matchpool.MatchPoolSnapshot;
+import com.tpg.connect.util.ConnectIdBitmap;
+import com.tpg.connect.util.GeoHash;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
 public class PotentialMatchesService {
 
+    private static final Logger logger = LoggerFactory.getLogger(PotentialMatchesService.class);
+
     @Autowired
     private MatchSetRepository matchSetRepository;
 
@@ -35,14 +66,89 @@ public class PotentialMatchesService {
 
 
     @Autowired
-    private NotificationService notificationService;
+    private UserActionsService userActionsService;
 
     @Autowired
-    private UserActionsService userActionsService;
+    private CandidateIndex candidateIndex;
+
+    @Autowired
+    private ProximityIndex proximityIndex;
+
+    @Autowired
+    private CandidateIndexSyncService candidateIndexSyncService;
+
+    @Autowired
+    private ProfileHydrationService profileHydrationService;
+
+    @Autowired
+    private BlockIndexService blockIndexService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
 
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
 
     private static final int MATCH_SET_SIZE = 10;
-    private static final LocalTime MATCHES_RELEASE_TIME = LocalTime.of(19, 0); // 7:00 PM
+    private static final int CANDIDATE_OVERSAMPLE = 3; // Headroom for hard filters and ranking
+    static final LocalTime MATCHES_RELEASE_TIME = LocalTime.of(19, 0); // 7:00 PM
+
+    private static final String GENERATION_LEASE_PREFIX = "match_set:generation_lease:";
+    private static final String GENERATION_DONE_PREFIX = "match_set:generated:";
+    private static final Duration GENERATION_DONE_TTL = Duration.ofMinutes(10);
+    private static final long GENERATION_POLL_MIN_MS = 100;
+    private static final long GENERATION_POLL_MAX_MS = 2_000;
+
+    // KEYS[1] = lease, ARGV[1] = holder, ARGV[2] = TTL ms; extends the lease only while we still hold it
+    private static final RedisScript<Long> RENEW_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+            "  return redis.call('PEXPIRE', KEYS[1], ARGV[2])\n" +
+            "end\n" +
+            "return 0",
+            Long.class);
+
+    @Value("${app.match-set.generation.lease-seconds:30}")
+    private int generationLeaseSeconds;
+
+    @Value("${app.match-set.generation.max-wait-seconds:60}")
+    private int generationMaxWaitSeconds;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // Keeps the leases of generations running in this JVM alive; daemon so it never holds up shutdown
+    private final ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "match-set-lease-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // matchSetId -> generation running in this JVM
+    private final ConcurrentHashMap<String, CompletableFuture<MatchSet>> inFlightGenerations = new ConcurrentHashMap<>();
+
+    private Counter lazyGenerationCounter;
+    private Counter localCoalescedCounter;
+    private Counter replicaCoalescedCounter;
+
+    @PostConstruct
+    private void initializeMetrics() {
+        lazyGenerationCounter = Counter.builder("connect_match_set_lazy_generations")
+            .description("Match sets generated on the request path because no pre-generated set existed")
+            .register(meterRegistry);
+
+        localCoalescedCounter = Counter.builder("connect_match_set_generation_coalesced")
+            .description("Callers that waited on a match set generation already in flight instead of starting one")
+            .tag("scope", "local")
+            .register(meterRegistry);
+
+        replicaCoalescedCounter = Counter.builder("connect_match_set_generation_coalesced")
+            .description("Callers that waited on a match set generation already in flight instead of starting one")
+            .tag("scope", "replica")
+            .register(meterRegistry);
+    }
 
     public Map<String, Object> getMatchesStatus(String userId) {
         LocalDate today = LocalDate.now();
@@ -70,7 +176,8 @@ public class PotentialMatchesService {
         return status;
     }
 
-    @Cacheable(value = "potentialMatches", key = "'matches_' + #userId + '_' + T(java.time.LocalDate).now()")
+    // Keyed apart from responses cached before they carried ProfileCards, which no longer deserialize
+    @Cacheable(value = "potentialMatches", key = "'match_cards_' + #userId + '_' + T(java.time.LocalDate).now()")
     public PotentialMatchesResponse getTodaysMatches(String userId) {
         LocalDate today = LocalDate.now();
         String matchSetId = generateMatchSetId(userId, today);
@@ -78,22 +185,22 @@ public class PotentialMatchesService {
         // Check if match set already exists
         MatchSet existingMatchSet = matchSetRepository.findById(matchSetId).orElse(null);
         if (existingMatchSet != null) {
-            List<CompleteUserProfile> users = getUserProfilesFromMatchSet(existingMatchSet);
-            return new PotentialMatchesResponse(true, "Today's matches retrieved", users, matchSetId, 
+            List<ProfileCard> users = getCardsFromMatchSet(existingMatchSet);
+            PotentialMatchesResponse response = new PotentialMatchesResponse(true, "Today's matches retrieved", users, matchSetId, 
                     existingMatchSet.getTotalMatches(), "COMPLETED".equals(existingMatchSet.getStatus()));
+            response.setDiscoveryUsers(toDiscoveryUsers(existingMatchSet, users));
+            return response;
         }
         
-        // Generate new match set
-        MatchSet matchSet = generateMatchSetForUser(userId, today);
-        List<CompleteUserProfile> users = getUserProfilesFromMatchSet(matchSet);
-        
-        // Send notification about new potential matches
-        if (!users.isEmpty()) {
-            notificationService.sendPotentialMatchesReadyNotification(userId, users.size());
-        }
+        // Sets are pre-generated before release (MatchSetPreGenerationService); this covers users it missed
+        lazyGenerationCounter.increment();
+        MatchSet matchSet = getOrGenerateMatchSet(userId, today);
+        List<ProfileCard> users = getCardsFromMatchSet(matchSet);
         
-        return new PotentialMatchesResponse(true, "Today's matches generated", users, matchSetId, 
+        PotentialMatchesResponse response = new PotentialMatchesResponse(true, "Today's matches generated", users, matchSetId, 
                 users.size(), false);
+        response.setDiscoveryUsers(toDiscoveryUsers(matchSet, users));
+        return response;
     }
 
     public Map<String, Object> submitMatchActions(String userId, MatchActionsRequest request) {
@@ -110,27 +217,40 @@ public class PotentialMatchesService {
             throw new IllegalStateException("Match set already completed");
         }
         
-        int matches = 0;
-        List<String> newMatches = new ArrayList<>();
-        
-        // Process each action
+        // First action per target wins, as duplicates were never recorded
+        Map<String, UserAction.ActionType> actions = new LinkedHashMap<>();
+        List<UserAction> history = new ArrayList<>();
         for (MatchActionsRequest.UserActionDto actionDto : request.getActions()) {
             UserAction.ActionType action = "LIKE".equals(actionDto.getAction()) ? 
                     UserAction.ActionType.LIKE : UserAction.ActionType.PASS;
-            
-            // Record the action
-            matchService.recordUserAction(userId, actionDto.getTargetUserId(), action);
-            
-            // Check for match if it's a like
-            if (action == UserAction.ActionType.LIKE) {
-                if (matchService.checkForMutualLike(userId, actionDto.getTargetUserId())) {
-                    matchService.createMatch(userId, actionDto.getTargetUserId());
-                    matches++;
-                    newMatches.add(actionDto.getTargetUserId());
-                }
+            if (actions.putIfAbsent(actionDto.getTargetUserId(), action) == null) {
+                UserAction userAction = new UserAction();
+                userAction.setUserId(userId);
+                userAction.setTargetUserId(actionDto.getTargetUserId());
+                userAction.setAction(action);
+                userAction.setTimestamp(LocalDateTime.now());
+                history.add(userAction);
             }
         }
         
+        // The action history is an independent batch write, so it runs alongside the like/pass transaction
+        CompletableFuture<List<UserAction>> historySaved = CompletableFuture.supplyAsync(
+                () -> userActionRepository.saveAllIfAbsent(userId, history), taskExecutor);
+        List<String> newMatches = userActionsService.addActions(userId, actions);
+        int matches = newMatches.size();
+        
+        // Match entities and their conversations are independent of each other, so create them in parallel
+        List<CompletableFuture<Void>> matchCreations = newMatches.stream()
+                .map(targetUserId -> CompletableFuture.runAsync(() -> {
+                    try {
+                        matchService.createMatch(userId, targetUserId);
+                    } catch (Exception e) {
+                        // The userActions arrays already record the match; don't fail the submission
+                        logger.error("❌ Failed to create Match entity for {} ↔ {}: {}", userId, targetUserId, e.getMessage(), e);
+                    }
+                }, taskExecutor))
+                .collect(Collectors.toList());
+        
         // Update match set status
         matchSet.setStatus("COMPLETED");
         matchSet.setActionsSubmitted(request.getActions().size());
@@ -139,6 +259,13 @@ public class PotentialMatchesService {
         
         matchSetRepository.save(matchSet);
         
+        CompletableFuture.allOf(matchCreations.toArray(new CompletableFuture[0])).join();
+        try {
+            historySaved.join();
+        } catch (CompletionException e) {
+            logger.warn("⚠️ Could not record action history for {}: {}", userId, e.getCause().getMessage());
+        }
+        
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
         result.put("actionsProcessed", request.getActions().size());
@@ -173,6 +300,162 @@ public class PotentialMatchesService {
         return generateMatchSetId(userId, today);
     }
 
+    @PreDestroy
+    private void shutdownLeaseRenewer() {
+        leaseRenewer.shutdownNow();
+    }
+
+    /**
+     * The user's match set for a date, generating it if none exists. Concurrent callers for the same
+     * set share one generation: in this JVM through the in-flight future, across replicas through a
+     * Redis lease whose holder the others wait on. The holder renews the lease until it is done and
+     * then sets a completion key, which waiters poll with backoff instead of reading Firestore.
+     */
+    public MatchSet getOrGenerateMatchSet(String userId, LocalDate date) {
+        String matchSetId = generateMatchSetId(userId, date);
+        MatchSet existing = matchSetRepository.findById(matchSetId).orElse(null);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<MatchSet> generation = new CompletableFuture<>();
+        CompletableFuture<MatchSet> inFlight = inFlightGenerations.putIfAbsent(matchSetId, generation);
+        if (inFlight != null) {
+            localCoalescedCounter.increment();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            MatchSet matchSet = generateUnderLease(userId, date, matchSetId);
+            generation.complete(matchSet);
+            return matchSet;
+        } catch (RuntimeException e) {
+            generation.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightGenerations.remove(matchSetId, generation);
+        }
+    }
+
+    private MatchSet generateUnderLease(String userId, LocalDate date, String matchSetId) {
+        String leaseKey = GENERATION_LEASE_PREFIX + matchSetId;
+        String doneKey = GENERATION_DONE_PREFIX + matchSetId;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(generationMaxWaitSeconds);
+        boolean waited = false;
+
+        while (true) {
+            Boolean acquired;
+            try {
+                acquired = stringRedisTemplate.opsForValue()
+                        .setIfAbsent(leaseKey, instanceId, Duration.ofSeconds(generationLeaseSeconds));
+            } catch (Exception e) {
+                // Without Redis this still coalesces in-JVM callers; a duplicate across replicas just overwrites
+                logger.warn("⚠️ Match set generation lease unavailable for {}: {}", matchSetId, e.getMessage());
+                return generateMatchSetForUser(userId, date);
+            }
+
+            if (Boolean.TRUE.equals(acquired)) {
+                return generateHoldingLease(userId, date, matchSetId, leaseKey, doneKey, waited);
+            }
+
+            if (!waited) {
+                replicaCoalescedCounter.increment();
+                waited = true;
+            }
+            // Another replica holds the lease; wait for its completion key or for the lease to go away
+            long pollMs = GENERATION_POLL_MIN_MS;
+            while (true) {
+                List<String> state;
+                try {
+                    state = stringRedisTemplate.opsForValue().multiGet(List.of(doneKey, leaseKey));
+                } catch (Exception e) {
+                    // Redis went away mid-wait: same fallback as an unavailable lease, unless the holder already saved
+                    logger.warn("⚠️ Match set generation lease unavailable for {}: {}", matchSetId, e.getMessage());
+                    return matchSetRepository.findById(matchSetId)
+                            .orElseGet(() -> generateMatchSetForUser(userId, date));
+                }
+                if (state != null && state.get(0) != null) {
+                    MatchSet generated = matchSetRepository.findById(matchSetId).orElse(null);
+                    if (generated != null) {
+                        return generated;
+                    }
+                }
+                if (state == null || state.get(1) == null) {
+                    break;
+                }
+                if (System.nanoTime() >= deadline) {
+                    throw new IllegalStateException("Match set " + matchSetId + " is still being generated by another instance");
+                }
+                sleepQuietly(pollMs);
+                pollMs = Math.min(pollMs * 2, GENERATION_POLL_MAX_MS);
+            }
+            // The holder finished or gave up; take the lease before generating so only one retry runs
+            MatchSet generated = matchSetRepository.findById(matchSetId).orElse(null);
+            if (generated != null) {
+                return generated;
+            }
+        }
+    }
+
+    private MatchSet generateHoldingLease(String userId, LocalDate date, String matchSetId,
+                                          String leaseKey, String doneKey, boolean waited) {
+        long renewEveryMs = Math.max(1_000L, TimeUnit.SECONDS.toMillis(generationLeaseSeconds) / 3);
+        ScheduledFuture<?> renewal = leaseRenewer.scheduleAtFixedRate(
+                () -> renewGenerationLease(leaseKey), renewEveryMs, renewEveryMs, TimeUnit.MILLISECONDS);
+        try {
+            // The previous holder may have saved the set between our read and the lease
+            MatchSet existing = waited ? matchSetRepository.findById(matchSetId).orElse(null) : null;
+            MatchSet matchSet = existing != null ? existing : generateMatchSetForUser(userId, date);
+            try {
+                stringRedisTemplate.opsForValue().set(doneKey, instanceId, GENERATION_DONE_TTL);
+            } catch (Exception e) {
+                logger.warn("⚠️ Could not mark match set {} generated: {}", matchSetId, e.getMessage());
+            }
+            return matchSet;
+        } finally {
+            renewal.cancel(false);
+            releaseGenerationLease(leaseKey);
+        }
+    }
+
+    private void renewGenerationLease(String leaseKey) {
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_LEASE_SCRIPT, List.of(leaseKey),
+                    instanceId, Long.toString(TimeUnit.SECONDS.toMillis(generationLeaseSeconds)));
+            if (renewed == null || renewed == 0L) {
+                logger.warn("⚠️ Lost match set generation lease {} while generating", leaseKey);
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not renew match set generation lease {}: {}", leaseKey, e.getMessage());
+        }
+    }
+
+    private void releaseGenerationLease(String leaseKey) {
+        try {
+            if (instanceId.equals(stringRedisTemplate.opsForValue().get(leaseKey))) {
+                stringRedisTemplate.delete(leaseKey);
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not release match set generation lease {}: {}", leaseKey, e.getMessage());
+        }
+    }
+
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for match set generation", e);
+        }
+    }
+
+    /**
+     * Build and save the user's match set for a date
+     */
     private MatchSet generateMatchSetForUser(String userId, LocalDate date) {
         CompleteUserProfile user = userProfileRepository.findByUserId(userId);
         if (user == null) {
@@ -180,15 +463,19 @@ public class PotentialMatchesService {
         }
         
         // Get users that haven't been acted on recently
-        Set<String> recentlyActedOn = getRecentlyActedOnUsers(userId, 30); // Last 30 days
+        ConnectIdBitmap recentlyActedOn = getRecentlyActedOnUsers(userId, 30); // Last 30 days
         Set<String> blockedUsers = getBlockedUsers(userId);
         
         // Get potential matches
-        List<CompleteUserProfile> candidates = userProfileRepository.findAll().stream()
-                .filter(candidate -> !candidate.getUserId().equals(userId)) // Not self
-                .filter(candidate -> !recentlyActedOn.contains(candidate.getUserId())) // Not recently acted on
-                .filter(candidate -> !blockedUsers.contains(candidate.getUserId())) // Not blocked
-                .filter(candidate -> meetsBasicCriteria(user, candidate)) // Basic compatibility
+        List<CompleteUserProfile> candidates = candidateIndexSyncService.isWarmedUp()
+                ? findIndexedCandidates(user, recentlyActedOn, blockedUsers)
+                : findScannedCandidates(user, recentlyActedOn, blockedUsers);
+        
+        // Apply hard filters and keep the best scoring candidates
+        Map<String, Double> compatibilityScores = rankCandidates(user, candidates, date);
+        candidates = candidates.stream()
+                .filter(candidate -> compatibilityScores.containsKey(candidate.getConnectId()))
+                .sorted(Comparator.comparing((CompleteUserProfile candidate) -> compatibilityScores.get(candidate.getConnectId())).reversed())
                 .limit(MATCH_SET_SIZE)
                 .collect(Collectors.toList());
         
@@ -200,6 +487,8 @@ public class PotentialMatchesService {
                         .age(candidate.getAge())
                         .location(candidate.getLocation())
                         .interests(candidate.getInterests())
+                        .distance(distanceKm(user, candidate))
+                        .compatibilityScore(compatibilityScores.get(candidate.getConnectId()))
                         .build()).collect(Collectors.toList());
         
         MatchSet matchSet = MatchSet.builder()
@@ -217,38 +506,173 @@ public class PotentialMatchesService {
         return matchSetRepository.save(matchSet);
     }
 
-    private List<CompleteUserProfile> getUserProfilesFromMatchSet(MatchSet matchSet) {
+    private List<CompleteUserProfile> findIndexedCandidates(CompleteUserProfile user, ConnectIdBitmap recentlyActedOn,
+                                                            Set<String> blockedUsers) {
+        Predicate<String> excluded = candidateId -> recentlyActedOn.contains(candidateId) || blockedUsers.contains(candidateId);
+        Integer maxDistance = maxDistanceKm(user);
+        List<String> candidateIds = maxDistance != null
+                // Nearest first from the geohash cells around the user, then the bucket preference checks
+                ? candidateIndex.filterCandidates(user,
+                        proximityIndex.findWithin(user.getLatitude(), user.getLongitude(), maxDistance, excluded).keySet(),
+                        null, MATCH_SET_SIZE * CANDIDATE_OVERSAMPLE)
+                // Only the buckets compatible with the user's preferences are walked
+                : candidateIndex.findCandidates(user, excluded, MATCH_SET_SIZE * CANDIDATE_OVERSAMPLE);
+
+        Map<String, CompleteUserProfile> profiles = profileHydrationService.hydrateMap("candidate_index", candidateIds);
+        List<CompleteUserProfile> candidates = new ArrayList<>();
+        for (String candidateId : candidateIds) {
+            CompleteUserProfile candidate = profiles.get(candidateId);
+            if (candidate == null) {
+                candidateIndex.remove(candidateId); // Deleted on another replica
+                proximityIndex.remove(candidateId);
+            } else if (candidate.getActive() && meetsBasicCriteria(user, candidate)) {
+                candidates.add(candidate);
+            }
+        }
+        return candidates;
+    }
+
+    private List<CompleteUserProfile> findScannedCandidates(CompleteUserProfile user, ConnectIdBitmap recentlyActedOn,
+                                                            Set<String> blockedUsers) {
+        // Fallback while the candidate index is still warming up
+        return userProfileRepository.findAll().stream()
+                .filter(candidate -> !candidate.getUserId().equals(user.getUserId())) // Not self
+                .filter(candidate -> !recentlyActedOn.contains(candidate.getUserId())) // Not recently acted on
+                .filter(candidate -> !blockedUsers.contains(candidate.getUserId())) // Not blocked
+                .filter(candidate -> meetsBasicCriteria(user, candidate)) // Basic compatibility
+                .filter(candidate -> withinMaxDistance(user, candidate)) // Within preferred distance
+                .limit((long) MATCH_SET_SIZE * CANDIDATE_OVERSAMPLE)
+                .collect(Collectors.toList());
+    }
+
+    private List<ProfileCard> getCardsFromMatchSet(MatchSet matchSet) {
         // For base MatchSet model, we need to extract user IDs from PotentialMatches
         if (matchSet.getPotentialMatches() != null) {
-            return matchSet.getPotentialMatches().stream()
-                    .map(pm -> userProfileRepository.findByUserId(pm.getConnectId()))
-                    .filter(Objects::nonNull)
+            // Sets are generated ahead of time, so drop anyone blocked since
+            List<String> connectIds = matchSet.getPotentialMatches().stream()
+                    .map(MatchSet.PotentialMatch::getConnectId)
+                    .filter(connectId -> !blockIndexService.isEitherBlocked(matchSet.getUserId(), connectId))
                     .collect(Collectors.toList());
+            return profileHydrationService.hydrateCards("match_set", connectIds);
         }
         return new ArrayList<>();
     }
 
-    private Set<String> getRecentlyActedOnUsers(String userId, int days) {
+    private ConnectIdBitmap getRecentlyActedOnUsers(String userId, int days) {
         // Use new UserActionsService for efficient filtering (no need for time-based filtering anymore)
         // Since the userActions collection contains ALL actions, we filter by all acted-on users
-        return userActionsService.getActedOnUsers(userId);
+        return userActionsService.getActedOnBitmap(userId);
     }
 
     private Set<String> getBlockedUsers(String userId) {
-        // In real implementation, would query blocked users from database
-        return new HashSet<>(); // Placeholder
+        // Both directions: users this user blocked and users who blocked them
+        return blockIndexService.getBlockedParties(userId);
+    }
+
+    /**
+     * Score candidates with the match-pool compatibility engine; candidates failing a hard filter are absent
+     */
+    private Map<String, Double> rankCandidates(CompleteUserProfile user, List<CompleteUserProfile> candidates, LocalDate date) {
+        MatchPoolSnapshot.Builder builder = MatchPoolSnapshot.builder(date);
+        int seeker = builder.add(user);
+        int[] indices = new int[candidates.size()];
+        int count = 0;
+        for (CompleteUserProfile candidate : candidates) {
+            int index = builder.add(candidate);
+            if (index >= 0) {
+                indices[count++] = index;
+            }
+        }
+        MatchPoolSnapshot snapshot = builder.build();
+
+        float[] scores = new float[count];
+        CompatibilityScorer.scoreBatch(snapshot, seeker, indices, 0, count, scores);
+
+        Map<String, Double> ranked = new HashMap<>();
+        for (int k = 0; k < count; k++) {
+            if (scores[k] != CompatibilityScorer.FILTERED) {
+                ranked.put(snapshot.connectId(indices[k]), Math.round(scores[k] * 10000.0) / 10000.0);
+            }
+        }
+        return ranked;
     }
 
     private boolean meetsBasicCriteria(CompleteUserProfile user, CompleteUserProfile candidate) {
         // Basic age compatibility
-        if (user.getPreferences() != null) {
+        if (user.getPreferences() != null && user.getPreferences().getAgeRange() != null) {
             int candidateAge = candidate.getAge();
+            int maxAge = user.getPreferences().getMaxAge();
             return candidateAge >= user.getPreferences().getMinAge() && 
-                   candidateAge <= user.getPreferences().getMaxAge();
+                   (maxAge <= 0 || candidateAge <= maxAge); // Unset max age means no upper bound
         }
         return true; // Default to true if no preferences set
     }
 
+    /**
+     * The user's preferred maximum distance, or null when unset or the user has no coordinates
+     */
+    private Integer maxDistanceKm(CompleteUserProfile user) {
+        Integer maxDistance = user.getPreferences() != null ? user.getPreferences().getMaxDistance() : null;
+        if (maxDistance == null || maxDistance <= 0 || !GeoHash.isValid(user.getLatitude(), user.getLongitude())) {
+            return null;
+        }
+        return maxDistance;
+    }
+
+    private boolean withinMaxDistance(CompleteUserProfile user, CompleteUserProfile candidate) {
+        Integer maxDistance = maxDistanceKm(user);
+        if (maxDistance == null) {
+            return true;
+        }
+        Double distance = distanceKm(user, candidate);
+        return distance != null && distance <= maxDistance; // Candidates without coordinates can't be placed
+    }
+
+    private Double distanceKm(CompleteUserProfile user, CompleteUserProfile candidate) {
+        if (!GeoHash.isValid(user.getLatitude(), user.getLongitude())
+                || !GeoHash.isValid(candidate.getLatitude(), candidate.getLongitude())) {
+            return null;
+        }
+        double distance = GeoHash.distanceKm(user.getLatitude(), user.getLongitude(),
+                candidate.getLatitude(), candidate.getLongitude());
+        return Math.round(distance * 10.0) / 10.0;
+    }
+
+    /**
+     * Whole kilometres, at least 1, so repeated lookups can't trilaterate another user's position
+     */
+    static Double displayDistanceKm(Double distance) {
+        return distance == null ? null : (double) Math.max(1L, Math.round(distance));
+    }
+
+    private List<DiscoveryUser> toDiscoveryUsers(MatchSet matchSet, List<ProfileCard> users) {
+        Map<String, Double> distances = new HashMap<>();
+        if (matchSet.getPotentialMatches() != null) {
+            for (MatchSet.PotentialMatch match : matchSet.getPotentialMatches()) {
+                if (match.getDistance() != null) {
+                    distances.put(match.getConnectId(), match.getDistance());
+                }
+            }
+        }
+
+        return users.stream().map(card -> {
+            DiscoveryUser user = new DiscoveryUser();
+            user.setId(card.getConnectId());
+            user.setName(card.getFirstName());
+            user.setAge(card.getAge());
+            user.setLocation(card.getLocation());
+            user.setInterests(card.getInterests());
+            user.setDistanceKm(displayDistanceKm(distances.get(card.getConnectId())));
+            user.setGender(card.getGender());
+            user.setPhotos(card.getPhotos());
+            user.setPronouns(card.getPronouns());
+            user.setJobTitle(card.getJobTitle());
+            user.setUniversity(card.getUniversity());
+            user.setHeight(card.getHeight());
+            return user;
+        }).collect(Collectors.toList());
+    }
+
     private String generateMatchSetId(String userId, LocalDate date) {
         return "matchset_" + userId + "_" + date.toString();
     }
@@ -0,0 +1,85 @@
+package com.tpg.connect.services;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.ProfileCard;
+import com.tpg.connect.repository.UserProfileRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads the profiles behind a list of discovery cards in one batched read.
+ *
+ * Every discovery endpoint hydrates through here so a response costs a single parallel
+ * multi-document get instead of one round trip per card. Results keep the order of the
+ * requested connectIds; ids without a profile are dropped.
+ *
+ * Responses that only show cards should use {@link #hydrateCards}, which reads just the card fields.
+ */
+@Service
+public class ProfileHydrationService {
+
+    @Autowired
+    private UserProfileRepository userProfileRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, DistributionSummary> fanoutSummaries = new ConcurrentHashMap<>();
+    private final Map<String, Timer> hydrationTimers = new ConcurrentHashMap<>();
+
+    public List<CompleteUserProfile> hydrate(String source, List<String> connectIds) {
+        if (connectIds == null || connectIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        fanoutSummary(source).record(connectIds.size());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return userProfileRepository.findProfilesByConnectIds(connectIds);
+        } finally {
+            sample.stop(hydrationTimer(source));
+        }
+    }
+
+    public List<ProfileCard> hydrateCards(String source, List<String> connectIds) {
+        if (connectIds == null || connectIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        fanoutSummary(source).record(connectIds.size());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return userProfileRepository.findCardsByConnectIds(connectIds);
+        } finally {
+            sample.stop(hydrationTimer(source));
+        }
+    }
+
+    public Map<String, CompleteUserProfile> hydrateMap(String source, List<String> connectIds) {
+        Map<String, CompleteUserProfile> profiles = new LinkedHashMap<>();
+        for (CompleteUserProfile profile : hydrate(source, connectIds)) {
+            profiles.put(profile.getConnectId(), profile);
+        }
+        return profiles;
+    }
+
+    private DistributionSummary fanoutSummary(String source) {
+        return fanoutSummaries.computeIfAbsent(source, tag -> DistributionSummary.builder("connect_discovery_hydration_fanout")
+                .description("Number of profiles hydrated per discovery response")
+                .tag("source", tag)
+                .register(meterRegistry));
+    }
+
+    private Timer hydrationTimer(String source) {
+        return hydrationTimers.computeIfAbsent(source, tag -> Timer.builder("connect_discovery_hydration_duration")
+                .description("Time taken to hydrate discovery profiles")
+                .tag("source", tag)
+                .register(meterRegistry));
+    }
+}
@@ -1,9 +1,11 @@
 package com.tpg.connect.services;
 
 import com.tpg.connect.repository.UserProfileRepository;
+import com.tpg.connect.repository.index.ProfileSearchIndex;
 import com.tpg.connect.model.api.ProfileUpdateRequest;
 import com.tpg.connect.model.dto.UpdateProfileRequest;
 import com.tpg.connect.model.user.*;
+import com.tpg.connect.util.GeoHash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +23,7 @@ import java.util.stream.Collectors;
 public class ProfileManagementService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProfileManagementService.class);
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
 
     @Autowired
     private UserProfileRepository userProfileRepository;
@@ -34,6 +37,18 @@ public class ProfileManagementService {
     @Autowired
     private CloudStorageService cloudStorageService;
 
+    @Autowired
+    private ProfileSearchIndex profileSearchIndex;
+
+    @Autowired
+    private ProfileHydrationService profileHydrationService;
+
+    @Autowired
+    private BlockIndexService blockIndexService;
+
+    @Autowired
+    private CacheEvictionService cacheEvictionService;
+
     @Cacheable(value = "userProfiles", key = "'user_profile_' + #userId", unless = "#result == null")
     public CompleteUserProfile getCurrentProfile(String userId, boolean includePreferences) {
         CompleteUserProfile profile = userProfileRepository.findByUserId(userId);
@@ -146,6 +161,10 @@ public class ProfileManagementService {
 
         if (request.getName() != null) existingProfile.setName(request.getName());
         if (request.getLocation() != null) existingProfile.setLocation(request.getLocation());
+        if (GeoHash.isValid(request.getLatitude(), request.getLongitude())) {
+            existingProfile.setLatitude(request.getLatitude());
+            existingProfile.setLongitude(request.getLongitude());
+        }
         if (request.getInterests() != null) existingProfile.setInterests(request.getInterests());
         if (request.getLanguages() != null) {
             DetailedProfile profile = getOrCreateDetailedProfile(existingProfile);
@@ -640,36 +659,54 @@ public class ProfileManagementService {
         }
     }
     
-    // Search users method for UserController
-    public List<CompleteUserProfile> searchUsers(String userId, Integer minAge, Integer maxAge, 
-            String location, List<String> interests, int page, int size, String sortBy) {
-        // For now, return a basic search - in a real implementation you'd implement proper search logic
-        try {
-            // This is a simplified search using the sample data
-            // Get all available profiles by checking known user IDs
-            List<CompleteUserProfile> allProfiles = new ArrayList<>();
-            
-            // Add sample profiles from the repository
-            CompleteUserProfile profile1 = userProfileRepository.findByUserId("1");
-            CompleteUserProfile profile2 = userProfileRepository.findByUserId("2");
-            CompleteUserProfile profile3 = userProfileRepository.findByUserId("user_123");
-            
-            if (profile1 != null) allProfiles.add(profile1);
-            if (profile2 != null) allProfiles.add(profile2);
-            if (profile3 != null) allProfiles.add(profile3);
-            
-            // Apply basic filtering
-            return allProfiles.stream()
-                .filter(profile -> !profile.getId().equals(userId)) // Don't include the searching user
-                .filter(profile -> minAge == null || profile.getAge() >= minAge)
-                .filter(profile -> maxAge == null || profile.getAge() <= maxAge)
-                .filter(profile -> location == null || 
-                    (profile.getLocation() != null && profile.getLocation().toLowerCase().contains(location.toLowerCase())))
-                .skip((long) page * size)
-                .limit(size)
-                .collect(Collectors.toList());
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to search users: " + e.getMessage());
+    /**
+     * Search active profiles through the in-memory ProfileSearchIndex. Only the returned page is read
+     * from Firestore. Pages continue from {@code cursor} when given, otherwise from {@code page}.
+     * The searching user and anyone with a block either way are left out.
+     */
+    public SearchResults searchUsers(String userId, ProfileSearchIndex.Criteria criteria, String cursor, int page, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_SEARCH_PAGE_SIZE));
+        Set<String> excluded = blockIndexService.getBlockedParties(userId);
+        excluded.add(userId);
+
+        ProfileSearchIndex.Page results = profileSearchIndex.search(criteria, excluded, cursor, Math.max(0, page) * pageSize, pageSize);
+        Map<String, CompleteUserProfile> profiles = profileHydrationService.hydrateMap("search", results.getConnectIds());
+        List<CompleteUserProfile> ordered = new ArrayList<>(profiles.size());
+        for (String connectId : results.getConnectIds()) {
+            CompleteUserProfile profile = profiles.get(connectId);
+            if (profile == null) {
+                profileSearchIndex.remove(connectId); // Deleted on another replica
+            } else {
+                ordered.add(profile);
+            }
+        }
+        return new SearchResults(ordered, results.getNextCursor(), results.getTotal());
+    }
+
+    /**
+     * A page of search results and the cursor for the next page (null on the last)
+     */
+    public static final class SearchResults {
+        private final List<CompleteUserProfile> profiles;
+        private final String nextCursor;
+        private final int total;
+
+        SearchResults(List<CompleteUserProfile> profiles, String nextCursor, int total) {
+            this.profiles = profiles;
+            this.nextCursor = nextCursor;
+            this.total = total;
+        }
+
+        public List<CompleteUserProfile> getProfiles() {
+            return profiles;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public int getTotal() {
+            return total;
         }
     }
     
@@ -727,6 +764,60 @@ public class ProfileManagementService {
             throw new RuntimeException("Profile not found for user: " + userId);
         }
 
+        return refreshPhotoUrls(profile);
+    }
+
+    /**
+     * Refresh expiring photo URLs on a profile the caller has already loaded
+     */
+    @CacheEvict(value = "userProfiles", key = "'user_profile_' + #profile.connectId")
+    public CompleteUserProfile refreshPhotoUrls(CompleteUserProfile profile) {
+        return refreshExpiringPhotoUrls(profile);
+    }
+
+    /**
+     * Refresh expiring photo URLs on a card. The full profile is only loaded (and saved) when one
+     * of the card's URLs is about to expire; the card then takes its photos from it.
+     */
+    public ProfileCard refreshPhotoUrls(ProfileCard card) {
+        refreshPhotoUrls(List.of(card));
+        return card;
+    }
+
+    /**
+     * Refresh expiring photo URLs on cards in place, loading the profiles behind them in one batch
+     */
+    public void refreshPhotoUrls(List<ProfileCard> cards) {
+        List<String> expiring = cards.stream()
+                .filter(card -> card.getPhotos() != null && card.getPhotos().stream()
+                        .anyMatch(photo -> photo.getUrl() != null && isUrlExpiringWithinHours(photo.getUrl(), 2)))
+                .map(ProfileCard::getConnectId)
+                .distinct()
+                .collect(Collectors.toList());
+        if (expiring.isEmpty()) {
+            return;
+        }
+
+        Map<String, CompleteUserProfile> profiles = userProfileRepository.findProfileMapByConnectIds(expiring);
+        Map<String, CompleteUserProfile> refreshed = new HashMap<>();
+        for (CompleteUserProfile profile : profiles.values()) {
+            refreshed.put(profile.getConnectId(), refreshExpiringPhotoUrls(profile));
+            // Called from inside this class, so the @CacheEvict above would not run
+            cacheEvictionService.evict("userProfiles", "user_profile_" + profile.getConnectId());
+        }
+
+        for (ProfileCard card : cards) {
+            CompleteUserProfile profile = refreshed.get(card.getConnectId());
+            if (profile != null && profile.getPhotos() != null) {
+                card.setPhotos(profile.getPhotos().stream()
+                        .map(photo -> new Photo(photo.getId(), photo.getUrl(), photo.isPrimary(), photo.getOrder()))
+                        .collect(Collectors.toList()));
+            }
+        }
+    }
+
+    private CompleteUserProfile refreshExpiringPhotoUrls(CompleteUserProfile profile) {
+        String userId = profile.getConnectId();
         List<EnhancedPhoto> photos = profile.getPhotos();
         if (photos != null && !photos.isEmpty()) {
             int refreshedCount = 0;
@@ -762,7 +853,7 @@ public class ProfileManagementService {
         
         return profile;
     }
-    
+
     /**
      * Check if a Firebase Storage signed URL is expiring within the specified hours
      */
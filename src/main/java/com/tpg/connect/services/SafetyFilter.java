@@ -0,0 +1,78 @@
+package com.tpg.connect.services;
+
+import com.tpg.connect.model.SafetyBlock;
+import com.tpg.connect.model.user.CompleteUserProfile;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A user's active safety blocks compiled into a single check.
+ *
+ * Each block type is resolved to its rule once, duplicates collapse, and the rules are OR-ed into one
+ * predicate, so filtering a candidate list is one in-memory pass with no lookups or string switches.
+ * Block types without matching logic compile to nothing.
+ */
+public final class SafetyFilter {
+
+    static final SafetyFilter ALLOW_ALL = new SafetyFilter(null);
+
+    private final Predicate<CompleteUserProfile> blocked;
+
+    private SafetyFilter(Predicate<CompleteUserProfile> blocked) {
+        this.blocked = blocked;
+    }
+
+    static SafetyFilter compile(List<SafetyBlock> safetyBlocks) {
+        Set<String> blockTypes = new LinkedHashSet<>();
+        for (SafetyBlock safetyBlock : safetyBlocks) {
+            if (Boolean.TRUE.equals(safetyBlock.getIsActive()) && safetyBlock.getBlockType() != null) {
+                blockTypes.add(safetyBlock.getBlockType());
+            }
+        }
+
+        Predicate<CompleteUserProfile> blocked = null;
+        for (String blockType : blockTypes) {
+            Predicate<CompleteUserProfile> rule = rule(blockType);
+            if (rule != null) {
+                blocked = blocked == null ? rule : blocked.or(rule);
+            }
+        }
+        return blocked == null ? ALLOW_ALL : new SafetyFilter(blocked);
+    }
+
+    private static Predicate<CompleteUserProfile> rule(String blockType) {
+        switch (blockType) {
+            case "AGE_RESTRICTION":
+                return candidate -> candidate.getAge() < 18;
+
+            // LOCATION_BLOCK and CONTENT_FILTER have no matching logic yet
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Whether no candidate can be blocked, so callers can skip the pass entirely
+     */
+    public boolean allowsAll() {
+        return blocked == null;
+    }
+
+    public boolean blocks(CompleteUserProfile candidate) {
+        return blocked != null && blocked.test(candidate);
+    }
+
+    public List<CompleteUserProfile> filter(List<CompleteUserProfile> candidates) {
+        if (blocked == null) {
+            return new ArrayList<>(candidates);
+        }
+        List<CompleteUserProfile> allowed = new ArrayList<>(candidates.size());
+        for (CompleteUserProfile candidate : candidates) {
+            if (!blocked.test(candidate)) {
+                allowed.add(candidate);
+            }
+        }
+        return allowed;
+    }
+}
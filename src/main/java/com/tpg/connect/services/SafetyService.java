@@ -13,20 +13,24 @@ import com.tpg.connect.model.UserReport;
 import com.tpg.connect.model.ReportedUser;
 import com.tpg.connect.model.user.CompleteUserProfile;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Service
 public class SafetyService {
 
+    private static final int MAX_CACHED_FILTERS = 10_000;
+
     @Autowired
     private BlockedUserRepository blockedUserRepository;
 
@@ -48,6 +52,25 @@ public class SafetyService {
     @Autowired
     private EmailService emailService;
 
+    @Autowired
+    private CacheEvictionService cacheEvictionService;
+
+    @Autowired
+    private BlockIndexService blockIndexService;
+
+    // Compiled filters are local to this instance; other replicas pick up a changed block within the TTL
+    @Value("${app.safety.filter-cache-seconds:60}")
+    private long filterCacheSeconds;
+
+    // Access-ordered, so once full the least recently used filter is evicted whether or not it has expired
+    private final Map<String, CachedSafetyFilter> safetyFilters = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedSafetyFilter>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedSafetyFilter> eldest) {
+                    return size() > MAX_CACHED_FILTERS;
+                }
+            });
+
     public void blockUser(String userId, String targetUserId, String reason) {
         if (userId.equals(targetUserId)) {
             throw new IllegalArgumentException("Cannot block yourself");
@@ -86,6 +109,7 @@ public class SafetyService {
         }
 
         blockedUserRepository.save(blockedUser);
+        blockIndexService.recordBlock(userId, targetUserId);
 
         // Clear cache
         clearUserBlockCache(userId);
@@ -102,6 +126,7 @@ public class SafetyService {
 
         blockedUser.setStatus("REMOVED");
         blockedUserRepository.save(blockedUser);
+        blockIndexService.recordUnblock(userId, targetUserId);
 
         // Clear cache
         clearUserBlockCache(userId);
@@ -118,7 +143,7 @@ public class SafetyService {
     }
 
     public boolean areUsersBlockingEachOther(String user1Id, String user2Id) {
-        return isUserBlocked(user1Id, user2Id) || isUserBlocked(user2Id, user1Id);
+        return blockIndexService.isEitherBlocked(user1Id, user2Id);
     }
 
     public String reportUser(String reporterId, ReportUserRequest request) {
@@ -277,49 +302,27 @@ public class SafetyService {
     }
 
     public boolean shouldBlockUserBySafetyRules(String userId, CompleteUserProfile candidateUser) {
-        List<SafetyBlock> userSafetyBlocks = getUserSafetyBlocks(userId);
-        
-        for (SafetyBlock safetyBlock : userSafetyBlocks) {
-            if (matchesSafetyBlock(safetyBlock, candidateUser)) {
-                // Safety block matched - user should be blocked
-                return true;
-            }
-        }
-        
-        return false;
+        return getSafetyFilter(userId).blocks(candidateUser);
     }
 
     public List<CompleteUserProfile> filterUsersBySafetyRules(String userId, List<CompleteUserProfile> candidates) {
-        return candidates.stream()
-                .filter(candidate -> !shouldBlockUserBySafetyRules(userId, candidate))
-                .collect(Collectors.toList());
+        return getSafetyFilter(userId).filter(candidates);
     }
 
-    private boolean matchesSafetyBlock(SafetyBlock safetyBlock, CompleteUserProfile user) {
-        // Check if safety block is active
-        if (!safetyBlock.getIsActive()) {
-            return false;
+    /**
+     * The user's active safety blocks compiled into one predicate; compiled at most once per TTL and
+     * dropped whenever the user creates, updates or deletes a block
+     */
+    public SafetyFilter getSafetyFilter(String userId) {
+        long now = System.currentTimeMillis();
+        CachedSafetyFilter cached = safetyFilters.get(userId);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.filter;
         }
-        
-        // For now, implement basic matching based on block type
-        String blockType = safetyBlock.getBlockType();
 
-        // Simple block type matching - can be enhanced later
-        switch (blockType) {
-            case "AGE_RESTRICTION":
-                return user.getAge() < 18;
-            
-            case "LOCATION_BLOCK":
-                // Block users from certain locations if specified in reason
-                return false; // Placeholder
-            
-            case "CONTENT_FILTER":
-                // Content filter checks removed (bio field no longer exists)
-                return false;
-            
-            default:
-                return false;
-        }
+        SafetyFilter filter = SafetyFilter.compile(safetyBlockRepository.findByUserIdAndEnabled(userId, true));
+        safetyFilters.put(userId, new CachedSafetyFilter(filter, now + filterCacheSeconds * 1000));
+        return filter;
     }
 
     private void validateSafetyBlockRequest(SafetyBlockRequest request) {
@@ -370,14 +373,23 @@ public class SafetyService {
         }
     }
 
-    @CacheEvict(value = "blockedUsers", key = "#userId")
     private void clearUserBlockCache(String userId) {
-        // Cache cleared by annotation
+        cacheEvictionService.evict("blockedUsers", userId);
     }
 
-    @CacheEvict(value = "safetyBlocks", key = "#userId")
     private void clearSafetyBlockCache(String userId) {
-        // Cache cleared by annotation
+        cacheEvictionService.evict("safetyBlocks", userId);
+        safetyFilters.remove(userId);
+    }
+
+    private static final class CachedSafetyFilter {
+        private final SafetyFilter filter;
+        private final long expiresAt;
+
+        private CachedSafetyFilter(SafetyFilter filter, long expiresAt) {
+            this.filter = filter;
+            this.expiresAt = expiresAt;
+        }
     }
     
     // Admin-specific methods
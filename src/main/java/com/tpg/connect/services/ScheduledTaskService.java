@@ -6,7 +6,9 @@ import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Service
 public class ScheduledTaskService {
@@ -19,6 +21,18 @@ public class ScheduledTaskService {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private MatchPoolGenerationService matchPoolGenerationService;
+
+    @Autowired
+    private UserMatchPoolService userMatchPoolService;
+
+    @Autowired
+    private MatchSetPreGenerationService matchSetPreGenerationService;
+
+    @Autowired
+    private UserActionsService userActionsService;
+
     // TODO: Add configurable scheduling intervals via application properties
     // TODO: Implement database-driven scheduling configuration
     // TODO: Add metrics and monitoring for scheduled tasks
@@ -52,6 +66,76 @@ public class ScheduledTaskService {
         }
     }
 
+    // Generate today's match pools at 1 AM; the later hourly runs resume an interrupted run and skip a completed one
+    @Scheduled(cron = "${app.match-pool.generation.cron:0 0 1-6 * * ?}")
+    public void generateDailyMatchPools() {
+        try {
+            logger.info("🏭 Starting daily match pool generation");
+            
+            Map<String, Object> result = matchPoolGenerationService.generatePools(LocalDate.now());
+            
+            logger.info("✅ Daily match pool generation finished: {}", result);
+        } catch (Exception e) {
+            logger.error("❌ Daily match pool generation failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Drop fully consumed days from the match pool queues every day at 4 AM
+    @Scheduled(cron = "${app.match-pool.compaction.cron:0 0 4 * * ?}")
+    public void compactMatchPoolQueues() {
+        try {
+            logger.info("🧹 Starting match pool queue compaction");
+            
+            Map<String, Object> result = userMatchPoolService.compactConsumedDays();
+            
+            logger.info("✅ Match pool queue compaction finished: {}", result);
+        } catch (Exception e) {
+            logger.error("❌ Match pool queue compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Build the next release's match sets hourly from 2 PM; each run only generates the sets still missing
+    @Scheduled(cron = "${app.match-set.pregeneration.cron:0 0 14-18 * * ?}")
+    public void preGenerateMatchSets() {
+        try {
+            logger.info("🏭 Starting match set pre-generation");
+            
+            Map<String, Object> result = matchSetPreGenerationService.preGenerate(matchSetPreGenerationService.nextReleaseDate());
+            
+            logger.info("✅ Match set pre-generation finished: {}", result);
+        } catch (Exception e) {
+            logger.error("❌ Match set pre-generation failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Notify users that today's pre-generated matches are out at the 7 PM release
+    @Scheduled(cron = "${app.match-set.release.cron:0 0 19 * * ?}")
+    public void releaseMatchSets() {
+        try {
+            logger.info("🔔 Starting match set release notifications");
+            
+            Map<String, Object> result = matchSetPreGenerationService.sendReleaseNotifications(LocalDate.now());
+            
+            logger.info("✅ Match set release finished: {}", result);
+        } catch (Exception e) {
+            logger.error("❌ Match set release failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Fold queued inbound likes into the targets' likedBy sets every 30 seconds
+    @Scheduled(fixedDelayString = "${app.user-actions.inbound.consolidate-interval-ms:30000}")
+    public void consolidateInboundLikes() {
+        try {
+            logger.debug("📥 Consolidating inbound likes");
+            
+            Map<String, Object> result = userActionsService.consolidateInboundLikes();
+            
+            logger.debug("✅ Inbound like consolidation finished: {}", result);
+        } catch (Exception e) {
+            logger.error("❌ Inbound like consolidation failed: {}", e.getMessage(), e);
+        }
+    }
+
     // Process pending notifications every 5 minutes - DISABLED due to missing Firestore index
     // @Scheduled(fixedRate = 300000) // 5 minutes in milliseconds
     public void processPendingNotifications() {
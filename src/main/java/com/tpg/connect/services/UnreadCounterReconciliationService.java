@@ -0,0 +1,272 @@
+package com.tpg.connect.services;
+
+import com.tpg.connect.repository.UserCountersRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Corrects drift in the unread badge counters. Counters change in the same batch as the writes
+ * behind them, but bulk deletes and full-document notification saves can still leave them off by
+ * a few. Each run recounts the next slice of users, continuing from where the last run stopped
+ * (on any instance) and starting over once it reaches the end. The slice is sized from the number
+ * of users so a full pass takes about {@code app.counters.reconcile-full-pass-hours}.
+ *
+ * The sweep also backfills any user it reaches who has no complete counters yet. The backfill job
+ * does the same for everyone straight away, recounting every conversation from its messages; it
+ * runs in the background on one instance and reports its progress through Redis.
+ */
+@Service
+public class UnreadCounterReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCounterReconciliationService.class);
+
+    private static final String CURSOR_KEY = "counters:reconcile:cursor";
+    private static final String LOCK_KEY = "counters:reconcile:running";
+    private static final String USER_COUNT_KEY = "counters:reconcile:users";
+    private static final String BACKFILL_CURSOR_KEY = "counters:backfill:cursor";
+    private static final String BACKFILL_LOCK_KEY = "counters:backfill:running";
+    private static final String BACKFILL_PROGRESS_KEY = "counters:backfill:progress";
+    private static final Duration BACKFILL_LOCK_TTL = Duration.ofMinutes(10);
+
+    @Autowired
+    private UserCountersRepository userCountersRepository;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${app.counters.reconcile-interval-ms:300000}")
+    private long intervalMs;
+
+    @Value("${app.counters.reconcile-full-pass-hours:24}")
+    private long fullPassHours;
+
+    @Value("${app.counters.reconcile-min-batch-size:200}")
+    private int minBatchSize;
+
+    @Value("${app.counters.reconcile-page-size:200}")
+    private int pageSize;
+
+    @Value("${app.counters.backfill-page-size:200}")
+    private int backfillPageSize;
+
+    private final AtomicBoolean backfilling = new AtomicBoolean(false);
+
+    private Counter checkedCounter;
+    private Counter correctedCounter;
+    private Counter backfilledCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        checkedCounter = Counter.builder("connect_unread_counter_reconciliations")
+                .description("Users whose unread counters were recounted")
+                .tag("result", "checked")
+                .register(meterRegistry);
+        correctedCounter = Counter.builder("connect_unread_counter_reconciliations")
+                .description("Users whose unread counters were recounted")
+                .tag("result", "corrected")
+                .register(meterRegistry);
+        backfilledCounter = Counter.builder("connect_unread_counter_reconciliations")
+                .description("Users whose unread counters were recounted")
+                .tag("result", "backfilled")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.counters.reconcile-interval-ms:300000}", initialDelayString = "${app.counters.reconcile-initial-delay-ms:60000}")
+    public void reconcileNextBatch() {
+        boolean locked;
+        try {
+            locked = Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                    .setIfAbsent(LOCK_KEY, "1", Duration.ofMillis(Math.max(intervalMs * 2, Duration.ofMinutes(10).toMillis()))));
+        } catch (Exception e) {
+            logger.warn("⚠️ Skipping unread counter reconciliation, Redis unavailable: {}", e.getMessage());
+            return;
+        }
+        if (!locked) {
+            return;
+        }
+
+        try {
+            String after = stringRedisTemplate.opsForValue().get(CURSOR_KEY);
+            int batchSize = batchSize(after == null);
+            int checked = 0;
+            int corrected = 0;
+            boolean finished = false;
+
+            while (checked < batchSize) {
+                int limit = Math.min(pageSize, batchSize - checked);
+                List<String> userIds = userCountersRepository.findUserIdsAfter(after, limit);
+                for (String userId : userIds) {
+                    try {
+                        if (userCountersRepository.reconcile(userId)) {
+                            corrected++;
+                            correctedCounter.increment();
+                        }
+                        checkedCounter.increment();
+                    } catch (Exception e) {
+                        logger.warn("⚠️ Failed to reconcile unread counters for {}: {}", userId, e.getMessage());
+                    }
+                }
+                checked += userIds.size();
+                if (userIds.size() < limit) {
+                    finished = true;
+                    break;
+                }
+                after = userIds.get(userIds.size() - 1);
+            }
+
+            if (finished) {
+                stringRedisTemplate.delete(CURSOR_KEY);
+            } else {
+                stringRedisTemplate.opsForValue().set(CURSOR_KEY, after);
+            }
+
+            if (corrected > 0) {
+                logger.info("🔢 Corrected unread counters for {} of {} users", corrected, checked);
+            }
+        } catch (Exception e) {
+            logger.error("❌ Unread counter reconciliation failed: {}", e.getMessage(), e);
+        } finally {
+            stringRedisTemplate.delete(LOCK_KEY);
+        }
+    }
+
+    /**
+     * Users per run for a full pass in {@code fullPassHours}. The user count is taken at the start of
+     * each pass and shared through Redis, so it costs one count() per pass rather than per run.
+     */
+    private int batchSize(boolean passStarting) {
+        String stored = passStarting ? null : stringRedisTemplate.opsForValue().get(USER_COUNT_KEY);
+        long users;
+        if (stored != null) {
+            users = Long.parseLong(stored);
+        } else {
+            users = userCountersRepository.countUsers();
+            stringRedisTemplate.opsForValue().set(USER_COUNT_KEY, String.valueOf(users));
+        }
+        long runsPerPass = Math.max(1, Duration.ofHours(fullPassHours).toMillis() / Math.max(1, intervalMs));
+        long perRun = (users + runsPerPass - 1) / runsPerPass;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(minBatchSize, perRun));
+    }
+
+    /**
+     * Start backfilling every user's counters in the background, resuming where an interrupted run
+     * stopped. Returns the job's progress, or a message if it is already running.
+     */
+    public Map<String, Object> startBackfill() {
+        Map<String, Object> result = new HashMap<>();
+        if (!backfilling.compareAndSet(false, true)) {
+            result.put("success", false);
+            result.put("message", "Counter backfill already running on this instance");
+            return result;
+        }
+        boolean locked;
+        try {
+            locked = Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                    .setIfAbsent(BACKFILL_LOCK_KEY, "1", BACKFILL_LOCK_TTL));
+        } catch (RuntimeException e) {
+            backfilling.set(false);
+            throw e;
+        }
+        if (!locked) {
+            backfilling.set(false);
+            result.put("success", false);
+            result.put("message", "Counter backfill already running on another instance");
+            return result;
+        }
+
+        if (stringRedisTemplate.opsForValue().get(BACKFILL_CURSOR_KEY) == null) {
+            stringRedisTemplate.delete(BACKFILL_PROGRESS_KEY);
+        }
+        stringRedisTemplate.opsForHash().put(BACKFILL_PROGRESS_KEY, "state", "RUNNING");
+        stringRedisTemplate.opsForHash().put(BACKFILL_PROGRESS_KEY, "startedAt", String.valueOf(System.currentTimeMillis()));
+        taskExecutor.execute(this::runBackfill);
+
+        result.put("success", true);
+        result.putAll(getBackfillProgress());
+        return result;
+    }
+
+    /**
+     * Progress of the current or last backfill, readable from any instance
+     */
+    public Map<String, Object> getBackfillProgress() {
+        Map<String, Object> progress = new HashMap<>();
+        stringRedisTemplate.opsForHash().entries(BACKFILL_PROGRESS_KEY)
+                .forEach((field, value) -> progress.put(String.valueOf(field), value));
+        progress.putIfAbsent("state", "NOT_STARTED");
+        return progress;
+    }
+
+    private void runBackfill() {
+        long started = System.currentTimeMillis();
+        try {
+            logger.info("🔢 Backfilling unread counters for every user");
+            String after = stringRedisTemplate.opsForValue().get(BACKFILL_CURSOR_KEY);
+            while (true) {
+                List<String> userIds = userCountersRepository.findUserIdsAfter(after, backfillPageSize);
+                long failed = 0;
+                for (String userId : userIds) {
+                    try {
+                        userCountersRepository.backfill(userId);
+                        backfilledCounter.increment();
+                    } catch (Exception e) {
+                        failed++;
+                        logger.warn("⚠️ Failed to backfill unread counters for {}: {}", userId, e.getMessage());
+                    }
+                }
+                stringRedisTemplate.opsForHash().increment(BACKFILL_PROGRESS_KEY, "usersBackfilled", userIds.size() - failed);
+                stringRedisTemplate.opsForHash().increment(BACKFILL_PROGRESS_KEY, "usersFailed", failed);
+                stringRedisTemplate.expire(BACKFILL_LOCK_KEY, BACKFILL_LOCK_TTL);
+
+                if (userIds.size() < backfillPageSize) {
+                    break;
+                }
+                after = userIds.get(userIds.size() - 1);
+                // Resumable: a restarted job carries on from the last finished page
+                stringRedisTemplate.opsForValue().set(BACKFILL_CURSOR_KEY, after);
+            }
+
+            stringRedisTemplate.delete(BACKFILL_CURSOR_KEY);
+            stringRedisTemplate.opsForHash().put(BACKFILL_PROGRESS_KEY, "state", "COMPLETED");
+            logger.info("✅ Unread counter backfill finished in {} ms", System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            logger.error("❌ Unread counter backfill failed: {}", e.getMessage(), e);
+            try {
+                stringRedisTemplate.opsForHash().put(BACKFILL_PROGRESS_KEY, "state", "FAILED");
+                stringRedisTemplate.opsForHash().put(BACKFILL_PROGRESS_KEY, "error", String.valueOf(e.getMessage()));
+            } catch (Exception redisError) {
+                logger.warn("⚠️ Could not record counter backfill failure: {}", redisError.getMessage());
+            }
+        } finally {
+            try {
+                stringRedisTemplate.delete(BACKFILL_LOCK_KEY);
+            } catch (Exception e) {
+                logger.warn("⚠️ Could not release counter backfill lock: {}", e.getMessage());
+            }
+            backfilling.set(false);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.tpg.connect.services;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.*;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Layout of the per-user action sets (likes, passes, matches, unmatched, likedBy) under userActions.
+ *
+ * Each set is spread over at most {@link #BUCKETS} sub-documents in userActions/{connectId}/actionBuckets,
+ * keyed "{set}_{bucket}" where the bucket is a stable hash of the member's connectId. Adding a member is
+ * an arrayUnion on one bucket plus a counter increment on the parent ("{set}Count"), so the cost of an
+ * action doesn't grow with the user's history, and "is X in the set" reads exactly one bucket.
+ *
+ * Documents written before bucketing keep their sets as arrays on the parent until migrated, so reads
+ * merge the parent's legacy arrays with the buckets.
+ *
+ * Inbound likes are not written to the target's likedBy set by the liker. They are queued as one
+ * document per liker in userActions/{target}/inboundLikes/{likerId} and folded into likedBy by the
+ * consolidator, so a popular profile's documents are not written by every like it receives.
+ *
+ * Blind writes (no read of the sets first) that may be retried carry a marker document in
+ * userActions/{connectId}/appliedWrites, created in the same batch. A retry of a batch that already
+ * landed fails on the marker as a whole, so its counter increments are never applied twice. A match
+ * carries a permanent marker per pair instead ({@link #matchMarkerRef}), written by every path that
+ * records one, so both users' matchesCount go up once however the match was found.
+ */
+final class UserActionBuckets {
+
+    static final String COLLECTION_NAME = "userActions";
+    static final String BUCKETS_COLLECTION = "actionBuckets";
+    static final String INBOUND_COLLECTION = "inboundLikes";
+    static final String APPLIED_COLLECTION = "appliedWrites";
+    static final int BUCKETS = 64;
+
+    static final String LIKES = "likes";
+    static final String PASSES = "passes";
+    static final String MATCHES = "matches";
+    static final String UNMATCHED = "unmatched";
+    static final String LIKED_BY = "likedBy";
+    static final List<String> SETS = List.of(LIKES, PASSES, MATCHES, UNMATCHED, LIKED_BY);
+
+    private UserActionBuckets() {
+    }
+
+    static int bucket(String memberId) {
+        // String.hashCode is specified by the JLS, so buckets are stable across JVMs and releases
+        return Math.floorMod(memberId.hashCode(), BUCKETS);
+    }
+
+    static String countField(String set) {
+        return set + "Count";
+    }
+
+    static DocumentReference bucketRef(DocumentReference parent, String set, String memberId) {
+        return bucketRef(parent, set, bucket(memberId));
+    }
+
+    static DocumentReference bucketRef(DocumentReference parent, String set, int bucket) {
+        return parent.collection(BUCKETS_COLLECTION).document(String.format("%s_%02d", set, bucket));
+    }
+
+    /**
+     * Marker of a recorded match, kept under the lower connectId so both users' likes resolve to one document
+     */
+    static DocumentReference matchMarkerRef(DocumentReference userDoc, DocumentReference targetDoc) {
+        boolean userFirst = userDoc.getId().compareTo(targetDoc.getId()) <= 0;
+        DocumentReference owner = userFirst ? userDoc : targetDoc;
+        DocumentReference other = userFirst ? targetDoc : userDoc;
+        return owner.collection(APPLIED_COLLECTION).document("match_" + other.getId());
+    }
+
+    static DocumentReference inboundRef(DocumentReference target, String likerId) {
+        return target.collection(INBOUND_COLLECTION).document(likerId);
+    }
+
+    /**
+     * Whether the member is in the set, given the parent snapshot (legacy arrays) and the member's bucket
+     */
+    static boolean contains(DocumentSnapshot parent, DocumentSnapshot bucket, String set, String memberId) {
+        return (parent.exists() && memberIds(parent.get(set)).contains(memberId))
+                || (bucket.exists() && memberIds(bucket.get("ids")).contains(memberId));
+    }
+
+    /**
+     * Read whole sets for a user: the parent document and the matching buckets, fetched concurrently
+     */
+    static Map<String, Set<String>> readSets(DocumentReference parent, List<String> sets)
+            throws InterruptedException, ExecutionException {
+        ApiFuture<DocumentSnapshot> parentRead = parent.get();
+        ApiFuture<QuerySnapshot> bucketsRead = parent.collection(BUCKETS_COLLECTION)
+                .whereIn("set", new ArrayList<>(sets))
+                .get();
+
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        for (String set : sets) {
+            result.put(set, new LinkedHashSet<>());
+        }
+        DocumentSnapshot parentDoc = parentRead.get();
+        if (parentDoc.exists()) {
+            for (String set : sets) {
+                result.get(set).addAll(memberIds(parentDoc.get(set)));
+            }
+        }
+        for (DocumentSnapshot bucket : bucketsRead.get().getDocuments()) {
+            Set<String> members = result.get(bucket.getString("set"));
+            if (members != null) {
+                members.addAll(memberIds(bucket.get("ids")));
+            }
+        }
+        return result;
+    }
+
+    static List<String> memberIds(Object value) {
+        if (!(value instanceof List)) {
+            return List.of();
+        }
+        List<String> ids = new ArrayList<>();
+        for (Object id : (List<?>) value) {
+            ids.add(String.valueOf(id));
+        }
+        return ids;
+    }
+
+    /**
+     * Accumulates set additions so each touched bucket and parent is written once, with arrayUnion and
+     * increments only; applies to a Transaction or a WriteBatch alike
+     */
+    static final class Writes {
+        private final Map<DocumentReference, BucketAppend> appends = new LinkedHashMap<>();
+        private final Map<DocumentReference, Map<String, Long>> counters = new LinkedHashMap<>();
+        private final Map<DocumentReference, String> inbound = new LinkedHashMap<>();
+        private DocumentReference marker;
+        private final Set<DocumentReference> marked = new LinkedHashSet<>();
+
+        /**
+         * Add a member the caller knows is not yet in the set (the counter is incremented)
+         */
+        Writes add(DocumentReference parent, String set, String memberId) {
+            int bucket = bucket(memberId);
+            if (!appends.computeIfAbsent(bucketRef(parent, set, bucket), ref -> new BucketAppend(set, bucket))
+                    .ids.add(memberId)) {
+                return this;
+            }
+            counters.computeIfAbsent(parent, ref -> new LinkedHashMap<>()).merge(countField(set), 1L, Long::sum);
+            return this;
+        }
+
+        /**
+         * Queue an inbound like for the consolidator instead of adding it to the target's likedBy
+         */
+        Writes queueInbound(DocumentReference target, String likerId) {
+            inbound.put(inboundRef(target, likerId), likerId);
+            return this;
+        }
+
+        /**
+         * Create this marker with the writes, so applying them a second time fails instead
+         */
+        Writes guardedBy(DocumentReference marker) {
+            this.marker = marker;
+            return this;
+        }
+
+        /**
+         * Write a marker the caller has already read and found missing (set, so a transaction's read guards it)
+         */
+        Writes marked(DocumentReference marker) {
+            marked.add(marker);
+            return this;
+        }
+
+        DocumentReference marker() {
+            return marker;
+        }
+
+        boolean isEmpty() {
+            return appends.isEmpty() && inbound.isEmpty();
+        }
+
+        int documentCount() {
+            return appends.size() + counters.size() + inbound.size() + marked.size() + (marker != null ? 1 : 0);
+        }
+
+        void applyTo(UpdateBuilder<?> writer, String timestamp) {
+            if (marker != null) {
+                writer.create(marker, Map.of("appliedAt", timestamp));
+            }
+            for (DocumentReference ref : marked) {
+                writer.set(ref, Map.of("appliedAt", timestamp));
+            }
+            appends.forEach((ref, append) -> {
+                Map<String, Object> update = new HashMap<>();
+                update.put("set", append.set);
+                update.put("bucket", append.bucket);
+                update.put("ids", FieldValue.arrayUnion(append.ids.toArray()));
+                update.put("updatedAt", timestamp);
+                writer.set(ref, update, SetOptions.merge());
+            });
+            counters.forEach((parent, increments) -> {
+                Map<String, Object> update = new HashMap<>();
+                update.put("connectId", parent.getId());
+                update.put("lastUpdated", timestamp);
+                increments.forEach((field, delta) -> update.put(field, FieldValue.increment(delta)));
+                writer.set(parent, update, SetOptions.merge());
+            });
+            inbound.forEach((ref, likerId) -> {
+                Map<String, Object> like = new HashMap<>();
+                like.put("likerId", likerId);
+                like.put("likedAt", timestamp);
+                // One document per liker, so a repeated like rewrites its own entry and nothing else
+                writer.set(ref, like);
+            });
+        }
+    }
+
+    private static final class BucketAppend {
+        private final String set;
+        private final int bucket;
+        private final Set<String> ids = new LinkedHashSet<>();
+
+        private BucketAppend(String set, int bucket) {
+            this.set = set;
+            this.bucket = bucket;
+        }
+    }
+}
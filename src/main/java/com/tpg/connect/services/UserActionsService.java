@@ -1,40 +1,110 @@
 package com.tpg.connect.services;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
 import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.FieldValue;
 import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.Transaction;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.tpg.connect.model.match.UserAction;
 import com.tpg.connect.repository.UserActionRepository;
+import com.tpg.connect.util.ConnectIdBitmap;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import static com.tpg.connect.services.UserActionBuckets.*;
+
+/**
+ * Likes, passes, matches and unmatches between users, stored per user under userActions.
+ *
+ * The sets themselves live in hash buckets below each user's document (see UserActionBuckets), and
+ * mutual likes are resolved through the Redis like graph when it is ready.
+ *
+ * A like only writes the liker's own documents plus a queue entry for the target; the target's
+ * likedBy set is filled in by {@link #consolidateInboundLikes()}. The only read of the target's data
+ * on the like path is the reciprocity check, so likes arriving at a popular profile don't contend.
+ */
 @Service
 public class UserActionsService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserActionsService.class);
-    private static final String COLLECTION_NAME = "userActions";
-    
+    private static final String ACTED_ON_PREFIX = "actions:acted:";
+    private static final long ACTED_ON_TTL_MINUTES = 30;
+    // Each like writes up to three documents of the target's, so 100 keeps a chunk under 500 writes
+    private static final int MAX_LIKES_PER_TRANSACTION = 100;
+    // A fold deletes each queue entry and writes at most 64 buckets and the parent, so 400 stays under 500 writes
+    private static final int MAX_INBOUND_PER_TRANSACTION = 400;
+    private static final int MAX_CONSOLIDATION_ROUNDS = 50;
+    private static final String CONSOLIDATION_LOCK_KEY = "user_actions:inbound:consolidating";
+
     @Autowired
     private Firestore firestore;
-    
+
     @Autowired
     private MatchService matchService;
-    
+
     @Autowired
     private UserActionRepository userActionRepository;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private LikeGraphService likeGraphService;
+
+    @Autowired
+    private MatchCardBufferService matchCardBufferService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.user-actions.migration.page-size:200}")
+    private int migrationPageSize;
+
+    @Value("${app.user-actions.inbound.consolidate-page-size:1000}")
+    private int consolidationPageSize;
+
+    @Value("${app.user-actions.persist-attempts:3}")
+    private int persistAttempts;
+
+    private Counter inboundConsolidatedCounter;
+
+    @PostConstruct
+    private void initializeMetrics() {
+        inboundConsolidatedCounter = Counter.builder("connect_inbound_likes_consolidated")
+            .description("Queued inbound likes folded into likedBy sets")
+            .register(meterRegistry);
+    }
+
     /**
      * Add a like action: user likes targetUser
-     * - Adds targetUserId to user's likes array
-     * - Adds userId to targetUser's likedBy array
+     * - Adds targetUserId to user's likes
+     * - Queues userId for targetUser's likedBy
      * - Returns true if this creates a mutual match
      */
     public boolean addLikeAction(String userId, String targetUserId) {
@@ -44,112 +114,74 @@ public class UserActionsService {
                 logger.warn("⚠️ BLOCKED SELF-LIKE: User {} attempted to like themselves", userId);
                 return false;
             }
-            
+
             logger.info("👍 Adding like action: {} likes {}", userId, targetUserId);
+
+            if (likeGraphService.isReady()) {
+                try {
+                    LikeGraphService.LikeResult result = likeGraphService.addLikes(userId, List.of(targetUserId));
+                    boolean isMutualMatch = !persistActions(userId, result.getAdded(), List.of(), result.getMutual()).isEmpty();
+                    matchCardBufferService.remove(userId, List.of(targetUserId));
+                    if (isMutualMatch) {
+                        createMatchEntity(userId, targetUserId);
+                    }
+                    return isMutualMatch;
+                } catch (Exception e) {
+                    logger.warn("⚠️ Like graph unavailable for {} -> {}, using a transaction: {}", userId, targetUserId, e.getMessage());
+                }
+            }
+
             logger.info("🔍 Starting transaction for like action {} -> {}", userId, targetUserId);
-            
-            DocumentReference userDoc = firestore.collection(COLLECTION_NAME).document(userId);
-            DocumentReference targetDoc = firestore.collection(COLLECTION_NAME).document(targetUserId);
-            
+
+            DocumentReference userDoc = userActionsDoc(userId);
+            DocumentReference targetDoc = userActionsDoc(targetUserId);
+            DocumentReference userLikes = bucketRef(userDoc, LIKES, targetUserId);
+            DocumentReference targetLikes = bucketRef(targetDoc, LIKES, userId);
+            DocumentReference matchMarker = matchMarkerRef(userDoc, targetDoc);
+            // Legacy arrays are never written again, so the target's parent is read outside the transaction
+            ApiFuture<DocumentSnapshot> targetParent = targetDoc.get();
+
             boolean isMutualMatch = firestore.runTransaction(transaction -> {
-                // Get both documents
-                DocumentSnapshot userSnapshot = transaction.get(userDoc).get();
-                DocumentSnapshot targetSnapshot = transaction.get(targetDoc).get();
-                
-                // Initialize user document if it doesn't exist
-                Map<String, Object> userData;
-                if (userSnapshot.exists()) {
-                    userData = new HashMap<>(userSnapshot.getData());
-                    logger.info("🔍 User {} document exists, loading data", userId);
-                } else {
-                    userData = initializeUserActionsDocument(userId);
-                    logger.info("🆕 User {} document doesn't exist, initializing", userId);
-                }
-                
-                // Initialize target document if it doesn't exist
-                Map<String, Object> targetData;
-                if (targetSnapshot.exists()) {
-                    targetData = new HashMap<>(targetSnapshot.getData());
-                    logger.info("🔍 Target {} document exists, loading data", targetUserId);
-                } else {
-                    targetData = initializeUserActionsDocument(targetUserId);
-                    logger.info("🆕 Target {} document doesn't exist, initializing", targetUserId);
-                }
-                
-                // Get current arrays
-                @SuppressWarnings("unchecked")
-                List<String> userLikes = (List<String>) userData.getOrDefault("likes", new ArrayList<>());
-                @SuppressWarnings("unchecked")
-                List<String> userLikedBy = (List<String>) userData.getOrDefault("likedBy", new ArrayList<>());
-                @SuppressWarnings("unchecked")
-                List<String> targetLikes = (List<String>) targetData.getOrDefault("likes", new ArrayList<>());
-                @SuppressWarnings("unchecked")
-                List<String> targetLikedBy = (List<String>) targetData.getOrDefault("likedBy", new ArrayList<>());
-                
-                // Add targetUserId to user's likes array (if not already there)
-                if (!userLikes.contains(targetUserId)) {
-                    userLikes.add(targetUserId);
-                    userData.put("likes", userLikes);
-                }
-                
-                // Add userId to target's likedBy array (if not already there)
-                if (!targetLikedBy.contains(userId)) {
-                    targetLikedBy.add(userId);
-                    targetData.put("likedBy", targetLikedBy);
+                // The user's parent (for any unmigrated arrays), the one bucket each lookup needs and the match marker
+                List<DocumentSnapshot> snapshots = transaction.getAll(userDoc, userLikes, targetLikes, matchMarker).get();
+
+                if (UserActionBuckets.contains(snapshots.get(0), snapshots.get(1), LIKES, targetUserId)) {
+                    logger.info("🔁 {} already likes {}", userId, targetUserId);
+                    return false;
                 }
-                
+
                 // Check for mutual match: has targetUser already liked this user?
-                boolean mutualMatch = targetLikes.contains(userId);
-                
+                boolean mutualMatch = UserActionBuckets.contains(targetParent.get(), snapshots.get(2), LIKES, userId);
                 if (mutualMatch) {
                     logger.info("🎉 Mutual match detected: {} ↔ {}", userId, targetUserId);
-                    
-                    // Add to both users' matches arrays
-                    @SuppressWarnings("unchecked")
-                    List<String> userMatches = (List<String>) userData.getOrDefault("matches", new ArrayList<>());
-                    @SuppressWarnings("unchecked")
-                    List<String> targetMatches = (List<String>) targetData.getOrDefault("matches", new ArrayList<>());
-                    
-                    if (!userMatches.contains(targetUserId)) {
-                        userMatches.add(targetUserId);
-                        userData.put("matches", userMatches);
-                    }
-                    if (!targetMatches.contains(userId)) {
-                        targetMatches.add(userId);
-                        targetData.put("matches", targetMatches);
-                    }
-                    
                 }
-                
-                // Update timestamps
-                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z";
-                userData.put("lastUpdated", timestamp);
-                targetData.put("lastUpdated", timestamp);
-                
-                // Write both documents
-                logger.info("📝 Writing userActions document for user {}", userId);
-                transaction.set(userDoc, userData);
-                logger.info("📝 Writing userActions document for target {}", targetUserId);
-                transaction.set(targetDoc, targetData);
-                
+
+                Writes writes = new Writes();
+                addLike(writes, userDoc, targetDoc);
+                if (mutualMatch && !snapshots.get(3).exists()) {
+                    addMatch(writes, userDoc, targetDoc).marked(matchMarker);
+                }
+                writes.applyTo(transaction, timestamp());
+
                 logger.info("✅ Transaction completed. Mutual match: {}", mutualMatch);
                 return mutualMatch;
             }).get();
-            
+            evictActedOnBitmap(userId);
+            matchCardBufferService.remove(userId, List.of(targetUserId));
+            // A like back that took the graph path may not have reached Firestore when the transaction read it
+            if (!likeGraphService.recordLikes(userId, List.of(targetUserId)).isEmpty() && !isMutualMatch) {
+                logger.info("🎉 Mutual match detected through the like graph: {} ↔ {}", userId, targetUserId);
+                addMatches(userId, List.of(targetUserId));
+                isMutualMatch = true;
+            }
+
             // If mutual match detected, create Match entity and Conversation outside transaction
             if (isMutualMatch) {
-                try {
-                    logger.info("🏗️ Creating Match entity and Conversation for {} ↔ {}", userId, targetUserId);
-                    matchService.createMatch(userId, targetUserId);
-                    logger.info("✅ Match entity and Conversation created successfully");
-                } catch (Exception e) {
-                    logger.error("❌ Failed to create Match entity for {} ↔ {}: {}", userId, targetUserId, e.getMessage(), e);
-                    // Don't fail the like action if Match creation fails - the arrays are already updated
-                }
+                createMatchEntity(userId, targetUserId);
             }
-            
+
             return isMutualMatch;
-            
+
         } catch (InterruptedException | ExecutionException e) {
             logger.error("❌ Error adding like action {} -> {}: {}", userId, targetUserId, e.getMessage(), e);
             return false;
@@ -158,7 +190,7 @@ public class UserActionsService {
 
     /**
      * Add a pass action: user passes on targetUser
-     * - Adds targetUserId to user's passes array
+     * - Adds targetUserId to user's passes
      */
     public void addPassAction(String userId, String targetUserId) {
         try {
@@ -167,110 +199,493 @@ public class UserActionsService {
                 logger.warn("⚠️ BLOCKED SELF-PASS: User {} attempted to pass on themselves", userId);
                 return;
             }
-            
+
             logger.info("👎 Adding pass action: {} passes {}", userId, targetUserId);
-            
-            DocumentReference userDoc = firestore.collection(COLLECTION_NAME).document(userId);
-            
+
+            DocumentReference userDoc = userActionsDoc(userId);
+            DocumentReference userPasses = bucketRef(userDoc, PASSES, targetUserId);
+
             firestore.runTransaction(transaction -> {
-                DocumentSnapshot userSnapshot = transaction.get(userDoc).get();
-                
-                // Initialize user document if it doesn't exist
-                Map<String, Object> userData = userSnapshot.exists() ? 
-                    new HashMap<>(userSnapshot.getData()) : initializeUserActionsDocument(userId);
-                
-                // Get current passes array
-                @SuppressWarnings("unchecked")
-                List<String> userPasses = (List<String>) userData.getOrDefault("passes", new ArrayList<>());
-                
-                // Add targetUserId to user's passes array (if not already there)
-                if (!userPasses.contains(targetUserId)) {
-                    userPasses.add(targetUserId);
-                    userData.put("passes", userPasses);
+                List<DocumentSnapshot> snapshots = transaction.getAll(userDoc, userPasses).get();
+
+                // Add targetUserId to user's passes (if not already there)
+                if (!UserActionBuckets.contains(snapshots.get(0), snapshots.get(1), PASSES, targetUserId)) {
+                    new Writes().add(userDoc, PASSES, targetUserId).applyTo(transaction, timestamp());
                 }
-                
-                // Update timestamp
-                userData.put("lastUpdated", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z");
-                
-                // Write document
-                transaction.set(userDoc, userData);
-                
+
                 return null;
             }).get();
-            
+            evictActedOnBitmap(userId);
+            matchCardBufferService.remove(userId, List.of(targetUserId));
+
         } catch (InterruptedException | ExecutionException e) {
             logger.error("❌ Error adding pass action {} -> {}: {}", userId, targetUserId, e.getMessage(), e);
         }
     }
 
     /**
-     * Check if user has already acted on target user (liked or passed)
+     * Apply a batch of like/pass actions for one user and return the targets that became mutual matches.
+     * Everything the batch needs to read is fetched with one getAll and written in one transaction per
+     * chunk, so a submission costs a read and a commit rather than one transaction per action. Match
+     * entities are not created here; that is left to the caller.
      */
-    public boolean hasActedOnUser(String userId, String targetUserId) {
+    public List<String> addActions(String userId, Map<String, UserAction.ActionType> actions) {
+        List<String> likedIds = new ArrayList<>();
+        List<String> passedIds = new ArrayList<>();
+        actions.forEach((targetUserId, action) -> {
+            if (userId.equals(targetUserId)) {
+                logger.warn("⚠️ BLOCKED SELF-ACTION: User {} attempted to act on themselves", userId);
+            } else if (action == UserAction.ActionType.LIKE) {
+                likedIds.add(targetUserId);
+            } else {
+                passedIds.add(targetUserId);
+            }
+        });
+
+        logger.info("🗂️ Applying {} likes and {} passes for {}", likedIds.size(), passedIds.size(), userId);
+        if (likeGraphService.isReady()) {
+            try {
+                LikeGraphService.LikeResult result = likeGraphService.addLikes(userId, likedIds);
+                ConnectIdBitmap actedOn = getActedOnBitmap(userId);
+                List<String> newPasses = passedIds.stream().filter(id -> !actedOn.contains(id)).collect(Collectors.toList());
+                List<String> mutualMatches = persistActions(userId, result.getAdded(), newPasses, result.getMutual());
+                matchCardBufferService.remove(userId, actions.keySet());
+                return mutualMatches;
+            } catch (Exception e) {
+                logger.warn("⚠️ Like graph unavailable for {}, using a transaction: {}", userId, e.getMessage());
+            }
+        }
+
+        List<String> mutualMatches = new ArrayList<>();
         try {
-            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
-            
-            if (!doc.exists()) {
-                return false;
+            int chunks = Math.max(1, (likedIds.size() + MAX_LIKES_PER_TRANSACTION - 1) / MAX_LIKES_PER_TRANSACTION);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                List<String> chunkLikes = likedIds.subList(chunk * MAX_LIKES_PER_TRANSACTION,
+                        Math.min((chunk + 1) * MAX_LIKES_PER_TRANSACTION, likedIds.size()));
+                List<String> chunkPasses = chunk == 0 ? passedIds : List.of();
+                mutualMatches.addAll(applyActionChunk(userId, chunkLikes, chunkPasses));
             }
-            
-            @SuppressWarnings("unchecked")
-            List<String> likes = (List<String>) doc.getData().getOrDefault("likes", new ArrayList<>());
-            @SuppressWarnings("unchecked")
-            List<String> passes = (List<String>) doc.getData().getOrDefault("passes", new ArrayList<>());
-            
-            return likes.contains(targetUserId) || passes.contains(targetUserId);
-            
         } catch (InterruptedException | ExecutionException e) {
-            logger.error("❌ Error checking if user {} acted on {}: {}", userId, targetUserId, e.getMessage());
-            return false;
+            throw new RuntimeException("Failed to apply user actions", e);
+        } finally {
+            evictActedOnBitmap(userId);
+            matchCardBufferService.remove(userId, actions.keySet());
+        }
+        // A like back that took the graph path may not have reached Firestore when the transaction read it
+        List<String> graphMutual = new ArrayList<>(likeGraphService.recordLikes(userId, likedIds));
+        graphMutual.removeAll(mutualMatches);
+        if (!graphMutual.isEmpty()) {
+            logger.info("🎉 {} mutual matches for {} detected through the like graph", graphMutual.size(), userId);
+            try {
+                addMatches(userId, graphMutual);
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Failed to record mutual matches", e);
+            }
+            mutualMatches.addAll(graphMutual);
+        }
+        return mutualMatches;
+    }
+
+    /**
+     * Add each target to the user's matches set and the user to theirs, skipping pairs whose match
+     * marker exists and sides already recorded, so a match found by both users' likes or by two
+     * paths is counted once
+     */
+    private void addMatches(String userId, List<String> targetUserIds) throws InterruptedException, ExecutionException {
+        DocumentReference userDoc = userActionsDoc(userId);
+        List<DocumentReference> refs = new ArrayList<>();
+        refs.add(userDoc);
+        for (String targetUserId : targetUserIds) {
+            DocumentReference targetDoc = userActionsDoc(targetUserId);
+            refs.add(bucketRef(userDoc, MATCHES, targetUserId));
+            refs.add(targetDoc);
+            refs.add(bucketRef(targetDoc, MATCHES, userId));
+            refs.add(matchMarkerRef(userDoc, targetDoc));
+        }
+
+        firestore.runTransaction(transaction -> {
+            List<DocumentSnapshot> snapshots = transaction.getAll(refs.toArray(new DocumentReference[0])).get();
+            DocumentSnapshot userSnapshot = snapshots.get(0);
+            Writes writes = new Writes();
+            for (int i = 0; i < targetUserIds.size(); i++) {
+                String targetUserId = targetUserIds.get(i);
+                DocumentSnapshot userMatches = snapshots.get(1 + 4 * i);
+                DocumentSnapshot targetSnapshot = snapshots.get(2 + 4 * i);
+                DocumentSnapshot targetMatches = snapshots.get(3 + 4 * i);
+                if (snapshots.get(4 + 4 * i).exists()) {
+                    continue;
+                }
+                if (!UserActionBuckets.contains(userSnapshot, userMatches, MATCHES, targetUserId)) {
+                    writes.add(userDoc, MATCHES, targetUserId);
+                }
+                if (!UserActionBuckets.contains(targetSnapshot, targetMatches, MATCHES, userId)) {
+                    writes.add(targetSnapshot.getReference(), MATCHES, userId);
+                }
+                writes.marked(refs.get(4 + 4 * i));
+            }
+            writes.applyTo(transaction, timestamp());
+            return null;
+        }).get();
+    }
+
+    private List<String> applyActionChunk(String userId, List<String> likedIds, List<String> passedIds)
+            throws InterruptedException, ExecutionException {
+        DocumentReference userDoc = userActionsDoc(userId);
+        Set<DocumentReference> refs = new LinkedHashSet<>();
+        List<DocumentReference> targetDocs = new ArrayList<>();
+        refs.add(userDoc);
+        for (String targetUserId : likedIds) {
+            DocumentReference targetDoc = userActionsDoc(targetUserId);
+            refs.add(bucketRef(userDoc, LIKES, targetUserId));
+            refs.add(bucketRef(targetDoc, LIKES, userId));
+            refs.add(matchMarkerRef(userDoc, targetDoc));
+            targetDocs.add(targetDoc);
+        }
+        for (String passedId : passedIds) {
+            refs.add(bucketRef(userDoc, PASSES, passedId));
         }
+        // Targets' legacy arrays are never written again, so their parents are read outside the transaction
+        ApiFuture<List<DocumentSnapshot>> targetParents = targetDocs.isEmpty() ? null
+                : firestore.getAll(targetDocs.toArray(new DocumentReference[0]));
+
+        return firestore.runTransaction(transaction -> {
+            Map<DocumentReference, DocumentSnapshot> snapshots = new HashMap<>();
+            for (DocumentSnapshot snapshot : transaction.getAll(refs.toArray(new DocumentReference[0])).get()) {
+                snapshots.put(snapshot.getReference(), snapshot);
+            }
+            if (targetParents != null) {
+                for (DocumentSnapshot snapshot : targetParents.get()) {
+                    snapshots.put(snapshot.getReference(), snapshot);
+                }
+            }
+            DocumentSnapshot userSnapshot = snapshots.get(userDoc);
+
+            Writes writes = new Writes();
+            List<String> mutualMatches = new ArrayList<>();
+            for (String targetUserId : likedIds) {
+                if (UserActionBuckets.contains(userSnapshot, snapshots.get(bucketRef(userDoc, LIKES, targetUserId)),
+                        LIKES, targetUserId)) {
+                    continue;
+                }
+                DocumentReference targetDoc = userActionsDoc(targetUserId);
+
+                // Mutual match: has the target already liked this user?
+                boolean mutualMatch = UserActionBuckets.contains(snapshots.get(targetDoc),
+                        snapshots.get(bucketRef(targetDoc, LIKES, userId)), LIKES, userId);
+                addLike(writes, userDoc, targetDoc);
+                if (mutualMatch) {
+                    logger.info("🎉 Mutual match detected: {} ↔ {}", userId, targetUserId);
+                    mutualMatches.add(targetUserId);
+                    DocumentReference matchMarker = matchMarkerRef(userDoc, targetDoc);
+                    if (!snapshots.get(matchMarker).exists()) {
+                        addMatch(writes, userDoc, targetDoc).marked(matchMarker);
+                    }
+                }
+            }
+            for (String passedId : passedIds) {
+                if (!UserActionBuckets.contains(userSnapshot, snapshots.get(bucketRef(userDoc, PASSES, passedId)),
+                        PASSES, passedId)) {
+                    writes.add(userDoc, PASSES, passedId);
+                }
+            }
+
+            writes.applyTo(transaction, timestamp());
+            return mutualMatches;
+        }).get();
     }
 
     /**
-     * Get all users this user has acted on (liked or passed)
+     * Write likes already resolved by the like graph to the userActions buckets before they are
+     * acknowledged, returning the mutual matches among the likes that were new. The writes increment
+     * counters blindly, so members the user's sets already hold (legacy arrays included) are dropped
+     * first with one read. The rest are split into batches that each create a marker document, and
+     * only batches that failed are retried; a batch whose earlier attempt did land fails on its
+     * marker and counts as written, so counters are incremented once. Each match is its own batch
+     * guarded by the pair's permanent match marker, so a match another path already recorded is not
+     * counted again. If batches still fail their likes are taken back out of the graph and the
+     * exception sends the caller to the transaction, which records any match left out.
      */
-    public Set<String> getActedOnUsers(String userId) {
+    private List<String> persistActions(String userId, List<String> likedIds, List<String> passedIds,
+                                        List<String> mutualMatches) {
+        if (likedIds.isEmpty() && passedIds.isEmpty()) {
+            return List.of();
+        }
+        List<PendingBatch> batches = List.of();
+        List<PendingBatch> pending = null;
+        String timestamp = timestamp();
         try {
-            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
-            
-            if (!doc.exists()) {
-                return new HashSet<>();
-            }
-            
-            @SuppressWarnings("unchecked")
-            List<String> likes = (List<String>) doc.getData().getOrDefault("likes", new ArrayList<>());
-            @SuppressWarnings("unchecked")
-            List<String> passes = (List<String>) doc.getData().getOrDefault("passes", new ArrayList<>());
-            
-            Set<String> actedOnUsers = new HashSet<>();
-            actedOnUsers.addAll(likes);
-            actedOnUsers.addAll(passes);
-            
-            return actedOnUsers;
-            
+            List<String> newLikes = new ArrayList<>(likedIds);
+            List<String> newPasses = new ArrayList<>(passedIds);
+            dropRecorded(userId, newLikes, newPasses);
+            List<String> newMatches = new ArrayList<>(mutualMatches);
+            newMatches.retainAll(newLikes);
+
+            batches = buildBatches(userId, newLikes, newPasses, newMatches);
+            pending = batches;
+            for (int attempt = 1; ; attempt++) {
+                pending = commitBatches(pending, timestamp);
+                if (pending.isEmpty()) {
+                    return newMatches;
+                }
+                if (attempt >= persistAttempts) {
+                    throw new ExecutionException("Failed to commit " + pending.size() + " action batches",
+                            pending.get(0).failure);
+                }
+                logger.warn("⚠️ Persisting actions for {} failed for {} of {} batches (attempt {}), retrying: {}",
+                        userId, pending.size(), batches.size(), attempt, pending.get(0).failure.getMessage());
+                Thread.sleep(100L * attempt);
+            }
         } catch (InterruptedException | ExecutionException e) {
-            logger.error("❌ Error getting acted on users for {}: {}", userId, e.getMessage());
-            return new HashSet<>();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("❌ Failed to persist {} likes and {} passes for {}: {}",
+                    likedIds.size(), passedIds.size(), userId, e.getMessage(), e);
+            List<String> unpersisted = new ArrayList<>();
+            if (pending == null) {
+                unpersisted.addAll(likedIds);
+            } else {
+                for (PendingBatch batch : pending) {
+                    unpersisted.addAll(batch.likedIds);
+                }
+            }
+            likeGraphService.removeLikes(userId, unpersisted);
+            throw new RuntimeException("Failed to persist user actions", e);
+        } finally {
+            // The acted-on bitmap is rebuilt from these documents, so only drop it once they're written
+            evictActedOnBitmap(userId);
+            deleteMarkers(batches);
         }
     }
 
     /**
-     * Get users who have liked this user
+     * Take out of the lists the members the user's likes and passes already hold, reading the
+     * parent's legacy arrays and every bucket involved in one round trip
+     */
+    private void dropRecorded(String userId, List<String> likedIds, List<String> passedIds)
+            throws InterruptedException, ExecutionException {
+        DocumentReference userDoc = userActionsDoc(userId);
+        Set<DocumentReference> refs = new LinkedHashSet<>();
+        refs.add(userDoc);
+        for (String likedId : likedIds) {
+            refs.add(bucketRef(userDoc, LIKES, likedId));
+        }
+        for (String passedId : passedIds) {
+            refs.add(bucketRef(userDoc, PASSES, passedId));
+        }
+
+        // getAll returns the snapshots in the order of the references
+        List<DocumentReference> ordered = new ArrayList<>(refs);
+        List<DocumentSnapshot> read = firestore.getAll(ordered.toArray(new DocumentReference[0])).get();
+        Map<DocumentReference, DocumentSnapshot> snapshots = new HashMap<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            snapshots.put(ordered.get(i), read.get(i));
+        }
+        DocumentSnapshot userSnapshot = snapshots.get(userDoc);
+        likedIds.removeIf(likedId -> UserActionBuckets.contains(userSnapshot,
+                snapshots.get(bucketRef(userDoc, LIKES, likedId)), LIKES, likedId));
+        passedIds.removeIf(passedId -> UserActionBuckets.contains(userSnapshot,
+                snapshots.get(bucketRef(userDoc, PASSES, passedId)), PASSES, passedId));
+    }
+
+    private List<PendingBatch> buildBatches(String userId, List<String> likedIds, List<String> passedIds,
+                                            List<String> mutualMatches) {
+        DocumentReference userDoc = userActionsDoc(userId);
+        List<PendingBatch> batches = new ArrayList<>();
+
+        PendingBatch batch = new PendingBatch(userDoc.collection(APPLIED_COLLECTION).document(), false);
+        for (String passedId : passedIds) {
+            batch.writes.add(userDoc, PASSES, passedId);
+        }
+        for (int i = 0; i < likedIds.size(); i++) {
+            String targetUserId = likedIds.get(i);
+            addLike(batch.writes, userDoc, userActionsDoc(targetUserId));
+            batch.likedIds.add(targetUserId);
+            if ((i + 1) % MAX_LIKES_PER_TRANSACTION == 0) {
+                batches.add(batch);
+                batch = new PendingBatch(userDoc.collection(APPLIED_COLLECTION).document(), false);
+            }
+        }
+        if (!batch.writes.isEmpty()) {
+            batches.add(batch);
+        }
+        for (String targetUserId : mutualMatches) {
+            DocumentReference targetDoc = userActionsDoc(targetUserId);
+            PendingBatch match = new PendingBatch(matchMarkerRef(userDoc, targetDoc), true);
+            addMatch(match.writes, userDoc, targetDoc);
+            batches.add(match);
+        }
+        return batches;
+    }
+
+    /**
+     * Commit the batches concurrently and return those that failed, each holding its failure
+     */
+    private List<PendingBatch> commitBatches(List<PendingBatch> batches, String timestamp) throws InterruptedException {
+        List<ApiFuture<List<WriteResult>>> commits = new ArrayList<>();
+        for (PendingBatch batch : batches) {
+            commits.add(commit(batch.writes, timestamp));
+        }
+        List<PendingBatch> failed = new ArrayList<>();
+        for (int i = 0; i < batches.size(); i++) {
+            try {
+                commits.get(i).get();
+            } catch (ExecutionException e) {
+                if (isAlreadyExists(e)) {
+                    // The marker is there, so an earlier attempt of this batch (or, for a match, another path) committed
+                    continue;
+                }
+                batches.get(i).failure = e.getCause() != null ? e.getCause() : e;
+                failed.add(batches.get(i));
+            }
+        }
+        return failed;
+    }
+
+    private static boolean isAlreadyExists(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FirestoreException
+                    && ((FirestoreException) cause).getStatus().getCode() == Status.Code.ALREADY_EXISTS) {
+                return true;
+            }
+            if (cause instanceof ApiException
+                    && ((ApiException) cause).getStatusCode().getCode() == StatusCode.Code.ALREADY_EXISTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Markers only need to outlive the retries of one persist; best effort, a leftover is harmless
+     */
+    private void deleteMarkers(List<PendingBatch> batches) {
+        if (batches.stream().allMatch(batch -> batch.permanentMarker)) {
+            return;
+        }
+        WriteBatch cleanup = firestore.batch();
+        for (PendingBatch batch : batches) {
+            if (!batch.permanentMarker) {
+                cleanup.delete(batch.writes.marker());
+            }
+        }
+        ApiFutures.addCallback(cleanup.commit(), new ApiFutureCallback<List<WriteResult>>() {
+            @Override
+            public void onFailure(Throwable t) {
+                logger.warn("⚠️ Could not delete applied-write markers: {}", t.getMessage());
+            }
+
+            @Override
+            public void onSuccess(List<WriteResult> result) {
+            }
+        }, Runnable::run);
+    }
+
+    private static final class PendingBatch {
+        private final Writes writes = new Writes();
+        private final List<String> likedIds = new ArrayList<>();
+        // Match markers record the match for good; the others only outlive this persist's retries
+        private final boolean permanentMarker;
+        private Throwable failure;
+
+        private PendingBatch(DocumentReference marker, boolean permanentMarker) {
+            writes.guardedBy(marker);
+            this.permanentMarker = permanentMarker;
+        }
+    }
+
+    private ApiFuture<List<WriteResult>> commit(Writes writes, String timestamp) {
+        WriteBatch batch = firestore.batch();
+        writes.applyTo(batch, timestamp);
+        return batch.commit();
+    }
+
+    private static void addLike(Writes writes, DocumentReference userDoc, DocumentReference targetDoc) {
+        writes.add(userDoc, LIKES, targetDoc.getId());
+        writes.queueInbound(targetDoc, userDoc.getId());
+    }
+
+    /**
+     * Add each user to the other's matches; callers guard it with the pair's match marker
+     */
+    private static Writes addMatch(Writes writes, DocumentReference userDoc, DocumentReference targetDoc) {
+        writes.add(userDoc, MATCHES, targetDoc.getId());
+        return writes.add(targetDoc, MATCHES, userDoc.getId());
+    }
+
+    private void createMatchEntity(String userId, String targetUserId) {
+        try {
+            logger.info("🏗️ Creating Match entity and Conversation for {} ↔ {}", userId, targetUserId);
+            matchService.createMatch(userId, targetUserId);
+            logger.info("✅ Match entity and Conversation created successfully");
+        } catch (Exception e) {
+            logger.error("❌ Failed to create Match entity for {} ↔ {}: {}", userId, targetUserId, e.getMessage(), e);
+            // Don't fail the like action if Match creation fails - the likes are already recorded
+        }
+    }
+
+    /**
+     * Check if user has already acted on target user (liked or passed)
+     */
+    public boolean hasActedOnUser(String userId, String targetUserId) {
+        return getActedOnBitmap(userId).contains(targetUserId);
+    }
+
+    /**
+     * Get all users this user has acted on (liked or passed) as a compressed bitmap.
+     * Served from Redis when cached; rebuilt from the userActions buckets otherwise.
+     */
+    public ConnectIdBitmap getActedOnBitmap(String userId) {
+        String redisKey = ACTED_ON_PREFIX + userId;
+        try {
+            String cached = stringRedisTemplate.opsForValue().get(redisKey);
+            if (cached != null) {
+                return ConnectIdBitmap.fromBase64(cached);
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to read acted-on bitmap from Redis for {}: {}", userId, e.getMessage());
+        }
+
+        ConnectIdBitmap actedOn = new ConnectIdBitmap();
+        try {
+            for (Set<String> members : readSets(userActionsDoc(userId), List.of(LIKES, PASSES)).values()) {
+                for (String actedOnId : members) actedOn.add(actedOnId);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("❌ Error getting acted on bitmap for {}: {}", userId, e.getMessage());
+            return actedOn;
+        }
+
+        try {
+            stringRedisTemplate.opsForValue().set(redisKey, actedOn.toBase64(), ACTED_ON_TTL_MINUTES, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to cache acted-on bitmap in Redis for {}: {}", userId, e.getMessage());
+        }
+        return actedOn;
+    }
+
+    private void evictActedOnBitmap(String userId) {
+        try {
+            stringRedisTemplate.delete(ACTED_ON_PREFIX + userId);
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to evict acted-on bitmap for {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Get users who have liked this user, including likes not yet consolidated
      */
     public List<String> getLikedByUsers(String userId) {
         try {
-            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
-            
-            if (!doc.exists()) {
-                return new ArrayList<>();
+            DocumentReference userDoc = userActionsDoc(userId);
+            ApiFuture<QuerySnapshot> queued = userDoc.collection(INBOUND_COLLECTION)
+                    .select(FieldPath.documentId())
+                    .get();
+            Set<String> likedBy = readSets(userDoc, List.of(LIKED_BY)).get(LIKED_BY);
+            for (DocumentSnapshot inbound : queued.get().getDocuments()) {
+                likedBy.add(inbound.getId());
             }
-            
-            @SuppressWarnings("unchecked")
-            List<String> likedBy = (List<String>) doc.getData().getOrDefault("likedBy", new ArrayList<>());
-            
             return new ArrayList<>(likedBy);
-            
         } catch (InterruptedException | ExecutionException e) {
             logger.error("❌ Error getting liked by users for {}: {}", userId, e.getMessage());
             return new ArrayList<>();
@@ -278,71 +693,154 @@ public class UserActionsService {
     }
 
     /**
-     * Get users this user has passed on
+     * Fold the queued inbound likes into each target's likedBy set. Each target is folded in its own
+     * transaction that also deletes the queue entries, so a run can stop anywhere and a failed target
+     * is picked up again by the next one. Folding is idempotent; the Redis lock only keeps replicas
+     * from doing the same work.
      */
-    public List<String> getPassedUsers(String userId) {
+    public Map<String, Object> consolidateInboundLikes() {
+        Map<String, Object> result = new HashMap<>();
+        boolean locked = false;
         try {
-            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
-            
-            if (!doc.exists()) {
-                return new ArrayList<>();
-            }
-            
-            @SuppressWarnings("unchecked")
-            List<String> passes = (List<String>) doc.getData().getOrDefault("passes", new ArrayList<>());
-            
-            return new ArrayList<>(passes);
-            
+            locked = Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                    .setIfAbsent(CONSOLIDATION_LOCK_KEY, "1", Duration.ofMinutes(5)));
+            if (!locked) {
+                result.put("success", true);
+                result.put("skipped", true);
+                return result;
+            }
+        } catch (Exception e) {
+            logger.warn("⚠️ Could not take inbound like consolidation lock, consolidating anyway: {}", e.getMessage());
+        }
+
+        int consolidated = 0;
+        int targets = 0;
+        int failed = 0;
+        try {
+            for (int round = 0; round < MAX_CONSOLIDATION_ROUNDS; round++) {
+                QuerySnapshot page = firestore.collectionGroup(INBOUND_COLLECTION)
+                        .limit(consolidationPageSize)
+                        .get()
+                        .get();
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                Map<DocumentReference, List<DocumentSnapshot>> byTarget = new LinkedHashMap<>();
+                for (DocumentSnapshot inbound : page.getDocuments()) {
+                    byTarget.computeIfAbsent(inbound.getReference().getParent().getParent(), target -> new ArrayList<>())
+                            .add(inbound);
+                }
+
+                int folded = 0;
+                for (Map.Entry<DocumentReference, List<DocumentSnapshot>> entry : byTarget.entrySet()) {
+                    List<DocumentSnapshot> queued = entry.getValue();
+                    try {
+                        for (int from = 0; from < queued.size(); from += MAX_INBOUND_PER_TRANSACTION) {
+                            List<DocumentSnapshot> chunk = queued.subList(from,
+                                    Math.min(from + MAX_INBOUND_PER_TRANSACTION, queued.size()));
+                            consolidated += foldInbound(entry.getKey(), chunk);
+                            folded += chunk.size();
+                        }
+                        targets++;
+                    } catch (Exception e) {
+                        failed++;
+                        logger.warn("⚠️ Could not consolidate inbound likes for {}: {}", entry.getKey().getId(), e.getMessage());
+                    }
+                }
+
+                // A page holding only failing targets would be returned again unchanged
+                if (page.size() < consolidationPageSize || folded == 0) {
+                    break;
+                }
+            }
         } catch (InterruptedException | ExecutionException e) {
-            logger.error("❌ Error getting passed users for {}: {}", userId, e.getMessage());
-            return new ArrayList<>();
+            throw new RuntimeException("Failed to consolidate inbound likes", e);
+        } finally {
+            if (locked) {
+                try {
+                    stringRedisTemplate.delete(CONSOLIDATION_LOCK_KEY);
+                } catch (Exception e) {
+                    logger.warn("⚠️ Could not release inbound like consolidation lock: {}", e.getMessage());
+                }
+            }
+        }
+
+        if (consolidated > 0 || failed > 0) {
+            logger.info("📥 Consolidated {} inbound likes for {} users ({} failed)", consolidated, targets, failed);
+        }
+        result.put("success", failed == 0);
+        result.put("consolidated", consolidated);
+        result.put("users", targets);
+        result.put("failed", failed);
+        return result;
+    }
+
+    /**
+     * Add the queued likers to the target's likedBy set and remove them from the queue, returning how
+     * many were new
+     */
+    private int foldInbound(DocumentReference target, List<DocumentSnapshot> queued)
+            throws InterruptedException, ExecutionException {
+        Set<DocumentReference> refs = new LinkedHashSet<>();
+        refs.add(target);
+        for (DocumentSnapshot inbound : queued) {
+            refs.add(bucketRef(target, LIKED_BY, inbound.getId()));
         }
+
+        int added = firestore.runTransaction(transaction -> {
+            Map<DocumentReference, DocumentSnapshot> snapshots = new HashMap<>();
+            for (DocumentSnapshot snapshot : transaction.getAll(refs.toArray(new DocumentReference[0])).get()) {
+                snapshots.put(snapshot.getReference(), snapshot);
+            }
+
+            Writes writes = new Writes();
+            int newLikes = 0;
+            for (DocumentSnapshot inbound : queued) {
+                String likerId = inbound.getId();
+                if (!UserActionBuckets.contains(snapshots.get(target),
+                        snapshots.get(bucketRef(target, LIKED_BY, likerId)), LIKED_BY, likerId)) {
+                    writes.add(target, LIKED_BY, likerId);
+                    newLikes++;
+                }
+            }
+            writes.applyTo(transaction, timestamp());
+            for (DocumentSnapshot inbound : queued) {
+                transaction.delete(inbound.getReference());
+            }
+            return newLikes;
+        }).get();
+        inboundConsolidatedCounter.increment(added);
+        return added;
+    }
+
+    /**
+     * Get users this user has passed on
+     */
+    public List<String> getPassedUsers(String userId) {
+        return readSet(userId, PASSES, "passed users");
     }
 
     /**
      * Get users this user has matched with
      */
     public List<String> getMatches(String userId) {
+        return readSet(userId, MATCHES, "matches");
+    }
+
+    private List<String> readSet(String userId, String set, String description) {
         try {
-            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
-            
-            if (!doc.exists()) {
-                return new ArrayList<>();
-            }
-            
-            @SuppressWarnings("unchecked")
-            List<String> matches = (List<String>) doc.getData().getOrDefault("matches", new ArrayList<>());
-            
-            return new ArrayList<>(matches);
-            
+            return new ArrayList<>(readSets(userActionsDoc(userId), List.of(set)).get(set));
         } catch (InterruptedException | ExecutionException e) {
-            logger.error("❌ Error getting matches for {}: {}", userId, e.getMessage());
+            logger.error("❌ Error getting {} for {}: {}", description, userId, e.getMessage());
             return new ArrayList<>();
         }
     }
 
-    /**
-     * Initialize a new userActions document
-     */
-    private Map<String, Object> initializeUserActionsDocument(String userId) {
-        Map<String, Object> userData = new HashMap<>();
-        userData.put("connectId", userId);
-        userData.put("likes", new ArrayList<>());
-        userData.put("passes", new ArrayList<>());
-        userData.put("matches", new ArrayList<>());
-        userData.put("unmatched", new ArrayList<>());
-        userData.put("likedBy", new ArrayList<>());
-        userData.put("lastUpdated", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z");
-        userData.put("totalActions", 0);
-        
-        logger.info("🆕 Initializing new userActions document for user: {}", userId);
-        return userData;
-    }
-
     /**
      * Add an unmatch action: user unmatches targetUser
-     * - Adds targetUserId to user's unmatched array
-     * - Adds userId to targetUser's unmatched array (bilateral)
+     * - Adds targetUserId to user's unmatched
+     * - Adds userId to targetUser's unmatched (bilateral)
      * - Prevents these users from matching in the future
      */
     public void addUnmatchAction(String userId, String targetUserId) {
@@ -352,72 +850,35 @@ public class UserActionsService {
                 logger.warn("⚠️ BLOCKED SELF-UNMATCH: User {} attempted to unmatch themselves", userId);
                 return;
             }
-            
+
             logger.info("🚫 Adding unmatch action: {} unmatches {}", userId, targetUserId);
-            
-            DocumentReference userDoc = firestore.collection(COLLECTION_NAME).document(userId);
-            DocumentReference targetDoc = firestore.collection(COLLECTION_NAME).document(targetUserId);
-            
+
+            DocumentReference userDoc = userActionsDoc(userId);
+            DocumentReference targetDoc = userActionsDoc(targetUserId);
+            DocumentReference userUnmatched = bucketRef(userDoc, UNMATCHED, targetUserId);
+            DocumentReference targetUnmatched = bucketRef(targetDoc, UNMATCHED, userId);
+
             firestore.runTransaction(transaction -> {
-                // Get both documents
-                DocumentSnapshot userSnapshot = transaction.get(userDoc).get();
-                DocumentSnapshot targetSnapshot = transaction.get(targetDoc).get();
-                
-                // Initialize user document if it doesn't exist
-                Map<String, Object> userData;
-                if (userSnapshot.exists()) {
-                    userData = new HashMap<>(userSnapshot.getData());
-                    logger.info("🔍 User {} document exists, loading data", userId);
-                } else {
-                    userData = initializeUserActionsDocument(userId);
-                    logger.info("🆕 User {} document doesn't exist, initializing", userId);
-                }
-                
-                // Initialize target document if it doesn't exist
-                Map<String, Object> targetData;
-                if (targetSnapshot.exists()) {
-                    targetData = new HashMap<>(targetSnapshot.getData());
-                    logger.info("🔍 Target {} document exists, loading data", targetUserId);
-                } else {
-                    targetData = initializeUserActionsDocument(targetUserId);
-                    logger.info("🆕 Target {} document doesn't exist, initializing", targetUserId);
-                }
-                
-                // Get current unmatched arrays
-                @SuppressWarnings("unchecked")
-                List<String> userUnmatched = (List<String>) userData.getOrDefault("unmatched", new ArrayList<>());
-                @SuppressWarnings("unchecked")
-                List<String> targetUnmatched = (List<String>) targetData.getOrDefault("unmatched", new ArrayList<>());
-                
-                // Add targetUserId to user's unmatched array (if not already there)
-                if (!userUnmatched.contains(targetUserId)) {
-                    userUnmatched.add(targetUserId);
-                    userData.put("unmatched", userUnmatched);
+                List<DocumentSnapshot> snapshots = transaction.getAll(userDoc, targetDoc, userUnmatched, targetUnmatched).get();
+                Writes writes = new Writes();
+
+                // Add targetUserId to user's unmatched (if not already there)
+                if (!UserActionBuckets.contains(snapshots.get(0), snapshots.get(2), UNMATCHED, targetUserId)) {
+                    writes.add(userDoc, UNMATCHED, targetUserId);
                     logger.info("➕ Added {} to {}'s unmatched list", targetUserId, userId);
                 }
-                
-                // Add userId to target's unmatched array (if not already there)
-                if (!targetUnmatched.contains(userId)) {
-                    targetUnmatched.add(userId);
-                    targetData.put("unmatched", targetUnmatched);
+
+                // Add userId to target's unmatched (if not already there)
+                if (!UserActionBuckets.contains(snapshots.get(1), snapshots.get(3), UNMATCHED, userId)) {
+                    writes.add(targetDoc, UNMATCHED, userId);
                     logger.info("➕ Added {} to {}'s unmatched list", userId, targetUserId);
                 }
-                
-                // Update timestamps
-                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z";
-                userData.put("lastUpdated", timestamp);
-                targetData.put("lastUpdated", timestamp);
-                
-                // Write both documents
-                logger.info("📝 Writing userActions document for user {}", userId);
-                transaction.set(userDoc, userData);
-                logger.info("📝 Writing userActions document for target {}", targetUserId);
-                transaction.set(targetDoc, targetData);
-                
+
+                writes.applyTo(transaction, timestamp());
                 logger.info("✅ Unmatch transaction completed: {} ↔ {}", userId, targetUserId);
                 return null;
             }).get();
-            
+
         } catch (InterruptedException | ExecutionException e) {
             logger.error("❌ Error adding unmatch action {} -> {}: {}", userId, targetUserId, e.getMessage(), e);
         }
@@ -427,22 +888,7 @@ public class UserActionsService {
      * Get users this user has unmatched with
      */
     public List<String> getUnmatchedUsers(String userId) {
-        try {
-            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
-            
-            if (!doc.exists()) {
-                return new ArrayList<>();
-            }
-            
-            @SuppressWarnings("unchecked")
-            List<String> unmatched = (List<String>) doc.getData().getOrDefault("unmatched", new ArrayList<>());
-            
-            return new ArrayList<>(unmatched);
-            
-        } catch (InterruptedException | ExecutionException e) {
-            logger.error("❌ Error getting unmatched users for {}: {}", userId, e.getMessage());
-            return new ArrayList<>();
-        }
+        return readSet(userId, UNMATCHED, "unmatched users");
     }
 
     /**
@@ -450,36 +896,162 @@ public class UserActionsService {
      */
     public boolean hasUnmatchedUser(String userId, String targetUserId) {
         try {
-            DocumentSnapshot doc = firestore.collection(COLLECTION_NAME).document(userId).get().get();
-            
-            if (!doc.exists()) {
-                return false;
-            }
-            
-            @SuppressWarnings("unchecked")
-            List<String> unmatched = (List<String>) doc.getData().getOrDefault("unmatched", new ArrayList<>());
-            
-            return unmatched.contains(targetUserId);
-            
+            DocumentReference userDoc = userActionsDoc(userId);
+            List<DocumentSnapshot> snapshots = firestore.getAll(userDoc, bucketRef(userDoc, UNMATCHED, targetUserId)).get();
+
+            return UserActionBuckets.contains(snapshots.get(0), snapshots.get(1), UNMATCHED, targetUserId);
+
         } catch (InterruptedException | ExecutionException e) {
             logger.error("❌ Error checking if user {} unmatched {}: {}", userId, targetUserId, e.getMessage());
             return false;
         }
     }
-    
+
+    /**
+     * Move the sets of every userActions document still holding them as arrays into buckets, and
+     * recount the parent's counters. Pages through the collection, so it can run on a live system
+     * and be re-run safely; documents already marked as bucketed are skipped.
+     */
+    public Map<String, Object> migrateToBuckets() {
+        logger.info("🪣 Migrating userActions arrays into buckets");
+        long started = System.currentTimeMillis();
+        int scanned = 0;
+        int migrated = 0;
+        int failed = 0;
+        DocumentSnapshot last = null;
+
+        try {
+            while (true) {
+                Query query = firestore.collection(COLLECTION_NAME)
+                        .orderBy(FieldPath.documentId())
+                        .select("bucketed")
+                        .limit(migrationPageSize);
+                if (last != null) {
+                    query = query.startAfter(last);
+                }
+                QuerySnapshot page = query.get().get();
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                for (DocumentSnapshot doc : page.getDocuments()) {
+                    scanned++;
+                    if (Boolean.TRUE.equals(doc.getBoolean("bucketed"))) {
+                        continue;
+                    }
+                    try {
+                        if (migrateDocument(doc.getReference())) {
+                            migrated++;
+                        }
+                    } catch (Exception e) {
+                        failed++;
+                        logger.warn("⚠️ Could not migrate userActions for {}: {}", doc.getId(), e.getMessage());
+                    }
+                }
+
+                last = page.getDocuments().get(page.size() - 1);
+                if (page.size() < migrationPageSize) {
+                    break;
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to migrate userActions documents", e);
+        }
+
+        logger.info("✅ userActions bucket migration finished in {} ms: {} scanned, {} migrated, {} failed",
+                System.currentTimeMillis() - started, scanned, migrated, failed);
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", failed == 0);
+        result.put("scanned", scanned);
+        result.put("migrated", migrated);
+        result.put("failed", failed);
+        return result;
+    }
+
+    /**
+     * Fold one parent's legacy arrays into its buckets and set its counters from the merged sets.
+     * Returns whether the document held any legacy arrays.
+     */
+    private boolean migrateDocument(DocumentReference parent) throws InterruptedException, ExecutionException {
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot doc = transaction.get(parent).get();
+            if (!doc.exists()) {
+                return false;
+            }
+            QuerySnapshot existingBuckets = transaction.get(parent.collection(BUCKETS_COLLECTION)).get();
+
+            // set -> bucket -> members, starting from what is already bucketed
+            Map<String, Map<Integer, Set<String>>> sets = new HashMap<>();
+            for (DocumentSnapshot bucket : existingBuckets.getDocuments()) {
+                Long bucketNumber = bucket.getLong("bucket");
+                if (bucket.getString("set") != null && bucketNumber != null) {
+                    sets.computeIfAbsent(bucket.getString("set"), set -> new HashMap<>())
+                            .computeIfAbsent(bucketNumber.intValue(), number -> new LinkedHashSet<>())
+                            .addAll(memberIds(bucket.get("ids")));
+                }
+            }
+
+            boolean hadLegacyArrays = false;
+            Set<DocumentReference> changedBuckets = new LinkedHashSet<>();
+            Map<String, Object> parentUpdate = new HashMap<>();
+            for (String set : SETS) {
+                if (doc.contains(set)) {
+                    hadLegacyArrays = true;
+                    parentUpdate.put(set, FieldValue.delete());
+                    for (String memberId : memberIds(doc.get(set))) {
+                        if (sets.computeIfAbsent(set, s -> new HashMap<>())
+                                .computeIfAbsent(bucket(memberId), number -> new LinkedHashSet<>())
+                                .add(memberId)) {
+                            changedBuckets.add(bucketRef(parent, set, memberId));
+                        }
+                    }
+                }
+                int total = 0;
+                for (Set<String> members : sets.getOrDefault(set, Map.of()).values()) {
+                    total += members.size();
+                }
+                parentUpdate.put(countField(set), total);
+            }
+
+            String timestamp = timestamp();
+            for (DocumentReference bucketRef : changedBuckets) {
+                String[] id = bucketRef.getId().split("_");
+                int bucketNumber = Integer.parseInt(id[1]);
+                Map<String, Object> bucketData = new HashMap<>();
+                bucketData.put("set", id[0]);
+                bucketData.put("bucket", bucketNumber);
+                bucketData.put("ids", new ArrayList<>(sets.get(id[0]).get(bucketNumber)));
+                bucketData.put("updatedAt", timestamp);
+                transaction.set(bucketRef, bucketData);
+            }
+            parentUpdate.put("bucketed", true);
+            parentUpdate.put("lastUpdated", timestamp);
+            transaction.update(parent, parentUpdate);
+            return hadLegacyArrays;
+        }).get();
+    }
+
+    private DocumentReference userActionsDoc(String userId) {
+        return firestore.collection(COLLECTION_NAME).document(userId);
+    }
+
+    private static String timestamp() {
+        return LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z";
+    }
+
     // Admin-specific methods
-    
+
     /**
      * Get user's actions for admin review
      */
     public List<UserAction> getUserActionsForAdmin(String connectId, int page, int size) {
         return userActionRepository.findRecentByUserId(connectId, size);
     }
-    
+
     /**
      * Get total actions count for pagination
      */
     public long getTotalActionsCount(String connectId) {
         return userActionRepository.countByUserId(connectId);
     }
-}
\ No newline at end of file
+}
@@ -7,7 +7,6 @@ import com.tpg.connect.model.dto.SafetyBlockRuleRequest;
 import com.tpg.connect.model.dto.UserBlockedRequest;
 import com.tpg.connect.repository.UserBlockedRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
@@ -19,6 +18,12 @@ public class UserBlockedService {
     @Autowired
     private UserBlockedRepository userBlockedRepository;
 
+    @Autowired
+    private BlockIndexService blockIndexService;
+
+    @Autowired
+    private CacheEvictionService cacheEvictionService;
+
     @Cacheable(value = "userBlocked", key = "#userId")
     public UserBlocked getUserBlockedConfig(String userId) {
         UserBlocked config = userBlockedRepository.findByConnectId(userId);
@@ -34,6 +39,7 @@ public class UserBlockedService {
         if (!config.isUserDirectlyBlocked(request.getTargetUserId())) {
             config.addDirectBlock(request.getTargetUserId());
             config = userBlockedRepository.save(config);
+            blockIndexService.recordBlock(userId, request.getTargetUserId());
             clearUserBlockedCache(userId);
         }
         
@@ -46,6 +52,7 @@ public class UserBlockedService {
         if (config.isUserDirectlyBlocked(targetUserId)) {
             config.removeDirectBlock(targetUserId);
             config = userBlockedRepository.save(config);
+            blockIndexService.recordUnblock(userId, targetUserId);
             clearUserBlockedCache(userId);
         }
         
@@ -155,8 +162,7 @@ public class UserBlockedService {
                upperBlockType.equals("HOMETOWN");
     }
 
-    @CacheEvict(value = "userBlocked", key = "#userId")
     private void clearUserBlockedCache(String userId) {
-        // Cache cleared by annotation
+        cacheEvictionService.evict("userBlocked", userId);
     }
 }
\ No newline at end of file
@@ -1,13 +1,17 @@
 package com.tpg.connect.services;
 
-import com.google.cloud.firestore.DocumentSnapshot;
-import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.WriteBatch;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.cloud.firestore.*;
 import com.tpg.connect.model.api.PotentialMatchesResponse;
 import com.tpg.connect.model.dto.MatchActionsRequest;
-import com.tpg.connect.model.user.CompleteUserProfile;
-import com.tpg.connect.repository.UserProfileRepository;
+import com.tpg.connect.model.user.ProfileCard;
+import com.tpg.connect.util.ConnectIdBitmap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,24 +20,95 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
+/**
+ * Serves each user's match pool as an append-only queue.
+ *
+ * UserMatchPools/{userId} is a small header holding the queue cursor; every generated day is its own
+ * document in the {@code days} subcollection, keyed by ISO date so document id order is queue order.
+ * A day records its matches plus a {@code viewed} map, so marking cards viewed is a field update on
+ * the day that holds them and never rewrites earlier history. The cursor is the first day that still
+ * has an unconsumed card (neither viewed nor already acted on); reads start there, and days before it
+ * are deleted by {@link #compactConsumedDays()}.
+ *
+ * The next cards are also kept hydrated in a per-user Redis list (MatchCardBufferService), so
+ * serving a page is one Redis read. The list is refilled in the background once it runs low and
+ * drops cards as they are viewed or acted on; a refill that overlapped such a change is discarded
+ * and run again.
+ *
+ * Pool documents written in the legacy single-document format ({@code dailyEntries} array) are moved
+ * into day documents the first time they are read.
+ */
 @Service
 public class UserMatchPoolService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserMatchPoolService.class);
+
+    static final String POOLS_COLLECTION = "UserMatchPools";
+    static final String DAYS_COLLECTION = "days";
+
+    private static final int MATCHES_PER_REQUEST = 3;
+    private static final int DAYS_PER_READ = 7;
+    private static final int ARRAY_CONTAINS_ANY_LIMIT = 30;
     
     @Autowired
     private Firestore firestore;
     
     @Autowired
-    private UserProfileRepository userProfileRepository;
+    private ProfileHydrationService profileHydrationService;
     
     
     @Autowired
     private UserActionsService userActionsService;
 
+    @Autowired
+    private ProfileManagementService profileManagementService;
+
+    @Autowired
+    private BlockIndexService blockIndexService;
+
+    @Autowired
+    private MatchCardBufferService matchCardBufferService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${app.match-pool.compaction.page-size:500}")
+    private int compactionPageSize;
+
+    @Value("${app.match-pool.prefetch.size:20}")
+    private int prefetchSize;
+
+    @Value("${app.match-pool.prefetch.low-water:6}")
+    private int prefetchLowWater;
+
+    private final Set<String> refillsInFlight = ConcurrentHashMap.newKeySet();
+    // Refills asked for while one was running; that refill goes again once it finishes
+    private final Set<String> refillsRequested = ConcurrentHashMap.newKeySet();
+    private Counter cardBufferHitCounter;
+    private Counter cardBufferMissCounter;
+
+    @PostConstruct
+    private void initialize() {
+        cardBufferHitCounter = Counter.builder("connect_match_pool_card_buffer_requests")
+            .description("Next-matches requests served from the prefetched card buffer")
+            .tag("result", "hit")
+            .register(meterRegistry);
+
+        cardBufferMissCounter = Counter.builder("connect_match_pool_card_buffer_requests")
+            .description("Next-matches requests served from the prefetched card buffer")
+            .tag("result", "miss")
+            .register(meterRegistry);
+    }
+
     /**
      * Get next 3 unviewed matches from the user's queue (chronological across all days)
      */
@@ -41,82 +116,45 @@ public class UserMatchPoolService {
         try {
             logger.info("🔍 Getting next matches for user: {}", userId);
             
-            // Read UserMatchPools document for this user
-            DocumentSnapshot doc = firestore.collection("UserMatchPools")
-                    .document(userId)
-                    .get()
-                    .get();
+            List<ProfileCard> buffered = withoutBlocked(userId, readCardBuffer(userId));
+            if (!buffered.isEmpty()) {
+                cardBufferHitCounter.increment();
+                return new PotentialMatchesResponse(true, "Matches retrieved from queue", 
+                        buffered, generateQueueId(userId), buffered.size(), false);
+            }
+            cardBufferMissCounter.increment();
+            
+            DocumentReference poolRef = firestore.collection(POOLS_COLLECTION).document(userId);
+            DocumentSnapshot doc = poolRef.get().get();
             
             if (!doc.exists()) {
                 logger.warn("❌ No UserMatchPools document found for user: {}", userId);
                 return new PotentialMatchesResponse(true, "No matches available yet", 
                         Collections.emptyList(), null, 0, true);
             }
+            migrateLegacyEntries(poolRef, doc);
             
-            // Debug: Log the document structure for user 299335545418
-            if ("299335545418".equals(userId)) {
-                Map<String, Object> docData = doc.getData();
-                logger.info("🐛 DEBUG - Document data keys: {}", docData != null ? docData.keySet() : "null");
-                if (docData != null && docData.containsKey("dailyEntries")) {
-                    List<?> dailyEntries = (List<?>) docData.get("dailyEntries");
-                    logger.info("🐛 DEBUG - Daily entries count: {}", dailyEntries != null ? dailyEntries.size() : 0);
-                    if (dailyEntries != null && !dailyEntries.isEmpty()) {
-                        Object firstEntry = dailyEntries.get(0);
-                        if (firstEntry instanceof Map) {
-                            Map<?, ?> entryMap = (Map<?, ?>) firstEntry;
-                            logger.info("🐛 DEBUG - First entry keys: {}", entryMap.keySet());
-                            if (entryMap.containsKey("matches")) {
-                                List<?> matches = (List<?>) entryMap.get("matches");
-                                logger.info("🐛 DEBUG - First entry matches count: {}", matches != null ? matches.size() : 0);
-                                if (matches != null && !matches.isEmpty()) {
-                                    Object firstMatch = matches.get(0);
-                                    if (firstMatch instanceof Map) {
-                                        Map<?, ?> matchMap = (Map<?, ?>) firstMatch;
-                                        logger.info("🐛 DEBUG - First match keys: {}", matchMap.keySet());
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            
-            // Extract queue of unviewed matches chronologically
-            List<QueueMatch> queue = extractQueueMatches(doc, userId);
+            // Read the queue from the cursor onwards
+            List<QueueMatch> nextMatches = readQueue(poolRef, doc.getString("cursor"), userId, MATCHES_PER_REQUEST);
             
-            if (queue.isEmpty()) {
+            if (nextMatches.isEmpty()) {
                 logger.info("✅ No unviewed matches in queue for user: {}", userId);
                 return new PotentialMatchesResponse(true, "No new matches available", 
                         Collections.emptyList(), null, 0, true);
             }
+            scheduleCardBufferRefill(userId);
             
-            // Take up to 3 matches from queue
-            List<QueueMatch> nextMatches = queue.stream()
-                    .limit(3)
+            // Convert to cards in a single batched read, keeping queue order
+            List<String> nextMatchIds = nextMatches.stream()
+                    .map(QueueMatch::getMatchConnectId)
                     .collect(Collectors.toList());
-            
-            // Convert to CompleteUserProfile objects
-            List<CompleteUserProfile> userProfiles = new ArrayList<>();
-            for (QueueMatch queueMatch : nextMatches) {
-                CompleteUserProfile profile = userProfileRepository.findByUserId(queueMatch.getMatchConnectId());
-                if (profile != null) {
-                    userProfiles.add(profile);
-                } else {
-                    logger.warn("⚠️ Profile not found for match: {}", queueMatch.getMatchConnectId());
-                }
+            List<ProfileCard> userProfiles = profileHydrationService.hydrateCards("match_pool", nextMatchIds);
+            if (userProfiles.size() < nextMatchIds.size()) {
+                logger.warn("⚠️ {} queued match profiles not found for user {}", nextMatchIds.size() - userProfiles.size(), userId);
             }
+            userProfiles = withoutBlocked(userId, userProfiles);
             
-            logger.info("✅ Returning {} matches for user {} (queue has {} total unviewed)", 
-                    userProfiles.size(), userId, queue.size());
-            
-            // Log the first profile to debug frontend parsing issues
-            if (!userProfiles.isEmpty()) {
-                CompleteUserProfile firstProfile = userProfiles.get(0);
-                logger.info("🔍 Sample profile data - connectId: {}, firstName: {}, lastName: {}, age: {}, photos: {}", 
-                        firstProfile.getConnectId(), firstProfile.getFirstName(), firstProfile.getLastName(), 
-                        firstProfile.getAge(), firstProfile.getPhotos() != null ? firstProfile.getPhotos().size() : "null");
-                logger.info("🔍 Sample profile photos: {}", firstProfile.getPhotos());
-            }
+            logger.info("✅ Returning {} matches for user {}", userProfiles.size(), userId);
             
             return new PotentialMatchesResponse(true, "Matches retrieved from queue", 
                     userProfiles, generateQueueId(userId), userProfiles.size(), false);
@@ -136,100 +174,98 @@ public class UserMatchPoolService {
             logger.info("🔄 Updating viewed status for user {} with {} actions", 
                     userId, request.getActions().size());
             
-            // Use transaction to ensure atomic updates
-            var docRef = firestore.collection("UserMatchPools").document(userId);
+            DocumentReference poolRef = firestore.collection(POOLS_COLLECTION).document(userId);
+            DocumentSnapshot doc = poolRef.get().get();
+            if (!doc.exists()) {
+                throw new IllegalArgumentException("UserMatchPools document not found for user: " + userId);
+            }
+            migrateLegacyEntries(poolRef, doc);
             
-            Map<String, Object> result = firestore.runTransaction(transaction -> {
-                DocumentSnapshot doc = transaction.get(docRef).get();
-                
-                if (!doc.exists()) {
-                    throw new IllegalArgumentException("UserMatchPools document not found for user: " + userId);
-                }
-                
-                // Extract current data
-                Map<String, Object> docData = new HashMap<>(doc.getData());
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> dailyEntries = (List<Map<String, Object>>) docData.get("dailyEntries");
-                
-                if (dailyEntries == null) {
-                    throw new IllegalStateException("No dailyEntries found in UserMatchPools for user: " + userId);
-                }
-                
-                // Create deep copy to avoid modifying original
-                List<Map<String, Object>> newDailyEntries = new ArrayList<>();
-                for (Map<String, Object> entry : dailyEntries) {
-                    Map<String, Object> newEntry = new HashMap<>(entry);
-                    @SuppressWarnings("unchecked")
-                    List<Map<String, Object>> matches = (List<Map<String, Object>>) entry.get("matches");
-                    if (matches != null) {
-                        List<Map<String, Object>> newMatches = new ArrayList<>();
-                        for (Map<String, Object> match : matches) {
-                            newMatches.add(new HashMap<>(match));
+            // Find the day documents queuing each target and flip only their viewed flags
+            Set<String> targets = request.getActions().stream()
+                    .map(MatchActionsRequest.UserActionDto::getTargetUserId)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            Set<String> queued = new HashSet<>();
+            WriteBatch batch = firestore.batch();
+            int updates = 0;
+            
+            List<String> targetList = new ArrayList<>(targets);
+            for (int i = 0; i < targetList.size(); i += ARRAY_CONTAINS_ANY_LIMIT) {
+                List<String> chunk = targetList.subList(i, Math.min(i + ARRAY_CONTAINS_ANY_LIMIT, targetList.size()));
+                QuerySnapshot days = poolRef.collection(DAYS_COLLECTION)
+                        .whereArrayContainsAny("matchIds", new ArrayList<>(chunk))
+                        .get()
+                        .get();
+                for (QueryDocumentSnapshot day : days.getDocuments()) {
+                    List<String> matchIds = stringList(day.get("matchIds"));
+                    Map<String, Object> viewed = viewedMap(day);
+                    for (String target : chunk) {
+                        if (matchIds.contains(target)) {
+                            queued.add(target);
+                            if (!Boolean.TRUE.equals(viewed.get(target))) {
+                                batch.update(day.getReference(), FieldPath.of("viewed", target), true);
+                                updates++;
+                            }
                         }
-                        newEntry.put("matches", newMatches);
                     }
-                    newDailyEntries.add(newEntry);
                 }
+            }
+            
+            if (updates > 0) {
+                batch.update(poolRef, "lastUpdated", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z");
+                batch.commit().get();
+            }
+            if (matchCardBufferService.remove(userId, targets) < prefetchLowWater) {
+                scheduleCardBufferRefill(userId);
+            }
+            
+            // Record the actions for the cards that were in the queue
+            int actionsProcessed = 0;
+            int newMatches = 0;
+            List<String> matchedUserIds = new ArrayList<>();
+            
+            for (MatchActionsRequest.UserActionDto action : request.getActions()) {
+                if (!queued.contains(action.getTargetUserId())) {
+                    logger.warn("⚠️ Match not found for targetUserId: {} in user {}'s queue", 
+                            action.getTargetUserId(), userId);
+                    continue;
+                }
+                actionsProcessed++;
                 
-                // Process each action and update viewed status
-                int actionsProcessed = 0;
-                int newMatches = 0;
-                List<String> matchedUserIds = new ArrayList<>();
-                
-                for (MatchActionsRequest.UserActionDto action : request.getActions()) {
-                    boolean matchFound = updateMatchViewedStatusInTransaction(newDailyEntries, action.getTargetUserId());
+                try {
+                    boolean isMutualMatch = false;
                     
-                    if (matchFound) {
-                        actionsProcessed++;
-                        
-                        // Record the action using new UserActionsService
-                        try {
-                            boolean isMutualMatch = false;
-                            
-                            if ("LIKE".equals(action.getAction())) {
-                                isMutualMatch = userActionsService.addLikeAction(userId, action.getTargetUserId());
-                            } else {
-                                userActionsService.addPassAction(userId, action.getTargetUserId());
-                            }
-                            
-                            // Handle mutual match
-                            if (isMutualMatch) {
-                                logger.info("🎉 Mutual match detected in transaction: {} ↔ {}", userId, action.getTargetUserId());
-                                // UserActionsService already handles match creation in the matches array
-                                newMatches++;
-                                matchedUserIds.add(action.getTargetUserId());
-                            }
-                                            
-                        } catch (Exception e) {
-                            logger.warn("⚠️ Failed to record action {} -> {} in transaction: {}", 
-                                    userId, action.getTargetUserId(), e.getMessage());
-                        }
+                    if ("LIKE".equals(action.getAction())) {
+                        isMutualMatch = userActionsService.addLikeAction(userId, action.getTargetUserId());
                     } else {
-                        logger.warn("⚠️ Match not found for targetUserId: {} in user {}'s queue", 
-                                action.getTargetUserId(), userId);
+                        userActionsService.addPassAction(userId, action.getTargetUserId());
+                    }
+                    
+                    // Handle mutual match
+                    if (isMutualMatch) {
+                        logger.info("🎉 Mutual match detected: {} ↔ {}", userId, action.getTargetUserId());
+                        // UserActionsService already handles match creation in the matches array
+                        newMatches++;
+                        matchedUserIds.add(action.getTargetUserId());
                     }
+                                    
+                } catch (Exception e) {
+                    logger.warn("⚠️ Failed to record action {} -> {}: {}", 
+                            userId, action.getTargetUserId(), e.getMessage());
                 }
-                
-                // Update the document with new viewed statuses and lastUpdated timestamp
-                docData.put("dailyEntries", newDailyEntries);
-                docData.put("lastUpdated", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "Z");
-                
-                // Write back to Firestore within transaction
-                transaction.set(docRef, docData);
-                
-                Map<String, Object> transactionResult = new HashMap<>();
-                transactionResult.put("success", true);
-                transactionResult.put("actionsProcessed", actionsProcessed);
-                transactionResult.put("newMatches", newMatches);
-                transactionResult.put("matchedUserIds", matchedUserIds);
-                transactionResult.put("message", String.format("Processed %d actions, %d new matches", 
-                        actionsProcessed, newMatches));
-                
-                return transactionResult;
-            }).get();
+            }
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("actionsProcessed", actionsProcessed);
+            result.put("newMatches", newMatches);
+            result.put("matchedUserIds", matchedUserIds);
+            result.put("message", String.format("Processed %d actions, %d new matches", 
+                    actionsProcessed, newMatches));
             
             logger.info("✅ Updated viewed status: {} actions processed, {} new matches for user {}", 
-                    result.get("actionsProcessed"), result.get("newMatches"), userId);
+                    actionsProcessed, newMatches, userId);
             
             return result;
             
@@ -243,132 +279,292 @@ public class UserMatchPoolService {
     }
 
     /**
-     * Extract chronological queue of unviewed matches from UserMatchPools document
+     * Delete day documents that sit before each user's cursor, i.e. days with no unconsumed cards left
      */
-    private List<QueueMatch> extractQueueMatches(DocumentSnapshot doc, String userId) {
+    public Map<String, Object> compactConsumedDays() {
+        long started = System.currentTimeMillis();
+        int poolsScanned = 0;
+        int poolsCompacted = 0;
+        int daysDeleted = 0;
+
+        BulkWriter writer = firestore.bulkWriter();
+        try {
+            DocumentSnapshot last = null;
+            List<QueryDocumentSnapshot> page;
+            do {
+                Query query = firestore.collection(POOLS_COLLECTION)
+                        .orderBy(FieldPath.documentId())
+                        .select("cursor", "compactedThrough", "dailyEntries")
+                        .limit(compactionPageSize);
+                if (last != null) {
+                    query = query.startAfter(last);
+                }
+                page = query.get().get().getDocuments();
+
+                for (QueryDocumentSnapshot pool : page) {
+                    poolsScanned++;
+                    migrateLegacyEntries(pool.getReference(), pool);
+                    String cursor = pool.getString("cursor");
+                    if (cursor == null || cursor.equals(pool.getString("compactedThrough"))) {
+                        continue;
+                    }
+
+                    List<QueryDocumentSnapshot> consumed = pool.getReference().collection(DAYS_COLLECTION)
+                            .whereLessThan(FieldPath.documentId(), cursor)
+                            .select(new String[0])
+                            .get()
+                            .get()
+                            .getDocuments();
+                    for (QueryDocumentSnapshot day : consumed) {
+                        writer.delete(day.getReference());
+                        daysDeleted++;
+                    }
+                    writer.update(pool.getReference(), "compactedThrough", cursor);
+                    poolsCompacted++;
+                }
+                writer.flush().get();
+                if (!page.isEmpty()) {
+                    last = page.get(page.size() - 1);
+                }
+            } while (page.size() == compactionPageSize);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to compact match pool queues", e);
+        } finally {
+            try {
+                writer.close();
+            } catch (Exception e) {
+                logger.warn("⚠️ Failed to close bulk writer after compaction: {}", e.getMessage());
+            }
+        }
+
+        logger.info("🧹 Compacted {} of {} match pool queues, deleted {} consumed days in {} ms",
+                poolsCompacted, poolsScanned, daysDeleted, System.currentTimeMillis() - started);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("poolsScanned", poolsScanned);
+        result.put("poolsCompacted", poolsCompacted);
+        result.put("daysDeleted", daysDeleted);
+        return result;
+    }
+
+    /**
+     * Walk day documents from the cursor until enough unconsumed cards are found, advancing the
+     * cursor past days that turned out to be fully consumed
+     */
+    private List<QueueMatch> readQueue(DocumentReference poolRef, String cursor, String userId, int limit)
+            throws InterruptedException, ExecutionException {
         List<QueueMatch> queue = new ArrayList<>();
-        
-        Map<String, Object> docData = doc.getData();
-        if (docData == null) return queue;
-        
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> dailyEntries = (List<Map<String, Object>>) docData.get("dailyEntries");
-        
-        if (dailyEntries == null) return queue;
-        
-        // Sort daily entries by date (chronological order - oldest first)
-        dailyEntries.sort((a, b) -> {
-            String dateA = (String) a.get("date");
-            String dateB = (String) b.get("date");
-            return dateA.compareTo(dateB);
-        });
-        
-        // Get already acted-on users to filter them out
-        Set<String> actedOnUsers = userActionsService.getActedOnUsers(userId);
-        logger.info("🚫 User {} has acted on {} users, filtering them out", userId, actedOnUsers.size());
-        
-        // Extract unviewed matches across all days
-        for (Map<String, Object> dailyEntry : dailyEntries) {
-            String date = (String) dailyEntry.get("date");
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> matches = (List<Map<String, Object>>) dailyEntry.get("matches");
-            
-            if (matches != null) {
-                logger.info("🔍 Processing {} matches for date: {}", matches.size(), date);
+        ConnectIdBitmap actedOnUsers = userActionsService.getActedOnBitmap(userId);
+        String firstOpenDay = null;
+        String lastDay = null;
+        String from = cursor;
+
+        List<QueryDocumentSnapshot> days;
+        do {
+            Query query = poolRef.collection(DAYS_COLLECTION)
+                    .orderBy(FieldPath.documentId())
+                    .limit(DAYS_PER_READ);
+            if (from != null) {
+                query = lastDay == null
+                        ? query.whereGreaterThanOrEqualTo(FieldPath.documentId(), from)
+                        : query.whereGreaterThan(FieldPath.documentId(), from);
+            }
+            days = query.get().get().getDocuments();
+
+            for (QueryDocumentSnapshot day : days) {
+                lastDay = day.getId();
+                Map<String, Object> viewed = viewedMap(day);
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> matches = (List<Map<String, Object>>) day.get("matches");
+                if (matches == null) continue;
+
                 for (Map<String, Object> match : matches) {
-                    Boolean viewed = (Boolean) match.get("viewed");
                     String matchConnectId = (String) match.get("matchConnectId");
-                    
-                    // Skip if user has already acted on this person
-                    if (actedOnUsers.contains(matchConnectId)) {
-                        logger.info("🚫 Skipping already-actioned user: {} (in userActions)", matchConnectId);
+                    if (matchConnectId == null || Boolean.TRUE.equals(viewed.get(matchConnectId))
+                            || actedOnUsers.contains(matchConnectId)) {
                         continue;
                     }
-                    
-                    if (viewed == null || !viewed) {
-                        Double compatibilityScore = (Double) match.get("compatibilityScore");
-                        Number stabilityRankNumber = (Number) match.get("stabilityRank");
-                        Integer stabilityRank = stabilityRankNumber != null ? stabilityRankNumber.intValue() : null;
-                        
-                        if (matchConnectId != null) {
-                            queue.add(new QueueMatch(
-                                    matchConnectId,
-                                    date,
-                                    compatibilityScore != null ? compatibilityScore : 0.0,
-                                    stabilityRank != null ? stabilityRank : 0
-                            ));
-                            logger.info("✅ Added unviewed match: {} (viewed: {})", matchConnectId, viewed);
-                        }
-                    } else {
-                        logger.info("⏭️ Skipping viewed match: {} (viewed: {})", matchConnectId, viewed);
+                    if (firstOpenDay == null) {
+                        firstOpenDay = day.getId();
+                    }
+                    if (queue.size() < limit) {
+                        Number compatibilityScore = (Number) match.get("compatibilityScore");
+                        Number stabilityRank = (Number) match.get("stabilityRank");
+                        queue.add(new QueueMatch(
+                                matchConnectId,
+                                day.getId(),
+                                compatibilityScore != null ? compatibilityScore.doubleValue() : 0.0,
+                                stabilityRank != null ? stabilityRank.intValue() : 0
+                        ));
                     }
                 }
+                if (queue.size() >= limit) break;
             }
+            from = lastDay;
+        } while (queue.size() < limit && days.size() == DAYS_PER_READ);
+
+        // With nothing left open the cursor parks on the newest day so the next read starts there
+        String advancedCursor = firstOpenDay != null ? firstOpenDay : lastDay;
+        if (advancedCursor != null && (cursor == null || advancedCursor.compareTo(cursor) > 0)) {
+            poolRef.update("cursor", advancedCursor).get();
+            logger.debug("⏩ Match pool cursor for user {} advanced to {}", userId, advancedCursor);
         }
         
-        logger.info("📊 Extracted {} unviewed matches from queue for user {}", queue.size(), userId);
-        
-        // Debug: Log queue details for user 299335545418
-        if ("299335545418".equals(userId)) {
-            logger.info("🐛 DEBUG - Queue extraction details:");
-            logger.info("🐛 DEBUG - Daily entries processed: {}", dailyEntries.size());
-            logger.info("🐛 DEBUG - Total queue matches found: {}", queue.size());
-            for (int i = 0; i < Math.min(3, queue.size()); i++) {
-                QueueMatch match = queue.get(i);
-                logger.info("🐛 DEBUG - Queue match {}: {} (score: {}, date: {})", 
-                          i+1, match.getMatchConnectId(), match.getCompatibilityScore(), match.getDate());
+        logger.info("📊 Read {} unviewed matches from queue for user {} (cursor {})", queue.size(), userId, advancedCursor);
+        return queue;
+    }
+
+    /**
+     * Up to one page of prefetched cards; empty when the buffer is empty or Redis is unavailable
+     */
+    private List<ProfileCard> readCardBuffer(String userId) {
+        try {
+            // One read covers the page and tells us whether the buffer is running low
+            List<ProfileCard> head = matchCardBufferService.peek(userId, Math.max(prefetchLowWater, MATCHES_PER_REQUEST));
+            if (head.isEmpty()) {
+                return head;
             }
+            if (head.size() < prefetchLowWater) {
+                scheduleCardBufferRefill(userId);
+            }
+            return new ArrayList<>(head.subList(0, Math.min(MATCHES_PER_REQUEST, head.size())));
+        } catch (Exception e) {
+            logger.warn("⚠️ Failed to read match card buffer for {}: {}", userId, e.getMessage());
+            return new ArrayList<>();
         }
-        
-        return queue;
     }
 
     /**
-     * Update viewed status for a specific match in the dailyEntries structure
+     * Drop cards of users with a block either way since the pool was generated; a filter lookup per card
      */
-    private boolean updateMatchViewedStatus(List<Map<String, Object>> dailyEntries, String targetUserId) {
-        for (Map<String, Object> dailyEntry : dailyEntries) {
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> matches = (List<Map<String, Object>>) dailyEntry.get("matches");
-            
-            if (matches != null) {
-                for (Map<String, Object> match : matches) {
-                    String matchConnectId = (String) match.get("matchConnectId");
-                    if (targetUserId.equals(matchConnectId)) {
-                        Boolean previousViewed = (Boolean) match.get("viewed");
-                        match.put("viewed", true);
-                        logger.info("🔄 Marked match {} as viewed (was: {})", targetUserId, previousViewed);
-                        return true;
-                    }
+    private List<ProfileCard> withoutBlocked(String userId, List<ProfileCard> cards) {
+        return cards.stream()
+                .filter(card -> !blockIndexService.isEitherBlocked(userId, card.getConnectId()))
+                .collect(Collectors.toList());
+    }
+
+    private void scheduleCardBufferRefill(String userId) {
+        if (!refillsInFlight.add(userId)) {
+            refillsRequested.add(userId);
+            return;
+        }
+        taskExecutor.execute(() -> {
+            try {
+                if (!refillCardBuffer(userId)) {
+                    logger.debug("🔁 Match card refill for {} overlapped a change, running it again", userId);
+                    refillsRequested.add(userId);
                 }
+            } catch (Exception e) {
+                logger.warn("⚠️ Match card buffer refill failed for {}: {}", userId, e.getMessage());
+            } finally {
+                refillsInFlight.remove(userId);
+                if (refillsRequested.remove(userId)) {
+                    scheduleCardBufferRefill(userId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Replace the user's card buffer with the next {@code prefetchSize} queued cards, hydrated and
+     * with photo URLs refreshed. Returns false if a view or action changed the buffer meanwhile, in
+     * which case nothing was written.
+     */
+    private boolean refillCardBuffer(String userId) throws InterruptedException, ExecutionException, JsonProcessingException {
+        // Read before the queue so any removal after this point makes the write below stale
+        long version = matchCardBufferService.version(userId);
+        DocumentReference poolRef = firestore.collection(POOLS_COLLECTION).document(userId);
+        DocumentSnapshot doc = poolRef.get().get();
+        if (!doc.exists()) {
+            return true;
+        }
+        migrateLegacyEntries(poolRef, doc);
+
+        List<String> upcomingIds = readQueue(poolRef, doc.getString("cursor"), userId, prefetchSize).stream()
+                .map(QueueMatch::getMatchConnectId)
+                .collect(Collectors.toList());
+        List<ProfileCard> profiles = profileHydrationService.hydrateCards("match_pool_prefetch", upcomingIds);
+
+        // Cards acted on while this refill was running must not come back
+        ConnectIdBitmap actedOnUsers = userActionsService.getActedOnBitmap(userId);
+        List<ProfileCard> cards = new ArrayList<>(profiles.size());
+        for (ProfileCard profile : profiles) {
+            if (actedOnUsers.contains(profile.getConnectId())) {
+                continue;
+            }
+            try {
+                profile = profileManagementService.refreshPhotoUrls(profile);
+            } catch (Exception e) {
+                logger.warn("⚠️ Could not refresh photo URLs for buffered card {}: {}", profile.getConnectId(), e.getMessage());
             }
+            cards.add(profile);
         }
-        logger.warn("⚠️ Target match {} not found in dailyEntries", targetUserId);
-        return false;
+
+        if (!matchCardBufferService.replace(userId, version, cards)) {
+            return false;
+        }
+        logger.debug("📥 Prefetched {} match cards for user {}", cards.size(), userId);
+        return true;
     }
 
     /**
-     * Update viewed status for a specific match in the dailyEntries structure (for transaction use)
+     * Move a legacy single-document pool ({@code dailyEntries}) into day documents
      */
-    private boolean updateMatchViewedStatusInTransaction(List<Map<String, Object>> dailyEntries, String targetUserId) {
-        for (Map<String, Object> dailyEntry : dailyEntries) {
+    private void migrateLegacyEntries(DocumentReference poolRef, DocumentSnapshot doc)
+            throws InterruptedException, ExecutionException {
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> dailyEntries = (List<Map<String, Object>>) doc.get("dailyEntries");
+        if (dailyEntries == null) {
+            return;
+        }
+
+        WriteBatch batch = firestore.batch();
+        for (Map<String, Object> entry : dailyEntries) {
+            String date = (String) entry.get("date");
             @SuppressWarnings("unchecked")
-            List<Map<String, Object>> matches = (List<Map<String, Object>>) dailyEntry.get("matches");
-            
-            if (matches != null) {
-                for (Map<String, Object> match : matches) {
-                    String matchConnectId = (String) match.get("matchConnectId");
-                    if (targetUserId.equals(matchConnectId)) {
-                        Boolean previousViewed = (Boolean) match.get("viewed");
-                        match.put("viewed", true);
-                        logger.info("🔄 [Transaction] Marked match {} as viewed (was: {})", targetUserId, previousViewed);
-                        return true;
-                    }
+            List<Map<String, Object>> matches = (List<Map<String, Object>>) entry.get("matches");
+            if (date == null || matches == null) continue;
+
+            List<Map<String, Object>> dayMatches = new ArrayList<>();
+            Map<String, Object> viewed = new HashMap<>();
+            for (Map<String, Object> match : matches) {
+                Map<String, Object> dayMatch = new HashMap<>(match);
+                if (Boolean.TRUE.equals(dayMatch.remove("viewed"))) {
+                    viewed.put((String) match.get("matchConnectId"), true);
                 }
+                dayMatches.add(dayMatch);
             }
+            batch.set(poolRef.collection(DAYS_COLLECTION).document(date),
+                    dayDocument(date, dayMatches, viewed), SetOptions.merge());
         }
-        logger.warn("⚠️ [Transaction] Target match {} not found in dailyEntries", targetUserId);
-        return false;
+        batch.update(poolRef, FieldPath.of("dailyEntries"), FieldValue.delete());
+        batch.commit().get();
+        logger.info("📦 Migrated {} legacy daily entries into the match pool queue for {}", dailyEntries.size(), poolRef.getId());
+    }
+
+    /**
+     * Fields of a queue day document; {@code matchIds} mirrors the matches for array-contains lookups
+     */
+    static Map<String, Object> dayDocument(String date, List<Map<String, Object>> matches, Map<String, Object> viewed) {
+        Map<String, Object> day = new HashMap<>();
+        day.put("date", date);
+        day.put("matches", matches);
+        day.put("matchIds", matches.stream().map(match -> match.get("matchConnectId")).collect(Collectors.toList()));
+        if (viewed != null && !viewed.isEmpty()) {
+            day.put("viewed", viewed);
+        }
+        return day;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> viewedMap(DocumentSnapshot day) {
+        Object viewed = day.get("viewed");
+        return viewed instanceof Map ? (Map<String, Object>) viewed : Collections.emptyMap();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> stringList(Object value) {
+        return value instanceof List ? (List<String>) value : Collections.emptyList();
     }
 
     /**
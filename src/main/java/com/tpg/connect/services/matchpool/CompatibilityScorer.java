@@ -0,0 +1,134 @@
+package com.tpg.connect.services.matchpool;
+
+/**
+ * Hard filters and directional compatibility score in [0, 1] of a candidate from the seeker's
+ * point of view.
+ *
+ * Hard filters are bitmask ANDs over the trait masks in both directions (gender preference,
+ * deal-breakers, must-haves) plus the seeker's height range. The score is a weighted blend of
+ * age fit within the seeker's range, dating intention, shared interests, family plans,
+ * religion (weighted by the seeker's importance) and distance within the seeker's maxDistance. Smoking, drinking and drug use only act as hard
+ * filters and are not scored.
+ *
+ * {@link #scoreBatch} is the hot path: it reads the snapshot's primitive columns only and does
+ * not allocate, so one seeker can be scored against thousands of candidates per call.
+ */
+public final class CompatibilityScorer {
+
+    /** Score written for candidates rejected by a hard filter */
+    public static final float FILTERED = -1f;
+
+    static final float AGE_WEIGHT = 0.25f;
+    static final float INTENTION_WEIGHT = 0.25f;
+    static final float INTERESTS_WEIGHT = 0.20f;
+    static final float FAMILY_WEIGHT = 0.10f;
+    static final float RELIGION_WEIGHT = 0.05f;
+    static final float DISTANCE_WEIGHT = 0.15f;
+
+    private static final float KM_PER_DEGREE = 111.195f;
+
+    private CompatibilityScorer() {
+    }
+
+    /**
+     * Score {@code candidates[from, to)} for one seeker into {@code out[from, to)}, writing
+     * {@link #FILTERED} for candidates that fail a hard filter. Returns the number that passed.
+     */
+    public static int scoreBatch(MatchPoolSnapshot s, int seeker, int[] candidates, int from, int to, float[] out) {
+        int passed = 0;
+        for (int k = from; k < to; k++) {
+            int candidate = candidates[k];
+            if (passesHardFilters(s, seeker, candidate)) {
+                out[k] = score(s, seeker, candidate);
+                passed++;
+            } else {
+                out[k] = FILTERED;
+            }
+        }
+        return passed;
+    }
+
+    public static boolean passesHardFilters(MatchPoolSnapshot s, int seeker, int candidate) {
+        long seekerTraits = s.traits[seeker];
+        long candidateTraits = s.traits[candidate];
+        long required = s.requiredTraits[seeker];
+        int height = s.heightCm[candidate];
+        int maxHeight = s.maxHeightCm[seeker] > 0 ? s.maxHeightCm[seeker] : Short.MAX_VALUE;
+
+        // Non-short-circuit operators keep the filter branch-free
+        return candidate != seeker
+                & (candidateTraits & s.wantedGenderMask[seeker]) != 0
+                & (candidateTraits & s.excludedTraits[seeker]) == 0
+                & (candidateTraits & required) == required
+                & (seekerTraits & s.wantedGenderMask[candidate]) != 0
+                & (seekerTraits & s.excludedTraits[candidate]) == 0
+                & (height == 0 | (height >= s.minHeightCm[seeker] & height <= maxHeight));
+    }
+
+    public static float score(MatchPoolSnapshot s, int seeker, int candidate) {
+        return AGE_WEIGHT * ageFit(s, seeker, candidate)
+                + INTENTION_WEIGHT * intentionFit(s.intentionPreference[seeker], s.intention[candidate])
+                + INTERESTS_WEIGHT * interestOverlap(s.interestMask[seeker], s.interestMask[candidate])
+                + FAMILY_WEIGHT * familyFit(s.wantsChildren[seeker], s.familyPlans[candidate])
+                + RELIGION_WEIGHT * religionFit(s.religionImportance[seeker], s.religion[seeker], s.religion[candidate])
+                + DISTANCE_WEIGHT * distanceFit(s, seeker, candidate);
+    }
+
+    /**
+     * 1 at the centre of the seeker's age range, falling to 0 at its edges or outside it
+     */
+    static float ageFit(MatchPoolSnapshot s, int seeker, int candidate) {
+        int dob = s.dobEpochDay[candidate];
+        if (!s.hasAgeRange[seeker] || dob == MatchPoolSnapshot.UNKNOWN_DOB) {
+            return 0.5f;
+        }
+        float half = (s.maxDob[seeker] - (float) s.minDob[seeker]) / 2f;
+        if (half <= 0f) {
+            return dob >= s.minDob[seeker] && dob <= s.maxDob[seeker] ? 1f : 0f;
+        }
+        float centre = s.minDob[seeker] + half;
+        return Math.max(0f, 1f - Math.abs(dob - centre) / half);
+    }
+
+    /**
+     * 1 at the seeker's location, falling to 0 at their maxDistance. Uses the equirectangular
+     * approximation, which is well within scoring accuracy at dating distances.
+     */
+    static float distanceFit(MatchPoolSnapshot s, int seeker, int candidate) {
+        int maxKm = s.maxDistanceKm[seeker];
+        float seekerLat = s.latitude[seeker];
+        float candidateLat = s.latitude[candidate];
+        if (maxKm == 0 || Float.isNaN(seekerLat) || Float.isNaN(candidateLat)) {
+            return 0.5f;
+        }
+        float dLng = Math.abs(s.longitude[candidate] - s.longitude[seeker]);
+        if (dLng > 180f) dLng = 360f - dLng;
+        dLng *= s.cosLatitude[seeker];
+        float dLat = candidateLat - seekerLat;
+        float km = KM_PER_DEGREE * (float) Math.sqrt(dLat * dLat + dLng * dLng);
+        return Math.max(0f, 1f - km / maxKm);
+    }
+
+    static float intentionFit(byte wanted, byte actual) {
+        if (wanted == 0 || actual == 0) return 0.5f;
+        if (wanted == actual) return 1f;
+        return wanted == 3 || actual == 3 ? 0.6f : 0f;
+    }
+
+    static float interestOverlap(long a, long b) {
+        int union = Long.bitCount(a | b);
+        return union == 0 ? 0f : Long.bitCount(a & b) / (float) union;
+    }
+
+    static float familyFit(byte wantsChildren, byte familyPlans) {
+        if (wantsChildren == 0 || familyPlans == 0) return 0.5f;
+        return wantsChildren == familyPlans ? 1f : 0f;
+    }
+
+    static float religionFit(byte importance, int seekerReligion, int candidateReligion) {
+        if (importance <= 1) return 1f;
+        if (seekerReligion == 0 || candidateReligion == 0) return 0.5f;
+        if (seekerReligion == candidateReligion) return 1f;
+        return importance == 3 ? 0f : 0.5f;
+    }
+}
@@ -0,0 +1,408 @@
+package com.tpg.connect.services.matchpool;
+
+import com.tpg.connect.repository.index.CandidateIndex;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes one day's match pools for every user in a snapshot.
+ *
+ * Candidate generation forks one task per (gender, interestedIn) partition and splits each
+ * partition's seekers into ranges. A seeker only visits partitions whose members it wants and
+ * who want it back, and only the birth-date slice inside its age range; large slices are
+ * sampled down to {@code maxScanned} so cost per seeker is bounded regardless of user count.
+ * Gathered candidates are hard-filtered and scored in one CompatibilityScorer batch.
+ *
+ * A stable-matching pass then orders each pool. Every user proposes down their own pool in score
+ * order and holds at most {@code capacity} accepted proposals; every user receiving proposals keeps
+ * the {@code capacity} proposers they score highest and rejects the rest, a rejected proposer
+ * moving on to their next pick (deferred acceptance, many-to-many). A popular user can therefore
+ * only lead a few pools, and the users they turn down get their next best match first instead.
+ * Accepted picks lead each pool in score order, the rest follow, and the position in the ordered
+ * pool is the stabilityRank.
+ */
+public class MatchPoolEngine {
+
+    private static final int SPLIT_THRESHOLD = 512;
+
+    private final int poolSize;
+    private final int maxScanned;
+    private final int capacity;
+
+    public MatchPoolEngine(int poolSize, int maxScanned, int capacity) {
+        if (poolSize <= 0 || maxScanned < poolSize) {
+            throw new IllegalArgumentException("poolSize must be positive and maxScanned at least poolSize");
+        }
+        if (capacity <= 0 || capacity > poolSize) {
+            throw new IllegalArgumentException("capacity must be between 1 and poolSize");
+        }
+        this.poolSize = poolSize;
+        this.maxScanned = maxScanned;
+        this.capacity = capacity;
+    }
+
+    public MatchPoolResult generate(MatchPoolSnapshot snapshot, long seed, ForkJoinPool forkJoinPool) {
+        int[][] picks = new int[snapshot.size][];
+        float[][] scores = new float[snapshot.size][];
+
+        forkJoinPool.invoke(new AllPartitionsTask(snapshot, seed, picks, scores));
+        int stablePairs = orderByStableMatching(snapshot, picks, scores);
+
+        return new MatchPoolResult(snapshot, picks, scores, stablePairs);
+    }
+
+    private class AllPartitionsTask extends RecursiveAction {
+        private final MatchPoolSnapshot snapshot;
+        private final long seed;
+        private final int[][] picks;
+        private final float[][] scores;
+
+        AllPartitionsTask(MatchPoolSnapshot snapshot, long seed, int[][] picks, float[][] scores) {
+            this.snapshot = snapshot;
+            this.seed = seed;
+            this.picks = picks;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            RecursiveAction[] partitions = new RecursiveAction[MatchPoolSnapshot.PARTITION_COUNT];
+            for (int p = 0; p < partitions.length; p++) {
+                partitions[p] = new SeekerRangeTask(snapshot, seed, snapshot.partitionMembers[p],
+                        0, snapshot.partitionMembers[p].length, picks, scores);
+            }
+            invokeAll(partitions);
+        }
+    }
+
+    private class SeekerRangeTask extends RecursiveAction {
+        private final MatchPoolSnapshot snapshot;
+        private final long seed;
+        private final int[] seekers;
+        private final int from;
+        private final int to;
+        private final int[][] picks;
+        private final float[][] scores;
+
+        SeekerRangeTask(MatchPoolSnapshot snapshot, long seed, int[] seekers, int from, int to,
+                        int[][] picks, float[][] scores) {
+            this.snapshot = snapshot;
+            this.seed = seed;
+            this.seekers = seekers;
+            this.from = from;
+            this.to = to;
+            this.picks = picks;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SeekerRangeTask(snapshot, seed, seekers, from, mid, picks, scores),
+                        new SeekerRangeTask(snapshot, seed, seekers, mid, to, picks, scores));
+                return;
+            }
+
+            // Per-task scratch space, reused for every seeker in the range
+            TopK top = new TopK(poolSize);
+            int[] sliceLo = new int[MatchPoolSnapshot.PARTITION_COUNT];
+            int[] sliceHi = new int[MatchPoolSnapshot.PARTITION_COUNT];
+            int[] batch = new int[maxScanned + MatchPoolSnapshot.PARTITION_COUNT];
+            float[] batchScores = new float[batch.length];
+            for (int k = from; k < to; k++) {
+                int seeker = seekers[k];
+                top.reset();
+                int gathered = gatherCandidates(snapshot, seeker, seed, sliceLo, sliceHi, batch);
+                CompatibilityScorer.scoreBatch(snapshot, seeker, batch, 0, gathered, batchScores);
+                for (int c = 0; c < gathered; c++) {
+                    float score = batchScores[c];
+                    if (score != CompatibilityScorer.FILTERED && top.accepts(score) && !top.contains(batch[c])) {
+                        top.offer(batch[c], score);
+                    }
+                }
+                top.drainDescending(seeker, picks, scores);
+            }
+        }
+    }
+
+    /**
+     * Collect the seeker's candidate indices into {@code batch}, returning how many were written
+     */
+    private int gatherCandidates(MatchPoolSnapshot s, int seeker, long seed, int[] sliceLo, int[] sliceHi, int[] batch) {
+        CandidateIndex.Gender seekerGender = MatchPoolSnapshot.genderOf(s.partition[seeker]);
+        long reachable = 0;
+
+        for (int p = 0; p < MatchPoolSnapshot.PARTITION_COUNT; p++) {
+            sliceLo[p] = sliceHi[p] = 0;
+            if ((s.wantedGenderMask[seeker] & (1 << MatchPoolSnapshot.genderOf(p).ordinal())) == 0
+                    || !CandidateIndex.accepts(MatchPoolSnapshot.interestedInOf(p), seekerGender)) {
+                continue;
+            }
+            int[] dobs = s.partitionDobs[p];
+            sliceLo[p] = lowerBound(dobs, s.minDob[seeker]);
+            sliceHi[p] = upperBound(dobs, s.maxDob[seeker]);
+            reachable += sliceHi[p] - sliceLo[p];
+        }
+
+        int gathered = 0;
+        for (int p = 0; p < MatchPoolSnapshot.PARTITION_COUNT; p++) {
+            int n = sliceHi[p] - sliceLo[p];
+            if (n <= 0) {
+                continue;
+            }
+            int[] members = s.partitionMembers[p];
+
+            if (reachable <= maxScanned) {
+                System.arraycopy(members, sliceLo[p], batch, gathered, n);
+                gathered += n;
+            } else {
+                // Sample this slice in proportion to its share of everything reachable
+                int samples = (int) Math.max(1, (long) maxScanned * n / reachable);
+                long state = seed ^ (seeker * 0x9E3779B97F4A7C15L) ^ ((long) p << 56);
+                for (int k = 0; k < samples; k++) {
+                    state += 0x9E3779B97F4A7C15L;
+                    int offset = (int) Long.remainderUnsigned(mix(state), n);
+                    batch[gathered++] = members[sliceLo[p] + offset];
+                }
+            }
+        }
+        return gathered;
+    }
+
+    /**
+     * Reorder every pool so picks accepted by deferred acceptance come first, returning how many were accepted
+     */
+    int orderByStableMatching(MatchPoolSnapshot s, int[][] picks, float[][] scores) {
+        int users = picks.length;
+        int[] next = new int[users];
+        int[] accepted = new int[users];
+        // Proposals each user currently holds as a receiver: proposer, the proposer's pool slot, and how much the receiver wants them
+        int[][] heldProposer = new int[users][];
+        int[][] heldSlot = new int[users][];
+        float[][] heldWeight = new float[users][];
+        int[] held = new int[users];
+
+        ArrayDeque<Integer> free = new ArrayDeque<>();
+        for (int a = 0; a < users; a++) {
+            if (picks[a].length > 0) {
+                free.add(a);
+            }
+        }
+
+        while (!free.isEmpty()) {
+            int a = free.poll();
+            while (accepted[a] < capacity && next[a] < picks[a].length) {
+                int j = next[a]++;
+                int b = picks[a][j];
+                float weight = receiverWeight(s, picks, scores, b, a);
+                if (weight < 0f) {
+                    continue;
+                }
+
+                if (heldProposer[b] == null) {
+                    heldProposer[b] = new int[capacity];
+                    heldSlot[b] = new int[capacity];
+                    heldWeight[b] = new float[capacity];
+                }
+                if (held[b] < capacity) {
+                    heldProposer[b][held[b]] = a;
+                    heldSlot[b][held[b]] = j;
+                    heldWeight[b][held[b]] = weight;
+                    held[b]++;
+                    accepted[a]++;
+                    continue;
+                }
+
+                int weakest = weakestHeld(heldProposer[b], heldWeight[b], held[b]);
+                if (prefers(weight, a, heldWeight[b][weakest], heldProposer[b][weakest])) {
+                    int rejected = heldProposer[b][weakest];
+                    heldProposer[b][weakest] = a;
+                    heldSlot[b][weakest] = j;
+                    heldWeight[b][weakest] = weight;
+                    accepted[a]++;
+                    accepted[rejected]--;
+                    free.add(rejected);
+                }
+            }
+        }
+
+        boolean[][] stable = new boolean[users][];
+        for (int a = 0; a < users; a++) {
+            stable[a] = new boolean[picks[a].length];
+        }
+        int stablePairs = 0;
+        for (int b = 0; b < users; b++) {
+            for (int k = 0; k < held[b]; k++) {
+                stable[heldProposer[b][k]][heldSlot[b][k]] = true;
+                stablePairs++;
+            }
+        }
+
+        for (int a = 0; a < users; a++) {
+            stablePartition(picks[a], scores[a], stable[a]);
+        }
+        return stablePairs;
+    }
+
+    /**
+     * How much {@code receiver} wants {@code proposer}: their own score if the proposer is in their
+     * pool, otherwise scored on the spot; negative if the receiver's hard filters rule the proposer out
+     */
+    private static float receiverWeight(MatchPoolSnapshot s, int[][] picks, float[][] scores, int receiver, int proposer) {
+        int reverse = indexOf(picks[receiver], proposer);
+        if (reverse >= 0) {
+            return scores[receiver][reverse];
+        }
+        return CompatibilityScorer.passesHardFilters(s, receiver, proposer) ? CompatibilityScorer.score(s, receiver, proposer) : -1f;
+    }
+
+    private static int weakestHeld(int[] proposers, float[] weights, int count) {
+        int weakest = 0;
+        for (int k = 1; k < count; k++) {
+            if (prefers(weights[weakest], proposers[weakest], weights[k], proposers[k])) {
+                weakest = k;
+            }
+        }
+        return weakest;
+    }
+
+    // Ties go to the lower index so the outcome never depends on proposal order
+    private static boolean prefers(float weight, int proposer, float otherWeight, int otherProposer) {
+        return weight > otherWeight || (weight == otherWeight && proposer < otherProposer);
+    }
+
+    private static void stablePartition(int[] pool, float[] poolScores, boolean[] stable) {
+        int[] orderedPool = new int[pool.length];
+        float[] orderedScores = new float[pool.length];
+        int next = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int j = 0; j < pool.length; j++) {
+                if (stable[j] == (pass == 0)) {
+                    orderedPool[next] = pool[j];
+                    orderedScores[next] = poolScores[j];
+                    next++;
+                }
+            }
+        }
+        System.arraycopy(orderedPool, 0, pool, 0, pool.length);
+        System.arraycopy(orderedScores, 0, poolScores, 0, poolScores.length);
+    }
+
+    private static int indexOf(int[] pool, int value) {
+        for (int j = 0; j < pool.length; j++) {
+            if (pool[j] == value) return j;
+        }
+        return -1;
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int upperBound(int[] sorted, int value) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= value) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Fixed-size min-heap keeping the highest scoring candidates for one seeker
+     */
+    private static final class TopK {
+        private final int[] indices;
+        private final float[] scores;
+        private int size;
+
+        TopK(int capacity) {
+            indices = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        boolean accepts(float score) {
+            return size < indices.length || score > scores[0];
+        }
+
+        boolean contains(int index) {
+            for (int k = 0; k < size; k++) {
+                if (indices[k] == index) return true;
+            }
+            return false;
+        }
+
+        void offer(int index, float score) {
+            if (size < indices.length) {
+                indices[size] = index;
+                scores[size] = score;
+                siftUp(size++);
+            } else {
+                indices[0] = index;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        void drainDescending(int seeker, int[][] picks, float[][] poolScores) {
+            // Heap sort in place: repeatedly move the minimum to the end
+            int count = size;
+            for (int end = count - 1; end > 0; end--) {
+                swap(0, end);
+                size = end;
+                siftDown(0);
+            }
+            picks[seeker] = Arrays.copyOf(indices, count);
+            poolScores[seeker] = Arrays.copyOf(scores, count);
+            size = 0;
+        }
+
+        private void siftUp(int k) {
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (scores[k] >= scores[parent]) break;
+                swap(k, parent);
+                k = parent;
+            }
+        }
+
+        private void siftDown(int k) {
+            while (true) {
+                int left = 2 * k + 1;
+                if (left >= size) break;
+                int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+                if (scores[k] <= scores[smallest]) break;
+                swap(k, smallest);
+                k = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int index = indices[a];
+            indices[a] = indices[b];
+            indices[b] = index;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
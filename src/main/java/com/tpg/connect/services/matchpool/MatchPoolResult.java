@@ -0,0 +1,48 @@
+package com.tpg.connect.services.matchpool;
+
+/**
+ * Ordered daily pools produced by MatchPoolEngine. A match's stabilityRank is its 1-based
+ * position in the owner's pool.
+ */
+public final class MatchPoolResult {
+
+    private final MatchPoolSnapshot snapshot;
+    private final int[][] picks;
+    private final float[][] scores;
+    private final int stablePairs;
+
+    MatchPoolResult(MatchPoolSnapshot snapshot, int[][] picks, float[][] scores, int stablePairs) {
+        this.snapshot = snapshot;
+        this.picks = picks;
+        this.scores = scores;
+        this.stablePairs = stablePairs;
+    }
+
+    public int userCount() {
+        return picks.length;
+    }
+
+    public String connectId(int user) {
+        return snapshot.connectIds[user];
+    }
+
+    public int poolSize(int user) {
+        return picks[user].length;
+    }
+
+    public String matchConnectId(int user, int position) {
+        return snapshot.connectIds[picks[user][position]];
+    }
+
+    public double compatibilityScore(int user, int position) {
+        return scores[user][position];
+    }
+
+    public int stabilityRank(int user, int position) {
+        return position + 1;
+    }
+
+    public int stablePairs() {
+        return stablePairs;
+    }
+}
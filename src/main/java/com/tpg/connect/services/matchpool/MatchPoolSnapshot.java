@@ -0,0 +1,362 @@
+package com.tpg.connect.services.matchpool;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.DetailedProfile;
+import com.tpg.connect.model.user.UserPreferences;
+import com.tpg.connect.repository.index.CandidateIndex;
+import com.tpg.connect.util.GeoHash;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Compact, column-oriented view of every eligible profile for one match-pool run.
+ *
+ * Profiles are reduced to small integer codes as they are loaded so the full user base fits in
+ * memory on one pod. Users are grouped into partitions keyed by (gender, interestedIn); each
+ * partition is sorted by date of birth so an age range maps to a contiguous slice.
+ */
+public final class MatchPoolSnapshot {
+
+    static final int UNKNOWN_DOB = Integer.MIN_VALUE;
+    static final int GENDER_COUNT = CandidateIndex.Gender.values().length;
+    static final int INTEREST_COUNT = CandidateIndex.InterestedIn.values().length;
+    static final int PARTITION_COUNT = GENDER_COUNT * INTEREST_COUNT;
+
+    private static final int MAX_SUPPORTED_AGE = 120;
+
+    final int size;
+    final String[] connectIds;
+    final int[] dobEpochDay;
+    final byte[] partition;
+    final int[] wantedGenderMask;
+    final boolean[] hasAgeRange;
+    final int[] minDob;
+    final int[] maxDob;
+    final byte[] intentionPreference;
+    final byte[] intention;
+    final byte[] religionImportance;
+    final int[] religion;
+    final byte[] wantsChildren;
+    final byte[] familyPlans;
+    final long[] interestMask;
+    final long[] traits;
+    final long[] excludedTraits;
+    final long[] requiredTraits;
+    final short[] heightCm;
+    final short[] minHeightCm;
+    final short[] maxHeightCm;
+    // degrees, NaN when the profile has no coordinates
+    final float[] latitude;
+    final float[] longitude;
+    final float[] cosLatitude;
+    final short[] maxDistanceKm;
+
+    // partition -> member indices sorted by dob, with the matching dob values for binary search
+    final int[][] partitionMembers;
+    final int[][] partitionDobs;
+
+    private MatchPoolSnapshot(List<Features> features) {
+        size = features.size();
+        connectIds = new String[size];
+        dobEpochDay = new int[size];
+        partition = new byte[size];
+        wantedGenderMask = new int[size];
+        hasAgeRange = new boolean[size];
+        minDob = new int[size];
+        maxDob = new int[size];
+        intentionPreference = new byte[size];
+        intention = new byte[size];
+        religionImportance = new byte[size];
+        religion = new int[size];
+        wantsChildren = new byte[size];
+        familyPlans = new byte[size];
+        interestMask = new long[size];
+        traits = new long[size];
+        excludedTraits = new long[size];
+        requiredTraits = new long[size];
+        heightCm = new short[size];
+        minHeightCm = new short[size];
+        maxHeightCm = new short[size];
+        latitude = new float[size];
+        longitude = new float[size];
+        cosLatitude = new float[size];
+        maxDistanceKm = new short[size];
+
+        int[] partitionSizes = new int[PARTITION_COUNT];
+        for (int i = 0; i < size; i++) {
+            Features f = features.get(i);
+            connectIds[i] = f.connectId;
+            dobEpochDay[i] = f.dobEpochDay;
+            partition[i] = (byte) f.partition;
+            wantedGenderMask[i] = f.wantedGenderMask;
+            hasAgeRange[i] = f.hasAgeRange;
+            minDob[i] = f.minDob;
+            maxDob[i] = f.maxDob;
+            intentionPreference[i] = f.intentionPreference;
+            intention[i] = f.intention;
+            religionImportance[i] = f.religionImportance;
+            religion[i] = f.religion;
+            wantsChildren[i] = f.wantsChildren;
+            familyPlans[i] = f.familyPlans;
+            interestMask[i] = f.interestMask;
+            traits[i] = f.traits;
+            excludedTraits[i] = f.excludedTraits;
+            requiredTraits[i] = f.requiredTraits;
+            heightCm[i] = f.heightCm;
+            minHeightCm[i] = f.minHeightCm;
+            maxHeightCm[i] = f.maxHeightCm;
+            latitude[i] = f.latitude;
+            longitude[i] = f.longitude;
+            cosLatitude[i] = (float) Math.cos(Math.toRadians(f.latitude));
+            maxDistanceKm[i] = f.maxDistanceKm;
+            partitionSizes[f.partition]++;
+        }
+
+        partitionMembers = new int[PARTITION_COUNT][];
+        partitionDobs = new int[PARTITION_COUNT][];
+        int[] fill = new int[PARTITION_COUNT];
+        for (int p = 0; p < PARTITION_COUNT; p++) {
+            partitionMembers[p] = new int[partitionSizes[p]];
+        }
+        for (int i = 0; i < size; i++) {
+            partitionMembers[partition[i]][fill[partition[i]]++] = i;
+        }
+        for (int p = 0; p < PARTITION_COUNT; p++) {
+            // Sort members by (dob, index) via packed longs to avoid boxing
+            int[] members = partitionMembers[p];
+            long[] packed = new long[members.length];
+            for (int k = 0; k < members.length; k++) {
+                packed[k] = ((long) dobEpochDay[members[k]] << 32) | members[k];
+            }
+            Arrays.sort(packed);
+            int[] dobs = new int[members.length];
+            for (int k = 0; k < members.length; k++) {
+                members[k] = (int) packed[k];
+                dobs[k] = (int) (packed[k] >> 32);
+            }
+            partitionDobs[p] = dobs;
+        }
+    }
+
+    public static Builder builder(LocalDate runDate) {
+        return new Builder(runDate);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String connectId(int index) {
+        return connectIds[index];
+    }
+
+    static int partitionOf(CandidateIndex.Gender gender, CandidateIndex.InterestedIn interestedIn) {
+        return gender.ordinal() * INTEREST_COUNT + interestedIn.ordinal();
+    }
+
+    static CandidateIndex.Gender genderOf(int partition) {
+        return CandidateIndex.Gender.values()[partition / INTEREST_COUNT];
+    }
+
+    static CandidateIndex.InterestedIn interestedInOf(int partition) {
+        return CandidateIndex.InterestedIn.values()[partition % INTEREST_COUNT];
+    }
+
+    /**
+     * Accumulates profiles one at a time so callers can stream pages without holding them
+     */
+    public static final class Builder {
+
+        private final LocalDate runDate;
+        private final List<Features> features = new ArrayList<>();
+        private final Set<String> seen = new HashSet<>();
+
+        private Builder(LocalDate runDate) {
+            this.runDate = runDate;
+        }
+
+        /**
+         * Add a profile, returning its index in the snapshot or -1 if it was skipped as a duplicate
+         */
+        public int add(CompleteUserProfile profile) {
+            if (profile == null || profile.getConnectId() == null || !seen.add(profile.getConnectId())) {
+                return -1;
+            }
+            features.add(new Features(profile, runDate));
+            return features.size() - 1;
+        }
+
+        public int size() {
+            return features.size();
+        }
+
+        public MatchPoolSnapshot build() {
+            return new MatchPoolSnapshot(features);
+        }
+    }
+
+    private static final class Features {
+        private final String connectId;
+        private final int dobEpochDay;
+        private final int partition;
+        private final int wantedGenderMask;
+        private final boolean hasAgeRange;
+        private final int minDob;
+        private final int maxDob;
+        private final byte intentionPreference;
+        private final byte intention;
+        private final byte religionImportance;
+        private final int religion;
+        private final byte wantsChildren;
+        private final byte familyPlans;
+        private final long interestMask;
+        private final long traits;
+        private final long excludedTraits;
+        private final long requiredTraits;
+        private final short heightCm;
+        private final short minHeightCm;
+        private final short maxHeightCm;
+        private final float latitude;
+        private final float longitude;
+        private final short maxDistanceKm;
+
+        private Features(CompleteUserProfile profile, LocalDate runDate) {
+            connectId = profile.getConnectId();
+            dobEpochDay = profile.getDateOfBirth() != null ? (int) profile.getDateOfBirth().toEpochDay() : UNKNOWN_DOB;
+
+            CandidateIndex.Gender gender = CandidateIndex.normalizeGender(profile.getGender());
+            partition = partitionOf(gender, CandidateIndex.normalizeInterestedIn(profile.getInterestedIn()));
+            int mask = 0;
+            for (CandidateIndex.Gender wanted : CandidateIndex.wantedGenders(profile)) {
+                mask |= 1 << wanted.ordinal();
+            }
+            wantedGenderMask = mask;
+
+            UserPreferences preferences = profile.getPreferences();
+            DetailedProfile detailed = profile.getProfile();
+
+            hasAgeRange = preferences != null && preferences.getAgeRange() != null;
+            if (hasAgeRange) {
+                int minAge = Math.max(0, preferences.getAgeRange().getMin());
+                int maxAge = preferences.getAgeRange().getMax() > 0 ? preferences.getAgeRange().getMax() : MAX_SUPPORTED_AGE;
+                minDob = (int) runDate.minusYears(maxAge + 1L).plusDays(1).toEpochDay();
+                maxDob = (int) runDate.minusYears(minAge).toEpochDay();
+            } else {
+                minDob = UNKNOWN_DOB;
+                maxDob = Integer.MAX_VALUE;
+            }
+
+            intentionPreference = intentionCode(preferences != null ? preferences.getDatingIntention() : null);
+            intention = intentionCode(detailed != null ? detailed.getDatingIntentions() : null);
+            religionImportance = importanceCode(preferences != null ? preferences.getReligionImportance() : null);
+            religion = textCode(detailed != null ? detailed.getReligiousBeliefs() : null);
+            // wantsChildren is a primitive that defaults to false, so only true is a real answer
+            wantsChildren = preferences != null && preferences.isWantsChildren() ? (byte) 1 : 0;
+            familyPlans = familyPlansCode(detailed != null ? detailed.getFamilyPlans() : null);
+            interestMask = interestMask(profile.getInterests());
+
+            traits = Traits.of(gender.ordinal(), preferences, detailed, intention);
+            excludedTraits = Traits.excluded(preferences);
+            requiredTraits = Traits.required(preferences);
+            heightCm = heightCm(detailed != null ? detailed.getHeight() : null);
+            UserPreferences.HeightRange heightRange = preferences != null ? preferences.getHeightRange() : null;
+            minHeightCm = heightRange != null ? rangeCm(heightRange.getMin()) : 0;
+            maxHeightCm = heightRange != null ? rangeCm(heightRange.getMax()) : 0;
+
+            boolean located = GeoHash.isValid(profile.getLatitude(), profile.getLongitude());
+            latitude = located ? profile.getLatitude().floatValue() : Float.NaN;
+            longitude = located ? profile.getLongitude().floatValue() : Float.NaN;
+            Integer maxDistance = preferences != null ? preferences.getMaxDistance() : null;
+            maxDistanceKm = maxDistance != null && maxDistance > 0 ? (short) Math.min(maxDistance, Short.MAX_VALUE) : 0;
+        }
+    }
+
+    // 0 = unknown, 1 = serious, 2 = casual, 3 = open
+    static byte intentionCode(String value) {
+        if (value == null) return 0;
+        String normalized = value.toLowerCase().trim();
+        if (normalized.contains("serious") || normalized.contains("marriage") || normalized.contains("long")) return 1;
+        if (normalized.contains("casual") || normalized.contains("short")) return 2;
+        if (normalized.contains("open") || normalized.contains("figuring")) return 3;
+        return 0;
+    }
+
+    // 0 = no preference/unknown, 1 = never, 2 = sometimes, 3 = regularly
+    static byte frequencyCode(String value) {
+        if (value == null) return 0;
+        switch (value.toLowerCase().trim()) {
+            case "never": return 1;
+            case "sometimes": return 2;
+            case "regularly": return 3;
+            default: return 0;
+        }
+    }
+
+    // 0 = unknown, 1 = low, 2 = medium, 3 = high
+    static byte importanceCode(String value) {
+        if (value == null) return 0;
+        switch (value.toLowerCase().trim()) {
+            case "low": return 1;
+            case "medium": return 2;
+            case "high": return 3;
+            default: return 0;
+        }
+    }
+
+    // 0 = unknown, 1 = wants children, 2 = does not
+    static byte familyPlansCode(String value) {
+        if (value == null) return 0;
+        String normalized = value.toLowerCase().trim();
+        if (normalized.startsWith("don") || normalized.startsWith("no")) return 2;
+        if (normalized.startsWith("want")) return 1;
+        return 0;
+    }
+
+    /**
+     * Parse heights like 5'8", 173 cm, 173 or 1.73 m; 0 when unknown
+     */
+    static short heightCm(String value) {
+        if (value == null || value.isBlank()) return 0;
+        String normalized = value.toLowerCase().trim();
+        try {
+            int feetMark = normalized.indexOf('\'');
+            if (feetMark > 0) {
+                int feet = Integer.parseInt(normalized.substring(0, feetMark).trim());
+                String rest = normalized.substring(feetMark + 1).replace("\"", "").trim();
+                int inches = rest.isEmpty() ? 0 : Integer.parseInt(rest);
+                return (short) Math.round((feet * 12 + inches) * 2.54);
+            }
+            double number = Double.parseDouble(normalized.replaceAll("[^0-9.]", ""));
+            if (number < 3) return (short) Math.round(number * 100); // metres
+            if (number <= 96) return (short) Math.round(number * 2.54); // inches
+            return (short) Math.round(number);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Height range bounds are stored as plain ints; small values are inches
+    private static short rangeCm(int value) {
+        if (value <= 0) return 0;
+        return (short) (value <= 96 ? Math.round(value * 2.54) : value);
+    }
+
+    private static int textCode(String value) {
+        if (value == null || value.isBlank()) return 0;
+        int hash = value.toLowerCase().trim().hashCode();
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long interestMask(List<String> interests) {
+        long mask = 0L;
+        if (interests != null) {
+            for (String interest : interests) {
+                if (interest != null && !interest.isBlank()) {
+                    mask |= 1L << (interest.toLowerCase().trim().hashCode() & 63);
+                }
+            }
+        }
+        return mask;
+    }
+}
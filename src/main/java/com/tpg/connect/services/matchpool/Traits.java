@@ -0,0 +1,135 @@
+package com.tpg.connect.services.matchpool;
+
+import com.tpg.connect.model.user.DetailedProfile;
+import com.tpg.connect.model.user.UserPreferences;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bit layout for the per-user trait masks used as hard filters.
+ *
+ * A candidate passes a seeker's filters when {@code (traits & excluded) == 0} and
+ * {@code (traits & required) == required}. The low bits hold the gender ordinal so the same
+ * mask also answers gender preference checks.
+ */
+final class Traits {
+
+    static final long INTENT_SERIOUS = 1L << 8;
+    static final long INTENT_CASUAL = 1L << 9;
+    static final long INTENT_OPEN = 1L << 10;
+    static final long SMOKER = 1L << 16;
+    static final long DRINKER = 1L << 17;
+    static final long DRUGS = 1L << 18;
+    static final long WANTS_KIDS = 1L << 20;
+    static final long NO_KIDS_WANTED = 1L << 21;
+    static final long HAS_KIDS = 1L << 22;
+    static final long RELIGIOUS = 1L << 24;
+    static final long PETS = 1L << 25;
+
+    // dealBreakers/mustHaves tokens that name a trait. The lists also carry the legacy
+    // datingIntention/drinking/smoking values, which are deliberately absent here. A bare "kids"
+    // could mean having them or wanting them, so only the explicit forms count.
+    private static final Map<String, Long> VOCABULARY = Map.ofEntries(
+            Map.entry("smoker", SMOKER),
+            Map.entry("smoking", SMOKER),
+            Map.entry("smokes", SMOKER),
+            Map.entry("drinker", DRINKER),
+            Map.entry("drinking", DRINKER),
+            Map.entry("drinks", DRINKER),
+            Map.entry("drugs", DRUGS),
+            Map.entry("has kids", HAS_KIDS),
+            Map.entry("have kids", HAS_KIDS),
+            Map.entry("has children", HAS_KIDS),
+            Map.entry("have children", HAS_KIDS),
+            Map.entry("wants kids", WANTS_KIDS),
+            Map.entry("want kids", WANTS_KIDS),
+            Map.entry("wants children", WANTS_KIDS),
+            Map.entry("want children", WANTS_KIDS),
+            Map.entry("doesn't want kids", NO_KIDS_WANTED),
+            Map.entry("don't want kids", NO_KIDS_WANTED),
+            Map.entry("religious", RELIGIOUS),
+            Map.entry("pets", PETS),
+            Map.entry("has pets", PETS));
+
+    private Traits() {
+    }
+
+    static long genderBit(int genderOrdinal) {
+        return 1L << genderOrdinal;
+    }
+
+    /**
+     * The profile's own traits. Smoking, drinking and drug use come from the profile's answers to
+     * how often they do each (stored, for historical reasons, in its preferences): smoking or drug
+     * use at all, or drinking regularly, sets the bit; "never" and unanswered leave it clear.
+     */
+    static long of(int genderOrdinal, UserPreferences habits, DetailedProfile detailed, byte intention) {
+        long traits = genderBit(genderOrdinal);
+        if (intention == 1) traits |= INTENT_SERIOUS;
+        if (intention == 2) traits |= INTENT_CASUAL;
+        if (intention == 3) traits |= INTENT_OPEN;
+
+        if (habits != null) {
+            if (MatchPoolSnapshot.frequencyCode(habits.getSmokingPreference()) >= 2) traits |= SMOKER;
+            if (MatchPoolSnapshot.frequencyCode(habits.getDrinkingPreference()) == 3) traits |= DRINKER;
+            if (MatchPoolSnapshot.frequencyCode(habits.getDrugPreference()) >= 2) traits |= DRUGS;
+        }
+
+        if (detailed != null) {
+            byte plans = MatchPoolSnapshot.familyPlansCode(detailed.getFamilyPlans());
+            if (plans == 1) traits |= WANTS_KIDS;
+            if (plans == 2) traits |= NO_KIDS_WANTED;
+            if (hasKids(detailed.getChildren())) traits |= HAS_KIDS;
+            if (isAffirmative(detailed.getReligiousBeliefs(), "none", "atheist", "agnostic", "not religious")) traits |= RELIGIOUS;
+            if (isAffirmative(detailed.getPets(), "none", "no pets")) traits |= PETS;
+        }
+        return traits;
+    }
+
+    static long excluded(UserPreferences preferences) {
+        if (preferences == null) return 0L;
+        long excluded = 0L;
+        // Someone who never smokes, drinks or uses drugs is not shown people who do
+        if (MatchPoolSnapshot.frequencyCode(preferences.getSmokingPreference()) == 1) excluded |= SMOKER;
+        if (MatchPoolSnapshot.frequencyCode(preferences.getDrinkingPreference()) == 1) excluded |= DRINKER;
+        if (MatchPoolSnapshot.frequencyCode(preferences.getDrugPreference()) == 1) excluded |= DRUGS;
+        byte intention = MatchPoolSnapshot.intentionCode(preferences.getDatingIntention());
+        if (intention == 1) excluded |= INTENT_CASUAL;
+        if (intention == 2) excluded |= INTENT_SERIOUS;
+        if (preferences.isWantsChildren()) excluded |= NO_KIDS_WANTED;
+        return excluded | fromVocabulary(preferences.getDealBreakers());
+    }
+
+    static long required(UserPreferences preferences) {
+        return preferences == null ? 0L : fromVocabulary(preferences.getMustHaves());
+    }
+
+    private static long fromVocabulary(List<String> tokens) {
+        long mask = 0L;
+        if (tokens != null) {
+            for (String token : tokens) {
+                if (token != null) {
+                    mask |= VOCABULARY.getOrDefault(token.toLowerCase().trim(), 0L);
+                }
+            }
+        }
+        return mask;
+    }
+
+    // "Have kids", "Has kids", "Have children"; not "No kids" or "Don't have kids"
+    static boolean hasKids(String children) {
+        if (children == null) return false;
+        String normalized = children.toLowerCase().trim();
+        return normalized.startsWith("have") || normalized.startsWith("has");
+    }
+
+    private static boolean isAffirmative(String value, String... negatives) {
+        if (value == null || value.isBlank()) return false;
+        String normalized = value.toLowerCase().trim();
+        for (String negative : negatives) {
+            if (normalized.equals(negative)) return false;
+        }
+        return true;
+    }
+}
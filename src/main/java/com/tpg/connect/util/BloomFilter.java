@@ -0,0 +1,104 @@
+package com.tpg.connect.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size Bloom filter over strings, safe for concurrent puts and lookups.
+ *
+ * Sized up front from the expected number of insertions and the target false-positive rate. Each
+ * key is hashed once to 64 bits and the probe positions are derived from its two halves (double
+ * hashing), so a lookup costs one pass over the key plus k bit reads. A negative answer is exact;
+ * a positive one may be false with roughly the configured probability while the filter holds no
+ * more than its expected insertions. Keys cannot be removed.
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final AtomicLong insertions = new AtomicLong();
+
+    private BloomFilter(long bitCount, int hashCount, long expectedInsertions) {
+        this.words = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        long expected = Math.max(1, expectedInsertions);
+        long bits = Math.max(64, (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        if (bits > (long) Integer.MAX_VALUE * Long.SIZE) {
+            throw new IllegalArgumentException("Bloom filter too large for " + expectedInsertions + " insertions");
+        }
+        int hashes = Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+        return new BloomFilter(bits, hashes, expected);
+    }
+
+    public void put(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            setBit(bit);
+        }
+        insertions.incrementAndGet();
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of puts so far, repeats included; past {@link #expectedInsertions()} the false-positive rate climbs
+     */
+    public long insertions() {
+        return insertions.get();
+    }
+
+    public long expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    private void setBit(long bit) {
+        int index = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long word;
+        do {
+            word = words.get(index);
+            if ((word & mask) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(index, word, word | mask));
+    }
+
+    // FNV-1a over the chars, finished with the murmur3 64-bit mixer so both halves are well spread
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53d94cdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
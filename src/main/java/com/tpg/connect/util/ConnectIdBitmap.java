@@ -0,0 +1,329 @@
+package com.tpg.connect.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compressed set of ConnectIDs, split roaring-style on the high bits.
+ *
+ * ConnectIDs are random 12-digit numbers (see ConnectIdGenerator), so they never form dense runs.
+ * Each id is split into a high key (id >>> 32, about 210 distinct keys over the 12-digit range)
+ * and a 32-bit low part kept in a sorted int array per key: 4 bytes per id in memory plus a small
+ * per-key overhead. Ids that are not numeric (legacy/test ids) are kept in a small fallback set so
+ * callers never have to care.
+ *
+ * Membership is a binary search over the keys plus one over the key's low parts; no String or Long
+ * boxing happens per id. Serialized, the low parts are varint deltas: measured on random ids that
+ * is about 5 bytes per id at 1k ids and 4 at 10k-100k ids (a third more once base64'd for Redis),
+ * against 13 for the ids as strings.
+ */
+public final class ConnectIdBitmap {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private int[] keys = new int[4];
+    private Container[] containers = new Container[4];
+    private int size;
+    private Set<String> nonNumeric;
+
+    public static ConnectIdBitmap of(Collection<String> connectIds) {
+        ConnectIdBitmap bitmap = new ConnectIdBitmap();
+        if (connectIds != null) {
+            for (String connectId : connectIds) {
+                bitmap.add(connectId);
+            }
+        }
+        return bitmap;
+    }
+
+    public boolean add(String connectId) {
+        long id = parse(connectId);
+        if (id < 0) {
+            if (connectId == null) return false;
+            if (nonNumeric == null) nonNumeric = new HashSet<>();
+            return nonNumeric.add(connectId);
+        }
+        return add(id);
+    }
+
+    public boolean add(long id) {
+        int key = (int) (id >>> 32);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new Container());
+        }
+        return containers[index].add(low(id));
+    }
+
+    public boolean contains(String connectId) {
+        long id = parse(connectId);
+        if (id < 0) {
+            return connectId != null && nonNumeric != null && nonNumeric.contains(connectId);
+        }
+        return contains(id);
+    }
+
+    public boolean contains(long id) {
+        int index = Arrays.binarySearch(keys, 0, size, (int) (id >>> 32));
+        return index >= 0 && containers[index].contains(low(id));
+    }
+
+    public void addAll(ConnectIdBitmap other) {
+        for (int i = 0; i < other.size; i++) {
+            int key = other.keys[i];
+            Container source = other.containers[i];
+            for (int k = 0; k < source.cardinality; k++) {
+                add(id(key, source.values[k]));
+            }
+        }
+        if (other.nonNumeric != null) {
+            if (nonNumeric == null) nonNumeric = new HashSet<>();
+            nonNumeric.addAll(other.nonNumeric);
+        }
+    }
+
+    /**
+     * Set difference: the candidates, in their original order, that are not in this bitmap
+     */
+    public List<String> filterAbsent(List<String> candidates) {
+        List<String> absent = new ArrayList<>(candidates.size());
+        for (String candidate : candidates) {
+            if (!contains(candidate)) {
+                absent.add(candidate);
+            }
+        }
+        return absent;
+    }
+
+    /**
+     * Set difference: a new bitmap with the ids of this bitmap that are not in {@code other}
+     */
+    public ConnectIdBitmap andNot(ConnectIdBitmap other) {
+        ConnectIdBitmap result = new ConnectIdBitmap();
+        for (int i = 0; i < size; i++) {
+            int key = keys[i];
+            int otherIndex = Arrays.binarySearch(other.keys, 0, other.size, key);
+            Container otherContainer = otherIndex >= 0 ? other.containers[otherIndex] : null;
+            Container container = containers[i];
+            for (int k = 0; k < container.cardinality; k++) {
+                if (otherContainer == null || !otherContainer.contains(container.values[k])) {
+                    result.add(id(key, container.values[k]));
+                }
+            }
+        }
+        if (nonNumeric != null) {
+            for (String id : nonNumeric) {
+                if (!other.contains(id)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int cardinality() {
+        int cardinality = nonNumeric != null ? nonNumeric.size() : 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality() == 0;
+    }
+
+    /**
+     * Layout: version byte, varint container count, then per container a varint key delta, a
+     * varint cardinality and the varint deltas of its ascending low parts, followed by the
+     * non-numeric fallback ids.
+     */
+    public byte[] serialize() {
+        int bytes = 1 + 5;
+        for (int i = 0; i < size; i++) {
+            bytes += 5 + 5 + containers[i].cardinality * 5;
+        }
+        List<byte[]> extra = new ArrayList<>();
+        bytes += 5;
+        if (nonNumeric != null) {
+            for (String id : nonNumeric) {
+                byte[] encoded = id.getBytes(StandardCharsets.UTF_8);
+                extra.add(encoded);
+                bytes += 5 + encoded.length;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        buffer.put(FORMAT_VERSION);
+        putVarint(buffer, size);
+        int previousKey = 0;
+        for (int i = 0; i < size; i++) {
+            putVarint(buffer, keys[i] - previousKey);
+            previousKey = keys[i];
+            containers[i].write(buffer);
+        }
+        putVarint(buffer, extra.size());
+        for (byte[] encoded : extra) {
+            putVarint(buffer, encoded.length);
+            buffer.put(encoded);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    public static ConnectIdBitmap deserialize(byte[] data) {
+        ConnectIdBitmap bitmap = new ConnectIdBitmap();
+        if (data == null || data.length == 0) {
+            return bitmap;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported ConnectIdBitmap format version: " + version);
+        }
+
+        int containerCount = getVarint(buffer);
+        bitmap.keys = new int[Math.max(4, containerCount)];
+        bitmap.containers = new Container[Math.max(4, containerCount)];
+        int key = 0;
+        for (int i = 0; i < containerCount; i++) {
+            key += getVarint(buffer);
+            bitmap.keys[i] = key;
+            bitmap.containers[i] = Container.read(buffer, getVarint(buffer));
+        }
+        bitmap.size = containerCount;
+
+        int extraCount = getVarint(buffer);
+        if (extraCount > 0) {
+            bitmap.nonNumeric = new HashSet<>();
+            for (int i = 0; i < extraCount; i++) {
+                byte[] encoded = new byte[getVarint(buffer)];
+                buffer.get(encoded);
+                bitmap.nonNumeric.add(new String(encoded, StandardCharsets.UTF_8));
+            }
+        }
+        return bitmap;
+    }
+
+    public String toBase64() {
+        return Base64.getEncoder().encodeToString(serialize());
+    }
+
+    public static ConnectIdBitmap fromBase64(String encoded) {
+        return encoded == null || encoded.isEmpty()
+                ? new ConnectIdBitmap()
+                : deserialize(Base64.getDecoder().decode(encoded));
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private void insertContainer(int index, int key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    /**
+     * Parse a ConnectID without allocating; returns -1 for anything that is not a plain
+     * non-negative decimal number that fits the 12-digit ConnectID range.
+     */
+    private static long parse(String connectId) {
+        if (connectId == null || connectId.isEmpty() || connectId.length() > 12) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < connectId.length(); i++) {
+            char c = connectId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        // Leading zeros would not round-trip back to the same string
+        if (connectId.length() > 1 && connectId.charAt(0) == '0') {
+            return -1;
+        }
+        return value;
+    }
+
+    // Low parts are stored with the sign bit flipped so signed int order matches unsigned order
+    private static int low(long id) {
+        return (int) id ^ Integer.MIN_VALUE;
+    }
+
+    private static long id(int key, int low) {
+        return ((long) key << 32) | ((low ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    private static final class Container {
+        private int[] values = new int[4];
+        private int cardinality;
+
+        boolean add(int value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, cardinality * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return true;
+        }
+
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        void write(ByteBuffer buffer) {
+            putVarint(buffer, cardinality);
+            int previous = Integer.MIN_VALUE;
+            for (int i = 0; i < cardinality; i++) {
+                // Ascending, so the difference is a non-negative unsigned 32-bit delta
+                putVarint(buffer, values[i] - previous);
+                previous = values[i];
+            }
+        }
+
+        static Container read(ByteBuffer buffer, int cardinality) {
+            Container container = new Container();
+            container.values = new int[Math.max(4, cardinality)];
+            int value = Integer.MIN_VALUE;
+            for (int i = 0; i < cardinality; i++) {
+                value += getVarint(buffer);
+                container.values[i] = value;
+            }
+            container.cardinality = cardinality;
+            return container;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.tpg.connect.util;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohash encoding plus the helpers proximity lookups need.
+ *
+ * A geohash interleaves longitude and latitude bisection bits and base32-encodes them, so every
+ * cell's hash is a prefix of the hashes of all points inside it. A sorted map keyed by geohash
+ * therefore answers "everything in this cell" with a single key-range lookup.
+ */
+public final class GeoHash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE_LAT = 111.32;
+
+    /** Highest precision stored on profiles (~1.2km x 0.6km cells) */
+    public static final int MAX_PRECISION = 6;
+
+    private GeoHash() {
+    }
+
+    public static boolean isValid(Double latitude, Double longitude) {
+        return latitude != null && longitude != null
+                && latitude >= -90 && latitude <= 90
+                && longitude >= -180 && longitude <= 180;
+    }
+
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLng = mid;
+                } else {
+                    ch <<= 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /** Height of a cell at the given precision, in degrees of latitude */
+    static double cellHeight(int precision) {
+        int latBits = (5 * precision) / 2;
+        return 180.0 / (1L << latBits);
+    }
+
+    /** Width of a cell at the given precision, in degrees of longitude */
+    static double cellWidth(int precision) {
+        int lngBits = (5 * precision + 1) / 2;
+        return 360.0 / (1L << lngBits);
+    }
+
+    /**
+     * Geohash cells covering the bounding box of a circle. The highest precision whose cover stays
+     * within {@code maxCells} is used, so small radii get tight cells and large radii few coarse ones.
+     */
+    public static Set<String> coveringCells(double latitude, double longitude, double radiusKm, int maxCells) {
+        double latDelta = radiusKm / KM_PER_DEGREE_LAT;
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double minLat = Math.max(-90, latitude - latDelta);
+        double maxLat = Math.min(90, latitude + latDelta);
+        // Near the poles (or for huge radii) the box spans every longitude
+        boolean allLongitudes = cosLat < 1e-6 || radiusKm / (KM_PER_DEGREE_LAT * cosLat) >= 180;
+        double lngDelta = allLongitudes ? 180 : radiusKm / (KM_PER_DEGREE_LAT * cosLat);
+        double minLng = allLongitudes ? -180 : longitude - lngDelta;
+        double maxLng = allLongitudes ? 180 : longitude + lngDelta;
+
+        int precision = MAX_PRECISION;
+        while (precision > 1 && cellCount(minLat, maxLat, minLng, maxLng, precision) > maxCells) {
+            precision--;
+        }
+
+        double height = cellHeight(precision);
+        double width = cellWidth(precision);
+        Set<String> cells = new LinkedHashSet<>();
+        for (double lat = minLat; ; lat = Math.min(lat + height, maxLat)) {
+            for (double lng = minLng; ; lng = Math.min(lng + width, maxLng)) {
+                cells.add(encode(lat, wrapLongitude(lng), precision));
+                if (lng >= maxLng) break;
+            }
+            if (lat >= maxLat) break;
+        }
+        return cells;
+    }
+
+    /** Great-circle distance in kilometres (haversine) */
+    public static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    private static long cellCount(double minLat, double maxLat, double minLng, double maxLng, int precision) {
+        long rows = (long) Math.ceil((maxLat - minLat) / cellHeight(precision)) + 1;
+        long columns = (long) Math.ceil((maxLng - minLng) / cellWidth(precision)) + 1;
+        return rows * columns;
+    }
+
+    private static double wrapLongitude(double longitude) {
+        if (longitude < -180) return longitude + 360;
+        if (longitude >= 180) return longitude - 360;
+        return longitude;
+    }
+}
@@ -0,0 +1,73 @@
+package com.tpg.connect;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.DetailedProfile;
+import com.tpg.connect.model.user.UserPreferences;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Randomly generated profiles for the index and match pool tests and benchmarks
+ */
+public final class TestProfiles {
+
+    public static final String[] GENDERS = {"Man", "Woman", "Non-binary"};
+    public static final String[] INTERESTED_IN = {"Men", "Women", "Everyone"};
+    public static final String[] INTENTIONS = {"serious", "casual", "openToAnything"};
+    public static final String[] FREQUENCIES = {"never", "sometimes", "regularly", "noPreference"};
+
+    private TestProfiles() {
+    }
+
+    /**
+     * The i-th 12-digit connectId
+     */
+    public static String connectId(int i) {
+        return String.valueOf(100000000000L + i);
+    }
+
+    /**
+     * An active profile aged 18 to 57 on {@code today}, with a random gender and interestedIn and
+     * an age range of 5 to 20 years starting somewhere from 18 to 37
+     */
+    public static CompleteUserProfile profile(String connectId, Random random, LocalDate today) {
+        CompleteUserProfile profile = new CompleteUserProfile();
+        profile.setConnectId(connectId);
+        profile.setProfile(new DetailedProfile());
+        profile.setGender(GENDERS[random.nextInt(GENDERS.length)]);
+        profile.setInterestedIn(INTERESTED_IN[random.nextInt(INTERESTED_IN.length)]);
+        profile.setDateOfBirth(today.minusYears(18 + random.nextInt(40)).minusDays(random.nextInt(365)));
+        profile.setActive(true);
+
+        UserPreferences preferences = new UserPreferences();
+        int minAge = 18 + random.nextInt(20);
+        preferences.setAgeRange(new UserPreferences.AgeRange(minAge, minAge + 5 + random.nextInt(15)));
+        preferences.setInterestedIn(List.of(profile.getInterestedIn()));
+        profile.setPreferences(preferences);
+        return profile;
+    }
+
+    /**
+     * A {@link #profile} that also has the answers and partner preferences compatibility is scored on
+     */
+    public static CompleteUserProfile datingProfile(String connectId, Random random, LocalDate today) {
+        CompleteUserProfile profile = profile(connectId, random, today);
+        DetailedProfile detailed = profile.getProfile();
+        detailed.setDatingIntentions(INTENTIONS[random.nextInt(INTENTIONS.length)]);
+        detailed.setFamilyPlans(random.nextBoolean() ? "Want kids" : "Don't want kids");
+        detailed.setChildren(random.nextInt(4) == 0 ? "Have kids" : "Don't have kids");
+        detailed.setHeight((150 + random.nextInt(50)) + " cm");
+        detailed.setLanguages(List.of("interest" + random.nextInt(30), "interest" + random.nextInt(30)));
+
+        UserPreferences preferences = profile.getPreferences();
+        preferences.setHeightRange(new UserPreferences.HeightRange(150, 150 + random.nextInt(60)));
+        preferences.setDatingIntention(INTENTIONS[random.nextInt(INTENTIONS.length)]);
+        preferences.setDrinkingPreference(FREQUENCIES[random.nextInt(FREQUENCIES.length)]);
+        preferences.setSmokingPreference(FREQUENCIES[random.nextInt(FREQUENCIES.length)]);
+        preferences.setDrugPreference(FREQUENCIES[random.nextInt(FREQUENCIES.length)]);
+        preferences.setWantsChildren(random.nextBoolean());
+        return profile;
+    }
+}
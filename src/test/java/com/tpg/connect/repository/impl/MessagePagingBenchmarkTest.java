@@ -0,0 +1,103 @@
+package com.tpg.connect.repository.impl;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import com.tpg.connect.model.conversation.MessagePage;
+import com.tpg.connect.repository.ConversationRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of the 50th page of a long conversation against the first, paging backwards with
+ * message cursors. Each page is one startAfter query reading PAGE_SIZE + 1 documents, so page 50
+ * should cost what page 1 does rather than scanning the 980 messages in front of it.
+ *
+ * Runs against the Firestore project of the test profile and leaves its "benchmark-" conversation behind.
+ *
+ * Run with: ./mvnw test -Dtest=MessagePagingBenchmarkTest -Dbenchmark=true
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MessagePagingBenchmarkTest {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int PAGES = 50;
+    private static final int SAMPLES = 15;
+
+    @Autowired
+    private Firestore firestore;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Test
+    void fiftiethPageCostsTheSameAsTheFirst() throws Exception {
+        String conversationId = "benchmark-conversation-" + UUID.randomUUID().toString().substring(0, 8);
+        seedMessages(conversationId, PAGE_SIZE * PAGES + PAGE_SIZE);
+
+        // Walk back to the cursors in front of page 1 and page 50, checking nothing is repeated or skipped
+        List<String> cursors = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        String cursor = null;
+        for (int page = 0; page < PAGES; page++) {
+            cursors.add(cursor);
+            MessagePage messagePage = conversationRepository.findMessagesBefore(conversationId, cursor, PAGE_SIZE);
+            assertEquals(PAGE_SIZE, messagePage.getMessages().size());
+            messagePage.getMessages().forEach(message -> assertTrue(seen.add(message.getId()), "Message repeated: " + message.getId()));
+            cursor = messagePage.getNextCursor();
+        }
+        assertEquals(PAGE_SIZE * PAGES, seen.size());
+
+        double firstMs = medianMillis(conversationId, cursors.get(0));
+        double fiftiethMs = medianMillis(conversationId, cursors.get(PAGES - 1));
+        System.out.printf("Message paging over %,d messages: page 1 %.1f ms, page %d %.1f ms (median of %d)%n",
+                PAGE_SIZE * PAGES + PAGE_SIZE, firstMs, PAGES, fiftiethMs, SAMPLES);
+
+        // Network jitter dominates both; an offset scan of 980 documents would not fit in this margin
+        assertTrue(fiftiethMs < firstMs * 1.5 + 25, "Page " + PAGES + " slower than page 1: " + fiftiethMs + " ms vs " + firstMs + " ms");
+    }
+
+    private double medianMillis(String conversationId, String cursor) {
+        List<Long> samples = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            long started = System.nanoTime();
+            conversationRepository.findMessagesBefore(conversationId, cursor, PAGE_SIZE);
+            samples.add(System.nanoTime() - started);
+        }
+        Collections.sort(samples);
+        return samples.get(samples.size() / 2) / 1e6;
+    }
+
+    private void seedMessages(String conversationId, int count) throws Exception {
+        CollectionReference messages = firestore.collection("conversations").document(conversationId).collection("messages");
+        long startSeconds = System.currentTimeMillis() / 1000 - count;
+        WriteBatch batch = firestore.batch();
+        for (int i = 0; i < count; i++) {
+            String messageId = UUID.randomUUID().toString();
+            Map<String, Object> message = new HashMap<>();
+            message.put("id", messageId);
+            message.put("conversationId", conversationId);
+            message.put("senderId", i % 2 == 0 ? "benchmark-sender-a" : "benchmark-sender-b");
+            message.put("content", "Message " + i);
+            message.put("status", "SENT");
+            // Pairs of messages share a timestamp so the message id tie-break is exercised
+            message.put("sentAt", Timestamp.ofTimeSecondsAndNanos(startSeconds + i / 2, 0));
+            batch.set(messages.document(messageId), message);
+            if ((i + 1) % 500 == 0) {
+                batch.commit().get();
+                batch = firestore.batch();
+            }
+        }
+        batch.commit().get();
+    }
+}
@@ -0,0 +1,256 @@
+package com.tpg.connect.repository.impl;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.*;
+import com.tpg.connect.model.UserCounters;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class UserCountersRepositoryImplTest {
+
+    private static final String USER_ID = "user-1";
+
+    @Mock
+    private Firestore firestore;
+
+    @Mock
+    private Transaction transaction;
+
+    @Mock
+    private DocumentReference countersRef;
+
+    @Mock
+    private DocumentSnapshot countersDoc;
+
+    @Mock
+    private Query conversationsQuery;
+
+    @Mock
+    private AggregateQuery unreadNotificationsQuery;
+
+    @Mock
+    private AggregateQuery messagesSentQuery;
+
+    @InjectMocks
+    private UserCountersRepositoryImpl repository;
+
+    private final List<QueryDocumentSnapshot> conversations = new ArrayList<>();
+    private final Map<String, DocumentReference> inboxRefs = new HashMap<>();
+    private final Map<DocumentReference, DocumentSnapshot> inboxEntries = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CollectionReference counters = mock(CollectionReference.class);
+        when(firestore.collection("user_counters")).thenReturn(counters);
+        when(counters.document(USER_ID)).thenReturn(countersRef);
+
+        CollectionReference conversationsCollection = mock(CollectionReference.class);
+        when(firestore.collection("conversations")).thenReturn(conversationsCollection);
+        when(conversationsCollection.whereArrayContains("participantIds", USER_ID)).thenReturn(conversationsQuery);
+        when(conversationsQuery.select("unreadCounts")).thenReturn(conversationsQuery);
+        QuerySnapshot conversationsSnapshot = mock(QuerySnapshot.class);
+        when(conversationsSnapshot.getDocuments()).thenReturn(conversations);
+        when(conversationsQuery.get()).thenReturn(ApiFutures.immediateFuture(conversationsSnapshot));
+        when(transaction.get(conversationsQuery)).thenReturn(ApiFutures.immediateFuture(conversationsSnapshot));
+
+        CollectionReference notifications = mock(CollectionReference.class);
+        Query notificationsQuery = mock(Query.class);
+        when(firestore.collection("notifications")).thenReturn(notifications);
+        when(notifications.whereEqualTo(anyString(), any())).thenReturn(notificationsQuery);
+        when(notificationsQuery.whereEqualTo(anyString(), any())).thenReturn(notificationsQuery);
+        when(notificationsQuery.count()).thenReturn(unreadNotificationsQuery);
+
+        CollectionGroup messages = mock(CollectionGroup.class);
+        Query sentQuery = mock(Query.class);
+        when(firestore.collectionGroup("messages")).thenReturn(messages);
+        when(messages.whereEqualTo("senderId", USER_ID)).thenReturn(sentQuery);
+        when(sentQuery.count()).thenReturn(messagesSentQuery);
+
+        CollectionReference inboxes = mock(CollectionReference.class);
+        DocumentReference inbox = mock(DocumentReference.class);
+        CollectionReference entries = mock(CollectionReference.class);
+        when(firestore.collection("user_inbox")).thenReturn(inboxes);
+        when(inboxes.document(USER_ID)).thenReturn(inbox);
+        when(inbox.collection("entries")).thenReturn(entries);
+        when(entries.document(anyString())).thenAnswer(invocation -> inboxRef(invocation.getArgument(0)));
+        when(transaction.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> {
+            List<DocumentSnapshot> snapshots = new ArrayList<>();
+            for (DocumentReference ref : (DocumentReference[]) invocation.getRawArguments()[0]) {
+                snapshots.add(inboxEntries.computeIfAbsent(ref, missing -> mock(DocumentSnapshot.class)));
+            }
+            return ApiFutures.immediateFuture(snapshots);
+        });
+
+        when(transaction.get(countersRef)).thenReturn(ApiFutures.immediateFuture(countersDoc));
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation ->
+                ApiFutures.immediateFuture(((Transaction.Function<?>) invocation.getArgument(0)).updateCallback(transaction)));
+    }
+
+    @Test
+    void countersAreOnlyTrustedOnceBackfilledAndNeverBelowZero() {
+        when(countersRef.get()).thenReturn(ApiFutures.immediateFuture(countersDoc));
+        storedCounters(Map.of("c1", 2L), 1L, 5L, null);
+        assertFalse(repository.findByUserId(USER_ID).map(UserCounters::isTrusted).orElseThrow());
+
+        storedCounters(Map.of("c1", 2L), 1L, 5L, Timestamp.now());
+        assertTrue(repository.findByUserId(USER_ID).map(UserCounters::isTrusted).orElseThrow());
+
+        storedCounters(Map.of("c1", 2L), -1L, 5L, Timestamp.now());
+        assertFalse(repository.findByUserId(USER_ID).map(UserCounters::isTrusted).orElseThrow());
+
+        storedCounters(Map.of("c1", -3L), 1L, 5L, Timestamp.now());
+        assertFalse(repository.findByUserId(USER_ID).map(UserCounters::isTrusted).orElseThrow());
+    }
+
+    @Test
+    void reconcileBackfillsAUserWithoutCounters() {
+        when(countersDoc.exists()).thenReturn(false);
+        conversation("c1", 2L);
+        conversation("c2", 0L);
+        counts(1, 7);
+
+        assertTrue(repository.reconcile(USER_ID));
+
+        Map<String, Object> written = writtenCounters();
+        assertEquals(Map.of("c1", 2L), written.get("unreadByConversation"));
+        assertEquals(1L, written.get("unreadNotifications"));
+        assertEquals(7L, written.get("messagesSent"));
+        assertInstanceOf(FieldValue.class, written.get("backfilledAt"));
+    }
+
+    @Test
+    void reconcileLeavesMatchingBackfilledCountersAlone() {
+        storedCounters(Map.of("c1", 2L), 1L, 5L, Timestamp.now());
+        conversation("c1", 2L);
+        counts(1, 9);
+
+        assertFalse(repository.reconcile(USER_ID));
+
+        verify(transaction, never()).set(any(DocumentReference.class), anyMap());
+        // A backfilled user's messagesSent is kept up by the writes; reconcile doesn't recount it
+        verify(transaction, never()).get(messagesSentQuery);
+    }
+
+    @Test
+    void reconcileCorrectsDriftAndKeepsTheBackfillTime() {
+        Timestamp backfilledAt = Timestamp.ofTimeSecondsAndNanos(1_700_000_000L, 0);
+        storedCounters(Map.of("c1", 4L, "c3", 1L), 3L, 5L, backfilledAt);
+        conversation("c1", 2L);
+        conversation("c3", 0L);
+        counts(1, 9);
+
+        assertTrue(repository.reconcile(USER_ID));
+
+        Map<String, Object> written = writtenCounters();
+        assertEquals(Map.of("c1", 2L), written.get("unreadByConversation"));
+        assertEquals(1L, written.get("unreadNotifications"));
+        assertEquals(5L, written.get("messagesSent"));
+        assertEquals(backfilledAt, written.get("backfilledAt"));
+    }
+
+    @Test
+    void backfillRecountsMessagesSentForABackfilledUser() {
+        storedCounters(Map.of(), 0L, 5L, Timestamp.now());
+        counts(0, 9);
+
+        assertTrue(repository.backfill(USER_ID));
+
+        assertEquals(9L, writtenCounters().get("messagesSent"));
+    }
+
+    @Test
+    void reconcileCorrectsDriftedInboxBadgesWithTheCounters() {
+        storedCounters(Map.of("c1", 2L), 1L, 5L, Timestamp.now());
+        conversation("c1", 2L);
+        conversation("c2", 0L);
+        conversation("c3", 0L);
+        counts(1, 5);
+        inboxEntry("c1", 5L, true);
+        inboxEntry("c2", 0L, true);
+
+        assertTrue(repository.reconcile(USER_ID));
+
+        verify(transaction).set(inboxRef("c1"), Map.of("unreadCount", 2L, "hasUnread", true), SetOptions.merge());
+        verify(transaction).set(inboxRef("c2"), Map.of("unreadCount", 0L, "hasUnread", false), SetOptions.merge());
+        // No entry yet: left to the inbox build rather than created with only a badge
+        verify(transaction, never()).set(eq(inboxRef("c3")), anyMap(), any(SetOptions.class));
+        verify(transaction, never()).set(eq(countersRef), anyMap());
+    }
+
+    @Test
+    void reconcileLeavesMatchingInboxBadgesAlone() {
+        storedCounters(Map.of("c1", 2L), 1L, 5L, Timestamp.now());
+        conversation("c1", 2L);
+        counts(1, 5);
+        inboxEntry("c1", 2L, true);
+
+        assertFalse(repository.reconcile(USER_ID));
+
+        verify(transaction, never()).set(any(DocumentReference.class), anyMap(), any(SetOptions.class));
+    }
+
+    private DocumentReference inboxRef(String conversationId) {
+        return inboxRefs.computeIfAbsent(conversationId, id -> mock(DocumentReference.class));
+    }
+
+    private void inboxEntry(String conversationId, long unreadCount, boolean hasUnread) {
+        DocumentSnapshot entry = mock(DocumentSnapshot.class);
+        when(entry.exists()).thenReturn(true);
+        when(entry.getId()).thenReturn(conversationId);
+        when(entry.getLong("unreadCount")).thenReturn(unreadCount);
+        when(entry.getBoolean("hasUnread")).thenReturn(hasUnread);
+        inboxEntries.put(inboxRef(conversationId), entry);
+    }
+
+    private void storedCounters(Map<String, Long> unread, Long unreadNotifications, Long messagesSent, Timestamp backfilledAt) {
+        when(countersDoc.exists()).thenReturn(true);
+        when(countersDoc.getId()).thenReturn(USER_ID);
+        when(countersDoc.get("unreadByConversation")).thenReturn(new HashMap<>(unread));
+        when(countersDoc.getLong("unreadNotifications")).thenReturn(unreadNotifications);
+        when(countersDoc.getLong("messagesSent")).thenReturn(messagesSent);
+        when(countersDoc.contains("backfilledAt")).thenReturn(backfilledAt != null);
+        when(countersDoc.get("backfilledAt")).thenReturn(backfilledAt);
+    }
+
+    private void conversation(String conversationId, long unread) {
+        QueryDocumentSnapshot conversation = mock(QueryDocumentSnapshot.class);
+        when(conversation.getId()).thenReturn(conversationId);
+        when(conversation.get(any(FieldPath.class))).thenReturn(unread);
+        conversations.add(conversation);
+    }
+
+    private void counts(long unreadNotifications, long messagesSent) {
+        AggregateQuerySnapshot notifications = mock(AggregateQuerySnapshot.class);
+        when(notifications.getCount()).thenReturn(unreadNotifications);
+        when(transaction.get(unreadNotificationsQuery)).thenReturn(ApiFutures.immediateFuture(notifications));
+        AggregateQuerySnapshot sent = mock(AggregateQuerySnapshot.class);
+        when(sent.getCount()).thenReturn(messagesSent);
+        when(transaction.get(messagesSentQuery)).thenReturn(ApiFutures.immediateFuture(sent));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> writtenCounters() {
+        ArgumentCaptor<Map<String, Object>> written = ArgumentCaptor.forClass(Map.class);
+        verify(transaction).set(eq(countersRef), written.capture());
+        return written.getValue();
+    }
+}
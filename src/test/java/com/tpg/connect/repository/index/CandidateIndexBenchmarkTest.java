@@ -0,0 +1,91 @@
+package com.tpg.connect.repository.index;
+
+import com.tpg.connect.TestProfiles;
+import com.tpg.connect.model.user.CompleteUserProfile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Per-request candidate generation cost as the profile count grows, for the limit and kind of
+ * exclusion PotentialMatchesService uses: 30 candidates, skipping the few hundred users the seeker
+ * has already acted on.
+ *
+ * Run with: ./mvnw test -Dtest=CandidateIndexBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CandidateIndexBenchmarkTest {
+
+    private static final int QUERIES = 20_000;
+    // MATCH_SET_SIZE * CANDIDATE_OVERSAMPLE in PotentialMatchesService
+    private static final int LIMIT = 30;
+    private static final int ACTED_ON = 300;
+
+    @Test
+    void perRequestCostStaysFlatFrom10kTo1M() {
+        Map<Integer, Double> nanosPerQuery = new LinkedHashMap<>();
+        for (int profileCount : new int[]{10_000, 100_000, 1_000_000}) {
+            CandidateIndex index = populate(profileCount);
+            List<CompleteUserProfile> seekers = seekers(1_000);
+            List<Set<String>> actedOn = actedOn(index, seekers);
+
+            // Warm up the JIT before measuring
+            runQueries(index, seekers, actedOn, QUERIES);
+            long started = System.nanoTime();
+            long found = runQueries(index, seekers, actedOn, QUERIES);
+            double perQuery = (System.nanoTime() - started) / (double) QUERIES;
+
+            assertTrue(found > 0);
+            nanosPerQuery.put(profileCount, perQuery);
+            System.out.printf("CandidateIndex %,9d profiles: %,10.0f ns/request%n", profileCount, perQuery);
+        }
+
+        // Cost is bounded by the buckets walked and the result limit, not by the profile count
+        assertTrue(nanosPerQuery.get(1_000_000) < nanosPerQuery.get(10_000) * 5,
+                "Per-request cost grew with profile count: " + nanosPerQuery);
+    }
+
+    private long runQueries(CandidateIndex index, List<CompleteUserProfile> seekers, List<Set<String>> actedOn, int queries) {
+        long found = 0;
+        for (int i = 0; i < queries; i++) {
+            Set<String> excluded = actedOn.get(i % seekers.size());
+            found += index.findCandidates(seekers.get(i % seekers.size()), excluded::contains, LIMIT).size();
+        }
+        return found;
+    }
+
+    // Users each seeker has already liked or passed on: candidates they were shown before, so every
+    // search has to skip them in the seeker's own buckets
+    private List<Set<String>> actedOn(CandidateIndex index, List<CompleteUserProfile> seekers) {
+        List<Set<String>> actedOn = new ArrayList<>(seekers.size());
+        for (CompleteUserProfile seeker : seekers) {
+            actedOn.add(new HashSet<>(index.findCandidates(seeker, null, ACTED_ON)));
+        }
+        return actedOn;
+    }
+
+    private CandidateIndex populate(int profileCount) {
+        CandidateIndex index = new CandidateIndex();
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < profileCount; i++) {
+            index.index(TestProfiles.profile(TestProfiles.connectId(i), random, today));
+        }
+        assertEquals(profileCount, index.size());
+        return index;
+    }
+
+    private List<CompleteUserProfile> seekers(int count) {
+        Random random = new Random(7);
+        LocalDate today = LocalDate.now();
+        List<CompleteUserProfile> seekers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            seekers.add(TestProfiles.profile(String.valueOf(900000000000L + i), random, today));
+        }
+        return seekers;
+    }
+}
@@ -0,0 +1,79 @@
+package com.tpg.connect.repository.index;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.UserPreferences;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandidateIndexTest {
+
+    @Test
+    void aSmallLimitSpreadsOverEveryAcceptedBand() {
+        CandidateIndex index = new CandidateIndex();
+        for (int i = 0; i < 50; i++) {
+            index.index(profile("young-" + i, "Woman", "Men", 24));
+            index.index(profile("older-" + i, "Woman", "Men", 38));
+        }
+        CompleteUserProfile seeker = seeker(20, 45);
+
+        List<String> found = index.findCandidates(seeker, null, 10);
+
+        assertEquals(10, found.size());
+        assertEquals(5, found.stream().filter(id -> id.startsWith("young-")).count());
+        assertEquals(5, found.stream().filter(id -> id.startsWith("older-")).count());
+    }
+
+    @Test
+    void theFirstBandRotatesBetweenSearches() {
+        CandidateIndex index = new CandidateIndex();
+        index.index(profile("young-1", "Woman", "Men", 24));
+        index.index(profile("older-1", "Woman", "Men", 38));
+        CompleteUserProfile seeker = seeker(20, 45);
+
+        String first = index.findCandidates(seeker, null, 1).get(0);
+        String second = index.findCandidates(seeker, null, 1).get(0);
+
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void bandsAreDroppedWithTheirLastProfile() {
+        CandidateIndex index = new CandidateIndex();
+        index.index(profile("young-1", "Woman", "Men", 24));
+        index.index(profile("older-1", "Woman", "Men", 38));
+        index.index(profile("older-2", "Woman", "Men", 38));
+        assertEquals(2, index.bandCount());
+
+        index.remove("older-1");
+        index.markInactive("older-2");
+
+        assertEquals(1, index.bandCount());
+        assertEquals(List.of("young-1"), index.findCandidates(seeker(20, 45), null, 10));
+
+        index.index(profile("older-2", "Woman", "Men", 38));
+        assertEquals(2, index.bandCount());
+    }
+
+    private static CompleteUserProfile seeker(int minAge, int maxAge) {
+        CompleteUserProfile seeker = profile("seeker", "Man", "Women", 30);
+        UserPreferences preferences = new UserPreferences();
+        preferences.setAgeRange(new UserPreferences.AgeRange(minAge, maxAge));
+        preferences.setInterestedIn(List.of("Women"));
+        seeker.setPreferences(preferences);
+        return seeker;
+    }
+
+    private static CompleteUserProfile profile(String connectId, String gender, String interestedIn, int age) {
+        CompleteUserProfile profile = new CompleteUserProfile();
+        profile.setConnectId(connectId);
+        profile.setGender(gender);
+        profile.setInterestedIn(interestedIn);
+        profile.setDateOfBirth(LocalDate.now().minusYears(age).minusDays(100));
+        profile.setActive(true);
+        return profile;
+    }
+}
@@ -0,0 +1,68 @@
+package com.tpg.connect.repository.index;
+
+import com.tpg.connect.TestProfiles;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Search latency over 1M indexed profiles, for a selective multi-facet query and for a
+ * sort over every profile.
+ *
+ * Run with: ./mvnw test -Dtest=ProfileSearchIndexBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ProfileSearchIndexBenchmarkTest {
+
+    private static final int PROFILES = 1_000_000;
+    private static final int QUERIES = 200;
+    private static final String[] LOCATIONS = {"London, UK", "Manchester, UK", "Leeds, UK", "Bristol, UK", "Glasgow, UK"};
+    private static final String[] INTENTIONS = {"Serious", "Casual", "Marriage"};
+    private static final String[] INTERESTS = {"Hiking", "Music", "Art", "Cooking", "Travel", "Films", "Gaming", "Yoga", "Reading", "Running"};
+
+    @Test
+    void searchesOverAMillionProfilesTakeMilliseconds() {
+        ProfileSearchIndex index = new ProfileSearchIndex();
+        Random random = new Random(42);
+        for (int i = 0; i < PROFILES; i++) {
+            index.index(ProfileSearchIndexTest.profile(TestProfiles.connectId(i),
+                    TestProfiles.GENDERS[random.nextInt(TestProfiles.GENDERS.length)], 18 + random.nextInt(40),
+                    LOCATIONS[random.nextInt(LOCATIONS.length)], INTENTIONS[random.nextInt(INTENTIONS.length)],
+                    INTERESTS[random.nextInt(INTERESTS.length)], INTERESTS[random.nextInt(INTERESTS.length)]));
+        }
+        assertEquals(PROFILES, index.size());
+
+        ProfileSearchIndex.Criteria selective = new ProfileSearchIndex.Criteria()
+                .ageBetween(25, 35)
+                .location("London")
+                .interests(List.of("Hiking", "Yoga"))
+                .genders(List.of("Woman"))
+                .datingIntentions(List.of("Serious"));
+        ProfileSearchIndex.Criteria everyone = new ProfileSearchIndex.Criteria().sortBy("age");
+
+        double selectiveMs = millisPerQuery(index, selective);
+        double everyoneMs = millisPerQuery(index, everyone);
+        System.out.printf("ProfileSearchIndex %,d profiles: selective %.2f ms/query, all profiles by age %.2f ms/query%n",
+                PROFILES, selectiveMs, everyoneMs);
+
+        assertTrue(selectiveMs < 50, "Selective search too slow: " + selectiveMs + " ms");
+        assertTrue(everyoneMs < 200, "Full sort too slow: " + everyoneMs + " ms");
+    }
+
+    private double millisPerQuery(ProfileSearchIndex index, ProfileSearchIndex.Criteria criteria) {
+        // Warm up the JIT before measuring
+        for (int i = 0; i < QUERIES; i++) {
+            index.search(criteria, Set.of(), null, 0, 20);
+        }
+        long started = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            found += index.search(criteria, Set.of(), null, 0, 20).getConnectIds().size();
+        }
+        assertTrue(found > 0);
+        return (System.nanoTime() - started) / 1e6 / QUERIES;
+    }
+}
@@ -0,0 +1,92 @@
+package com.tpg.connect.repository.index;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.DetailedProfile;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileSearchIndexTest {
+
+    @Test
+    void facetsAreAndedAndSharedInterestsRankFirst() {
+        ProfileSearchIndex index = new ProfileSearchIndex();
+        index.index(profile("100000000001", "Woman", 28, "London, UK", "Serious", "Hiking", "Yoga"));
+        index.index(profile("100000000002", "Woman", 30, "London, UK", "Serious", "Hiking"));
+        index.index(profile("100000000003", "Woman", 41, "London, UK", "Serious", "Hiking", "Yoga"));
+        index.index(profile("100000000004", "Man", 29, "London, UK", "Serious", "Hiking", "Yoga"));
+        index.index(profile("100000000005", "Woman", 27, "Manchester, UK", "Serious", "Yoga"));
+        index.index(profile("100000000006", "Woman", 26, "London, UK", "Casual", "Yoga"));
+        index.index(profile("100000000007", "Woman", 25, "London, UK", "Serious", "Chess"));
+
+        ProfileSearchIndex.Criteria criteria = new ProfileSearchIndex.Criteria()
+                .ageBetween(25, 35)
+                .location("london")
+                .interests(List.of("hiking", "YOGA"))
+                .genders(List.of("woman"))
+                .datingIntentions(List.of("serious"));
+
+        ProfileSearchIndex.Page page = index.search(criteria, Set.of(), null, 0, 10);
+
+        assertEquals(List.of("100000000001", "100000000002"), page.getConnectIds());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void cursorPagesCoverEveryMatchOnceAndSkipRemovedProfiles() {
+        ProfileSearchIndex index = new ProfileSearchIndex();
+        for (int i = 0; i < 95; i++) {
+            index.index(profile(String.valueOf(100000000000L + i), "Woman", 20 + i % 30, "Leeds", "Serious", "Music"));
+        }
+        index.remove("100000000050");
+        CompleteUserProfile inactive = profile("100000000051", "Woman", 30, "Leeds", "Serious", "Music");
+        inactive.setActive(false);
+        index.index(inactive);
+
+        ProfileSearchIndex.Criteria criteria = new ProfileSearchIndex.Criteria().location("Leeds").sortBy("age");
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            ProfileSearchIndex.Page page = index.search(criteria, Set.of("100000000000"), cursor, 0, 10);
+            assertEquals(92, page.getTotal());
+            seen.addAll(page.getConnectIds());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(92, seen.size());
+        assertEquals(92, new HashSet<>(seen).size());
+        assertFalse(seen.contains("100000000050"));
+        assertFalse(seen.contains("100000000051"));
+        assertEquals(index.search(criteria, Set.of("100000000000"), null, 0, 100).getConnectIds(), seen);
+    }
+
+    @Test
+    void reindexingMovesAProfileBetweenTerms() {
+        ProfileSearchIndex index = new ProfileSearchIndex();
+        index.index(profile("100000000001", "Woman", 28, "London", "Serious", "Hiking"));
+        index.index(profile("100000000001", "Woman", 28, "Bristol", "Serious", "Hiking"));
+
+        assertTrue(index.search(new ProfileSearchIndex.Criteria().location("london"), Set.of(), null, 0, 10).getConnectIds().isEmpty());
+        assertEquals(List.of("100000000001"),
+                index.search(new ProfileSearchIndex.Criteria().location("bristol"), Set.of(), null, 0, 10).getConnectIds());
+        assertThrows(IllegalArgumentException.class,
+                () -> index.search(new ProfileSearchIndex.Criteria(), Set.of(), "not a cursor", 0, 10));
+    }
+
+    static CompleteUserProfile profile(String connectId, String gender, int age, String location,
+                                       String datingIntention, String... interests) {
+        CompleteUserProfile profile = new CompleteUserProfile();
+        profile.setConnectId(connectId);
+        profile.setProfile(new DetailedProfile());
+        profile.setGender(gender);
+        profile.setDateOfBirth(LocalDate.now().minusYears(age).minusDays(1 + Long.parseLong(connectId) % 300));
+        profile.setLocation(location);
+        profile.getProfile().setDatingIntentions(datingIntention);
+        profile.setInterests(List.of(interests));
+        profile.setActive(true);
+        return profile;
+    }
+}
@@ -0,0 +1,80 @@
+package com.tpg.connect.repository.index;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.util.GeoHash;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProximityIndexTest {
+
+    @Test
+    void radiusLookupMatchesFullScan() {
+        Random random = new Random(1);
+        ProximityIndex index = new ProximityIndex();
+        Map<String, double[]> points = new HashMap<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            double latitude;
+            double longitude;
+            if (i % 2 == 0) { // clustered around London
+                latitude = 51.5 + random.nextGaussian() * 0.5;
+                longitude = -0.12 + random.nextGaussian() * 0.8;
+            } else if (i % 5 == 0) { // straddling the antimeridian
+                latitude = random.nextDouble() * 2 - 1;
+                longitude = 179 + random.nextDouble() * 2;
+                if (longitude >= 180) longitude -= 360;
+            } else {
+                latitude = random.nextDouble() * 170 - 85;
+                longitude = random.nextDouble() * 360 - 180;
+            }
+            String connectId = String.valueOf(100000000000L + i);
+            index.index(profile(connectId, latitude, longitude, true));
+            points.put(connectId, new double[]{latitude, longitude});
+        }
+
+        double[][] queries = {{51.5, -0.12, 5}, {51.5, -0.12, 50}, {51.5, -0.12, 400}, {0, 179.9, 100}, {89, 0, 500}};
+        for (double[] query : queries) {
+            Set<String> expected = new HashSet<>();
+            points.forEach((connectId, point) -> {
+                if (GeoHash.distanceKm(query[0], query[1], point[0], point[1]) <= query[2]) {
+                    expected.add(connectId);
+                }
+            });
+
+            LinkedHashMap<String, Double> nearby = index.findWithin(query[0], query[1], query[2], null);
+
+            assertEquals(expected, nearby.keySet(), "Radius " + query[2] + "km around " + query[0] + "," + query[1]);
+            double previous = 0;
+            for (double distance : nearby.values()) {
+                assertTrue(distance >= previous, "Results are not nearest first");
+                previous = distance;
+            }
+        }
+    }
+
+    @Test
+    void movedAndDeactivatedProfilesLeaveTheirCell() {
+        ProximityIndex index = new ProximityIndex();
+        index.index(profile("100000000001", 51.5074, -0.1278, true));
+        index.index(profile("100000000002", 51.5080, -0.1280, true));
+
+        index.index(profile("100000000001", 48.8566, 2.3522, true)); // moved to Paris
+        index.index(profile("100000000002", 51.5080, -0.1280, false));
+
+        assertTrue(index.findWithin(51.5074, -0.1278, 10, null).isEmpty());
+        assertEquals(Set.of("100000000001"), index.findWithin(48.8566, 2.3522, 10, null).keySet());
+        assertEquals(1, index.size());
+    }
+
+    private CompleteUserProfile profile(String connectId, double latitude, double longitude, boolean active) {
+        CompleteUserProfile profile = new CompleteUserProfile();
+        profile.setConnectId(connectId);
+        profile.setLatitude(latitude);
+        profile.setLongitude(longitude);
+        profile.setActive(active);
+        return profile;
+    }
+}
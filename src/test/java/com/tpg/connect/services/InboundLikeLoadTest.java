@@ -0,0 +1,77 @@
+package com.tpg.connect.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Like-acceptance throughput when many users like the same profile at once, through the Firestore
+ * transaction path (the like graph is mocked out as not ready). Every liker should be accepted; with
+ * the target's documents off the write path there is nothing for the transactions to contend on.
+ *
+ * Runs against the Firestore project of the test profile and leaves its "loadtest-" userActions behind.
+ *
+ * Run with: ./mvnw test -Dtest=InboundLikeLoadTest -Dloadtest=true
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class InboundLikeLoadTest {
+
+    private static final int LIKERS = 500;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private UserActionsService userActionsService;
+
+    @MockitoBean
+    private LikeGraphService likeGraphService;
+
+    @Test
+    void everyLikeOnAHotTargetIsAccepted() throws Exception {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        String targetId = "loadtest-target-" + runId;
+        List<String> likerIds = new ArrayList<>();
+        List<Callable<Long>> likes = new ArrayList<>();
+        for (int i = 0; i < LIKERS; i++) {
+            String likerId = "loadtest-liker-" + runId + "-" + i;
+            likerIds.add(likerId);
+            likes.add(() -> {
+                long started = System.nanoTime();
+                userActionsService.addLikeAction(likerId, targetId);
+                return System.nanoTime() - started;
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long started = System.nanoTime();
+        List<Long> latencies = new ArrayList<>();
+        try {
+            for (Future<Long> like : pool.invokeAll(likes)) {
+                latencies.add(like.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        // Queued likes count as accepted; they're visible before the consolidator folds them in
+        Set<String> likedBy = new HashSet<>(userActionsService.getLikedByUsers(targetId));
+        long accepted = likerIds.stream().filter(likedBy::contains).count();
+
+        Collections.sort(latencies);
+        System.out.printf("Inbound likes on one target: %d/%d accepted in %.1f s (%.0f likes/s, p50 %.0f ms, p99 %.0f ms)%n",
+                accepted, LIKERS, seconds, accepted / seconds,
+                latencies.get(latencies.size() / 2) / 1e6, latencies.get(latencies.size() * 99 / 100) / 1e6);
+
+        assertEquals(LIKERS, accepted, "Some likes on the hot target were lost");
+    }
+}
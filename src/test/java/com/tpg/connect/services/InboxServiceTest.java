@@ -0,0 +1,117 @@
+package com.tpg.connect.services;
+
+import com.tpg.connect.model.conversation.InboxEntry;
+import com.tpg.connect.model.conversation.InboxPage;
+import com.tpg.connect.model.user.ProfileCard;
+import com.tpg.connect.repository.InboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InboxServiceTest {
+
+    private static final String USER_ID = "user-1";
+
+    @Mock
+    private InboxRepository inboxRepository;
+
+    @Mock
+    private ProfileHydrationService profileHydrationService;
+
+    @Mock
+    private ProfileManagementService profileService;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @InjectMocks
+    private InboxService inboxService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(stringRedisTemplate.hasKey("inbox:built:" + USER_ID)).thenReturn(true);
+
+        Field cardMaxAgeHours = InboxService.class.getDeclaredField("cardMaxAgeHours");
+        cardMaxAgeHours.setAccessible(true);
+        cardMaxAgeHours.set(inboxService, 24L);
+    }
+
+    @Test
+    void partialEntriesAreRepairedInPlaceAndKeepThePageOrder() {
+        InboxEntry first = completeEntry("user-2");
+        InboxEntry partial = partialEntry("user-3");
+        InboxEntry last = completeEntry("user-4");
+        when(inboxRepository.findPage(USER_ID, null, 0, 3, true, false))
+                .thenReturn(new InboxPage(List.of(first, partial, last), null, false));
+        ProfileCard card = card("user-3");
+        when(profileHydrationService.hydrateCards("inbox", List.of("user-3"))).thenReturn(List.of(card));
+        when(inboxRepository.repair(USER_ID, List.of(partial), Map.of("user-3", card))).thenAnswer(invocation -> {
+            partial.setCounterpart(card);
+            partial.setCounterpartRefreshedAt(LocalDateTime.now());
+            partial.setMatchedAt(LocalDateTime.now());
+            return List.of(partial);
+        });
+
+        InboxPage page = inboxService.getInbox(USER_ID, null, 0, 3, true, false);
+
+        assertEquals(List.of(first, partial, last), page.getEntries());
+        assertSame(card, partial.getCounterpart());
+    }
+
+    @Test
+    void entriesWhoseCounterpartIsGoneAreDroppedAndThePageToppedUp() {
+        InboxEntry first = completeEntry("user-2");
+        InboxEntry gone = partialEntry("user-3");
+        InboxEntry next = completeEntry("user-4");
+        when(inboxRepository.findPage(USER_ID, null, 0, 2, true, false))
+                .thenReturn(new InboxPage(List.of(first, gone), "cursor-1", true));
+        when(inboxRepository.findPage(USER_ID, "cursor-1", 0, 1, true, false))
+                .thenReturn(new InboxPage(List.of(next), "cursor-2", true));
+        when(profileHydrationService.hydrateCards("inbox", List.of("user-3"))).thenReturn(List.of());
+        when(inboxRepository.repair(USER_ID, List.of(gone), Map.of())).thenReturn(List.of());
+
+        InboxPage page = inboxService.getInbox(USER_ID, null, 0, 2, true, false);
+
+        assertEquals(List.of(first, next), page.getEntries());
+        assertEquals("cursor-2", page.getNextCursor());
+        assertTrue(page.isHasMore());
+        verify(inboxRepository, never()).updateCounterparts(anyString(), anyList());
+    }
+
+    private static InboxEntry completeEntry(String counterpartId) {
+        InboxEntry entry = partialEntry(counterpartId);
+        entry.setCounterpart(card(counterpartId));
+        entry.setCounterpartRefreshedAt(LocalDateTime.now());
+        entry.setMatchedAt(LocalDateTime.now().minusDays(1));
+        return entry;
+    }
+
+    // An entry written by a message or read before its match, with no card or match details yet
+    private static InboxEntry partialEntry(String counterpartId) {
+        InboxEntry entry = new InboxEntry();
+        entry.setOwnerId(USER_ID);
+        entry.setConversationId(USER_ID + "_" + counterpartId);
+        return entry;
+    }
+
+    private static ProfileCard card(String connectId) {
+        ProfileCard card = new ProfileCard();
+        card.setConnectId(connectId);
+        card.setFirstName("Name " + connectId);
+        return card;
+    }
+}
@@ -0,0 +1,94 @@
+package com.tpg.connect.services;
+
+import com.tpg.connect.model.conversation.Conversation;
+import com.tpg.connect.repository.ConversationRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Send latency under chat-heavy load: many conversations with both sides sending at once. The
+ * sender waits for one batch commit and the WebSocket broadcast; push delivery happens afterwards.
+ * Run it on the commit before the batched send pipeline for the comparison figures.
+ *
+ * Runs against the Firestore project of the test profile and leaves its "loadtest-" conversations behind.
+ *
+ * Run with: ./mvnw test -Dtest=MessageSendLoadTest -Dloadtest=true
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class MessageSendLoadTest {
+
+    private static final int CONVERSATIONS = 50;
+    private static final int MESSAGES_PER_SENDER = 10;
+    private static final int THREADS = 32;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Test
+    void sendLatencyUnderChatLoad() throws Exception {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        List<String> conversationIds = new ArrayList<>();
+        List<Callable<Long>> sends = new ArrayList<>();
+        for (int c = 0; c < CONVERSATIONS; c++) {
+            String userA = "loadtest-chat-" + runId + "-" + c + "-a";
+            String userB = "loadtest-chat-" + runId + "-" + c + "-b";
+            Conversation conversation = new Conversation();
+            conversation.setId(userA + "_" + userB);
+            conversation.setParticipantIds(List.of(userA, userB));
+            conversation.setStatus(Conversation.ConversationStatus.ACTIVE);
+            conversation.setUpdatedAt(LocalDateTime.now());
+            conversationRepository.save(conversation);
+            conversationIds.add(conversation.getId());
+
+            for (int m = 0; m < MESSAGES_PER_SENDER; m++) {
+                for (String senderId : List.of(userA, userB)) {
+                    String content = "Load test message " + m + " from " + senderId;
+                    sends.add(() -> {
+                        long started = System.nanoTime();
+                        conversationService.sendMessage(conversation.getId(), senderId, content);
+                        return System.nanoTime() - started;
+                    });
+                }
+            }
+        }
+        Collections.shuffle(sends, new Random(42));
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long started = System.nanoTime();
+        List<Long> latencies = new ArrayList<>();
+        try {
+            for (Future<Long> send : pool.invokeAll(sends)) {
+                latencies.add(send.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Collections.sort(latencies);
+        System.out.printf("Message sends: %d in %.1f s (%.0f sends/s, p50 %.0f ms, p99 %.0f ms)%n",
+                latencies.size(), seconds, latencies.size() / seconds,
+                latencies.get(latencies.size() / 2) / 1e6, latencies.get(latencies.size() * 99 / 100) / 1e6);
+
+        assertEquals(sends.size(), latencies.size());
+        for (String conversationId : conversationIds) {
+            Conversation conversation = conversationRepository.findById(conversationId).orElseThrow();
+            assertNotNull(conversation.getLastMessage(), "Conversation " + conversationId + " has no last message");
+            assertEquals(MESSAGES_PER_SENDER * 2, conversation.getUnreadCount());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.tpg.connect.services;
+
+import com.tpg.connect.model.SafetyBlock;
+import com.tpg.connect.model.user.CompleteUserProfile;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SafetyFilterTest {
+
+    @Test
+    void noActiveRulesAllowsEveryone() {
+        SafetyFilter filter = SafetyFilter.compile(List.of(
+                block("AGE_RESTRICTION", false),
+                block("LOCATION_BLOCK", true),
+                block("CONTENT_FILTER", true)));
+
+        assertTrue(filter.allowsAll());
+        assertFalse(filter.blocks(profileAged(16)));
+    }
+
+    @Test
+    void ageRestrictionFiltersMinorsInOnePass() {
+        SafetyFilter filter = SafetyFilter.compile(List.of(
+                block("AGE_RESTRICTION", true),
+                block("AGE_RESTRICTION", true)));
+
+        List<CompleteUserProfile> candidates = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            candidates.add(profileAged(i % 10 == 0 ? 17 : 25));
+        }
+
+        assertFalse(filter.allowsAll());
+        List<CompleteUserProfile> allowed = filter.filter(candidates);
+        assertEquals(900, allowed.size());
+        assertTrue(allowed.stream().allMatch(candidate -> candidate.getAge() >= 18));
+    }
+
+    private static SafetyBlock block(String blockType, boolean active) {
+        return SafetyBlock.builder()
+                .blockType(blockType)
+                .isActive(active)
+                .build();
+    }
+
+    private static CompleteUserProfile profileAged(int age) {
+        CompleteUserProfile profile = new CompleteUserProfile();
+        profile.setDateOfBirth(LocalDate.now().minusYears(age).minusDays(1));
+        return profile;
+    }
+}
@@ -0,0 +1,170 @@
+package com.tpg.connect.services;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.api.gax.rpc.DeadlineExceededException;
+import com.google.api.gax.rpc.UnavailableException;
+import com.google.cloud.firestore.*;
+import io.grpc.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class UserActionsServiceTest {
+
+    private static final String USER_ID = "100000000001";
+    private static final String TARGET_ID = "100000000002";
+
+    @Mock
+    private Firestore firestore;
+
+    @Mock
+    private LikeGraphService likeGraphService;
+
+    @Mock
+    private MatchCardBufferService matchCardBufferService;
+
+    @Mock
+    private MatchService matchService;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private WriteBatch batch;
+
+    @InjectMocks
+    private UserActionsService userActionsService;
+
+    private final Map<String, DocumentReference> docs = new HashMap<>();
+    private final Map<DocumentReference, DocumentSnapshot> stored = new HashMap<>();
+    private final Deque<ApiFuture<List<WriteResult>>> commits = new ArrayDeque<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CollectionReference userActions = collection("userActions");
+        when(firestore.collection("userActions")).thenReturn(userActions);
+        when(firestore.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> {
+            List<DocumentSnapshot> snapshots = new ArrayList<>();
+            for (DocumentReference ref : (DocumentReference[]) invocation.getRawArguments()[0]) {
+                snapshots.add(stored.getOrDefault(ref, mock(DocumentSnapshot.class)));
+            }
+            return ApiFutures.immediateFuture(snapshots);
+        });
+        when(firestore.batch()).thenReturn(batch);
+        when(batch.commit()).thenAnswer(invocation ->
+                commits.isEmpty() ? ApiFutures.immediateFuture(List.of()) : commits.poll());
+
+        when(likeGraphService.isReady()).thenReturn(true);
+
+        Field persistAttempts = UserActionsService.class.getDeclaredField("persistAttempts");
+        persistAttempts.setAccessible(true);
+        persistAttempts.set(userActionsService, 3);
+    }
+
+    @Test
+    void aRetryThatFindsItsMarkerCountsTheBatchAsWritten() {
+        likes(List.of(TARGET_ID), List.of());
+        // The first commit landed but timed out, so the retry fails on the marker it created
+        commits.add(failed(new DeadlineExceededException(new RuntimeException("timeout"),
+                GrpcStatusCode.of(Status.Code.DEADLINE_EXCEEDED), true)));
+        commits.add(failed(new AlreadyExistsException(new RuntimeException("marker exists"),
+                GrpcStatusCode.of(Status.Code.ALREADY_EXISTS), false)));
+
+        assertFalse(userActionsService.addLikeAction(USER_ID, TARGET_ID));
+
+        ArgumentCaptor<DocumentReference> markers = ArgumentCaptor.forClass(DocumentReference.class);
+        verify(batch, times(2)).create(markers.capture(), anyMap());
+        assertSame(markers.getAllValues().get(0), markers.getAllValues().get(1));
+        verify(likeGraphService, never()).removeLikes(anyString(), anyList());
+        verify(firestore, never()).runTransaction(any(Transaction.Function.class));
+    }
+
+    @Test
+    void likesWhoseBatchKeepsFailingLeaveTheGraphAndFallBackToTheTransaction() {
+        likes(List.of(TARGET_ID), List.of());
+        for (int attempt = 0; attempt < 3; attempt++) {
+            commits.add(failed(new UnavailableException(new RuntimeException("unavailable"),
+                    GrpcStatusCode.of(Status.Code.UNAVAILABLE), true)));
+        }
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenReturn(ApiFutures.immediateFuture(false));
+
+        assertFalse(userActionsService.addLikeAction(USER_ID, TARGET_ID));
+
+        verify(likeGraphService).removeLikes(USER_ID, List.of(TARGET_ID));
+        verify(firestore).runTransaction(any(Transaction.Function.class));
+        verify(likeGraphService).recordLikes(USER_ID, List.of(TARGET_ID));
+    }
+
+    @Test
+    void likesAlreadyInTheLegacyArraysAreNotWrittenAgain() {
+        likes(List.of(TARGET_ID), List.of(TARGET_ID));
+        DocumentSnapshot parent = mock(DocumentSnapshot.class);
+        when(parent.exists()).thenReturn(true);
+        when(parent.get("likes")).thenReturn(List.of(TARGET_ID));
+        stored.put(doc("userActions/" + USER_ID), parent);
+
+        assertFalse(userActionsService.addLikeAction(USER_ID, TARGET_ID));
+
+        verify(batch, never()).commit();
+        verify(matchService, never()).createMatch(anyString(), anyString());
+    }
+
+    @Test
+    void aMatchIsGuardedByThePairsPermanentMarker() {
+        likes(List.of(TARGET_ID), List.of(TARGET_ID));
+
+        assertTrue(userActionsService.addLikeAction(USER_ID, TARGET_ID));
+
+        DocumentReference matchMarker = doc("userActions/" + USER_ID + "/appliedWrites/match_" + TARGET_ID);
+        verify(batch).create(eq(matchMarker), anyMap());
+        verify(batch, never()).delete(matchMarker);
+        verify(batch).set(eq(doc("userActions/" + TARGET_ID)), anyMap(), any(SetOptions.class));
+        verify(matchService).createMatch(USER_ID, TARGET_ID);
+    }
+
+    private void likes(List<String> added, List<String> mutual) {
+        when(likeGraphService.addLikes(USER_ID, List.of(TARGET_ID))).thenReturn(new LikeGraphService.LikeResult(added, mutual));
+    }
+
+    private static ApiFuture<List<WriteResult>> failed(Exception e) {
+        return ApiFutures.immediateFailedFuture(e);
+    }
+
+    private DocumentReference doc(String path) {
+        DocumentReference ref = docs.get(path);
+        if (ref == null) {
+            ref = mock(DocumentReference.class);
+            when(ref.getId()).thenReturn(path.substring(path.lastIndexOf('/') + 1));
+            when(ref.collection(anyString())).thenAnswer(invocation -> collection(path + "/" + invocation.getArgument(0)));
+            when(ref.get()).thenReturn(ApiFutures.immediateFuture(mock(DocumentSnapshot.class)));
+            docs.put(path, ref);
+        }
+        return ref;
+    }
+
+    private CollectionReference collection(String path) {
+        CollectionReference ref = mock(CollectionReference.class);
+        when(ref.document(anyString())).thenAnswer(invocation -> doc(path + "/" + invocation.getArgument(0)));
+        when(ref.document()).thenAnswer(invocation -> doc(path + "/" + UUID.randomUUID()));
+        return ref;
+    }
+}
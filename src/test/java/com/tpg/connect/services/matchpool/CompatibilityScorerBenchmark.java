@@ -0,0 +1,81 @@
+package com.tpg.connect.services.matchpool;
+
+import com.tpg.connect.TestProfiles;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Candidates scored per second by CompatibilityScorer. Throughput is reported per candidate
+ * through {@code @OperationsPerInvocation}, so ops/s reads directly as candidates/s.
+ *
+ * Run with: ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.tpg.connect.services.matchpool.CompatibilityScorerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompatibilityScorerBenchmark {
+
+    private static final int USERS = 100_000;
+    private static final int CANDIDATES = 4_096;
+
+    private MatchPoolSnapshot snapshot;
+    private int[] seekers;
+    private int[] candidates;
+    private float[] scores;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now();
+        MatchPoolSnapshot.Builder builder = MatchPoolSnapshot.builder(today);
+        for (int i = 0; i < USERS; i++) {
+            builder.add(TestProfiles.datingProfile(TestProfiles.connectId(i), random, today));
+        }
+        snapshot = builder.build();
+
+        seekers = new int[1_024];
+        for (int i = 0; i < seekers.length; i++) {
+            seekers[i] = random.nextInt(USERS);
+        }
+        candidates = new int[CANDIDATES];
+        for (int i = 0; i < CANDIDATES; i++) {
+            candidates[i] = random.nextInt(USERS);
+        }
+        scores = new float[CANDIDATES];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES)
+    public int scoreBatch() {
+        int seeker = seekers[next++ & (seekers.length - 1)];
+        return CompatibilityScorer.scoreBatch(snapshot, seeker, candidates, 0, CANDIDATES, scores);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CANDIDATES)
+    public float scoreUnfiltered() {
+        int seeker = seekers[next++ & (seekers.length - 1)];
+        float total = 0f;
+        for (int candidate : candidates) {
+            total += CompatibilityScorer.score(snapshot, seeker, candidate);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CompatibilityScorerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
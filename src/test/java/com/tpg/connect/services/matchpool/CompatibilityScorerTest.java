@@ -0,0 +1,44 @@
+package com.tpg.connect.services.matchpool;
+
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.UserPreferences;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompatibilityScorerTest {
+
+    @Test
+    void nearerCandidatesScoreHigherWithinTheSeekersMaxDistance() {
+        MatchPoolSnapshot.Builder builder = MatchPoolSnapshot.builder(LocalDate.of(2026, 1, 1));
+        int seeker = builder.add(profile("seeker", 51.5074, -0.1278, 50));
+        int near = builder.add(profile("near", 51.5200, -0.1000, null));
+        int far = builder.add(profile("far", 51.7520, -1.2577, null));
+        int unlocated = builder.add(profile("unlocated", null, null, null));
+        MatchPoolSnapshot snapshot = builder.build();
+
+        float nearFit = CompatibilityScorer.distanceFit(snapshot, seeker, near);
+        assertTrue(nearFit > 0.9f, "about 2km of 50km");
+        // Oxford is about 80km from London, past the seeker's 50km
+        assertEquals(0f, CompatibilityScorer.distanceFit(snapshot, seeker, far));
+        assertEquals(0.5f, CompatibilityScorer.distanceFit(snapshot, seeker, unlocated));
+        // The candidate's own maxDistance is not the seeker's concern
+        assertEquals(0.5f, CompatibilityScorer.distanceFit(snapshot, near, seeker));
+
+        assertTrue(CompatibilityScorer.score(snapshot, seeker, near) > CompatibilityScorer.score(snapshot, seeker, unlocated));
+        assertTrue(CompatibilityScorer.score(snapshot, seeker, unlocated) > CompatibilityScorer.score(snapshot, seeker, far));
+    }
+
+    private static CompleteUserProfile profile(String connectId, Double latitude, Double longitude, Integer maxDistance) {
+        CompleteUserProfile profile = new CompleteUserProfile();
+        profile.setConnectId(connectId);
+        profile.setLatitude(latitude);
+        profile.setLongitude(longitude);
+        UserPreferences preferences = new UserPreferences();
+        preferences.setMaxDistance(maxDistance);
+        profile.setPreferences(preferences);
+        return profile;
+    }
+}
@@ -0,0 +1,127 @@
+package com.tpg.connect.services.matchpool;
+
+import com.tpg.connect.TestProfiles;
+import com.tpg.connect.model.user.CompleteUserProfile;
+import com.tpg.connect.model.user.DetailedProfile;
+import com.tpg.connect.model.user.UserPreferences;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchPoolEngineTest {
+
+    private static final LocalDate RUN_DATE = LocalDate.of(2026, 1, 15);
+
+    @Test
+    void poolsAreDeterministicAndWellFormed() {
+        MatchPoolSnapshot snapshot = snapshot(2_000, 1);
+        MatchPoolEngine engine = new MatchPoolEngine(10, 200, 3);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+
+        MatchPoolResult first = engine.generate(snapshot, 42L, forkJoinPool);
+        MatchPoolResult second = engine.generate(snapshot, 42L, forkJoinPool);
+        forkJoinPool.shutdown();
+
+        for (int user = 0; user < first.userCount(); user++) {
+            assertTrue(first.poolSize(user) <= 10);
+            assertEquals(first.poolSize(user), second.poolSize(user));
+            Set<String> seen = new HashSet<>();
+            for (int position = 0; position < first.poolSize(user); position++) {
+                String match = first.matchConnectId(user, position);
+                assertEquals(match, second.matchConnectId(user, position));
+                assertNotEquals(first.connectId(user), match);
+                assertTrue(seen.add(match), "Duplicate match in pool");
+                assertEquals(position + 1, first.stabilityRank(user, position));
+            }
+        }
+    }
+
+    @Test
+    void aPopularUserOnlyLeadsAsManyPoolsAsTheirCapacity() {
+        // Three identical men all score Ana above Beth, who is further from the centre of their age range
+        MatchPoolSnapshot.Builder builder = MatchPoolSnapshot.builder(RUN_DATE);
+        for (int i = 1; i <= 3; i++) {
+            builder.add(fixedProfile("man-" + i, "Man", "Women", 30));
+        }
+        builder.add(fixedProfile("ana", "Woman", "Men", 30));
+        builder.add(fixedProfile("beth", "Woman", "Men", 27));
+        MatchPoolSnapshot snapshot = builder.build();
+
+        ForkJoinPool forkJoinPool = new ForkJoinPool(1);
+        MatchPoolResult result = new MatchPoolEngine(2, 10, 1).generate(snapshot, 42L, forkJoinPool);
+        forkJoinPool.shutdown();
+
+        int ledByAna = 0;
+        int ledByBeth = 0;
+        for (int user = 0; user < result.userCount(); user++) {
+            if (!result.connectId(user).startsWith("man-")) {
+                continue;
+            }
+            assertEquals(2, result.poolSize(user));
+            String first = result.matchConnectId(user, 0);
+            String second = result.matchConnectId(user, 1);
+            if (first.equals("ana")) {
+                ledByAna++;
+                assertTrue(result.compatibilityScore(user, 0) > result.compatibilityScore(user, 1));
+            } else if (first.equals("beth") && second.equals("ana")) {
+                ledByBeth++;
+                // Turned down by Ana, so Beth leads even though she scores lower
+                assertTrue(result.compatibilityScore(user, 0) < result.compatibilityScore(user, 1));
+            }
+        }
+        // One man is accepted by Ana, one by Beth; the third is turned down by both and keeps score order
+        assertEquals(2, ledByAna);
+        assertEquals(1, ledByBeth);
+        assertEquals(4, result.stablePairs());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void generates500kPoolsWithinMinutes() {
+        // Run with: ./mvnw test -Dtest=MatchPoolEngineTest -Dbenchmark=true
+        long started = System.nanoTime();
+        MatchPoolSnapshot snapshot = snapshot(500_000, 7);
+        long built = System.nanoTime();
+
+        ForkJoinPool forkJoinPool = new ForkJoinPool(8);
+        MatchPoolResult result = new MatchPoolEngine(10, 2_000, 3).generate(snapshot, 42L, forkJoinPool);
+        forkJoinPool.shutdown();
+        long generated = System.nanoTime();
+
+        double generateSeconds = (generated - built) / 1e9;
+        System.out.printf("MatchPoolEngine 500k users: snapshot %.1fs, generate %.1fs, %,d stable pairs%n",
+                (built - started) / 1e9, generateSeconds, result.stablePairs());
+        assertEquals(500_000, result.userCount());
+        assertTrue(generateSeconds < 300, "Generation took " + generateSeconds + "s");
+    }
+
+    private CompleteUserProfile fixedProfile(String connectId, String gender, String interestedIn, int age) {
+        CompleteUserProfile profile = new CompleteUserProfile();
+        profile.setConnectId(connectId);
+        profile.setProfile(new DetailedProfile());
+        profile.setGender(gender);
+        profile.setInterestedIn(interestedIn);
+        profile.setDateOfBirth(RUN_DATE.minusYears(age).minusDays(180));
+        profile.setActive(true);
+
+        UserPreferences preferences = new UserPreferences();
+        preferences.setAgeRange(new UserPreferences.AgeRange(25, 35));
+        preferences.setInterestedIn(List.of(interestedIn));
+        profile.setPreferences(preferences);
+        return profile;
+    }
+
+    private MatchPoolSnapshot snapshot(int users, long seed) {
+        Random random = new Random(seed);
+        MatchPoolSnapshot.Builder builder = MatchPoolSnapshot.builder(RUN_DATE);
+        for (int i = 0; i < users; i++) {
+            builder.add(TestProfiles.datingProfile(TestProfiles.connectId(i), random, RUN_DATE));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,60 @@
+package com.tpg.connect.services.matchpool;
+
+import com.tpg.connect.model.user.DetailedProfile;
+import com.tpg.connect.model.user.UserPreferences;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraitsTest {
+
+    @Test
+    void habitsComeFromTheProfilesOwnAnswers() {
+        UserPreferences habits = new UserPreferences();
+        habits.setDrinkingPreference("regularly");
+        habits.setSmokingPreference("sometimes");
+        habits.setDrugPreference("never");
+
+        long traits = Traits.of(0, habits, new DetailedProfile(), (byte) 0);
+
+        assertNotEquals(0L, traits & Traits.SMOKER);
+        assertNotEquals(0L, traits & Traits.DRINKER);
+        assertEquals(0L, traits & Traits.DRUGS);
+    }
+
+    @Test
+    void habitsCanBeExcludedOrRequired() {
+        UserPreferences seeker = new UserPreferences();
+        seeker.setDrinkingPreference("noPreference");
+        seeker.setSmokingPreference("never");
+        assertNotEquals(0L, Traits.excluded(seeker) & Traits.SMOKER);
+
+        seeker.setMustHaves(new ArrayList<>(List.of("drinker")));
+        assertEquals(Traits.DRINKER, Traits.required(seeker));
+    }
+
+    @Test
+    void havingKidsAndWantingKidsAreSeparateTraits() {
+        UserPreferences preferences = new UserPreferences();
+        preferences.setDealBreakers(List.of("has kids"));
+        assertEquals(Traits.HAS_KIDS, Traits.excluded(preferences));
+        preferences.setDealBreakers(List.of("wants kids"));
+        assertEquals(Traits.WANTS_KIDS, Traits.excluded(preferences));
+        preferences.setDealBreakers(List.of("kids"));
+        assertEquals(0L, Traits.excluded(preferences));
+
+        DetailedProfile parent = new DetailedProfile();
+        parent.setChildren("Have kids");
+        parent.setFamilyPlans("Don't want kids");
+        long traits = Traits.of(0, null, parent, (byte) 0);
+        assertNotEquals(0L, traits & Traits.HAS_KIDS);
+        assertNotEquals(0L, traits & Traits.NO_KIDS_WANTED);
+        assertEquals(0L, traits & Traits.WANTS_KIDS);
+
+        parent.setChildren("Don't have kids");
+        assertEquals(0L, Traits.of(0, null, parent, (byte) 0) & Traits.HAS_KIDS);
+    }
+}
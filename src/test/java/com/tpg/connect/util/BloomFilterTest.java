@@ -0,0 +1,35 @@
+package com.tpg.connect.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void everyInsertedKeyIsFoundAndFalsePositivesStayNearTheTarget() {
+        BloomFilter filter = BloomFilter.create(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put(String.valueOf(100000000000L + i) + "|" + String.valueOf(200000000000L + i));
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.mightContain(String.valueOf(100000000000L + i) + "|" + String.valueOf(200000000000L + i)));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(String.valueOf(300000000000L + i) + "|" + String.valueOf(400000000000L + i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "False-positive rate too high: " + falsePositives + " / 100000");
+        assertEquals(100_000, filter.insertions());
+    }
+
+    @Test
+    void rejectsImpossibleFalsePositiveRates() {
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(10, 1));
+    }
+}
@@ -0,0 +1,70 @@
+package com.tpg.connect.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectIdBitmapTest {
+
+    @Test
+    void membershipMatchesHashSetForSparseAndDenseIds() {
+        Random random = new Random(1);
+        Set<String> expected = new HashSet<>();
+        ConnectIdBitmap bitmap = new ConnectIdBitmap();
+
+        for (int i = 0; i < 50_000; i++) {
+            long id = i % 2 == 0
+                    ? 100000000000L + random.nextInt(20_000) // dense run sharing one key
+                    : 100000000000L + (long) (random.nextDouble() * 899999999999L);
+            String connectId = String.valueOf(id);
+            assertEquals(expected.add(connectId), bitmap.add(connectId));
+        }
+
+        for (String connectId : expected) {
+            assertTrue(bitmap.contains(connectId));
+        }
+        assertFalse(bitmap.contains("999999999999"));
+        assertEquals(expected.size(), bitmap.cardinality());
+    }
+
+    @Test
+    void serializationRoundTripsIncludingNonNumericIds() {
+        ConnectIdBitmap bitmap = ConnectIdBitmap.of(List.of("100000000001", "299335545418", "999999999999", "user_123", "1"));
+
+        ConnectIdBitmap restored = ConnectIdBitmap.fromBase64(bitmap.toBase64());
+
+        assertEquals(5, restored.cardinality());
+        assertTrue(restored.contains("299335545418"));
+        assertTrue(restored.contains("user_123"));
+        assertTrue(restored.contains("1"));
+        assertFalse(restored.contains("01"));
+    }
+
+    @Test
+    void setDifferenceKeepsCandidateOrder() {
+        ConnectIdBitmap actedOn = ConnectIdBitmap.of(List.of("100000000002", "100000000004"));
+
+        List<String> remaining = actedOn.filterAbsent(List.of("100000000004", "100000000003", "100000000002", "100000000001"));
+
+        assertEquals(List.of("100000000003", "100000000001"), remaining);
+        assertEquals(1, ConnectIdBitmap.of(List.of("100000000001", "100000000002")).andNot(actedOn).cardinality());
+    }
+
+    @Test
+    void randomConnectIdsSerializeToAboutFourBytesEach() {
+        Random random = new Random(7);
+        ConnectIdBitmap bitmap = new ConnectIdBitmap();
+        for (int i = 0; i < 10_000; i++) {
+            bitmap.add(100000000000L + (long) (random.nextDouble() * 899999999999L));
+        }
+
+        byte[] serialized = bitmap.serialize();
+
+        assertTrue(serialized.length < 10_000 * 4.5, serialized.length + " bytes");
+        ConnectIdBitmap restored = ConnectIdBitmap.deserialize(serialized);
+        assertEquals(bitmap.cardinality(), restored.cardinality());
+        assertTrue(restored.andNot(bitmap).isEmpty());
+    }
+}